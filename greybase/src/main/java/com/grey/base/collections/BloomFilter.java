@@ -0,0 +1,155 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.base.collections;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.grey.base.utils.ByteArrayRef;
+import com.grey.base.utils.ByteOps;
+
+/**
+ * A fixed-size Bloom filter, which answers the question "have we seen this key before" in bounded memory, at the cost of a
+ * configurable rate of false positives (but never false negatives).
+ * <br>
+ * Keys can be byte sequences (including ByteChars) or primitive ints and longs, and are reduced to a 64-bit hash from which the
+ * individual bit positions are derived by double hashing, so adding and querying keys does not allocate any memory.
+ * The size of the bit array is rounded up to a power of 2.
+ * <p>
+ * This class is single-threaded by default, but if constructed in MT mode it can be safely updated and queried by multiple threads
+ * at once, without locking.
+ *
+ * @see CountingBloomFilter
+ * @see ScalableBloomFilter
+ * @see RotatingBloomFilter
+ */
+public final class BloomFilter
+{
+	private static final double LN2 = Math.log(2);
+
+	private final long[] bits; //null in MT mode
+	private final AtomicLongArray atomicbits; //null in non-MT mode
+	private final int bitmask;
+	private final int hashcnt;
+	private final int capacity;
+
+	public int getCapacity() {return capacity;}
+	public int getBitCount() {return bitmask + 1;}
+	public int getHashCount() {return hashcnt;}
+	public boolean isMT() {return (atomicbits != null);}
+
+	public boolean add(ByteArrayRef key) {return addHash(ByteOps.hash64(key.buffer(), key.offset(), key.size()));}
+	public boolean add(byte[] buf, int off, int len) {return addHash(ByteOps.hash64(buf, off, len));}
+	public boolean add(int key) {return addHash(ByteOps.hash64(key));}
+	public boolean add(long key) {return addHash(ByteOps.hash64(key));}
+	public boolean mightContain(ByteArrayRef key) {return containsHash(ByteOps.hash64(key.buffer(), key.offset(), key.size()));}
+	public boolean mightContain(byte[] buf, int off, int len) {return containsHash(ByteOps.hash64(buf, off, len));}
+	public boolean mightContain(int key) {return containsHash(ByteOps.hash64(key));}
+	public boolean mightContain(long key) {return containsHash(ByteOps.hash64(key));}
+
+	public BloomFilter(int expectedEntries) {this(expectedEntries, 0.01, false);}
+
+	/**
+	 * Sizes the filter to hold the expected number of entries with the given false-positive probability.
+	 */
+	public BloomFilter(int expectedEntries, double fpp, boolean mt)
+	{
+		if (expectedEntries <= 0 || fpp <= 0 || fpp >= 1) {
+			throw new IllegalArgumentException("Invalid Bloom filter params - entries="+expectedEntries+", fpp="+fpp);
+		}
+		long nbits = (long)Math.ceil(-expectedEntries * Math.log(fpp) / (LN2 * LN2));
+		int bitcnt = Long.SIZE;
+		while (bitcnt < nbits && bitcnt < (1 << 30)) bitcnt <<= 1;
+		capacity = expectedEntries;
+		bitmask = bitcnt - 1;
+		hashcnt = Math.max(1, (int)Math.round((double)nbits / expectedEntries * LN2));
+		int wordcnt = bitcnt / Long.SIZE;
+		bits = (mt ? null : new long[wordcnt]);
+		atomicbits = (mt ? new AtomicLongArray(wordcnt) : null);
+	}
+
+	/**
+	 * Adds a key in the form of its 64-bit hash.
+	 * Returns true if it set any new bits, meaning that the key was definitely not present before, and false if it was
+	 * already (probably) present. This combines add() and mightContain() into a single pass.
+	 */
+	public boolean addHash(long hash)
+	{
+		// h2 is forced to be odd, so that the probe sequence can't cycle within the power-of-2 bit array
+		int h1 = (int)hash;
+		final int h2 = (int)(hash >>> 32) | 1;
+		boolean added = false;
+		for (int idx = 0; idx != hashcnt; idx++) {
+			int pos = h1 & bitmask;
+			long bit = 1L << pos; //shift distance is implicitly modulo 64
+			int word = pos >>> 6;
+			if (bits == null) {
+				long oldval = atomicbits.get(word);
+				while ((oldval & bit) == 0) {
+					if (atomicbits.compareAndSet(word, oldval, oldval | bit)) {
+						added = true;
+						break;
+					}
+					oldval = atomicbits.get(word);
+				}
+			} else if ((bits[word] & bit) == 0) {
+				bits[word] |= bit;
+				added = true;
+			}
+			h1 += h2;
+		}
+		return added;
+	}
+
+	public boolean containsHash(long hash)
+	{
+		int h1 = (int)hash;
+		final int h2 = (int)(hash >>> 32) | 1;
+		for (int idx = 0; idx != hashcnt; idx++) {
+			int pos = h1 & bitmask;
+			long word = (bits == null ? atomicbits.get(pos >>> 6) : bits[pos >>> 6]);
+			if ((word & (1L << pos)) == 0) return false;
+			h1 += h2;
+		}
+		return true;
+	}
+
+	public void clear()
+	{
+		if (bits == null) {
+			for (int idx = 0; idx != atomicbits.length(); idx++) atomicbits.set(idx, 0);
+		} else {
+			java.util.Arrays.fill(bits, 0);
+		}
+	}
+
+	/**
+	 * Returns the proportion of bits which are set. The false-positive rate is this value to the power of getHashCount()
+	 */
+	public double getFillRatio()
+	{
+		long setbits = 0;
+		int wordcnt = (bits == null ? atomicbits.length() : bits.length);
+		for (int idx = 0; idx != wordcnt; idx++) {
+			setbits += Long.bitCount(bits == null ? atomicbits.get(idx) : bits[idx]);
+		}
+		return (double)setbits / getBitCount();
+	}
+
+	/**
+	 * Estimates the number of distinct keys that have been added, based on the number of bits that are set.
+	 */
+	public int estimateSize()
+	{
+		double ratio = getFillRatio();
+		if (ratio >= 1) return Integer.MAX_VALUE;
+		return (int)Math.round(-getBitCount() * Math.log(1 - ratio) / hashcnt);
+	}
+
+	@Override
+	public String toString()
+	{
+		return super.toString()+" with capacity="+capacity+", bits="+getBitCount()+", hashes="+hashcnt+(isMT() ? "/MT" : "");
+	}
+}
@@ -8,28 +8,89 @@ import com.grey.base.utils.ByteChars;
 
 /**
  * Implements a canonical set of ByteChars values, akin to the String intern pool.
+ * <p>
+ * By default the set is unbounded, and every distinct value ever interned is retained until clear() is called.
+ * This is unsuitable for long-running servers which intern external input (eg. domain names or header values), so the
+ * set can be bounded by a maximum size, in which case the least recently used values are evicted to make way for new ones,
+ * using the CLOCK approximation of LRU.
+ * <br>
+ * An evicted value remains valid for any callers which still hold it, but a subsequent intern() of the same value would
+ * create a new canonical instance. If weak references are enabled, evicted values are retained on a weak basis instead, and
+ * restored to the set if they are looked up again while still referenced elsewhere. This preserves their canonical identity
+ * without letting them count towards the size limit.
+ * <p>
+ * Beware that this class is single-threaded and non-reentrant. See {@link ConcurrentCanonByteChars} for a thread-safe version.
  */
 public final class CanonByteChars
 {
 	public final String name;
-	private final HashedSet<ByteChars> canonset = new HashedSet<ByteChars>(0, 10f); //start small (might not be needed)
+	private final int maxEntries; //zero means unbounded
+
+	// unbounded mode
+	private final HashedSet<ByteChars> canonset;
 	private final ObjectPool<ByteChars> bufpool;
 
-	public int size() {return canonset.size();}
+	// bounded mode
+	private final HashedMapIntValue<ByteChars> slotmap; //maps each canonical value to its slot number plus one
+	private final ByteChars[] slots;
+	private final boolean[] referenced; //the CLOCK reference bits
+	private final java.util.WeakHashMap<ByteChars, java.lang.ref.WeakReference<ByteChars>> evicted; //null if weak refs not enabled
+	private final ByteChars lookupbuf;
+	private int slotcnt;
+	private int clockhand;
+
+	private long lookups;
+	private long hits;
+	private long evictions;
+
+	public int getMaxEntries() {return maxEntries;}
+	public long getLookups() {return lookups;}
+	public long getHits() {return hits;}
+	public long getEvictions() {return evictions;}
+	public double getHitRate() {return (lookups == 0 ? 0 : (double)hits / lookups);}
+	public int size() {return (slots == null ? canonset.size() : slotcnt);}
+
+	public CanonByteChars(String name) {this(name, 0, false);}
 
-	public CanonByteChars(String name)
+	/**
+	 * A maxEntries value of zero means the set is unbounded, in which case weakRefs is ignored.
+	 */
+	public CanonByteChars(String name, int maxEntries, boolean weakRefs)
 	{
+		if (maxEntries < 0) throw new IllegalArgumentException("CanonByteChars="+name+" has invalid max="+maxEntries);
 		this.name = name;
-		bufpool = new ObjectPool<>(() -> new ByteChars());
+		this.maxEntries = maxEntries;
+
+		if (maxEntries == 0) {
+			canonset = new HashedSet<ByteChars>(0, 10f); //start small (might not be needed)
+			bufpool = new ObjectPool<>(() -> new ByteChars().setHashCaching(true)); //canonical values are immutable and looked up repeatedly
+			slotmap = null;
+			slots = null;
+			referenced = null;
+			evicted = null;
+			lookupbuf = null;
+		} else {
+			canonset = null;
+			bufpool = null;
+			slotmap = new HashedMapIntValue<>(maxEntries, 0);
+			slots = new ByteChars[maxEntries];
+			referenced = new boolean[maxEntries];
+			evicted = (weakRefs ? new java.util.WeakHashMap<>() : null);
+			lookupbuf = new ByteChars();
+		}
 	}
 
 	public ByteChars intern(ByteChars inpval)
 	{
 		if (inpval == null) return null;
+		if (slots != null) return internBounded(inpval, inpval);
+		lookups++;
 		ByteChars canonval = canonset.get(inpval);
 		if (canonval == null) {
 			canonval = bufpool.extract().populate(inpval);
 			canonset.add(canonval);
+		} else {
+			hits++;
 		}
 		return canonval;
 	}
@@ -37,6 +98,8 @@ public final class CanonByteChars
 	public ByteChars intern(CharSequence inpval)
 	{
 		if (inpval == null) return null;
+		if (slots != null) return internBounded(lookupbuf.populate(inpval), inpval);
+		lookups++;
 		ByteChars inpval_bc = bufpool.extract().populate(inpval);
 		ByteChars canonval = canonset.get(inpval_bc);
 		if (canonval == null) {
@@ -44,12 +107,22 @@ public final class CanonByteChars
 			canonset.add(canonval);
 		} else {
 			bufpool.store(inpval_bc);
+			hits++;
 		}
 		return canonval;
 	}
 
 	public void clear()
 	{
+		if (slots != null) {
+			slotmap.clear();
+			java.util.Arrays.fill(slots, null);
+			java.util.Arrays.fill(referenced, false);
+			if (evicted != null) evicted.clear();
+			slotcnt = 0;
+			clockhand = 0;
+			return;
+		}
 		java.util.Iterator<ByteChars> it = canonset.iterator();
 		while (it.hasNext()) {
 			ByteChars bc = it.next();
@@ -57,4 +130,66 @@ public final class CanonByteChars
 		}
 		canonset.clear();
 	}
+
+	public void resetStats()
+	{
+		lookups = 0;
+		hits = 0;
+		evictions = 0;
+	}
+
+	// The key arg holds the same value as inpval, in ByteChars form
+	private ByteChars internBounded(ByteChars key, CharSequence inpval)
+	{
+		lookups++;
+		int slot = slotmap.get(key) - 1;
+		if (slot != -1) {
+			referenced[slot] = true;
+			hits++;
+			return slots[slot];
+		}
+		ByteChars canonval = null;
+		if (evicted != null) {
+			java.lang.ref.WeakReference<ByteChars> ref = evicted.remove(key);
+			if (ref != null) canonval = ref.get();
+		}
+		if (canonval == null) {
+			canonval = new ByteChars(inpval).setHashCaching(true);
+		} else {
+			hits++;
+		}
+		if (slotcnt == slots.length) {
+			slot = evict();
+		} else {
+			slot = slotcnt++;
+		}
+		slots[slot] = canonval;
+		referenced[slot] = false;
+		slotmap.put(canonval, slot + 1);
+		return canonval;
+	}
+
+	// Advances the clock hand past any recently referenced values (clearing their reference bit so they will be evicted next
+	// time round if not referenced again in the meantime) and evicts the first unreferenced one, returning its now vacant slot.
+	private int evict()
+	{
+		while (referenced[clockhand]) {
+			referenced[clockhand] = false;
+			if (++clockhand == slots.length) clockhand = 0;
+		}
+		int slot = clockhand;
+		if (++clockhand == slots.length) clockhand = 0;
+		ByteChars victim = slots[slot];
+		slotmap.remove(victim);
+		if (evicted != null) evicted.put(victim, new java.lang.ref.WeakReference<>(victim));
+		evictions++;
+		return slot;
+	}
+
+	@Override
+	public String toString()
+	{
+		return super.toString()+" with name="+name+", size="+size()+"/max="+maxEntries
+				+" - lookups="+lookups+", hits="+hits+", evictions="+evictions;
+	}
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.base.collections;
+
+import com.grey.base.utils.ByteChars;
+import com.grey.base.utils.ByteOps;
+
+/**
+ * A thread-safe version of {@link CanonByteChars}, which can be shared by multiple Dispatchers.
+ * <br>
+ * This is partitioned into a number of independently locked segments (rounded up to a power of 2), each of which is a
+ * CanonByteChars holding an equal share of the max entries, so that concurrent callers rarely contend for the same lock.
+ */
+public final class ConcurrentCanonByteChars
+{
+	public final String name;
+	private final CanonByteChars[] segments;
+	private final int segmentShift;
+
+	public int getSegmentCount() {return segments.length;}
+
+	public ConcurrentCanonByteChars(String name, int maxEntries, boolean weakRefs, int concurrency)
+	{
+		if (concurrency <= 0) throw new IllegalArgumentException("ConcurrentCanonByteChars="+name+" has invalid concurrency="+concurrency);
+		int segcnt = 1;
+		int bits = 0;
+		while (segcnt < concurrency) {
+			segcnt <<= 1;
+			bits++;
+		}
+		this.name = name;
+		segmentShift = Integer.SIZE - bits;
+		segments = new CanonByteChars[segcnt];
+		int segmax = (maxEntries == 0 ? 0 : Math.max(1, (maxEntries + segcnt - 1) / segcnt));
+		for (int idx = 0; idx != segcnt; idx++) {
+			segments[idx] = new CanonByteChars(name+"-"+idx, segmax, weakRefs);
+		}
+	}
+
+	public ByteChars intern(ByteChars inpval)
+	{
+		if (inpval == null) return null;
+		CanonByteChars seg = segment(inpval.hashCode());
+		synchronized (seg) {
+			return seg.intern(inpval);
+		}
+	}
+
+	public ByteChars intern(CharSequence inpval)
+	{
+		if (inpval == null) return null;
+		CanonByteChars seg = segment(ByteOps.hashCode(inpval));
+		synchronized (seg) {
+			return seg.intern(inpval);
+		}
+	}
+
+	public void clear()
+	{
+		for (int idx = 0; idx != segments.length; idx++) {
+			synchronized (segments[idx]) {
+				segments[idx].clear();
+			}
+		}
+	}
+
+	public void resetStats()
+	{
+		for (int idx = 0; idx != segments.length; idx++) {
+			synchronized (segments[idx]) {
+				segments[idx].resetStats();
+			}
+		}
+	}
+
+	public int size()
+	{
+		int total = 0;
+		for (int idx = 0; idx != segments.length; idx++) {
+			synchronized (segments[idx]) {
+				total += segments[idx].size();
+			}
+		}
+		return total;
+	}
+
+	public long getLookups()
+	{
+		long total = 0;
+		for (int idx = 0; idx != segments.length; idx++) {
+			synchronized (segments[idx]) {
+				total += segments[idx].getLookups();
+			}
+		}
+		return total;
+	}
+
+	public long getHits()
+	{
+		long total = 0;
+		for (int idx = 0; idx != segments.length; idx++) {
+			synchronized (segments[idx]) {
+				total += segments[idx].getHits();
+			}
+		}
+		return total;
+	}
+
+	public long getEvictions()
+	{
+		long total = 0;
+		for (int idx = 0; idx != segments.length; idx++) {
+			synchronized (segments[idx]) {
+				total += segments[idx].getEvictions();
+			}
+		}
+		return total;
+	}
+
+	public double getHitRate()
+	{
+		long cnt = getLookups();
+		return (cnt == 0 ? 0 : (double)getHits() / cnt);
+	}
+
+	// The segment is selected by the top bits of the hash, as the segment's own hash table will be indexed by the bottom bits.
+	private CanonByteChars segment(int hash)
+	{
+		if (segments.length == 1) return segments[0];
+		return segments[hash >>> segmentShift];
+	}
+
+	@Override
+	public String toString()
+	{
+		return super.toString()+" with name="+name+", segments="+segments.length+" - size="+size()
+				+", lookups="+getLookups()+", hits="+getHits()+", evictions="+getEvictions();
+	}
+}
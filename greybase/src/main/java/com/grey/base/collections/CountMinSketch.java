@@ -0,0 +1,174 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.base.collections;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.grey.base.utils.ByteArrayRef;
+import com.grey.base.utils.ByteOps;
+
+/**
+ * A Count-Min sketch, which estimates the frequency of each key in a stream in bounded memory, and can therefore be used to detect
+ * heavy hitters (eg. the client IPs or request keys which account for a disproportionate share of the traffic).
+ * <br>
+ * The estimates can overstate but never understate the true count. With a width of w and a depth of d, the overstatement is
+ * within e/w of the total count, with a probability of 1 - exp(-d).
+ * <br>
+ * Keys can be byte sequences (including ByteChars) or primitive ints and longs, and counting them does not allocate any memory.
+ * The width is rounded up to a power of 2.
+ * <p>
+ * The counts can be aged via decay(), which halves all the counters, so that if this is called periodically the estimates reflect
+ * recent activity with an exponentially decaying weight on older activity.
+ * <p>
+ * This class is single-threaded by default, but if constructed in MT mode it can be safely updated and queried by multiple threads
+ * at once, without locking.
+ */
+public final class CountMinSketch
+{
+	private final int[] counters; //null in MT mode
+	private final AtomicIntegerArray atomiccounters; //null in non-MT mode
+	private final int widthmask;
+	private final int depth;
+	private final AtomicLong atomictotal; //null in non-MT mode
+	private long total;
+
+	public int getWidth() {return widthmask + 1;}
+	public int getDepth() {return depth;}
+	public long getTotal() {return (atomictotal == null ? total : atomictotal.get());}
+	public boolean isMT() {return (atomiccounters != null);}
+
+	public int add(ByteArrayRef key, int incr) {return addHash(ByteOps.hash64(key.buffer(), key.offset(), key.size()), incr);}
+	public int add(int key, int incr) {return addHash(ByteOps.hash64(key), incr);}
+	public int add(long key, int incr) {return addHash(ByteOps.hash64(key), incr);}
+	public int estimate(ByteArrayRef key) {return estimateHash(ByteOps.hash64(key.buffer(), key.offset(), key.size()));}
+	public int estimate(int key) {return estimateHash(ByteOps.hash64(key));}
+	public int estimate(long key) {return estimateHash(ByteOps.hash64(key));}
+
+	public CountMinSketch(int width, int depth, boolean mt)
+	{
+		if (width <= 0 || depth <= 0) throw new IllegalArgumentException("Invalid Count-Min params - width="+width+", depth="+depth);
+		long w = roundWidth(width);
+		long cells = w * depth;
+		if (cells > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Count-Min sketch is too large - width="+width+" (rounded to "+w+"), depth="+depth);
+		}
+		widthmask = (int)w - 1;
+		this.depth = depth;
+		counters = (mt ? null : new int[(int)cells]);
+		atomiccounters = (mt ? new AtomicIntegerArray((int)cells) : null);
+		atomictotal = (mt ? new AtomicLong() : null);
+	}
+
+	/**
+	 * Creates a sketch whose estimates overstate by no more than epsilon times the total count, with the probability 1 - delta.
+	 */
+	public static CountMinSketch withErrorBounds(double epsilon, double delta, boolean mt)
+	{
+		if (!(epsilon > 0) || !(delta > 0 && delta < 1)) {
+			throw new IllegalArgumentException("Invalid Count-Min error bounds - epsilon="+epsilon+", delta="+delta);
+		}
+		double width = Math.ceil(Math.E / epsilon);
+		double depth = Math.ceil(Math.log(1 / delta));
+		// check the size here rather than leave it to the constructor, so that the error reports the params the caller gave us
+		if (width * depth > Integer.MAX_VALUE || roundWidth((long)width) * depth > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Count-Min error bounds require too large a sketch - epsilon="+epsilon+", delta="+delta
+					+" => width="+(long)width+", depth="+(long)depth);
+		}
+		return new CountMinSketch((int)width, (int)depth, mt);
+	}
+
+	private static long roundWidth(long width)
+	{
+		long w = 1;
+		while (w < width) w <<= 1;
+		return w;
+	}
+
+	/**
+	 * Increments the key's count, and returns its new estimated count.
+	 */
+	public int addHash(long hash, int incr)
+	{
+		int h1 = (int)hash;
+		final int h2 = (int)(hash >>> 32) | 1;
+		int min = Integer.MAX_VALUE;
+		for (int row = 0; row != depth; row++) {
+			int pos = (row * (widthmask + 1)) + (h1 & widthmask);
+			int val;
+			if (counters == null) {
+				val = atomiccounters.addAndGet(pos, incr);
+			} else {
+				val = (counters[pos] += incr);
+			}
+			if (val < min) min = val;
+			h1 += h2;
+		}
+		if (atomictotal == null) {
+			total += incr;
+		} else {
+			atomictotal.addAndGet(incr);
+		}
+		return min;
+	}
+
+	public int estimateHash(long hash)
+	{
+		int h1 = (int)hash;
+		final int h2 = (int)(hash >>> 32) | 1;
+		int min = Integer.MAX_VALUE;
+		for (int row = 0; row != depth; row++) {
+			int pos = (row * (widthmask + 1)) + (h1 & widthmask);
+			int val = (counters == null ? atomiccounters.get(pos) : counters[pos]);
+			if (val < min) min = val;
+			h1 += h2;
+		}
+		return min;
+	}
+
+	/**
+	 * Halves all the counts.
+	 */
+	public void decay()
+	{
+		if (counters == null) {
+			for (int idx = 0; idx != atomiccounters.length(); idx++) {
+				int val;
+				do {
+					val = atomiccounters.get(idx);
+				} while (val != 0 && !atomiccounters.compareAndSet(idx, val, val >>> 1));
+			}
+		} else {
+			for (int idx = 0; idx != counters.length; idx++) {
+				counters[idx] >>>= 1;
+			}
+		}
+		if (atomictotal == null) {
+			total >>>= 1;
+		} else {
+			atomictotal.updateAndGet(val -> val >>> 1);
+		}
+	}
+
+	public void clear()
+	{
+		if (counters == null) {
+			for (int idx = 0; idx != atomiccounters.length(); idx++) atomiccounters.set(idx, 0);
+		} else {
+			java.util.Arrays.fill(counters, 0);
+		}
+		if (atomictotal == null) {
+			total = 0;
+		} else {
+			atomictotal.set(0);
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return super.toString()+" with width="+getWidth()+", depth="+depth+(isMT() ? "/MT" : "");
+	}
+}
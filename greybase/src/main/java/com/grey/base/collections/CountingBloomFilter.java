@@ -0,0 +1,148 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.base.collections;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.grey.base.utils.ByteArrayRef;
+import com.grey.base.utils.ByteOps;
+
+/**
+ * A Bloom filter which supports the removal of keys, by maintaining a small counter for each position rather than a single bit.
+ * <br>
+ * The counters are 4 bits wide and packed 16 to a long, so this takes 4 times as much memory as a {@link BloomFilter} of the same
+ * capacity. A counter which reaches its maximum value sticks there and is never decremented, since we no longer know its true value,
+ * but with the recommended sizing that is vanishingly unlikely.
+ * <br>
+ * Beware that removing a key which was never added can cause false negatives for other keys.
+ * <p>
+ * This class is single-threaded by default, but if constructed in MT mode it can be safely updated and queried by multiple threads
+ * at once, without locking.
+ */
+public final class CountingBloomFilter
+{
+	private static final double LN2 = Math.log(2);
+	private static final int CTRBITS = 4;
+	private static final long CTRMAX = (1L << CTRBITS) - 1;
+	private static final int CTRS_PER_WORD = Long.SIZE / CTRBITS;
+
+	private final long[] counters; //null in MT mode
+	private final AtomicLongArray atomiccounters; //null in non-MT mode
+	private final int ctrmask;
+	private final int hashcnt;
+
+	public int getCounterCount() {return ctrmask + 1;}
+	public int getHashCount() {return hashcnt;}
+	public boolean isMT() {return (atomiccounters != null);}
+
+	public boolean add(ByteArrayRef key) {return addHash(ByteOps.hash64(key.buffer(), key.offset(), key.size()));}
+	public boolean add(int key) {return addHash(ByteOps.hash64(key));}
+	public boolean add(long key) {return addHash(ByteOps.hash64(key));}
+	public boolean remove(ByteArrayRef key) {return removeHash(ByteOps.hash64(key.buffer(), key.offset(), key.size()));}
+	public boolean remove(int key) {return removeHash(ByteOps.hash64(key));}
+	public boolean remove(long key) {return removeHash(ByteOps.hash64(key));}
+	public boolean mightContain(ByteArrayRef key) {return containsHash(ByteOps.hash64(key.buffer(), key.offset(), key.size()));}
+	public boolean mightContain(int key) {return containsHash(ByteOps.hash64(key));}
+	public boolean mightContain(long key) {return containsHash(ByteOps.hash64(key));}
+
+	public CountingBloomFilter(int expectedEntries, double fpp, boolean mt)
+	{
+		if (expectedEntries <= 0 || fpp <= 0 || fpp >= 1) {
+			throw new IllegalArgumentException("Invalid Bloom filter params - entries="+expectedEntries+", fpp="+fpp);
+		}
+		long nctrs = (long)Math.ceil(-expectedEntries * Math.log(fpp) / (LN2 * LN2));
+		int ctrcnt = CTRS_PER_WORD;
+		while (ctrcnt < nctrs && ctrcnt < (1 << 30)) ctrcnt <<= 1;
+		ctrmask = ctrcnt - 1;
+		hashcnt = Math.max(1, (int)Math.round((double)nctrs / expectedEntries * LN2));
+		int wordcnt = ctrcnt / CTRS_PER_WORD;
+		counters = (mt ? null : new long[wordcnt]);
+		atomiccounters = (mt ? new AtomicLongArray(wordcnt) : null);
+	}
+
+	/**
+	 * Returns true if the key was definitely not present before, ie. if at least one of its counters was zero.
+	 */
+	public boolean addHash(long hash)
+	{
+		int h1 = (int)hash;
+		final int h2 = (int)(hash >>> 32) | 1;
+		boolean added = false;
+		for (int idx = 0; idx != hashcnt; idx++) {
+			long prev = updateCounter(h1 & ctrmask, 1);
+			if (prev == 0) added = true;
+			h1 += h2;
+		}
+		return added;
+	}
+
+	/**
+	 * Returns false if the key was definitely not present, in which case no counters are modified.
+	 */
+	public boolean removeHash(long hash)
+	{
+		if (!containsHash(hash)) return false;
+		int h1 = (int)hash;
+		final int h2 = (int)(hash >>> 32) | 1;
+		for (int idx = 0; idx != hashcnt; idx++) {
+			updateCounter(h1 & ctrmask, -1);
+			h1 += h2;
+		}
+		return true;
+	}
+
+	public boolean containsHash(long hash)
+	{
+		int h1 = (int)hash;
+		final int h2 = (int)(hash >>> 32) | 1;
+		for (int idx = 0; idx != hashcnt; idx++) {
+			if (getCounter(h1 & ctrmask) == 0) return false;
+			h1 += h2;
+		}
+		return true;
+	}
+
+	public void clear()
+	{
+		if (counters == null) {
+			for (int idx = 0; idx != atomiccounters.length(); idx++) atomiccounters.set(idx, 0);
+		} else {
+			java.util.Arrays.fill(counters, 0);
+		}
+	}
+
+	private long getCounter(int pos)
+	{
+		int word = pos / CTRS_PER_WORD;
+		int shift = (pos % CTRS_PER_WORD) * CTRBITS;
+		long val = (counters == null ? atomiccounters.get(word) : counters[word]);
+		return (val >>> shift) & CTRMAX;
+	}
+
+	// Returns the previous value of the counter. Saturated counters are left alone, and decrements don't go below zero.
+	private long updateCounter(int pos, int incr)
+	{
+		int word = pos / CTRS_PER_WORD;
+		int shift = (pos % CTRS_PER_WORD) * CTRBITS;
+		while (true) {
+			long oldval = (counters == null ? atomiccounters.get(word) : counters[word]);
+			long ctr = (oldval >>> shift) & CTRMAX;
+			if (ctr == CTRMAX || (ctr == 0 && incr < 0)) return ctr;
+			long newval = (oldval & ~(CTRMAX << shift)) | ((ctr + incr) << shift);
+			if (counters == null) {
+				if (atomiccounters.compareAndSet(word, oldval, newval)) return ctr;
+			} else {
+				counters[word] = newval;
+				return ctr;
+			}
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return super.toString()+" with counters="+getCounterCount()+", hashes="+hashcnt+(isMT() ? "/MT" : "");
+	}
+}
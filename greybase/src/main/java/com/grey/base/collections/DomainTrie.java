@@ -0,0 +1,364 @@
+/*
+ * Copyright 2010-2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.base.collections;
+
+import com.grey.base.utils.ByteChars;
+
+/**
+ * Maps domain names to values, using a trie which is keyed on the reversed labels of the domain name.
+ * <br>
+ * This means that all the names under a given domain share the same subtree, so in addition to exact-match lookups, this class
+ * can find the longest stored suffix of a given name in a single descent of the tree (rather than by walking up the parent domains
+ * and doing a hashed lookup for each one), and can visit or prune all the names below a given domain.
+ * <p>
+ * Each node stores a single label, which it holds as a private ByteChars copy, and each node's children are held in an array which
+ * is sorted by label, so lookups do a binary search at each level and compare the labels in place, without any memory allocation.
+ * <br>
+ * Domain names may be specified with or without a trailing dot, and the root domain is represented by "." or the empty string.
+ * Names are compared on their raw bytes, so callers who want case-insensitive matching should normalise their names first.
+ * Null values are not supported, as a null return value denotes a name that was not found.
+ * <p>
+ * Beware that this class is single-threaded and non-reentrant.
+ */
+public final class DomainTrie<V>
+{
+	private static final byte DLM = '.';
+	private static final int CHILDCAP_INCR = 4; //growth increment of child arrays
+
+	/**
+	 * Callback for walkSuffixes().
+	 * The suffix is the name of the current node, as it appears within the original name (ie. it is dom.subSequence(off, dom.length()),
+	 * though without any trailing dot), and the value is null if this node merely exists as an intermediate step in the tree.
+	 * Returns false to terminate the walk.
+	 */
+	public interface SuffixVisitor<V> {
+		boolean visitSuffix(ByteChars dom, int off, int labelcnt, V value);
+	}
+
+	/**
+	 * Callback for visitSubtree().
+	 * The domain name is held in a buffer which is reused for each call, so the visitor must copy it if it wants to retain it.
+	 * Returns false to terminate the iteration.
+	 */
+	public interface EntryVisitor<V> {
+		boolean visitEntry(ByteChars dom, V value);
+	}
+
+	private static final class Node<V>
+	{
+		final ByteChars label; //null for the root node
+		final Node<V> parent;
+		Node<V>[] children;
+		int childcnt;
+		V value;
+
+		Node(ByteChars label, Node<V> parent) {
+			this.label = label;
+			this.parent = parent;
+		}
+	}
+
+	private final Node<V> root = new Node<>(null, null);
+	private int entrycnt;
+	private int visitcnt;
+
+	// temporary work areas, pre-allocated merely for efficiency
+	private final ByteChars tmpbc = new ByteChars();
+	private final ByteChars namebuf = new ByteChars();
+
+	public int size() {return entrycnt;}
+	public boolean isEmpty() {return (entrycnt == 0);}
+
+	public void clear()
+	{
+		root.children = null;
+		root.childcnt = 0;
+		root.value = null;
+		entrycnt = 0;
+	}
+
+	public V put(CharSequence domnam, V value)
+	{
+		if (value == null) throw new IllegalArgumentException("DomainTrie does not support null values - dom="+domnam);
+		ByteChars dom = ByteChars.convertCharSequence(domnam, tmpbc);
+		final byte[] buf = dom.buffer();
+		final int off0 = dom.offset();
+		int lmt = nameLimit(dom);
+		Node<V> node = root;
+
+		while (lmt != off0) {
+			int off = labelStart(buf, off0, lmt);
+			int pos = findChild(node, buf, off, lmt - off);
+			if (pos < 0) {
+				ByteChars label = new ByteChars(buf, off, lmt - off, true);
+				node = insertChild(node, -(pos + 1), label);
+			} else {
+				node = node.children[pos];
+			}
+			lmt = (off == off0 ? off0 : off - 1);
+		}
+		V oldval = node.value;
+		node.value = value;
+		if (oldval == null) entrycnt++;
+		return oldval;
+	}
+
+	public V get(CharSequence domnam)
+	{
+		Node<V> node = findNode(domnam);
+		return (node == null ? null : node.value);
+	}
+
+	public boolean containsKey(CharSequence domnam)
+	{
+		return (get(domnam) != null);
+	}
+
+	public V remove(CharSequence domnam)
+	{
+		Node<V> node = findNode(domnam);
+		if (node == null || node.value == null) return null;
+		V oldval = node.value;
+		node.value = null;
+		entrycnt--;
+		discardEmptyNodes(node);
+		return oldval;
+	}
+
+	/**
+	 * Returns the value of the longest stored suffix of the given name, which may be the name itself, or null if no suffix
+	 * (not even the root) is stored.
+	 * <br>
+	 * If the matched parameter is non-null, it is set to point at the matching suffix within the given name (it does not
+	 * take a copy, and won't include any trailing dot) if a match is found.
+	 */
+	public V findLongestSuffix(CharSequence domnam, ByteChars matched)
+	{
+		ByteChars dom = ByteChars.convertCharSequence(domnam, tmpbc);
+		final byte[] buf = dom.buffer();
+		final int off0 = dom.offset();
+		final int lmt0 = nameLimit(dom);
+		int lmt = lmt0;
+		Node<V> node = root;
+		V value = root.value;
+		int matchoff = lmt0;
+
+		while (lmt != off0) {
+			int off = labelStart(buf, off0, lmt);
+			int pos = findChild(node, buf, off, lmt - off);
+			if (pos < 0) break;
+			node = node.children[pos];
+			if (node.value != null) {
+				value = node.value;
+				matchoff = off;
+			}
+			lmt = (off == off0 ? off0 : off - 1);
+		}
+		if (value != null && matched != null) matched.set(buf, matchoff, lmt0 - matchoff);
+		return value;
+	}
+
+	public V findLongestSuffix(CharSequence domnam)
+	{
+		return findLongestSuffix(domnam, null);
+	}
+
+	/**
+	 * Walks down the tree along the path that leads to the given name, and calls the visitor for each node on that path,
+	 * starting with the top-level domain and ending with the name itself (the root node is not visited).
+	 * The walk terminates early if the name's path does not exist in full or the visitor returns false.
+	 * <br>
+	 * Returns the number of labels that were visited.
+	 */
+	public int walkSuffixes(CharSequence domnam, SuffixVisitor<V> visitor)
+	{
+		ByteChars dom = ByteChars.convertCharSequence(domnam, tmpbc);
+		final byte[] buf = dom.buffer();
+		final int off0 = dom.offset();
+		int lmt = nameLimit(dom);
+		Node<V> node = root;
+		int labelcnt = 0;
+
+		while (lmt != off0) {
+			int off = labelStart(buf, off0, lmt);
+			int pos = findChild(node, buf, off, lmt - off);
+			if (pos < 0) break;
+			node = node.children[pos];
+			labelcnt++;
+			if (!visitor.visitSuffix(dom, off - off0, labelcnt, node.value)) break;
+			lmt = (off == off0 ? off0 : off - 1);
+		}
+		return labelcnt;
+	}
+
+	/**
+	 * Visits every stored name which is equal to or below the given domain (ie. every name which has this domain as a suffix).
+	 * Returns the number of entries visited.
+	 */
+	public int visitSubtree(CharSequence domnam, EntryVisitor<V> visitor)
+	{
+		Node<V> node = findNode(domnam);
+		if (node == null) return 0;
+		visitcnt = 0;
+		visitNode(node, visitor);
+		return visitcnt;
+	}
+
+	/**
+	 * Removes the given domain and all the names below it. Returns the number of entries removed.
+	 */
+	public int removeSubtree(CharSequence domnam)
+	{
+		Node<V> node = findNode(domnam);
+		if (node == null) return 0;
+		int delcnt = countEntries(node);
+		entrycnt -= delcnt;
+		if (node == root) {
+			clear();
+		} else {
+			node.value = null;
+			node.children = null;
+			node.childcnt = 0;
+			discardEmptyNodes(node);
+		}
+		return delcnt;
+	}
+
+	private Node<V> findNode(CharSequence domnam)
+	{
+		ByteChars dom = ByteChars.convertCharSequence(domnam, tmpbc);
+		final byte[] buf = dom.buffer();
+		final int off0 = dom.offset();
+		int lmt = nameLimit(dom);
+		Node<V> node = root;
+
+		while (lmt != off0) {
+			int off = labelStart(buf, off0, lmt);
+			int pos = findChild(node, buf, off, lmt - off);
+			if (pos < 0) return null;
+			node = node.children[pos];
+			lmt = (off == off0 ? off0 : off - 1);
+		}
+		return node;
+	}
+
+	private boolean visitNode(Node<V> node, EntryVisitor<V> visitor)
+	{
+		if (node.value != null) {
+			visitcnt++;
+			if (!visitor.visitEntry(buildName(node), node.value)) return false;
+		}
+		for (int idx = 0; idx != node.childcnt; idx++) {
+			if (!visitNode(node.children[idx], visitor)) return false;
+		}
+		return true;
+	}
+
+	private ByteChars buildName(Node<V> node)
+	{
+		namebuf.clear();
+		if (node == root) return namebuf.append(DLM);
+		while (node != root) {
+			if (namebuf.size() != 0) namebuf.append(DLM);
+			namebuf.append(node.label);
+			node = node.parent;
+		}
+		return namebuf;
+	}
+
+	private static <V> int countEntries(Node<V> node)
+	{
+		int cnt = (node.value == null ? 0 : 1);
+		for (int idx = 0; idx != node.childcnt; idx++) {
+			cnt += countEntries(node.children[idx]);
+		}
+		return cnt;
+	}
+
+	// unlink any nodes on the path up from this one which no longer serve any purpose
+	private void discardEmptyNodes(Node<V> node)
+	{
+		while (node != root && node.value == null && node.childcnt == 0) {
+			Node<V> parent = node.parent;
+			int pos = findChild(parent, node.label.buffer(), node.label.offset(), node.label.size());
+			int movcnt = parent.childcnt - pos - 1;
+			if (movcnt != 0) System.arraycopy(parent.children, pos + 1, parent.children, pos, movcnt);
+			parent.children[--parent.childcnt] = null;
+			node = parent;
+		}
+	}
+
+	private Node<V> insertChild(Node<V> parent, int pos, ByteChars label)
+	{
+		if (parent.children == null) {
+			@SuppressWarnings("unchecked")
+			Node<V>[] arr = new Node[CHILDCAP_INCR];
+			parent.children = arr;
+		} else if (parent.childcnt == parent.children.length) {
+			parent.children = java.util.Arrays.copyOf(parent.children, parent.childcnt + Math.max(CHILDCAP_INCR, parent.childcnt >> 1));
+		}
+		int movcnt = parent.childcnt - pos;
+		if (movcnt != 0) System.arraycopy(parent.children, pos, parent.children, pos + 1, movcnt);
+		Node<V> node = new Node<>(label, parent);
+		parent.children[pos] = node;
+		parent.childcnt++;
+		return node;
+	}
+
+	// Binary search on the child labels, which are ordered by length and then by content.
+	// Returns the matching position, else -(insertion point) - 1, as per java.util.Arrays.binarySearch()
+	private static <V> int findChild(Node<V> node, byte[] buf, int off, int len)
+	{
+		int lo = 0;
+		int hi = node.childcnt - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int cmp = compareLabel(node.children[mid].label, buf, off, len);
+			if (cmp < 0) {
+				lo = mid + 1;
+			} else if (cmp > 0) {
+				hi = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(lo + 1);
+	}
+
+	private static int compareLabel(ByteChars label, byte[] buf, int off, int len)
+	{
+		if (label.size() != len) return label.size() - len;
+		final byte[] lbuf = label.buffer();
+		int loff = label.offset();
+		final int lmt = loff + len;
+		while (loff != lmt) {
+			int cmp = lbuf[loff++] - buf[off++];
+			if (cmp != 0) return cmp;
+		}
+		return 0;
+	}
+
+	// returns the physical offset of the label which ends at lmt
+	private static int labelStart(byte[] buf, int off0, int lmt)
+	{
+		int off = lmt;
+		while (off != off0 && buf[off - 1] != DLM) off--;
+		return off;
+	}
+
+	// returns the physical limit of the given name, excluding any trailing dot
+	private static int nameLimit(ByteChars dom)
+	{
+		int lmt = dom.limit();
+		if (dom.size() != 0 && dom.buffer()[lmt - 1] == DLM) lmt--;
+		return lmt;
+	}
+
+	@Override
+	public String toString()
+	{
+		return super.toString()+" with entries="+entrycnt;
+	}
+}
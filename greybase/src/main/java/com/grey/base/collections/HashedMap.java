@@ -46,6 +46,7 @@ public final class HashedMap<K,V>
 	private static final int KVSPAN = 2; //adjacent K-V pair take up 2 slots
 
 	private final float loadfactor;
+	private final HashingStrategy strategy; //null means use the keys' own hashCode() and equals()
 
 	private int threshold;
 	private int hashmask;
@@ -68,17 +69,22 @@ public final class HashedMap<K,V>
 
 	public HashedMap() {this(0);}
 	public HashedMap(int initcap) {this(initcap, 0);}
+	public HashedMap(int initcap, float factor) {this(initcap, factor, null);}
 
 	@Override
 	public boolean isEmpty() {return (entrycnt == 0);}
 	@Override
 	public int size() {return entrycnt;}
 
-	public HashedMap(int initcap, float factor)
+	/**
+	 * The strategy parameter can be null, in which case the keys' own hashCode() and equals() methods are used.
+	 */
+	public HashedMap(int initcap, float factor, HashingStrategy strategy)
 	{
 		if (initcap == 0) initcap = DFLT_CAP;
 		if (factor == 0) factor = DFLT_LOADFACTOR;
 		loadfactor = factor;
+		this.strategy = strategy;
 
 		// find min power-of-2 size that holds initcap entries
 		capacity = 1;
@@ -116,7 +122,7 @@ public final class HashedMap<K,V>
 			int bktsiz = bucketsizes[bktid];
 			for (int idx = 0; idx != bktsiz; idx += KVSPAN) {
 				Object k = bucket[idx];
-				if (key == k || key.equals(k)) return true;
+				if (key == k || keyEquals(key, k)) return true;
 			}
 		}
 		return false;
@@ -140,7 +146,7 @@ public final class HashedMap<K,V>
 			int bktsiz = bucketsizes[bktid];
 			for (int idx = 0; idx != bktsiz; idx += KVSPAN) {
 				Object k = bucket[idx];
-				if (key == k || key.equals(k)) return (V)bucket[idx+1];
+				if (key == k || keyEquals(key, k)) return (V)bucket[idx+1];
 			}
 		}
 		return null;
@@ -173,7 +179,7 @@ public final class HashedMap<K,V>
 			} else {
 				while (slot != bktsiz) {
 					Object k = bucket[slot];
-					if (key == k || key.equals(k)) break; //found the key
+					if (key == k || keyEquals(key, k)) break; //found the key
 					slot += KVSPAN;
 				}
 			}
@@ -220,7 +226,7 @@ public final class HashedMap<K,V>
 		} else {
 			for (int idx = 0; idx != bktsiz; idx += KVSPAN) {
 				Object k = bucket[idx];
-				if (key == k || key.equals(k)) {
+				if (key == k || keyEquals(key, k)) {
 					slot = idx;
 					break;
 				}
@@ -286,7 +292,15 @@ public final class HashedMap<K,V>
 	// less than 32 bits.
 	private int getBucket(Object key)
 	{
-		return objectHash(key) & hashmask;
+		int hash = (strategy == null ? objectHash(key) : strategy.hashCode(key));
+		return hash & hashmask;
+	}
+
+	// the stored key k might be null
+	private boolean keyEquals(Object key, Object k)
+	{
+		if (strategy == null) return key.equals(k);
+		return (k != null && strategy.equals(key, k));
 	}
 
 	// We're going to assume that the object's hash function is uniformly distributed over all bits (True for String and ByteChars).
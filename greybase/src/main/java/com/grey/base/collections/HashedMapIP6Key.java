@@ -0,0 +1,398 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.base.collections;
+
+import com.grey.base.utils.IP6Address;
+
+/**
+ * Same idea as HashedMapIntKey, but with IPv6 addresses as the keys, represented as a pair of primitive longs (the high and low order
+ * 64 bits) in the same way as {@link IP6Address}.
+ * <br>
+ * The keys are stored as raw values, rather than as IP6Address objects, so lookups and insertions of existing keys don't generate any
+ * garbage, and the IP6Address overloads of the methods merely supply the two longs, so the caller's object is never retained and can
+ * be recycled. IPv4 addresses can be stored in their IPv4-mapped form (see {@link IP6Address#setMappedIP4(int)}).
+ * <p>
+ * See HashedMapIntKey.java for additional comments, since the classes are so similiar. The main difference is that each key occupies
+ * two slots in its bucket.
+ * <p>
+ * Beware that this class is single-threaded and non-reentrant.
+ */
+public final class HashedMapIP6Key<V>
+{
+	private static final int DFLT_CAP = 64;
+	private static final float DFLT_LOADFACTOR = 5;
+	private static final int BUCKETCAP_INCR = 4; //growth increment of bucket array, in keys
+
+	final boolean keyset_only; //if True, we're in Set mode, storing keys only
+	private final V dummyvalue;
+	private final float loadfactor;
+
+	private int threshold;
+	private int hashmask;
+
+	int capacity;
+	long[][] keytbl; //first slot in each bucket is the bucket-size (in keys), then come the keys as hi/lo pairs
+	V[][] valtbl; //the values begin in first slot, so the value of the Nth key in the bucket is at index N-1
+	private int entrycnt;
+
+	// recycled operators
+	private KeysIterator<V> keys_iterator;
+	private ValuesIterator<V> values_iterator;
+
+	public HashedMapIP6Key() {this(0);}
+	public HashedMapIP6Key(int initcap) {this(initcap, 0);}
+	public HashedMapIP6Key(int initcap, float factor) {this(initcap, factor, null);}
+
+	public boolean isEmpty() {return (entrycnt == 0);}
+	public int size() {return entrycnt;}
+	public boolean containsKey(IP6Address key) {return containsKey(key.getHigh(), key.getLow());}
+	public V get(IP6Address key) {return get(key.getHigh(), key.getLow());}
+	public V put(IP6Address key, V value) {return put(key.getHigh(), key.getLow(), value);}
+	public V remove(IP6Address key) {return remove(key.getHigh(), key.getLow());}
+
+	HashedMapIP6Key(int initcap, float factor, V dummy)
+	{
+		if (initcap == 0) initcap = DFLT_CAP;
+		if (factor == 0) factor = DFLT_LOADFACTOR;
+		loadfactor = factor;
+		keyset_only = (dummy != null);
+		dummyvalue = dummy;
+
+		capacity = 1;
+		while (capacity < initcap) capacity <<= 1;
+
+		allocateBuckets();
+	}
+
+	public void clear()
+	{
+		for (int idx = keytbl.length - 1; idx != -1; idx--) {
+			if (keytbl[idx] == null) continue;
+			keytbl[idx][0] = 0;
+			if (!keyset_only) java.util.Arrays.fill(valtbl[idx], null);
+		}
+		entrycnt = 0;
+	}
+
+	public boolean containsKey(long hi, long lo)
+	{
+		final long[] bucket = keytbl[getBucket(hi, lo)];
+		if (bucket == null) return false;
+		return (findSlot(bucket, hi, lo) != 0);
+	}
+
+	// not called in keyset mode
+	public V get(long hi, long lo)
+	{
+		final int bktid = getBucket(hi, lo);
+		final long[] bucket = keytbl[bktid];
+		if (bucket == null) return null;
+		final int slot = findSlot(bucket, hi, lo);
+		return (slot == 0 ? null : valtbl[bktid][slot-1]);
+	}
+
+	// We always return null if key doesn't exist, but in keyset mode we return dummyvalue to indicate it was found.
+	public V put(long hi, long lo, V value)
+	{
+		if (entrycnt == threshold) {
+			capacity <<= 1;
+			allocateBuckets();
+		}
+		final int bktid = getBucket(hi, lo);
+		long[] bucket = keytbl[bktid];
+		int slot = (bucket == null ? 0 : findSlot(bucket, hi, lo));
+
+		if (slot == 0) {
+			// adding a new key
+			if (bucket == null || keyIndex((int)bucket[0] + 1) == bucket.length) bucket = growBucket(bktid);
+			slot = (int)++bucket[0];
+			bucket[keyIndex(slot)] = hi;
+			bucket[keyIndex(slot)+1] = lo;
+			entrycnt++;
+			if (!keyset_only) valtbl[bktid][slot-1] = value;
+			return null;
+		}
+		// updating the value of an existing key
+		if (keyset_only) return dummyvalue;
+		final V oldvalue = valtbl[bktid][slot-1];
+		valtbl[bktid][slot-1] = value;
+		return oldvalue;
+	}
+
+	// We always return null if key doesn't exist, but in keyset mode we return dummyvalue to indicate it was found.
+	public V remove(long hi, long lo)
+	{
+		final int bktid = getBucket(hi, lo);
+		final long[] bucket = keytbl[bktid];
+		if (bucket == null) return null;
+		final int slot = findSlot(bucket, hi, lo);
+		if (slot == 0) return null;
+
+		if (keyset_only) {
+			remove(bucket, slot, null);
+			return dummyvalue;
+		}
+		final V[] valbucket = valtbl[bktid];
+		final V oldval = valbucket[slot-1];
+		remove(bucket, slot, valbucket);
+		return oldval;
+	}
+
+	void remove(long[] keybucket, int slot, V[] valbucket)
+	{
+		final int last = (int)keybucket[0];
+		if (slot != last) {
+			// shorten this bucket by swapping final entry into the slot we're now vacating
+			keybucket[keyIndex(slot)] = keybucket[keyIndex(last)];
+			keybucket[keyIndex(slot)+1] = keybucket[keyIndex(last)+1];
+			if (valbucket != null) valbucket[slot-1] = valbucket[last-1];
+		}
+		if (valbucket != null) valbucket[last-1] = null;
+		keybucket[0]--;
+		entrycnt--;
+	}
+
+	// not called in keyset mode
+	public boolean containsValue(Object val)
+	{
+		for (int idx = keytbl.length - 1; idx != -1; idx--) {
+			final long[] bucket = keytbl[idx];
+			if (bucket == null) continue;
+			for (int slot = (int)bucket[0]; slot != 0; slot--) {
+				V v = valtbl[idx][slot-1];
+				if (val == v || (val != null && val.equals(v))) return true;
+			}
+		}
+		return false;
+	}
+
+	public java.util.List<V> getValues()
+	{
+		java.util.List<V> lst = new java.util.ArrayList<V>(size());
+		java.util.Iterator<V> it = valuesIterator();
+		while (it.hasNext()) {
+			V v = it.next();
+			if (!lst.contains(v)) lst.add(v);
+		}
+		return lst;
+	}
+
+	// Returns the 1-based number of the matching key within the bucket, or zero if not found
+	private static int findSlot(long[] bucket, long hi, long lo)
+	{
+		for (int slot = (int)bucket[0]; slot != 0; slot--) {
+			final int idx = keyIndex(slot);
+			if (bucket[idx+1] == lo && bucket[idx] == hi) return slot; //low-order half is more likely to differ, so test that first
+		}
+		return 0;
+	}
+
+	// Returns the index in the bucket array of the first (ie. hi) half of the given 1-based key number
+	private static int keyIndex(int slot)
+	{
+		return (slot << 1) - 1;
+	}
+
+	private int getBucket(long hi, long lo)
+	{
+		return IP6Address.hash(hi, lo) & hashmask;
+	}
+
+	private void allocateBuckets()
+	{
+		threshold = (int)(capacity * loadfactor);
+		hashmask = capacity - 1;
+		entrycnt = 0;
+
+		final long[][] oldkeys = keytbl;
+		final V[][] oldvals = valtbl;
+
+		if (!keyset_only) {
+			@SuppressWarnings("unchecked") final V[][] unchecked = (V[][])new Object[capacity][];
+			valtbl = unchecked;
+		}
+		keytbl = new long[capacity][];
+
+		if (oldkeys != null) {
+			for (int idx = 0; idx != oldkeys.length; idx++) {
+				final long[] bucket = oldkeys[idx];
+				final int cnt = (bucket == null ? 0 : (int)bucket[0]);
+				for (int slot = 1; slot <= cnt; slot++) {
+					V v = (keyset_only ? null : oldvals[idx][slot-1]);
+					put(bucket[keyIndex(slot)], bucket[keyIndex(slot)+1], v);
+				}
+			}
+		}
+	}
+
+	private long[] growBucket(int bktid)
+	{
+		final long[] oldkeys = keytbl[bktid];
+		final V[] oldvals = (keyset_only ? null : valtbl[bktid]);
+		final int oldcap = (oldkeys == null ? 0 : (oldkeys.length - 1) / 2);
+		final int newcap = oldcap + BUCKETCAP_INCR;
+
+		if (!keyset_only) {
+			@SuppressWarnings("unchecked") final V[] unchecked = (V[])new Object[newcap];
+			valtbl[bktid] = unchecked;
+		}
+		keytbl[bktid] = new long[(newcap * 2) + 1]; //allow for the counter-slot
+
+		if (oldkeys != null) {
+			System.arraycopy(oldkeys, 0, keytbl[bktid], 0, oldkeys.length);
+			if (!keyset_only) System.arraycopy(oldvals, 0, valtbl[bktid], 0, oldvals.length);
+		}
+		return keytbl[bktid];
+	}
+
+	public int trimToSize()
+	{
+		int newcap = 1;
+		while (((int)(newcap * loadfactor)) <= entrycnt) newcap <<= 1;
+
+		if (newcap != capacity) {
+			capacity = newcap;
+			allocateBuckets();
+		}
+		return capacity;
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder(size() * 24);
+		sb.append(getClass().getName());
+		if (keyset_only) sb.append("/Set");
+		sb.append('=').append(size()).append(" {");
+		IP6Address addr = new IP6Address();
+		String dlm = "";
+		for (int idx = 0; idx != keytbl.length; idx++) {
+			long[] bucket = keytbl[idx];
+			if (bucket == null) continue;
+			for (int slot = 1; slot <= bucket[0]; slot++) {
+				addr.set(bucket[keyIndex(slot)], bucket[keyIndex(slot)+1]);
+				sb.append(dlm);
+				addr.appendTo(sb);
+				if (!keyset_only) sb.append('=').append(valtbl[idx][slot-1]);
+				dlm = ", ";
+			}
+		}
+		sb.append("}");
+		return sb.toString();
+	}
+
+
+	/*
+	 * These are not standard Map methods (let alone required), but they provide reusable Iterator objects for those callers who
+	 * wish to make use of them.
+	 */
+	public KeysIterator<V> keysIterator() {return new KeysIterator<V>(this);}
+	public java.util.Iterator<V> valuesIterator() {return new ValuesIterator<V>(this);}
+
+	public KeysIterator<V> recycledKeysIterator()
+	{
+		if (keys_iterator == null) {
+			keys_iterator = new KeysIterator<V>(this);
+		} else {
+			keys_iterator.reset();
+		}
+		return keys_iterator;
+	}
+
+	public java.util.Iterator<V> recycledValuesIterator()
+	{
+		if (values_iterator == null) {
+			values_iterator = new ValuesIterator<V>(this);
+		} else {
+			values_iterator.reset();
+		}
+		return values_iterator;
+	}
+
+
+	/*
+	 * ===================================================================================================================
+	 * These inner classes all exist purely to support iterators on this map.
+	 * ===================================================================================================================
+	 */
+
+	/**
+	 * Since the keys are not held as objects, this iterator copies each key into a caller-supplied IP6Address, rather than
+	 * returning it.
+	 */
+	public final static class KeysIterator<V>
+		extends MapIterator<V>
+	{
+		KeysIterator(HashedMapIP6Key<V> m) {super(m);}
+
+		public IP6Address next(IP6Address key)
+		{
+			setNext();
+			final long[] bucket = map.keytbl[bktid];
+			return key.set(bucket[keyIndex(bktslot)], bucket[keyIndex(bktslot)+1]);
+		}
+	}
+
+	private final static class ValuesIterator<V>
+		extends MapIterator<V>
+		implements java.util.Iterator<V>
+	{
+		ValuesIterator(HashedMapIP6Key<V> m) {super(m);}
+		@Override
+		public V next() {setNext(); return map.valtbl[bktid][bktslot-1];}
+	}
+
+	static abstract class MapIterator<V>
+	{
+		protected final HashedMapIP6Key<V> map;
+		protected int bktid;
+		protected int bktslot;
+		private int next_bktid;
+		private int next_bktslot;
+
+		MapIterator(HashedMapIP6Key<V> m) {map=m; reset();}
+
+		final void reset()
+		{
+			next_bktid = 0;
+			next_bktslot = 0; //so that first increment takes us to first slot (index=1)
+			bktid = -1;
+			moveNext();
+		}
+
+		public final boolean hasNext()
+		{
+			return (next_bktid != map.capacity);
+		}
+
+		final void setNext()
+		{
+			if (!hasNext()) throw new java.util.NoSuchElementException();
+			bktid = next_bktid;
+			bktslot = next_bktslot;
+			moveNext();
+		}
+
+		public final void remove()
+		{
+			if (bktid == -1) throw new IllegalStateException();
+			map.remove(map.keytbl[bktid], bktslot, map.keyset_only ? null : map.valtbl[bktid]);
+			if (next_bktid == bktid) next_bktslot = bktslot; //remove() shifted final entry into current slot, so stay where we are
+			bktid = -1;
+		}
+
+		private final void moveNext()
+		{
+			long[] bucket = map.keytbl[next_bktid];
+			if (bucket == null || next_bktslot++ == bucket[0]) {
+				while (++next_bktid != map.capacity) {
+					bucket = map.keytbl[next_bktid];
+					if (bucket != null && bucket[0] != 0) break;
+				}
+				next_bktslot = 1;
+			}
+		}
+	}
+}
@@ -27,6 +27,7 @@ public final class HashedMapIntValue<K>
 
 	final boolean keyset_only; //if True, we're in Set mode, storing keys only
 	private final float loadfactor;
+	private final HashingStrategy strategy; //null means use the keys' own hashCode() and equals()
 
 	private int threshold;
 	private int hashmask;
@@ -43,16 +44,18 @@ public final class HashedMapIntValue<K>
 
 	public HashedMapIntValue() {this(0);}
 	public HashedMapIntValue(int initcap) {this(initcap, 0);}
-	public HashedMapIntValue(int initcap, float factor) {this(initcap, factor, false);}
+	public HashedMapIntValue(int initcap, float factor) {this(initcap, factor, null);}
+	public HashedMapIntValue(int initcap, float factor, HashingStrategy strategy) {this(initcap, factor, strategy, false);}
 
 	public boolean isEmpty() {return (entrycnt == 0);}
 	public int size() {return entrycnt;}
 
-	HashedMapIntValue(int initcap, float factor, boolean set_only)
+	HashedMapIntValue(int initcap, float factor, HashingStrategy strategy, boolean set_only)
 	{
 		if (initcap == 0) initcap = DFLT_CAP;
 		if (factor == 0) factor = DFLT_LOADFACTOR;
 		loadfactor = factor;
+		this.strategy = strategy;
 		keyset_only = set_only;
 
 		// find min power-of-2 size that holds initcap entries
@@ -87,7 +90,7 @@ public final class HashedMapIntValue<K>
             int bktsiz = bucketsizes[bktid];
 			for (int idx = 0; idx != bktsiz; idx++) {
 				K k = bucket[idx];
-				if (key == k || key.equals(k)) return true;
+				if (key == k || keyEquals(key, k)) return true;
 			}
 		}
 		return false;
@@ -109,7 +112,7 @@ public final class HashedMapIntValue<K>
             int bktsiz = bucketsizes[bktid];
 			for (int idx = 0; idx != bktsiz; idx++) {
 				K k = bucket[idx];
-				if (key == k || key.equals(k)) return valtbl[bktid][idx];
+				if (key == k || keyEquals(key, k)) return valtbl[bktid][idx];
 			}
 		}
 		return 0;
@@ -125,7 +128,7 @@ public final class HashedMapIntValue<K>
         int bktsiz = bucketsizes[bktid];
 		for (int idx = 0; idx != bktsiz; idx++) {
 			K k = bucket[idx];
-			if (key == k || key.equals(k)) return k;
+			if (key == k || keyEquals(key, k)) return k;
 		}
 		return null;
 	}
@@ -157,7 +160,7 @@ public final class HashedMapIntValue<K>
 			} else {
 				while (slot != bktsiz) {
 					Object k = bucket[slot];
-					if (key == k || key.equals(k)) break;
+					if (key == k || keyEquals(key, k)) break;
 					slot++;
 				}
 			}
@@ -203,7 +206,7 @@ public final class HashedMapIntValue<K>
 		} else {
 			for (int idx = 0; idx != bktsiz; idx++) {
 				Object k = bucket[idx];
-				if (key == k || key.equals(k)) {
+				if (key == k || keyEquals(key, k)) {
 					slot = idx;
 					break;
 				}
@@ -248,7 +251,15 @@ public final class HashedMapIntValue<K>
 
 	private int getBucket(Object key)
 	{
-		return HashedMap.objectHash(key) & hashmask;
+		int hash = (strategy == null ? HashedMap.objectHash(key) : strategy.hashCode(key));
+		return hash & hashmask;
+	}
+
+	// the stored key k might be null
+	private boolean keyEquals(Object key, Object k)
+	{
+		if (strategy == null) return key.equals(k);
+		return (k != null && strategy.equals(key, k));
 	}
 
 	private void allocateBuckets()
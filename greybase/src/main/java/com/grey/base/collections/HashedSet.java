@@ -26,10 +26,14 @@ public final class HashedSet<E>
 
 	public HashedSet() {this(0);}
 	public HashedSet(int initcap) {this(initcap, 0);}
+	public HashedSet(int initcap, float factor) {this(initcap, factor, null);}
 
-	public HashedSet(int initcap, float factor)
+	/**
+	 * The strategy parameter can be null, in which case the elements' own hashCode() and equals() methods are used.
+	 */
+	public HashedSet(int initcap, float factor, HashingStrategy strategy)
 	{
-		map = new HashedMapIntValue<E>(initcap, factor, true);
+		map = new HashedMapIntValue<E>(initcap, factor, strategy, true);
 	}
 
 	@Override
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.base.collections;
+
+import com.grey.base.utils.IP6Address;
+
+/**
+ * Same idea as HashedSetInt, except with IPv6 addresses as the keys, held as pairs of primitive longs rather than as objects.
+ * See {@link HashedMapIP6Key}.
+ * <p>
+ * Beware that this class is single-threaded and non-reentrant.
+ */
+public final class HashedSetIP6
+{
+	private static final Object DUMMYVALUE = new Object();
+
+	private final HashedMapIP6Key<Object> map;
+	private HashedMapIP6Key.KeysIterator<Object> recycled_iterator;
+
+	public HashedSetIP6() {this(0);}
+	public HashedSetIP6(int initcap) {this(initcap, 0);}
+
+	public int size() {return map.size();}
+	public boolean isEmpty() {return map.isEmpty();}
+	public boolean contains(long hi, long lo) {return map.containsKey(hi, lo);}
+	public boolean contains(IP6Address key) {return map.containsKey(key);}
+	public boolean add(IP6Address key) {return add(key.getHigh(), key.getLow());}
+	public boolean remove(IP6Address key) {return remove(key.getHigh(), key.getLow());}
+	public HashedMapIP6Key.KeysIterator<Object> iterator() {return map.keysIterator();}
+	@Override
+	public String toString() {return map.toString();}
+
+	public HashedSetIP6(int initcap, float factor)
+	{
+		map = new HashedMapIP6Key<Object>(initcap, factor, DUMMYVALUE);
+	}
+
+	public void clear()
+	{
+		map.clear();
+	}
+
+	// Same semantics as java.util.Set.add() - returns true if key didn't already exist
+	public boolean add(long hi, long lo)
+	{
+		return (map.put(hi, lo, DUMMYVALUE) == null);
+	}
+
+	// Same semantics as java.util.Set.remove() - returns true if key did exist
+	public boolean remove(long hi, long lo)
+	{
+		return (map.remove(hi, lo) == DUMMYVALUE);
+	}
+
+	public HashedMapIP6Key.KeysIterator<Object> recycledIterator()
+	{
+		if (recycled_iterator == null) {
+			recycled_iterator = iterator();
+		} else {
+			recycled_iterator.reset();
+		}
+		return recycled_iterator;
+	}
+
+	public int trimToSize()
+	{
+		return map.trimToSize();
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.base.collections;
+
+import com.grey.base.utils.ByteArrayRef;
+import com.grey.base.utils.ByteOps;
+
+/**
+ * Lets {@link HashedMap}, {@link HashedMapIntValue} and {@link HashedSet} apply an alternative notion of key equality to the one
+ * implemented by the keys' own hashCode() and equals() methods.
+ * <br>
+ * The two methods must be consistent with each other, in the sense that keys which are equal must have the same hash.
+ * The keys passed to these methods are never null.
+ */
+public interface HashingStrategy
+{
+	int hashCode(Object key);
+	boolean equals(Object key1, Object key2);
+
+	/**
+	 * Treats ByteArrayRef keys (including ByteChars) which differ only in the case of their ASCII letters as equal, as is
+	 * required for DNS names, email domains and protocol header names.
+	 * <br>
+	 * Other CharSequence keys such as String are treated as sequences of 8-bit chars, so they can be used to look up
+	 * ByteChars keys in a map which employs this strategy. Any other key type falls back to its own hashCode() and equals().
+	 */
+	HashingStrategy ASCII_IGNORECASE = new AsciiIgnoreCase();
+
+	final class AsciiIgnoreCase implements HashingStrategy
+	{
+		AsciiIgnoreCase() {}
+
+		@Override
+		public int hashCode(Object key)
+		{
+			if (key instanceof ByteArrayRef) {
+				ByteArrayRef ref = (ByteArrayRef)key;
+				return ByteOps.hashCodeIgnoreCase(ref.buffer(), ref.offset(), ref.size());
+			}
+			if (key instanceof CharSequence) return ByteOps.hashCodeIgnoreCase((CharSequence)key);
+			return key.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object key1, Object key2)
+		{
+			if (key1 instanceof ByteArrayRef && key2 instanceof ByteArrayRef) {
+				ByteArrayRef ref1 = (ByteArrayRef)key1;
+				ByteArrayRef ref2 = (ByteArrayRef)key2;
+				if (ref1.size() != ref2.size()) return false;
+				return ByteOps.equalsIgnoreCase(ref1.buffer(), ref1.offset(), ref2.buffer(), ref2.offset(), ref1.size());
+			}
+			if (key1 instanceof CharSequence && key2 instanceof CharSequence) {
+				CharSequence cs1 = (CharSequence)key1;
+				CharSequence cs2 = (CharSequence)key2;
+				final int len = cs1.length();
+				if (cs2.length() != len) return false;
+				for (int idx = 0; idx != len; idx++) {
+					long ch1 = cs1.charAt(idx) & 0xFFL;
+					long ch2 = cs2.charAt(idx) & 0xFFL;
+					if (ch1 != ch2 && ByteOps.toLowerCaseASCII(ch1) != ByteOps.toLowerCaseASCII(ch2)) return false;
+				}
+				return true;
+			}
+			return key1.equals(key2);
+		}
+	}
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright 2010-2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.base.collections;
+
+import com.grey.base.utils.IP;
+import com.grey.base.utils.IntValue;
+
+/**
+ * Maps CIDR-style IP prefixes to values, and returns the value associated with the longest prefix that matches a given address.
+ * <br>
+ * Both IPv4 and IPv6 prefixes are supported, with IPv4 addresses represented by the same primitive ints as in the {@link IP} class
+ * and IPv6 addresses represented as a pair of longs (the high and low order 64 bits).
+ * IPv4-mapped IPv6 prefixes (::ffff:a.b.c.d) of length 96 or more are stored as the equivalent IPv4 prefix, and IPv6 lookups of
+ * IPv4-mapped addresses consult the IPv4 prefixes first. This applies whichever put() and remove() methods are used.
+ * <p>
+ * This is implemented as a multibit trie with a stride of 8 bits, using controlled prefix expansion, so an IPv4 lookup visits at
+ * most 4 nodes (and an IPv6 lookup at most 16) and does nothing more than index into arrays at each level.
+ * The get() methods which take primitive addresses or byte arrays do no memory allocation, but get(InetAddress) does for IPv6
+ * addresses, since InetAddress.getAddress() returns a new array on each call.
+ * Prefixes whose length is not a multiple of the stride are expanded into the range of slots they cover at the appropriate level,
+ * and each slot records the length of the prefix which populated it, so that the most specific prefix wins regardless of the order in
+ * which they were added.
+ * <br>
+ * This is optimised for tables which are loaded up front and then queried repeatedly, such as ACLs and routing tables. Adding a prefix
+ * is cheap, but removing one rebuilds the whole trie, since the slots it covered have to revert to whichever shorter prefix covers them.
+ * <p>
+ * Beware that this class is single-threaded and non-reentrant.
+ */
+public final class IPPrefixTable<V>
+{
+	private static final int STRIDE = 8;
+	private static final int FANOUT = 1 << STRIDE;
+	private static final int SLOTMASK = FANOUT - 1;
+	private static final int MAXPFX_IP4 = 32;
+	private static final int MAXPFX_IP6 = 128;
+	private static final int MAPPED_IP4_PFXLEN = MAXPFX_IP6 - MAXPFX_IP4; //length of the ::ffff:0:0/96 prefix
+	private static final long MAPPED_IP4_LO = 0xffffL << 32; //low-order half of the ::ffff:0:0/96 prefix
+
+	private static final class Node
+	{
+		final int[] values = new int[FANOUT]; //1-based index into valuetbl, where zero means no value
+		final byte[] prefixes = new byte[FANOUT]; //length (within this stride) of the prefix which set each slot
+		Node[] children;
+	}
+
+	// The prefixes as originally specified, so that we can rebuild the trie on removals. This is not on the lookup path.
+	private static final class Prefix
+	{
+		final boolean ip6;
+		final long hi;
+		final long lo;
+		final int len;
+		final int validx;
+
+		Prefix(boolean ip6, long hi, long lo, int len, int validx) {
+			this.ip6 = ip6;
+			this.hi = hi;
+			this.lo = lo;
+			this.len = len;
+			this.validx = validx;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int)(hi ^ (hi >>> 32) ^ lo ^ (lo >>> 32)) + len + (ip6 ? 1 : 0);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this) return true;
+			if (!(obj instanceof Prefix)) return false;
+			Prefix p = (Prefix)obj;
+			return (p.ip6 == ip6 && p.hi == hi && p.lo == lo && p.len == len);
+		}
+	}
+
+	private final java.util.HashMap<Prefix, Prefix> prefixes = new java.util.HashMap<>();
+	private final java.util.ArrayList<V> valuetbl = new java.util.ArrayList<>();
+	private Node root4;
+	private Node root6;
+	private int dflt4; //value index of the zero-length IPv4 prefix
+	private int dflt6;
+
+	public int size() {return prefixes.size();}
+	public boolean isEmpty() {return prefixes.isEmpty();}
+
+	public IPPrefixTable()
+	{
+		clear();
+	}
+
+	public void clear()
+	{
+		prefixes.clear();
+		valuetbl.clear();
+		valuetbl.add(null); //so that the valid indices are 1-based
+		resetTrie();
+	}
+
+	/**
+	 * Returns the value of the longest matching IPv4 prefix, or null if there is none.
+	 */
+	public V get(int ip)
+	{
+		Node node = root4;
+		int validx = dflt4;
+		for (int shift = MAXPFX_IP4 - STRIDE; shift >= 0; shift -= STRIDE) {
+			int slot = (ip >>> shift) & SLOTMASK;
+			if (node.values[slot] != 0) validx = node.values[slot];
+			if (node.children == null || (node = node.children[slot]) == null) break;
+		}
+		return valuetbl.get(validx);
+	}
+
+	/**
+	 * Returns the value of the longest matching IPv6 prefix, or null if there is none.
+	 */
+	public V get(long iphi, long iplo)
+	{
+		if (iphi == 0 && (iplo & ~0xffffffffL) == MAPPED_IP4_LO) {
+			// an IPv4 prefix is always longer than any IPv6 prefix which matches a mapped address
+			V val = get((int)iplo);
+			if (val != null) return val;
+		}
+		Node node = root6;
+		int validx = dflt6;
+		for (int lvl = 0; lvl != MAXPFX_IP6 / STRIDE; lvl++) {
+			int slot = slotIP6(iphi, iplo, lvl);
+			if (node.values[slot] != 0) validx = node.values[slot];
+			if (node.children == null || (node = node.children[slot]) == null) break;
+		}
+		return valuetbl.get(validx);
+	}
+
+	public V get(byte[] netaddr, int off, int len)
+	{
+		if (len == IP.IPADDR_OCTETS) return get(IP.net2ip(netaddr, off));
+		if (len != IP.IPV6ADDR_OCTETS) throw new IllegalArgumentException("Invalid IP address length="+len);
+		return get(net2long(netaddr, off), net2long(netaddr, off + 8));
+	}
+
+	/**
+	 * Beware that for IPv6 addresses this allocates a copy of the address bytes, so on busy paths it is better to call
+	 * get(byte[], int, int) with a buffer that is reused, or get(long, long).
+	 */
+	public V get(java.net.InetAddress addr)
+	{
+		if (addr instanceof java.net.Inet4Address) return get(IP.convertIP(addr));
+		byte[] netaddr = addr.getAddress();
+		return get(netaddr, 0, netaddr.length);
+	}
+
+	public V put(int ip, int pfxlen, V value)
+	{
+		if (pfxlen < 0 || pfxlen > MAXPFX_IP4) throw new IllegalArgumentException("Invalid IPv4 prefix length="+pfxlen);
+		ip &= IP.prefixToMask(pfxlen);
+		return put(new Prefix(false, 0, ip & 0xffffffffL, pfxlen, 0), value);
+	}
+
+	public V put(long iphi, long iplo, int pfxlen, V value)
+	{
+		if (pfxlen < 0 || pfxlen > MAXPFX_IP6) throw new IllegalArgumentException("Invalid IPv6 prefix length="+pfxlen);
+		if (isMappedIP4(iphi, iplo, pfxlen)) return put((int)iplo, pfxlen - MAPPED_IP4_PFXLEN, value);
+		iphi &= prefixMask(pfxlen);
+		iplo &= prefixMask(pfxlen - 64);
+		return put(new Prefix(true, iphi, iplo, pfxlen, 0), value);
+	}
+
+	/**
+	 * Adds a prefix in the textual CIDR form, eg. 192.168.0.0/16 or 2001:db8::/32
+	 * If the prefix length is omitted, it defaults to the full length of the address.
+	 */
+	public V put(CharSequence cidr, V value) throws java.net.UnknownHostException
+	{
+		String str = cidr.toString().trim();
+		int pos = str.indexOf('/');
+		String ipstr = (pos == -1 ? str : str.substring(0, pos));
+		boolean ip6 = (ipstr.indexOf(':') != -1);
+		int pfxlen = (ip6 ? MAXPFX_IP6 : MAXPFX_IP4);
+		if (pos != -1) pfxlen = (int)IntValue.parseDecimal(str, pos+1, str.length() - pos - 1);
+		if (!ip6) return put(IP.parseIP(ipstr), pfxlen, value);
+		if (pfxlen < 0 || pfxlen > MAXPFX_IP6) throw new IllegalArgumentException("Invalid IPv6 prefix length="+pfxlen+" - "+str);
+		byte[] netaddr = java.net.InetAddress.getByName(ipstr).getAddress();
+		if (netaddr.length == IP.IPADDR_OCTETS) {
+			// InetAddress converts IPv4-mapped IPv6 addresses to IPv4, but the prefix length still refers to the IPv6 form
+			return put(0, MAPPED_IP4_LO | (IP.net2ip(netaddr, 0) & 0xffffffffL), pfxlen, value);
+		}
+		return put(net2long(netaddr, 0), net2long(netaddr, 8), pfxlen, value);
+	}
+
+	/**
+	 * Bulk-loads a list of prefixes in textual CIDR form, all with the same value.
+	 */
+	public void putAll(java.util.Collection<? extends CharSequence> cidrs, V value) throws java.net.UnknownHostException
+	{
+		java.util.Iterator<? extends CharSequence> it = cidrs.iterator();
+		while (it.hasNext()) {
+			put(it.next(), value);
+		}
+	}
+
+	public V remove(int ip, int pfxlen)
+	{
+		if (pfxlen < 0 || pfxlen > MAXPFX_IP4) throw new IllegalArgumentException("Invalid IPv4 prefix length="+pfxlen);
+		ip &= IP.prefixToMask(pfxlen);
+		return remove(new Prefix(false, 0, ip & 0xffffffffL, pfxlen, 0));
+	}
+
+	public V remove(long iphi, long iplo, int pfxlen)
+	{
+		if (pfxlen < 0 || pfxlen > MAXPFX_IP6) throw new IllegalArgumentException("Invalid IPv6 prefix length="+pfxlen);
+		if (isMappedIP4(iphi, iplo, pfxlen)) return remove((int)iplo, pfxlen - MAPPED_IP4_PFXLEN);
+		iphi &= prefixMask(pfxlen);
+		iplo &= prefixMask(pfxlen - 64);
+		return remove(new Prefix(true, iphi, iplo, pfxlen, 0));
+	}
+
+	// An IPv4-mapped prefix which is long enough to cover the whole ::ffff:0:0/96 prefix is stored as the equivalent IPv4 prefix
+	private static boolean isMappedIP4(long iphi, long iplo, int pfxlen)
+	{
+		return (pfxlen >= MAPPED_IP4_PFXLEN && iphi == 0 && (iplo & ~0xffffffffL) == MAPPED_IP4_LO);
+	}
+
+	private V put(Prefix key, V value)
+	{
+		Prefix pfx = prefixes.get(key);
+		if (pfx != null) {
+			// the trie already references this value slot, so just overwrite it
+			return valuetbl.set(pfx.validx, value);
+		}
+		valuetbl.add(value);
+		pfx = new Prefix(key.ip6, key.hi, key.lo, key.len, valuetbl.size() - 1);
+		prefixes.put(pfx, pfx);
+		insert(pfx);
+		return null;
+	}
+
+	private V remove(Prefix key)
+	{
+		Prefix pfx = prefixes.remove(key);
+		if (pfx == null) return null;
+		V oldval = valuetbl.get(pfx.validx);
+		java.util.ArrayList<V> oldvalues = new java.util.ArrayList<>(valuetbl);
+		java.util.ArrayList<Prefix> survivors = new java.util.ArrayList<>(prefixes.values());
+		prefixes.clear();
+		valuetbl.clear();
+		valuetbl.add(null);
+		resetTrie();
+		for (int idx = 0; idx != survivors.size(); idx++) {
+			Prefix p = survivors.get(idx);
+			put(p, oldvalues.get(p.validx));
+		}
+		return oldval;
+	}
+
+	private void resetTrie()
+	{
+		root4 = new Node();
+		root6 = new Node();
+		dflt4 = 0;
+		dflt6 = 0;
+	}
+
+	private void insert(Prefix pfx)
+	{
+		if (pfx.len == 0) {
+			if (pfx.ip6) {
+				dflt6 = pfx.validx;
+			} else {
+				dflt4 = pfx.validx;
+			}
+			return;
+		}
+		Node node = (pfx.ip6 ? root6 : root4);
+		int lvl = 0;
+		int remlen = pfx.len;
+
+		while (remlen > STRIDE) {
+			int slot = slot(pfx, lvl++);
+			if (node.children == null) node.children = new Node[FANOUT];
+			Node child = node.children[slot];
+			if (child == null) {
+				child = new Node();
+				node.children[slot] = child;
+			}
+			node = child;
+			remlen -= STRIDE;
+		}
+		// expand the remaining bits of the prefix into the range of slots they cover
+		int slot0 = slot(pfx, lvl) & ~((1 << (STRIDE - remlen)) - 1);
+		int lmt = slot0 + (1 << (STRIDE - remlen));
+		for (int slot = slot0; slot != lmt; slot++) {
+			if (node.prefixes[slot] <= remlen) {
+				node.values[slot] = pfx.validx;
+				node.prefixes[slot] = (byte)remlen;
+			}
+		}
+	}
+
+	private static int slot(Prefix pfx, int lvl)
+	{
+		if (pfx.ip6) return slotIP6(pfx.hi, pfx.lo, lvl);
+		return (int)(pfx.lo >>> (MAXPFX_IP4 - STRIDE - (lvl * STRIDE))) & SLOTMASK;
+	}
+
+	private static int slotIP6(long iphi, long iplo, int lvl)
+	{
+		if (lvl < 8) return (int)(iphi >>> (56 - (lvl * STRIDE))) & SLOTMASK;
+		return (int)(iplo >>> (56 - ((lvl - 8) * STRIDE))) & SLOTMASK;
+	}
+
+	// returns mask for a 64-bit half of an IPv6 address, where pfxlen can be out of range to represent the entire half
+	private static long prefixMask(int pfxlen)
+	{
+		if (pfxlen <= 0) return 0;
+		if (pfxlen >= 64) return -1L;
+		return ~(-1L >>> pfxlen);
+	}
+
+	private static long net2long(byte[] netaddr, int off)
+	{
+		long val = 0;
+		for (int idx = 0; idx != 8; idx++) {
+			val = (val << 8) | (netaddr[off + idx] & 0xff);
+		}
+		return val;
+	}
+
+	@Override
+	public String toString()
+	{
+		return super.toString()+" with prefixes="+prefixes.size();
+	}
+}
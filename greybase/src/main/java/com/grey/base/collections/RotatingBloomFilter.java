@@ -0,0 +1,102 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.base.collections;
+
+import com.grey.base.utils.ByteArrayRef;
+import com.grey.base.utils.ByteOps;
+
+/**
+ * A Bloom filter which forgets keys that have not been seen within a sliding time window, so that it remembers recent activity
+ * (eg. abusive clients or recent negative lookups) without saturating.
+ * <br>
+ * This maintains two {@link BloomFilter} generations, and new keys are added to the current one while queries check both.
+ * Each rotation discards the older generation and starts a new empty one, so a key is remembered for between one and two rotation
+ * intervals after it was last added.
+ * <br>
+ * Rotation can be driven explicitly via rotate(), or the caller can supply the current time to rotateIfDue(), which is cheap enough
+ * to call on every operation.
+ * <p>
+ * This class is single-threaded by default, but if constructed in MT mode it can be safely updated and queried by multiple threads
+ * at once. Keys which are added while a rotation is in progress might be lost from the current generation.
+ */
+public final class RotatingBloomFilter
+{
+	private final long interval;
+	private volatile BloomFilter current;
+	private volatile BloomFilter previous;
+	private volatile long rotationTime;
+
+	public boolean add(ByteArrayRef key) {return addHash(ByteOps.hash64(key.buffer(), key.offset(), key.size()));}
+	public boolean add(int key) {return addHash(ByteOps.hash64(key));}
+	public boolean add(long key) {return addHash(ByteOps.hash64(key));}
+	public boolean mightContain(ByteArrayRef key) {return containsHash(ByteOps.hash64(key.buffer(), key.offset(), key.size()));}
+	public boolean mightContain(int key) {return containsHash(ByteOps.hash64(key));}
+	public boolean mightContain(long key) {return containsHash(ByteOps.hash64(key));}
+
+	public long getInterval() {return interval;}
+
+	/**
+	 * The expected number of entries is per generation, and the interval is in milliseconds (can be zero if the caller only
+	 * intends to call rotate() explicitly).
+	 */
+	public RotatingBloomFilter(int expectedEntries, double fpp, long interval, boolean mt)
+	{
+		this.interval = interval;
+		current = new BloomFilter(expectedEntries, fpp, mt);
+		previous = new BloomFilter(expectedEntries, fpp, mt);
+	}
+
+	/**
+	 * Returns true if the key was definitely not present before, in either generation.
+	 */
+	public boolean addHash(long hash)
+	{
+		boolean added = current.addHash(hash);
+		return (added && !previous.containsHash(hash));
+	}
+
+	public boolean containsHash(long hash)
+	{
+		return (current.containsHash(hash) || previous.containsHash(hash));
+	}
+
+	public void rotate()
+	{
+		synchronized (this) {
+			BloomFilter oldest = previous;
+			oldest.clear();
+			previous = current;
+			current = oldest;
+		}
+	}
+
+	/**
+	 * Rotates the generations if the current one has been active for longer than the rotation interval, and returns true if so.
+	 */
+	public boolean rotateIfDue(long systime)
+	{
+		if (interval == 0 || systime - rotationTime < interval) return false;
+		synchronized (this) {
+			if (systime - rotationTime < interval) return false;
+			rotationTime = systime;
+			rotate();
+		}
+		return true;
+	}
+
+	public void clear()
+	{
+		synchronized (this) {
+			current.clear();
+			previous.clear();
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return super.toString()+" with interval="+interval+" - "+current;
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.base.collections;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.grey.base.utils.ByteArrayRef;
+import com.grey.base.utils.ByteOps;
+
+/**
+ * A Bloom filter which grows to accommodate an unknown number of keys while maintaining a bounded false-positive rate, by adding
+ * successively larger {@link BloomFilter} stages with successively tighter false-positive rates, as each one fills up.
+ * <br>
+ * New keys are added to the latest stage, and a query has to check each stage in turn, so lookups get slower as the stages
+ * accumulate, but growth is geometric so the number of stages remains small. The maximum number of stages bounds the memory
+ * usage, and once it is reached the final stage simply absorbs all further keys, at the cost of a rising false-positive rate.
+ * <p>
+ * This class is single-threaded by default, but if constructed in MT mode it can be safely updated and queried by multiple threads
+ * at once. Adding a stage is synchronized, but is a rare event.
+ */
+public final class ScalableBloomFilter
+{
+	private static final int GROWTH_FACTOR = 2;
+	private static final double TIGHTENING_RATIO = 0.8;
+
+	private final double fpp0;
+	private final int maxStages;
+	private final boolean mt;
+	private volatile BloomFilter[] stages;
+	private final AtomicInteger stageEntries = new AtomicInteger(); //number of new keys added to current stage
+
+	public int getStageCount() {return stages.length;}
+
+	public boolean add(ByteArrayRef key) {return addHash(ByteOps.hash64(key.buffer(), key.offset(), key.size()));}
+	public boolean add(int key) {return addHash(ByteOps.hash64(key));}
+	public boolean add(long key) {return addHash(ByteOps.hash64(key));}
+	public boolean mightContain(ByteArrayRef key) {return containsHash(ByteOps.hash64(key.buffer(), key.offset(), key.size()));}
+	public boolean mightContain(int key) {return containsHash(ByteOps.hash64(key));}
+	public boolean mightContain(long key) {return containsHash(ByteOps.hash64(key));}
+
+	public ScalableBloomFilter(int initialEntries, double fpp, int maxStages, boolean mt)
+	{
+		if (maxStages <= 0) throw new IllegalArgumentException("Invalid Bloom filter params - max-stages="+maxStages);
+		fpp0 = fpp * (1 - TIGHTENING_RATIO); //so that the compound false-positive rate of all the stages converges on fpp
+		this.maxStages = maxStages;
+		this.mt = mt;
+		stages = new BloomFilter[]{new BloomFilter(initialEntries, fpp0, mt)};
+	}
+
+	/**
+	 * Returns true if the key was definitely not present before.
+	 */
+	public boolean addHash(long hash)
+	{
+		BloomFilter[] arr = stages;
+		for (int idx = 0; idx != arr.length - 1; idx++) {
+			if (arr[idx].containsHash(hash)) return false;
+		}
+		BloomFilter current = arr[arr.length - 1];
+		if (!current.addHash(hash)) return false;
+		if (stageEntries.incrementAndGet() >= current.getCapacity() && arr.length != maxStages) grow(arr);
+		return true;
+	}
+
+	public boolean containsHash(long hash)
+	{
+		BloomFilter[] arr = stages;
+		for (int idx = arr.length - 1; idx != -1; idx--) {
+			if (arr[idx].containsHash(hash)) return true;
+		}
+		return false;
+	}
+
+	public void clear()
+	{
+		synchronized (this) {
+			BloomFilter first = stages[0];
+			first.clear();
+			stages = new BloomFilter[]{first};
+			stageEntries.set(0);
+		}
+	}
+
+	private void grow(BloomFilter[] arr)
+	{
+		synchronized (this) {
+			if (stages != arr) return; //another thread got there first
+			BloomFilter last = arr[arr.length - 1];
+			double fpp = fpp0 * Math.pow(TIGHTENING_RATIO, arr.length);
+			BloomFilter stage = new BloomFilter(last.getCapacity() * GROWTH_FACTOR, fpp, mt);
+			BloomFilter[] newstages = java.util.Arrays.copyOf(arr, arr.length + 1);
+			newstages[arr.length] = stage;
+			stageEntries.set(0);
+			stages = newstages;
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return super.toString()+" with stages="+stages.length+"/"+maxStages+(mt ? "/MT" : "");
+	}
+}
@@ -0,0 +1,386 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.base.config;
+
+/**
+ * Immutable compiled form of a config DOM, which supports direct lookup of elements and attributes.
+ * <br>
+ * XmlConfig compiles each document into a tree of these nodes when it is loaded, and evaluates the simple location paths
+ * which make up the vast majority of config lookups against this tree, rather than against the DOM via javax.xml.xpath.
+ * The supported paths consist of child-axis element steps, optionally terminated by an attribute step, and each element
+ * step may have predicates of the form [N], [@attr='value'] or {@link XmlConfig#XPATH_ENABLED}.
+ * Eg. "a/b/@c", "./@c", ".", "/root/a[2]", "a[@name='x']" + XPATH_ENABLED
+ * <br>
+ * Any other expression is reported as unsupported by {@link #compilePath(String)}, so that the caller can fall back to XPath.
+ * <p>
+ * Once compiled, this tree is never modified, so it can be safely read by multiple threads.
+ */
+final class ConfigNode
+{
+	private static final ConfigNode[] NOKIDS = new ConfigNode[0];
+	private static final String[] NOATTRS = new String[0];
+	private static final String PREDICATE_ENABLED = XmlConfig.XPATH_ENABLED.substring(1, XmlConfig.XPATH_ENABLED.length() - 1);
+	private static final int MAXPATHS = 4096; //limit on size of path cache, as a safeguard against dynamically generated paths
+	private static final Object UNSUPPORTED = new Object();
+	private static final java.util.concurrent.ConcurrentHashMap<String, Object> compiledPaths = new java.util.concurrent.ConcurrentHashMap<>();
+
+	final org.w3c.dom.Node domnode;
+	private final String name;
+	private final String text; //the text content, if this is an element with no child elements, else null
+	private final String[] attrs; //attribute names and values, in alternating slots
+	private final ConfigNode[] children;
+	private final ConfigNode root;
+	private final java.util.IdentityHashMap<org.w3c.dom.Node, ConfigNode> index; //maps DOM nodes to their compiled form - only on root
+
+	/**
+	 * Compiles the document into an immutable tree and returns its root node, which represents the document itself.
+	 */
+	public static ConfigNode compile(org.w3c.dom.Document doc)
+	{
+		return new ConfigNode(doc, null);
+	}
+
+	private ConfigNode(org.w3c.dom.Node node, ConfigNode rootnode)
+	{
+		domnode = node;
+		name = node.getNodeName();
+		if (rootnode == null) {
+			rootnode = this;
+			index = new java.util.IdentityHashMap<>();
+		} else {
+			index = null;
+		}
+		root = rootnode;
+		root.index.put(node, this);
+
+		org.w3c.dom.NamedNodeMap attrmap = node.getAttributes();
+		if (attrmap == null || attrmap.getLength() == 0) {
+			attrs = NOATTRS;
+		} else {
+			attrs = new String[attrmap.getLength() * 2];
+			for (int idx = 0; idx != attrmap.getLength(); idx++) {
+				org.w3c.dom.Node attr = attrmap.item(idx);
+				attrs[idx * 2] = attr.getNodeName();
+				attrs[idx * 2 + 1] = attr.getNodeValue();
+			}
+		}
+
+		java.util.ArrayList<ConfigNode> lst = null;
+		StringBuilder sb = null;
+		boolean plaintext = true; //false if the text content includes anything other than Text and CDATA nodes
+		for (org.w3c.dom.Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+			short typ = child.getNodeType();
+			if (typ == org.w3c.dom.Node.ELEMENT_NODE) {
+				if (lst == null) lst = new java.util.ArrayList<>();
+				lst.add(new ConfigNode(child, root));
+			} else if (typ == org.w3c.dom.Node.TEXT_NODE || typ == org.w3c.dom.Node.CDATA_SECTION_NODE) {
+				if (sb == null) sb = new StringBuilder();
+				sb.append(child.getNodeValue());
+			} else if (typ != org.w3c.dom.Node.COMMENT_NODE && typ != org.w3c.dom.Node.PROCESSING_INSTRUCTION_NODE) {
+				plaintext = false; //eg. an unexpanded entity reference
+			}
+		}
+		children = (lst == null ? NOKIDS : lst.toArray(new ConfigNode[lst.size()]));
+
+		if (node.getNodeType() == org.w3c.dom.Node.ELEMENT_NODE && children.length == 0 && plaintext) {
+			text = (sb == null ? "" : sb.toString());
+		} else {
+			text = null;
+		}
+	}
+
+	/**
+	 * Returns the compiled form of the given DOM node, which must belong to the same document as this node.
+	 * Returns null for non-element nodes such as attributes.
+	 */
+	public ConfigNode lookup(org.w3c.dom.Node node)
+	{
+		return root.index.get(node);
+	}
+
+	/**
+	 * Equivalent to the DOM getTextContent() method.
+	 */
+	public String getText()
+	{
+		if (text != null) return text;
+		return domnode.getTextContent();
+	}
+
+	public String getAttribute(String attrname)
+	{
+		for (int idx = 0; idx < attrs.length; idx += 2) {
+			if (attrs[idx].equals(attrname)) return attrs[idx + 1];
+		}
+		return null;
+	}
+
+	/**
+	 * Returns null if the given XPath expression is not supported by this class.
+	 */
+	public static Path compilePath(String xpath)
+	{
+		Object obj = compiledPaths.get(xpath);
+		if (obj == null) {
+			obj = Path.parse(xpath);
+			if (obj == null) obj = UNSUPPORTED;
+			if (compiledPaths.size() < MAXPATHS) compiledPaths.put(xpath, obj);
+		}
+		return (obj == UNSUPPORTED ? null : (Path)obj);
+	}
+
+	/**
+	 * Returns the text of the first node selected by this path (which may be an attribute), with this node as the context node.
+	 * Returns null if the path doesn't match anything.
+	 */
+	public String selectValue(Path path)
+	{
+		ConfigNode ctx = (path.absolute ? root : this);
+		ConfigNode node = ctx.findFirst(path, 0);
+		if (node == null) return null;
+		return (path.attr == null ? node.getText() : node.getAttribute(path.attr));
+	}
+
+	/**
+	 * Returns the first element selected by this path, which must not be an attribute path. Returns null if there are no matches.
+	 */
+	public ConfigNode selectNode(Path path)
+	{
+		ConfigNode ctx = (path.absolute ? root : this);
+		return ctx.findFirst(path, 0);
+	}
+
+	/**
+	 * Appends all the elements selected by this path to the given list, in document order.
+	 */
+	public void selectNodes(Path path, java.util.List<ConfigNode> results)
+	{
+		ConfigNode ctx = (path.absolute ? root : this);
+		ctx.findAll(path, 0, results);
+	}
+
+	// A depth-first search of the matching children yields the results in document order.
+	// If the path ends in an attribute, then this returns the first selected element that has that attribute.
+	private ConfigNode findFirst(Path path, int stepnum)
+	{
+		if (stepnum == path.steps.length) {
+			if (path.attr != null && getAttribute(path.attr) == null) return null;
+			return this;
+		}
+		Step step = path.steps[stepnum];
+		int pos = 0;
+		for (int idx = 0; idx != children.length; idx++) {
+			ConfigNode child = children[idx];
+			if (!step.matches(child)) continue;
+			pos++;
+			if (step.position != 0 && pos != step.position) continue;
+			ConfigNode node = child.findFirst(path, stepnum + 1);
+			if (node != null) return node;
+			if (step.position != 0) break;
+		}
+		return null;
+	}
+
+	private void findAll(Path path, int stepnum, java.util.List<ConfigNode> results)
+	{
+		if (stepnum == path.steps.length) {
+			results.add(this);
+			return;
+		}
+		Step step = path.steps[stepnum];
+		int pos = 0;
+		for (int idx = 0; idx != children.length; idx++) {
+			ConfigNode child = children[idx];
+			if (!step.matches(child)) continue;
+			pos++;
+			if (step.position != 0 && pos != step.position) continue;
+			child.findAll(path, stepnum + 1, results);
+			if (step.position != 0) break;
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return super.toString()+" with name="+name+", children="+children.length+", attrs="+(attrs.length/2);
+	}
+
+
+	static final class Path
+	{
+		final Step[] steps;
+		final String attr; //non-null if the path ends in an attribute step
+		final boolean absolute;
+
+		private Path(Step[] steps, String attr, boolean absolute) {
+			this.steps = steps;
+			this.attr = attr;
+			this.absolute = absolute;
+		}
+
+		static Path parse(String xpath)
+		{
+			int off = 0;
+			int len = xpath.length();
+			boolean absolute = false;
+			if (len == 0) return null;
+			if (xpath.charAt(0) == '/') {
+				if (len == 1 || xpath.charAt(1) == '/') return null; //we don't support descendant axis
+				absolute = true;
+				off = 1;
+			}
+			java.util.ArrayList<Step> steps = new java.util.ArrayList<>();
+			String attr = null;
+
+			while (off < len) {
+				if (attr != null) return null; //attribute must be the final step
+				int lmt = endOfStep(xpath, off);
+				if (lmt == -1 || lmt == off) return null;
+				if (xpath.charAt(off) == '@') {
+					attr = xpath.substring(off + 1, lmt);
+					if (!isName(attr)) return null;
+				} else if (lmt - off == 1 && xpath.charAt(off) == '.') {
+					//self step - no-op
+				} else {
+					Step step = Step.parse(xpath, off, lmt);
+					if (step == null) return null;
+					steps.add(step);
+				}
+				off = lmt + 1;
+				if (lmt == len - 1) return null; //trailing slash
+			}
+			return new Path(steps.toArray(new Step[steps.size()]), attr, absolute);
+		}
+
+		// returns the offset of the slash terminating the current step (or the end of the expression if this is the final
+		// step), taking care to skip any slashes within predicates
+		private static int endOfStep(String xpath, int off)
+		{
+			int depth = 0;
+			char quote = 0;
+			for (int idx = off; idx != xpath.length(); idx++) {
+				char ch = xpath.charAt(idx);
+				if (quote != 0) {
+					if (ch == quote) quote = 0;
+				} else if (ch == '\'' || ch == '"') {
+					quote = ch;
+				} else if (ch == '[') {
+					depth++;
+				} else if (ch == ']') {
+					if (--depth < 0) return -1;
+				} else if (ch == '/' && depth == 0) {
+					return idx;
+				}
+			}
+			return (depth == 0 && quote == 0 ? xpath.length() : -1);
+		}
+	}
+
+
+	static final class Step
+	{
+		final String name;
+		final int position; //zero means not specified
+		final String attrname; //non-null if this step requires an attribute to have a given value
+		final String attrval;
+		final boolean enabledOnly;
+
+		private Step(String name, int position, String attrname, String attrval, boolean enabledOnly) {
+			this.name = name;
+			this.position = position;
+			this.attrname = attrname;
+			this.attrval = attrval;
+			this.enabledOnly = enabledOnly;
+		}
+
+		boolean matches(ConfigNode node)
+		{
+			if (!name.equals(node.name)) return false;
+			if (attrname != null && !attrval.equals(node.getAttribute(attrname))) return false;
+			if (enabledOnly) {
+				String val = node.getAttribute("enabled");
+				if (val != null && !val.equals("Y")) return false;
+			}
+			return true;
+		}
+
+		// The predicates are evaluated in order, so a positional predicate is only supported as the final one, as otherwise
+		// it would change the context for subsequent ones.
+		static Step parse(String xpath, int off, int lmt)
+		{
+			int pos = xpath.indexOf('[', off);
+			if (pos == -1 || pos > lmt) pos = lmt;
+			String name = xpath.substring(off, pos);
+			if (!isName(name)) return null;
+			int position = 0;
+			String attrname = null;
+			String attrval = null;
+			boolean enabledOnly = false;
+
+			while (pos != lmt) {
+				if (xpath.charAt(pos) != '[' || position != 0) return null;
+				int end = endOfPredicate(xpath, pos + 1, lmt);
+				if (end == -1) return null;
+				String pred = xpath.substring(pos + 1, end);
+				if (pred.equals(PREDICATE_ENABLED)) {
+					if (enabledOnly) return null;
+					enabledOnly = true;
+				} else if (pred.charAt(0) == '@') {
+					if (attrname != null) return null;
+					int eq = pred.indexOf('=');
+					if (eq == -1 || eq == pred.length() - 1) return null;
+					attrname = pred.substring(1, eq);
+					char quote = pred.charAt(eq + 1);
+					if (!isName(attrname) || (quote != '\'' && quote != '"')) return null;
+					if (pred.length() < eq + 3 || pred.charAt(pred.length() - 1) != quote) return null;
+					attrval = pred.substring(eq + 2, pred.length() - 1);
+					if (attrval.indexOf(quote) != -1) return null;
+				} else {
+					for (int idx = 0; idx != pred.length(); idx++) {
+						if (!Character.isDigit(pred.charAt(idx))) return null;
+					}
+					if (pred.length() > 9) return null;
+					position = Integer.parseInt(pred);
+					if (position == 0) return null; //XPath positions start at 1, so leave it to XPath to match nothing
+				}
+				pos = end + 1;
+			}
+			return new Step(name, position, attrname, attrval, enabledOnly);
+		}
+
+		// returns the offset of the closing bracket
+		private static int endOfPredicate(String xpath, int off, int lmt)
+		{
+			if (off == lmt) return -1;
+			char quote = 0;
+			for (int idx = off; idx != lmt; idx++) {
+				char ch = xpath.charAt(idx);
+				if (quote != 0) {
+					if (ch == quote) quote = 0;
+				} else if (ch == '\'' || ch == '"') {
+					quote = ch;
+				} else if (ch == '[') {
+					return -1; //nested predicates are not supported
+				} else if (ch == ']') {
+					return (idx == off ? -1 : idx);
+				}
+			}
+			return -1;
+		}
+	}
+
+	// We don't support namespace prefixes or wildcards, so this is stricter than an XML name
+	private static boolean isName(String str)
+	{
+		if (str.isEmpty()) return false;
+		char ch = str.charAt(0);
+		if (!Character.isLetter(ch) && ch != '_') return false;
+		for (int idx = 1; idx != str.length(); idx++) {
+			ch = str.charAt(idx);
+			if (!Character.isLetterOrDigit(ch) && ch != '_' && ch != '-' && ch != '.') return false;
+		}
+		return true;
+	}
+}
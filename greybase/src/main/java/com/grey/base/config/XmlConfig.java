@@ -13,6 +13,11 @@ import com.grey.base.utils.XML;
  * map all exceptions to ConfigException
  * Note that we can retrieve attributes and values at the top-level node of an XmlConfig element using XPath dot notation
  * Eg. "./@attrname" or "." for Text
+ * <br>
+ * Each document is compiled into an immutable tree of {@link ConfigNode} objects when it is loaded, and lookups are
+ * evaluated directly against that, falling back to full XPath evaluation against the DOM only for expressions which are
+ * beyond the simple location paths it supports. The static counters in this class record the cost of loading configs and
+ * how many lookups required the XPath fallback.
  */
 public class XmlConfig
 {
@@ -23,42 +28,72 @@ public class XmlConfig
 	private static final String SECT_SEP = "::";
 	private static final String ELEM_SEP = "##";
 
+	private static final java.util.concurrent.atomic.AtomicLong parseNanos = new java.util.concurrent.atomic.AtomicLong();
+	private static final java.util.concurrent.atomic.AtomicLong compileNanos = new java.util.concurrent.atomic.AtomicLong();
+	private static final java.util.concurrent.atomic.AtomicLong compiledLookups = new java.util.concurrent.atomic.AtomicLong();
+	private static final java.util.concurrent.atomic.AtomicLong xpathLookups = new java.util.concurrent.atomic.AtomicLong();
+	private static final java.util.concurrent.atomic.AtomicLong xpathNanos = new java.util.concurrent.atomic.AtomicLong();
+
 	public static final XmlConfig NULLCFG = new XmlConfig();  // exists() returns False
 	public static final XmlConfig BLANKCFG = makeSection("<x/>", XPATH_SEP+"x");  // exists() returns True
 
 	private final javax.xml.xpath.XPath xpathproc;
 	private org.w3c.dom.Node cfgsect;
+	private ConfigNode cfgnode; //compiled form of cfgsect
 	private XmlConfig cfgDefaults;
 	private String label;
 
 	public boolean exists() {return (cfgsect != null);}
 
+	// These counters are cumulative across all configs, and the times are in nanoseconds
+	public static long getParseTime() {return parseNanos.get();}
+	public static long getCompileTime() {return compileNanos.get();}
+	public static long getCompiledLookups() {return compiledLookups.get();}
+	public static long getXPathLookups() {return xpathLookups.get();}
+	public static long getXPathTime() {return xpathNanos.get();}
+
+	public static String getStats()
+	{
+		return "parse="+(getParseTime()/1000)+"us, compile="+(getCompileTime()/1000)+"us"
+				+" - lookups="+getCompiledLookups()+", xpath-lookups="+getXPathLookups()+"/"+(getXPathTime()/1000)+"us";
+	}
+
 	public static XmlConfig getSection(CharSequence pthnam, String node_xpath)
 	{
 		if (pthnam == null || pthnam.length() == 0) return XmlConfig.NULLCFG;
 		org.w3c.dom.Document xmldoc = null;
+		long time1 = System.nanoTime();
 		try {
 			xmldoc = com.grey.base.utils.XML.getDOM(pthnam);
 		} catch (Exception ex) {
 			throw new XmlConfigException("Failed to parse DOM from config-file="+pthnam, ex);
 		}
+		long time2 = System.nanoTime();
+		parseNanos.addAndGet(time2 - time1);
+		if (trace_stdout) System.out.println("Config file="+pthnam+" parsed in time="+((time2 - time1)/1000)+"us");
 		return getSection(xmldoc, node_xpath);
 	}
 
 	private static XmlConfig getSection(org.w3c.dom.Document xmldoc, String node_xpath)
 	{
+		long time1 = System.nanoTime();
+		ConfigNode docnode = ConfigNode.compile(xmldoc);
+		long time2 = System.nanoTime();
+		compileNanos.addAndGet(time2 - time1);
 		javax.xml.xpath.XPath xpathproc = com.grey.base.utils.XML.getXpathProcessor();
-		return new XmlConfig(xpathproc, xmldoc, node_xpath);
+		return new XmlConfig(xpathproc, xmldoc, docnode, node_xpath);
 	}
 
 	public static XmlConfig makeSection(CharSequence xmltxt, String node_xpath)
 	{
 		org.w3c.dom.Document xmldoc = null;
+		long time1 = System.nanoTime();
 		try {
 			xmldoc = com.grey.base.utils.XML.makeDOM(xmltxt);
 		} catch (Exception ex) {
 			throw new XmlConfigException("Failed to build DOM for config-section ["+xmltxt+"]", ex);
 		}
+		parseNanos.addAndGet(System.nanoTime() - time1);
 		return getSection(xmldoc, node_xpath);
 	}
 
@@ -67,7 +102,7 @@ public class XmlConfig
 	{
 		xpathproc = cfg.xpathproc;
 		label = cfg.label;
-		setup(cfg.cfgsect, node_xpath);
+		setup(cfg.cfgsect, cfg.cfgnode, node_xpath);
 	}
 
 	// NB: node_xpath is the associated XPath of 'node', but 'node' has already been looked up, so node_xpath is merely used to annotate the
@@ -77,34 +112,54 @@ public class XmlConfig
 		xpathproc = cfg.xpathproc;
 		label = cfg.label;
 		cfgsect = node;
-		setup(null, node_xpath);
+		cfgnode = (cfg.cfgnode == null ? null : cfg.cfgnode.lookup(node));
+		setup(null, null, node_xpath);
+	}
+
+	private XmlConfig(XmlConfig cfg, ConfigNode node, String node_xpath)
+	{
+		xpathproc = cfg.xpathproc;
+		label = cfg.label;
+		cfgsect = node.domnode;
+		cfgnode = node;
+		setup(null, null, node_xpath);
 	}
 
 	// We could make sure that parentNode is of type Document or Node but we gain nothing by that compared to waiting for JAXP do the rejection,
 	// and doing our own pre-vetting might produce false positives.
-	private XmlConfig(javax.xml.xpath.XPath xpathproc_p, Object parentNode, String node_xpath)
+	private XmlConfig(javax.xml.xpath.XPath xpathproc_p, Object parentNode, ConfigNode parentCompiled, String node_xpath)
 	{
 		xpathproc = xpathproc_p;
-		setup(parentNode, node_xpath);
+		setup(parentNode, parentCompiled, node_xpath);
 	}
 
 	// Only used for NULLCFG
 	private XmlConfig()
 	{
 		xpathproc = com.grey.base.utils.XML.getXpathProcessor();
-		setup(null, "");
+		setup(null, null, "");
 	}
 
 	// Null parentNode means cfgsect has already been looked up (or else not required)
-	private void setup(Object parentNode, String node_xpath)
+	private void setup(Object parentNode, ConfigNode parentCompiled, String node_xpath)
 	{
 		if (parentNode != null) {
-			// The evaluate() method returns null if the node specified by the XPath expression does not exist (which is
-			// exactly what we want) and only throws if the Xpath syntax is valid or some other irrecoverable bug in our code/
-			try {
-				cfgsect = (org.w3c.dom.Node)xpathproc.evaluate(node_xpath, parentNode, javax.xml.xpath.XPathConstants.NODE);
-			} catch (Exception ex) {
-				throw new XmlConfigException("XML-Config: evaluate() failed on XPath="+node_xpath, ex);
+			ConfigNode.Path path = (parentCompiled == null ? null : ConfigNode.compilePath(node_xpath));
+			if (path != null && path.attr == null) {
+				compiledLookups.incrementAndGet();
+				cfgnode = parentCompiled.selectNode(path);
+				cfgsect = (cfgnode == null ? null : cfgnode.domnode);
+			} else {
+				// The evaluate() method returns null if the node specified by the XPath expression does not exist (which is
+				// exactly what we want) and only throws if the Xpath syntax is valid or some other irrecoverable bug in our code/
+				long time1 = System.nanoTime();
+				try {
+					cfgsect = (org.w3c.dom.Node)xpathproc.evaluate(node_xpath, parentNode, javax.xml.xpath.XPathConstants.NODE);
+				} catch (Exception ex) {
+					throw new XmlConfigException("XML-Config: evaluate() failed on XPath="+node_xpath, ex);
+				}
+				recordXPath(time1);
+				cfgnode = (cfgsect == null || parentCompiled == null ? null : parentCompiled.lookup(cfgsect));
 			}
 		}
 
@@ -129,13 +184,30 @@ public class XmlConfig
 
 	public XmlConfig[] getSections(String xpath)
 	{
+		ConfigNode.Path path = (cfgnode == null ? null : ConfigNode.compilePath(xpath));
+		if (path != null && path.attr == null) {
+			compiledLookups.incrementAndGet();
+			java.util.ArrayList<ConfigNode> nodes = new java.util.ArrayList<>();
+			cfgnode.selectNodes(path, nodes);
+			if (nodes.size() == 0) {
+				if (cfgDefaults != null) return cfgDefaults.getSections(xpath);
+				return null;
+			}
+			XmlConfig[] sects = new  XmlConfig[nodes.size()];
+			for (int idx = 0; idx != sects.length; idx++) {
+				sects[idx] = new XmlConfig(this, nodes.get(idx), xpath+"["+idx+"]");
+			}
+			return sects;
+		}
 		org.w3c.dom.NodeList nodes = null;
 		if (cfgsect != null) {
+			long time1 = System.nanoTime();
 			try {
 				nodes = (org.w3c.dom.NodeList)xpathproc.evaluate(xpath, cfgsect, javax.xml.xpath.XPathConstants.NODESET);
 			} catch (Exception ex) {
 				throw new XmlConfigException("XML-Config: evaluate() failed on XPath="+xpath, ex);
 			}
+			recordXPath(time1);
 		}
 
 		if (nodes == null || nodes.getLength() == 0) {
@@ -261,20 +333,28 @@ public class XmlConfig
 
 	private String getValue(Object cfg, String xpath, boolean mdty, String dflt, boolean disable_nullmarker)
 	{
-		org.w3c.dom.Node elem = null;
 		String cfgval = null;
 
 		if (cfg != null) {
-			try {
-				elem = (org.w3c.dom.Node)xpathproc.evaluate(xpath, cfg, javax.xml.xpath.XPathConstants.NODE);
-			} catch (Exception ex) {
-				throw new XmlConfigException("XML-Config: evaluate() failed on XPath="+xpath, ex);
+			ConfigNode.Path path = (cfgnode == null ? null : ConfigNode.compilePath(xpath));
+			if (path != null) {
+				compiledLookups.incrementAndGet();
+				cfgval = cfgnode.selectValue(path);
+			} else {
+				org.w3c.dom.Node elem = null;
+				long time1 = System.nanoTime();
+				try {
+					elem = (org.w3c.dom.Node)xpathproc.evaluate(xpath, cfg, javax.xml.xpath.XPathConstants.NODE);
+				} catch (Exception ex) {
+					throw new XmlConfigException("XML-Config: evaluate() failed on XPath="+xpath, ex);
+				}
+				recordXPath(time1);
+				if (elem != null) cfgval = elem.getTextContent();
 			}
 		}
 
-		if (elem != null) {
-			cfgval = elem.getTextContent();
-			if (cfgval != null) cfgval = cfgval.trim();
+		if (cfgval != null) {
+			cfgval = cfgval.trim();
 			cfgval = EnvExpression.eval(cfgval);
 		}
 
@@ -288,6 +368,12 @@ public class XmlConfig
 		return cfgval;
 	}
 
+	private static void recordXPath(long starttime)
+	{
+		xpathNanos.addAndGet(System.nanoTime() - starttime);
+		xpathLookups.incrementAndGet();
+	}
+
 	private void configError(String xpath, String msg)
 	{
 		String str = "CONFIG ERROR: "+msg+" - "+label+ELEM_SEP+xpath;
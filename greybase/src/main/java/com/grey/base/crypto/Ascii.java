@@ -136,6 +136,12 @@ public class Ascii
 		return com.grey.base.crypto.Ascii.hexEncode(digest.buffer(), digest.offset(), digest.size(), null);
 	}
 
+	// uses this thread's cached instance of the digest algorithm, to save the cost of looking it up
+	public static char[] digest(com.grey.base.utils.ByteChars plain, String alg) throws java.security.NoSuchAlgorithmException
+	{
+		return digest(plain, CryptoRegistry.get().getDigest(alg));
+	}
+
 	public static char[] hexEncode(byte[] barr)
 	{
 		return hexEncode(barr, 0, barr.length, null);
@@ -160,6 +166,23 @@ public class Ascii
 		return carr;
 	}
 
+	// appends the hex encoding to the ByteChars, which avoids allocating a char array
+	public static com.grey.base.utils.ByteChars hexAppend(byte[] barr, int boff, int blen, com.grey.base.utils.ByteChars out)
+	{
+		int clen = hexEncodeLength(blen);
+		out.ensureSpareCapacity(clen);
+		byte[] cbuf = out.buffer();
+		int coff = out.limit();
+		int blmt = boff + blen;
+
+		for (int idx = boff; idx != blmt; idx++) {
+			cbuf[coff++] = (byte)hexchars[(barr[idx] >> 4) & 0xf];
+			cbuf[coff++] = (byte)hexchars[barr[idx] & 0xf];
+		}
+		out.incrementSize(clen);
+		return out;
+	}
+
 	public static byte[] hexDecode(char[] carr, int coff, int clen, byte[] barr)
 	{
 		int whtspc = 0;
@@ -92,7 +92,7 @@ public class AsyKey
 	private static byte[] crypt(int opmode, java.security.Key key, byte[] txt, int off, int len)
 			throws java.security.GeneralSecurityException
 	{
-		javax.crypto.Cipher cphr = javax.crypto.Cipher.getInstance(Defs.ALG_CPHR_RSA);
+		javax.crypto.Cipher cphr = CryptoRegistry.get().getCipher(Defs.ALG_CPHR_RSA);
 		cphr.init(opmode, key);
 		return cphr.doFinal(txt, off, len);
 	}
@@ -8,7 +8,7 @@ import com.grey.base.config.SysProps;
 
 public class Base64
 {
-	private static final int DFLT_LINESIZE = SysProps.get("grey.crypto.base64.maxline", 76); //corresponds to the standard MIME limit
+	static final int DFLT_LINESIZE = SysProps.get("grey.crypto.base64.maxline", 76); //corresponds to the standard MIME limit
 	private static final int UNITBYTES = 3;  // number of bytes per encoding unit
 	private static final int UNITCHARS = 4;  // number of characters per encoding unit
 	private static final char PADCHAR = '=';
@@ -25,7 +25,7 @@ public class Base64
 		for (char ch = '0'; ch <= '9'; ch++) tmpstrbuf.append(ch);
 		tmpstrbuf.append("+/");
 	}
-	private static final char[] alph64 = tmpstrbuf.toString().toCharArray();
+	static final char[] alph64 = tmpstrbuf.toString().toCharArray();
 	private static final int[] map64 = new int[256];
 
 	static {
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.base.crypto;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.grey.base.utils.ByteArrayRef;
+import com.grey.base.utils.ByteChars;
+
+/**
+ * Incremental Base64 decoder, which decodes a stream of encoded data that may arrive in arbitrarily sized chunks, directly from
+ * one ByteBuffer (heap or direct) to another, or between ByteBuffers and ByteChars.
+ * <br>
+ * Partial 4-char encoding units are carried over from one chunk to the next, and line breaks and other whitespace are skipped
+ * wherever they occur. Unlike the Base64 class, the input is validated and an IllegalArgumentException is thrown if it contains
+ * illegal chars or data following the padding. The final unit's padding may be omitted.
+ * <br>
+ * The main loop decodes each 4-char unit via a single word read and 4 table lookups whose results are simply OR'd together,
+ * and falls back to a char-by-char loop for units interspersed with whitespace or padding. It does not allocate any memory.
+ * <p>
+ * This class is single-threaded, but once finish() has been called it can be reused for another decoding sequence.
+ */
+public final class Base64Decoder
+{
+	private static final int UNITBYTES = 3;
+	private static final int UNITCHARS = 4;
+	private static final int SEXTET_SKIP = -2;
+	private static final int SEXTET_PAD = -3;
+
+	// Maps each char to its sextet value, or a negative value for non-alphabet chars
+	private static final int[] SEXTETS = new int[256];
+
+	// Each of these maps a char to its sextet value, pre-shifted into its position in the decoded 24-bit unit (with 0 meaning
+	// the first char). Non-alphabet chars map to -1, so that the OR of all 4 lookups is negative if any one of them is invalid.
+	private static final int[] DECODE0 = new int[256];
+	private static final int[] DECODE1 = new int[256];
+	private static final int[] DECODE2 = new int[256];
+	private static final int[] DECODE3 = new int[256];
+
+	static {
+		java.util.Arrays.fill(SEXTETS, -1);
+		java.util.Arrays.fill(DECODE0, -1);
+		java.util.Arrays.fill(DECODE1, -1);
+		java.util.Arrays.fill(DECODE2, -1);
+		java.util.Arrays.fill(DECODE3, -1);
+		for (int idx = 0; idx != Base64.alph64.length; idx++) {
+			int ch = Base64.alph64[idx];
+			SEXTETS[ch] = idx;
+			DECODE0[ch] = idx << 18;
+			DECODE1[ch] = idx << 12;
+			DECODE2[ch] = idx << 6;
+			DECODE3[ch] = idx;
+		}
+		SEXTETS['='] = SEXTET_PAD;
+		SEXTETS['\r'] = SEXTET_SKIP;
+		SEXTETS['\n'] = SEXTET_SKIP;
+		SEXTETS[' '] = SEXTET_SKIP;
+		SEXTETS['\t'] = SEXTET_SKIP;
+	}
+
+	private int unit; //accumulates the sextets of the current unit
+	private int sextetcnt; //number of sextets in current unit
+	private int padcnt; //number of pad chars seen - once this is non-zero, only more padding and whitespace is allowed
+
+	// wrappers for ByteChars buffers, which are retained until their backing arrays change
+	private ByteBuffer srcwrapper;
+	private ByteBuffer dstwrapper;
+
+	public Base64Decoder reset()
+	{
+		unit = 0;
+		sextetcnt = 0;
+		padcnt = 0;
+		return this;
+	}
+
+	/**
+	 * Returns the max number of bytes that could be output by decoding the given number of input chars, including the finish() output.
+	 */
+	public int maxDecodedSize(int enclen)
+	{
+		return ((sextetcnt + enclen) / UNITCHARS) * UNITBYTES + UNITBYTES;
+	}
+
+	/**
+	 * Decodes as much of the source buffer's remaining data as will fit in the destination buffer, advancing both buffer positions.
+	 * Any trailing chars which do not form a complete unit are consumed and retained for the next call.
+	 * @return True if all the source data was consumed, else false if the destination buffer filled up first.
+	 */
+	public boolean decode(ByteBuffer src, ByteBuffer dst)
+	{
+		int spos = src.position();
+		int dpos = dst.position();
+		final int slim = src.limit();
+		final int dlim = dst.limit();
+		final boolean src_le = (src.order() == ByteOrder.LITTLE_ENDIAN);
+
+		while (spos != slim) {
+			if (dlim - dpos < UNITBYTES) break;
+			if (sextetcnt == 0 && padcnt == 0) {
+				// bulk loop, which proceeds until it encounters a unit containing a non-alphabet char
+				while (slim - spos >= UNITCHARS && dlim - dpos >= UNITBYTES) {
+					int word = src.getInt(spos);
+					if (src_le) word = Integer.reverseBytes(word);
+					int val = DECODE0[word >>> 24] | DECODE1[(word >>> 16) & 0xff] | DECODE2[(word >>> 8) & 0xff] | DECODE3[word & 0xff];
+					if (val < 0) break;
+					dst.put(dpos, (byte)(val >> 16));
+					dst.put(dpos+1, (byte)(val >> 8));
+					dst.put(dpos+2, (byte)val);
+					spos += UNITCHARS;
+					dpos += UNITBYTES;
+				}
+				if (spos == slim || dlim - dpos < UNITBYTES) break;
+			}
+			int ch = src.get(spos) & 0xff;
+			int sextet = SEXTETS[ch];
+			if (sextet < 0) {
+				if (sextet == SEXTET_PAD) {
+					if (sextetcnt + padcnt < 2) throw new IllegalArgumentException("Illegal Base64 padding at offset="+spos);
+					padcnt++;
+					if (sextetcnt + padcnt == UNITCHARS) {
+						dpos = flushPadded(dst, dpos);
+						padcnt = 1; //any further non-whitespace will be illegal
+					}
+				} else if (sextet != SEXTET_SKIP) {
+					throw new IllegalArgumentException("Illegal Base64 char=0x"+Integer.toHexString(ch)+" at offset="+spos);
+				}
+				spos++;
+				continue;
+			}
+			if (padcnt != 0) throw new IllegalArgumentException("Illegal Base64 data after padding at offset="+spos);
+			unit = (unit << 6) | sextet;
+			spos++;
+			if (++sextetcnt == UNITCHARS) {
+				dst.put(dpos, (byte)(unit >> 16));
+				dst.put(dpos+1, (byte)(unit >> 8));
+				dst.put(dpos+2, (byte)unit);
+				dpos += UNITBYTES;
+				unit = 0;
+				sextetcnt = 0;
+			}
+		}
+		src.position(spos);
+		dst.position(dpos);
+		return (spos == slim);
+	}
+
+	/**
+	 * Decodes all of the source buffer's remaining data, appending the output to the destination.
+	 */
+	public void decode(ByteBuffer src, ByteChars dst)
+	{
+		if (!src.hasRemaining()) return;
+		dst.ensureSpareCapacity(maxDecodedSize(src.remaining()));
+		ByteBuffer wrapper = wrapDestination(dst);
+		decode(src, wrapper);
+		dst.incrementSize(wrapper.position() - dst.limit());
+	}
+
+	/**
+	 * Decodes as much of the source data as will fit in the destination buffer, and returns the number of source bytes
+	 * that were consumed.
+	 */
+	public int decode(ByteArrayRef src, ByteBuffer dst)
+	{
+		if (src.size() == 0) return 0;
+		byte[] arr = src.buffer();
+		if (srcwrapper == null || srcwrapper.array() != arr) srcwrapper = ByteBuffer.wrap(arr);
+		srcwrapper.limit(src.limit());
+		srcwrapper.position(src.offset());
+		decode(srcwrapper, dst);
+		return srcwrapper.position() - src.offset();
+	}
+
+	/**
+	 * Outputs the final unit if it was unpadded, and resets this decoder.
+	 * @return False if there was not enough space in the destination buffer, in which case nothing is output and this call can
+	 * be retried when space becomes available.
+	 */
+	public boolean finish(ByteBuffer dst)
+	{
+		if (sextetcnt != 0 && padcnt == 0) {
+			if (sextetcnt == 1) throw new IllegalArgumentException("Truncated Base64 data");
+			if (dst.remaining() < sextetcnt - 1) return false;
+			padcnt = UNITCHARS - sextetcnt;
+			dst.position(flushPadded(dst, dst.position()));
+		} else if (padcnt != 0 && sextetcnt != 0) {
+			throw new IllegalArgumentException("Truncated Base64 padding");
+		}
+		reset();
+		return true;
+	}
+
+	public void finish(ByteChars dst)
+	{
+		dst.ensureSpareCapacity(UNITBYTES);
+		ByteBuffer wrapper = wrapDestination(dst);
+		finish(wrapper);
+		dst.incrementSize(wrapper.position() - dst.limit());
+	}
+
+	// Outputs the final unit, given that sextetcnt + padcnt is 4
+	private int flushPadded(ByteBuffer dst, int dpos)
+	{
+		int val = unit << (6 * padcnt);
+		dst.put(dpos++, (byte)(val >> 16));
+		if (sextetcnt == 3) dst.put(dpos++, (byte)(val >> 8));
+		unit = 0;
+		sextetcnt = 0;
+		return dpos;
+	}
+
+	// Returns a buffer positioned at the end of the ByteChars data, and with a limit of the end of its backing array
+	private ByteBuffer wrapDestination(ByteChars bc)
+	{
+		byte[] arr = bc.buffer();
+		if (dstwrapper == null || dstwrapper.array() != arr) dstwrapper = ByteBuffer.wrap(arr);
+		dstwrapper.limit(arr.length);
+		dstwrapper.position(bc.limit());
+		return dstwrapper;
+	}
+
+	@Override
+	public String toString()
+	{
+		return super.toString()+" with sextets="+sextetcnt+", padding="+padcnt;
+	}
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.base.crypto;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.grey.base.utils.ByteChars;
+
+/**
+ * Incremental Base64 encoder, which encodes a stream of data that may arrive in arbitrarily sized chunks, directly from one
+ * ByteBuffer (heap or direct) to another, or to a ByteChars.
+ * <br>
+ * Up to 2 trailing bytes of each chunk which do not form a complete 3-byte encoding unit are carried over to the next chunk,
+ * and the final partial unit is padded and output by finish(). Line breaks are inserted in the same way as
+ * {@link Base64#encodeBytes(byte[], int, int, int, ByteChars)}, so the concatenated output of this class is identical to the
+ * result of encoding the whole input in one go.
+ * <br>
+ * The main loop reads each input unit as a single word where possible, and outputs each pair of encoded chars via a single
+ * table lookup, and it does not allocate any memory.
+ * <p>
+ * This class is single-threaded, but once finish() has been called it can be reused for another encoding sequence.
+ */
+public final class Base64Encoder
+{
+	private static final int UNITBYTES = 3;
+	private static final int UNITCHARS = 4;
+	private static final byte PADCHAR = '=';
+	private static final byte CRLF1 = '\r';
+	private static final byte CRLF2 = '\n';
+
+	// Maps each 12-bit value to its pair of Base64 chars, packed big-endian into the bottom 16 bits
+	private static final int[] PAIRS = new int[1 << 12];
+	static {
+		for (int idx = 0; idx != PAIRS.length; idx++) {
+			PAIRS[idx] = (Base64.alph64[idx >> 6] << 8) | Base64.alph64[idx & 0x3f];
+		}
+	}
+
+	private final int maxunits; //max units per line, or zero for no line breaks
+
+	private int carry; //holds the leftover bytes that don't yet constitute a full unit
+	private int carrycnt;
+	private int lineunits; //number of units output on the current line
+
+	// wrapper for ByteChars buffers, which is retained until their backing array changes
+	private ByteBuffer bcwrapper;
+
+	public Base64Encoder() {this(0);}
+
+	/**
+	 * The maxline parameter has the same meaning as in the Base64 class, ie. -1 means no line breaks and zero means the
+	 * standard MIME limit, while other values are rounded down to a multiple of 4.
+	 */
+	public Base64Encoder(int maxline)
+	{
+		if (maxline == -1) {
+			maxunits = 0;
+		} else {
+			if (maxline == 0) maxline = Base64.DFLT_LINESIZE;
+			if (maxline < UNITCHARS) throw new IllegalArgumentException("Base64 line size="+maxline+" is less than one unit");
+			maxunits = maxline / UNITCHARS;
+		}
+	}
+
+	public Base64Encoder reset()
+	{
+		carry = 0;
+		carrycnt = 0;
+		lineunits = 0;
+		return this;
+	}
+
+	/**
+	 * Returns the max number of bytes that could be output by encoding the given number of input bytes, including the finish() output.
+	 */
+	public int maxEncodedSize(int rawlen)
+	{
+		int units = (carrycnt + rawlen + UNITBYTES - 1) / UNITBYTES;
+		int len = units * UNITCHARS;
+		if (maxunits != 0) len += ((lineunits + units) / maxunits) * 2;
+		return len;
+	}
+
+	/**
+	 * Encodes as much of the source buffer's remaining data as will fit in the destination buffer, advancing both buffer positions.
+	 * Any trailing bytes which do not form a complete unit are consumed and retained for the next call.
+	 * @return True if all the source data was consumed, else false if the destination buffer filled up first.
+	 */
+	public boolean encode(ByteBuffer src, ByteBuffer dst)
+	{
+		int spos = src.position();
+		int dpos = dst.position();
+		final int slim = src.limit();
+		final int dlim = dst.limit();
+		final boolean src_le = (src.order() == ByteOrder.LITTLE_ENDIAN);
+		final boolean dst_le = (dst.order() == ByteOrder.LITTLE_ENDIAN);
+
+		while (carrycnt + (slim - spos) >= UNITBYTES) {
+			if (maxunits != 0 && lineunits == maxunits) {
+				if (dlim - dpos < UNITCHARS + 2) break;
+				dst.put(dpos++, CRLF1);
+				dst.put(dpos++, CRLF2);
+				lineunits = 0;
+			}
+			if (carrycnt != 0) {
+				if (dlim - dpos < UNITCHARS) break;
+				int unit = carry;
+				while (carrycnt != UNITBYTES) {
+					unit = (unit << 8) | (src.get(spos++) & 0xff);
+					carrycnt++;
+				}
+				putUnit(dst, dpos, unit, dst_le);
+				dpos += UNITCHARS;
+				carrycnt = 0;
+				carry = 0;
+				lineunits++;
+				continue;
+			}
+			// bulk loop, up to the end of the current line
+			int units = Math.min((slim - spos) / UNITBYTES, (dlim - dpos) / UNITCHARS);
+			if (maxunits != 0) units = Math.min(units, maxunits - lineunits);
+			if (units == 0) break;
+			lineunits += units;
+			int lmt = spos + (units * UNITBYTES);
+			final int wordlmt = Math.min(lmt - UNITBYTES, slim - 4); //reading by word requires 4 bytes to be left
+
+			while (spos <= wordlmt) {
+				int word = src.getInt(spos);
+				if (src_le) word = Integer.reverseBytes(word);
+				putUnit(dst, dpos, word >>> 8, dst_le);
+				spos += UNITBYTES;
+				dpos += UNITCHARS;
+			}
+			while (spos != lmt) {
+				int unit = ((src.get(spos) & 0xff) << 16) | ((src.get(spos+1) & 0xff) << 8) | (src.get(spos+2) & 0xff);
+				putUnit(dst, dpos, unit, dst_le);
+				spos += UNITBYTES;
+				dpos += UNITCHARS;
+			}
+		}
+		boolean done = (carrycnt + (slim - spos) < UNITBYTES);
+		if (done) {
+			while (spos != slim) {
+				carry = (carry << 8) | (src.get(spos++) & 0xff);
+				carrycnt++;
+			}
+		}
+		src.position(spos);
+		dst.position(dpos);
+		return done;
+	}
+
+	/**
+	 * Encodes all of the source buffer's remaining data, appending the output to the destination.
+	 */
+	public void encode(ByteBuffer src, ByteChars dst)
+	{
+		if (!src.hasRemaining()) return;
+		dst.ensureSpareCapacity(maxEncodedSize(src.remaining()));
+		ByteBuffer wrapper = wrap(dst);
+		encode(src, wrapper);
+		dst.incrementSize(wrapper.position() - dst.limit());
+	}
+
+	/**
+	 * Outputs any remaining partial unit, with padding, and resets this encoder.
+	 * @return False if there was not enough space in the destination buffer, in which case nothing is output and this call can
+	 * be retried when space becomes available.
+	 */
+	public boolean finish(ByteBuffer dst)
+	{
+		if (carrycnt == 0) {
+			reset();
+			return true;
+		}
+		boolean linebreak = (maxunits != 0 && lineunits == maxunits);
+		if (dst.remaining() < UNITCHARS + (linebreak ? 2 : 0)) return false;
+		if (linebreak) {
+			dst.put(CRLF1);
+			dst.put(CRLF2);
+		}
+		int unit = carry << (8 * (UNITBYTES - carrycnt));
+		int dpos = dst.position();
+		putUnit(dst, dpos, unit, dst.order() == ByteOrder.LITTLE_ENDIAN);
+		dst.put(dpos + 3, PADCHAR);
+		if (carrycnt == 1) dst.put(dpos + 2, PADCHAR);
+		dst.position(dpos + UNITCHARS);
+		reset();
+		return true;
+	}
+
+	public void finish(ByteChars dst)
+	{
+		dst.ensureSpareCapacity(UNITCHARS + 2);
+		ByteBuffer wrapper = wrap(dst);
+		finish(wrapper);
+		dst.incrementSize(wrapper.position() - dst.limit());
+	}
+
+	private static void putUnit(ByteBuffer dst, int dpos, int unit, boolean little_endian)
+	{
+		int chars = (PAIRS[(unit >>> 12) & 0xfff] << 16) | PAIRS[unit & 0xfff];
+		if (little_endian) chars = Integer.reverseBytes(chars);
+		dst.putInt(dpos, chars);
+	}
+
+	// Returns a buffer positioned at the end of the ByteChars data, and with a limit of the end of its backing array
+	private ByteBuffer wrap(ByteChars bc)
+	{
+		byte[] arr = bc.buffer();
+		if (bcwrapper == null || bcwrapper.array() != arr) bcwrapper = ByteBuffer.wrap(arr);
+		bcwrapper.limit(arr.length);
+		bcwrapper.position(bc.limit());
+		return bcwrapper;
+	}
+
+	@Override
+	public String toString()
+	{
+		return super.toString()+" with line-units="+maxunits+" - carry="+carrycnt+", line="+lineunits;
+	}
+}
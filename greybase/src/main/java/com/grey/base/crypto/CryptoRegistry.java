@@ -0,0 +1,171 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.base.crypto;
+
+import com.grey.base.utils.ByteArrayRef;
+
+/**
+ * A per-thread cache of JCA MessageDigest, Mac and Cipher instances (plus our own HMAC key material), keyed by algorithm name.
+ * <br>
+ * The getInstance() methods of the JCA classes have to search the installed providers, which involves synchronisation and is
+ * expensive enough to show up in profiles of busy servers. All those instances are reusable (digests reset themselves after
+ * each digest() call, and ciphers and MACs are reset by each init()) so each thread only needs to look up a given algorithm once.
+ * <p>
+ * The registry for the calling thread is obtained with get(), and the instances it returns are confined to that thread. They
+ * are shared by all the code that runs in that thread however (which means all the components of a Dispatcher, in a NAF context),
+ * so callers must finish with an instance before they call any other code that might use the same algorithm, and must not
+ * retain it. In particular, any digest must be completed (or reset) before returning.
+ */
+public final class CryptoRegistry
+{
+	private static final ThreadLocal<CryptoRegistry> perThread = ThreadLocal.withInitial(CryptoRegistry::new);
+
+	// we only expect each thread to use a handful of algorithms
+	private final java.util.HashMap<String, java.security.MessageDigest> digests = new java.util.HashMap<>(8);
+	private final java.util.HashMap<String, javax.crypto.Mac> macs = new java.util.HashMap<>(8);
+	private final java.util.HashMap<String, javax.crypto.Cipher> ciphers = new java.util.HashMap<>(8);
+	private final java.util.HashMap<String, HMAC.KeyMaterial> hmacs = new java.util.HashMap<>(8);
+
+	public static CryptoRegistry get() {return perThread.get();}
+
+	private CryptoRegistry() {}
+
+	/**
+	 * Returns this thread's instance of the given digest algorithm, in its reset state.
+	 */
+	public java.security.MessageDigest getDigest(String alg) throws java.security.NoSuchAlgorithmException
+	{
+		java.security.MessageDigest proc = digests.get(alg);
+		if (proc == null) {
+			proc = java.security.MessageDigest.getInstance(alg);
+			digests.put(alg, proc);
+		} else {
+			proc.reset();
+		}
+		return proc;
+	}
+
+	/**
+	 * Returns this thread's instance of the given MAC algorithm, which must be initialised with a key before use.
+	 */
+	public javax.crypto.Mac getMac(String alg) throws java.security.NoSuchAlgorithmException
+	{
+		javax.crypto.Mac mac = macs.get(alg);
+		if (mac == null) {
+			mac = javax.crypto.Mac.getInstance(alg);
+			macs.put(alg, mac);
+		}
+		return mac;
+	}
+
+	/**
+	 * Returns this thread's instance of the given cipher transformation, which must be initialised before use.
+	 */
+	public javax.crypto.Cipher getCipher(String transformation) throws java.security.GeneralSecurityException
+	{
+		javax.crypto.Cipher cphr = ciphers.get(transformation);
+		if (cphr == null) {
+			cphr = javax.crypto.Cipher.getInstance(transformation);
+			ciphers.put(transformation, cphr);
+		}
+		return cphr;
+	}
+
+	/**
+	 * Returns this thread's HMAC key material for the given digest algorithm. This has its own private digest instance, so it
+	 * is not affected by users of getDigest(), but it does have to be reset with the caller's key before each use.
+	 */
+	public HMAC.KeyMaterial getHMAC(String digestalg) throws java.security.NoSuchAlgorithmException
+	{
+		HMAC.KeyMaterial km = hmacs.get(digestalg);
+		if (km == null) {
+			km = new HMAC.KeyMaterial(digestalg, null);
+			hmacs.put(digestalg, km);
+		}
+		return km;
+	}
+
+	/**
+	 * Digests each of the inputs, and appends the digests to the output buffer one after the other. They are all the same length,
+	 * so there is no need for any delimiters.
+	 * <br>
+	 * The output buffer is grown if necessary, but if it is reused then this generates no garbage.
+	 * @return The length of each digest
+	 */
+	public int digest(String alg, java.util.List<? extends ByteArrayRef> inputs, ByteArrayRef outbuf)
+			throws java.security.GeneralSecurityException
+	{
+		java.security.MessageDigest proc = getDigest(alg);
+		int dlen = proc.getDigestLength();
+		int cnt = inputs.size();
+		outbuf.ensureSpareCapacity(dlen * cnt);
+		for (int idx = 0; idx != cnt; idx++) {
+			ByteArrayRef data = inputs.get(idx);
+			proc.update(buffer(data), data.offset(), data.size());
+			outbuf.incrementSize(proc.digest(outbuf.buffer(), outbuf.limit(), dlen));
+		}
+		return dlen;
+	}
+
+	/**
+	 * Calculates the MAC of each of the inputs under the given key, and appends them to the output buffer one after the other,
+	 * in the same manner as the bulk digest() method.
+	 * @return The length of each MAC
+	 */
+	public int mac(String alg, java.security.Key key, java.util.List<? extends ByteArrayRef> inputs, ByteArrayRef outbuf)
+			throws java.security.GeneralSecurityException
+	{
+		javax.crypto.Mac mac = getMac(alg);
+		mac.init(key);
+		int mlen = mac.getMacLength();
+		int cnt = inputs.size();
+		outbuf.ensureSpareCapacity(mlen * cnt);
+		for (int idx = 0; idx != cnt; idx++) {
+			ByteArrayRef data = inputs.get(idx);
+			mac.update(buffer(data), data.offset(), data.size());
+			mac.doFinal(outbuf.buffer(), outbuf.limit());
+			outbuf.incrementSize(mlen);
+		}
+		return mlen;
+	}
+
+	/**
+	 * Encrypts or decrypts each of the inputs and appends the result to the corresponding output buffer, which is grown as
+	 * necessary. Each input is processed as a separate message, ie. the cipher is re-initialised for each one, so that the
+	 * outputs are exactly what the equivalent sequence of single-message SymKey or AsyKey calls would have produced.
+	 * @param opmode One of javax.crypto.Cipher.ENCRYPT_MODE or DECRYPT_MODE
+	 * @param algp Optional cipher parameters (eg. an IV)
+	 */
+	public <T extends ByteArrayRef> java.util.List<T> crypt(int opmode, String transformation, java.security.Key key,
+			java.security.AlgorithmParameters algp, java.util.List<? extends ByteArrayRef> inputs, java.util.List<T> outputs)
+					throws java.security.GeneralSecurityException
+	{
+		if (outputs.size() < inputs.size()) throw new IllegalArgumentException("Insufficient crypt outputs="+outputs.size()+" vs inputs="+inputs.size());
+		javax.crypto.Cipher cphr = getCipher(transformation);
+		int cnt = inputs.size();
+		for (int idx = 0; idx != cnt; idx++) {
+			ByteArrayRef data = inputs.get(idx);
+			T outbuf = outputs.get(idx);
+			cphr.init(opmode, key, algp);
+			outbuf.ensureSpareCapacity(cphr.getOutputSize(data.size()));
+			int len = cphr.doFinal(buffer(data), data.offset(), data.size(), outbuf.buffer(), outbuf.limit());
+			outbuf.incrementSize(len);
+		}
+		return outputs;
+	}
+
+	// the JCA methods reject a null array even if the length is zero, which is how an empty ByteArrayRef may be represented
+	private static byte[] buffer(ByteArrayRef data)
+	{
+		byte[] buf = data.buffer();
+		return (buf == null ? com.grey.base.utils.ByteOps.EMPTYBUF : buf);
+	}
+
+	@Override
+	public String toString()
+	{
+		return super.toString()+" with digests="+digests.keySet()+", MACs="+macs.keySet()+", ciphers="+ciphers.keySet()+", HMACs="+hmacs.keySet();
+	}
+}
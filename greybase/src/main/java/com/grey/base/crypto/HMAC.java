@@ -93,16 +93,15 @@ public final class HMAC
 	}
 
 
-	// Convenience method. Unless this is a one-off call, the canonical HMAC.encode(byte[], KeyMaterial)
-	// method (with calls to KeyMaterial.reset() whenever the key changes) is more efficient, as it
-	// reuses the KeyMaterial working buffers.
+	// Convenience method, which uses this thread's cached KeyMaterial for the given hash - see CryptoRegistry.
 	public static byte[] encode(String hashname, byte[] key, byte[] data) throws java.security.NoSuchAlgorithmException
 	{
-		java.security.MessageDigest hashfunc = java.security.MessageDigest.getInstance(hashname);
-		return encode(hashfunc, key, data);
+		return CryptoRegistry.get().getHMAC(hashname).reset(key).encode(data);
 	}
 
-	// Convenience method - same performance caveat as the above.
+	// Convenience method. Unless this is a one-off call, the canonical HMAC.encode(byte[], KeyMaterial)
+	// method (with calls to KeyMaterial.reset() whenever the key changes) is more efficient, as it
+	// reuses the KeyMaterial working buffers.
 	public static byte[] encode(java.security.MessageDigest hashfunc, byte[] key, byte[] data)
 	{
 		KeyMaterial km = new KeyMaterial(hashfunc, key);
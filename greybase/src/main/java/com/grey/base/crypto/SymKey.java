@@ -64,7 +64,7 @@ public class SymKey
 	private static byte[] crypt(int opmode, java.security.Key key, java.security.AlgorithmParameters algp,
 			byte[] txt, int off, int len) throws java.security.GeneralSecurityException
 	{
-		javax.crypto.Cipher cphr = javax.crypto.Cipher.getInstance(key.getAlgorithm());
+		javax.crypto.Cipher cphr = CryptoRegistry.get().getCipher(key.getAlgorithm());
 		cphr.init(opmode, key, algp);
 		return cphr.doFinal(txt, off, len);
 	}
@@ -116,7 +116,7 @@ public class SymKey
 			// Need to digest the password, but the bloody JCE Digest API only takes String or byte[] arguments, and storing a password as a
 			// long-lived immutable String is the last thing we want to do, so we must convert it to byte[] first, and then back to char[] for
 			// the Key methods (which dont' take byte[] passwords!)
-			java.security.MessageDigest mdg = java.security.MessageDigest.getInstance(Defs.ALG_DIGEST_SHA256);
+			java.security.MessageDigest mdg = CryptoRegistry.get().getDigest(Defs.ALG_DIGEST_SHA256);
 			byte[] bpass = new String(passwd).getBytes(PBE_CHARSET);
 			bpass = mdg.digest(bpass);
 			passwd = Ascii.hexEncode(bpass);
@@ -135,7 +135,7 @@ public class SymKey
 	{
 		java.security.Key key = generateKey(passwd, salt);
 		javax.crypto.spec.PBEParameterSpec params = new javax.crypto.spec.PBEParameterSpec(salt, PBE_ITERATIONS);
-		javax.crypto.Cipher cphr = javax.crypto.Cipher.getInstance(PBE_CIPHER);
+		javax.crypto.Cipher cphr = CryptoRegistry.get().getCipher(PBE_CIPHER);
 		cphr.init(opmode, key, params);
 		return cphr;
 	}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.base.sasl;
+
+import java.util.concurrent.Executor;
+
+import com.grey.base.utils.ByteChars;
+
+/**
+ * Non-blocking front end to a {@link SaslServer.Authenticator}, whose lookups may block on a remote backend such as LDAP or
+ * a database.
+ * <br>
+ * The backend calls are made on a pool of worker threads, and the results are then handed to a completion Executor which
+ * delivers them to the caller's callback. In a NAF application that would typically be an Executor which runs tasks in the
+ * Dispatcher thread that owns the session, so that the callback needs no synchronisation.
+ * <br>
+ * If a CredentialCache is supplied, then repeat logins which match a recent successful authentication are completed
+ * synchronously, without any thread handoff.
+ * <p>
+ * This class is thread-safe, so a single instance can be shared by all the Dispatchers that use the same backend.
+ * The caller's username and password buffers are copied before the worker thread is engaged, so they may be reused as soon
+ * as the call returns.
+ */
+public class AsyncAuthenticator
+{
+	public interface AuthCallback {
+		void saslAuthenticated(ByteChars usrnam, boolean is_valid, Object attachment);
+	}
+
+	public interface LookupCallback {
+		/**
+		 * The passwd arg is null if the user does not exist or the lookup failed.
+		 */
+		void saslPasswordFound(ByteChars usrnam, ByteChars passwd, Object attachment);
+	}
+
+	private final SaslServer.Authenticator backend;
+	private final Executor workers;
+	private final CredentialCache cache; //null means no caching
+
+	private final java.util.concurrent.atomic.AtomicLong backendCalls = new java.util.concurrent.atomic.AtomicLong();
+	private final java.util.concurrent.atomic.AtomicLong backendErrors = new java.util.concurrent.atomic.AtomicLong();
+
+	public SaslServer.Authenticator getBackend() {return backend;}
+	public CredentialCache getCache() {return cache;}
+	public long getBackendCalls() {return backendCalls.get();}
+	public long getBackendErrors() {return backendErrors.get();}
+
+	public AsyncAuthenticator(SaslServer.Authenticator backend, Executor workers, CredentialCache cache)
+	{
+		this.backend = backend;
+		this.workers = workers;
+		this.cache = cache;
+	}
+
+	/**
+	 * Verifies the given credentials, with the same semantics as {@link SaslServer.Authenticator#saslAuthenticate(ByteChars, ByteChars)}.
+	 * <br>
+	 * The callback is invoked via the completer, unless the credentials were found in the cache, in which case it will already
+	 * have been called (in this thread) by the time this method returns.
+	 * @return True if the result was obtained from the cache and the callback has already been called.
+	 */
+	public boolean authenticate(ByteChars usrnam, ByteChars passwd, Executor completer, AuthCallback cb, Object attachment)
+	{
+		if (cache != null && cache.isVerified(usrnam, passwd, System.currentTimeMillis())) {
+			cb.saslAuthenticated(usrnam, true, attachment);
+			return true;
+		}
+		ByteChars usrnam_copy = (usrnam == null ? null : new ByteChars(usrnam, true));
+		ByteChars passwd_copy = (passwd == null ? null : new ByteChars(passwd, true));
+		workers.execute(() -> {
+			boolean ok = callBackend(usrnam_copy, passwd_copy);
+			if (ok && cache != null) cache.verified(usrnam_copy, passwd_copy, System.currentTimeMillis());
+			if (passwd_copy != null && passwd_copy.size() != 0) {
+				//don't leave the plaintext password lying around in memory
+				java.util.Arrays.fill(passwd_copy.buffer(), passwd_copy.offset(), passwd_copy.limit(), (byte)0);
+			}
+			completer.execute(() -> cb.saslAuthenticated(usrnam_copy, ok, attachment));
+		});
+		return false;
+	}
+
+	/**
+	 * Retrieves the plaintext password of the given user, with the same semantics as
+	 * {@link SaslServer.Authenticator#saslPasswordLookup(ByteChars)}, except that any errors (including the lookup being
+	 * unsupported) are reported to the callback as a null password.
+	 * <br>
+	 * Plaintext passwords are not cached, so the callback is always invoked via the completer.
+	 */
+	public void lookupPassword(ByteChars usrnam, Executor completer, LookupCallback cb, Object attachment)
+	{
+		ByteChars usrnam_copy = (usrnam == null ? null : new ByteChars(usrnam, true));
+		workers.execute(() -> {
+			ByteChars passwd = null;
+			backendCalls.incrementAndGet();
+			try {
+				passwd = backend.saslPasswordLookup(usrnam_copy);
+			} catch (Throwable ex) {
+				backendErrors.incrementAndGet();
+			}
+			ByteChars result = passwd;
+			completer.execute(() -> cb.saslPasswordFound(usrnam_copy, result, attachment));
+		});
+	}
+
+	// Any backend error is treated as an authentication failure
+	private boolean callBackend(ByteChars usrnam, ByteChars passwd)
+	{
+		backendCalls.incrementAndGet();
+		try {
+			return backend.saslAuthenticate(usrnam, passwd);
+		} catch (Throwable ex) {
+			backendErrors.incrementAndGet();
+			return false;
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return super.toString()+" with backend="+backend+", cache="+cache+" - calls="+getBackendCalls()+", errors="+getBackendErrors();
+	}
+}
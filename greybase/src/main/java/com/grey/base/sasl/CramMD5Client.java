@@ -10,11 +10,10 @@ import com.grey.base.utils.ByteChars;
 public final class CramMD5Client
 	extends SaslClient
 {
-	private final CramMD5Server.SecureHash hashfunc = new CramMD5Server.SecureHash();
-
 	public CramMD5Client(boolean base64) throws java.security.NoSuchAlgorithmException
 	{
 		super(MECH.CRAM_MD5, base64);
+		com.grey.base.crypto.CryptoRegistry.get().getHMAC(com.grey.base.crypto.Defs.ALG_DIGEST_MD5); //fail fast if MD5 is unavailable
 	}
 
 	public ByteChars setResponse(CharSequence username, com.grey.base.utils.ByteChars secret, ByteArrayRef challenge, com.grey.base.utils.ByteChars outbuf)
@@ -23,7 +22,7 @@ public final class CramMD5Client
 		int len = outbuf.size();
 		outbuf.append(username).append(' ');
 		challenge = decode(challenge);
-		hashfunc.append(secret, challenge, outbuf);
+		CramMD5Server.SecureHash.append(secret, challenge, outbuf);
 		return encode(outbuf, len);
 	}
 }
\ No newline at end of file
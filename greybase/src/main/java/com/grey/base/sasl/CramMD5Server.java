@@ -5,6 +5,8 @@
 package com.grey.base.sasl;
 
 import com.grey.base.crypto.Ascii;
+import com.grey.base.crypto.CryptoRegistry;
+import com.grey.base.crypto.Defs;
 import com.grey.base.utils.ByteArrayRef;
 import com.grey.base.utils.ByteChars;
 import com.grey.base.utils.ByteOps;
@@ -12,9 +14,11 @@ import com.grey.base.utils.ByteOps;
 // The SASL CRAM-MD5 mechanism is defined in RFC-2195 (Sep 1997)
 public final class CramMD5Server
 	extends SaslServer
+	implements AsyncAuthenticator.LookupCallback
 {
-	private final SecureHash hashfunc = new SecureHash();
 	private final ByteChars srvnonce = new ByteChars();
+	private final ByteChars rspdigest = new ByteChars(); //retains the client's digest during a non-blocking password lookup
+	private final ByteChars hexbuf = new ByteChars(); //our own calculation of the digest
 
 	@Override
 	public boolean requiresInitialResponse() {return false;}
@@ -24,6 +28,7 @@ public final class CramMD5Server
 	public CramMD5Server(Authenticator authenticator, boolean base64) throws java.security.NoSuchAlgorithmException
 	{
 		super(MECH.CRAM_MD5, authenticator, base64);
+		CryptoRegistry.get().getHMAC(Defs.ALG_DIGEST_MD5); //fail fast if MD5 is unavailable
 	}
 
 	// this is the preferred init() method for this class
@@ -57,40 +62,62 @@ public final class CramMD5Server
 		int digest_len = msg.size() - auth_username.size() - 1;
 		ByteChars passwd = (digest_len == 0 ? null : authenticator.saslPasswordLookup(auth_username));
 		if (passwd == null) return false;
-		return hashfunc.matches(passwd, srvnonce, msg.buffer(), dlm + 1, digest_len);
+		return SecureHash.matches(passwd, srvnonce, msg.buffer(), dlm + 1, digest_len, hexbuf);
 	}
 
+	@Override
+	protected void verifyDecodedResponse(ByteArrayRef msg, AsyncAuthenticator auth, java.util.concurrent.Executor completer,
+			VerifyCallback cb, Object attachment)
+	{
+		int dlm = ByteOps.indexOf(msg.buffer(), msg.offset(), msg.size(), (byte)' ');
+		int digest_len = (dlm == -1 ? 0 : msg.size() - (dlm - msg.offset()) - 1);
+		if (digest_len == 0) {
+			cb.saslResponseVerified(this, false, attachment);
+			return;
+		}
+		auth_username.populate(msg.buffer(), msg.offset(), dlm - msg.offset());
+		rspdigest.populate(msg.buffer(), dlm + 1, digest_len);
+		setPendingVerification(cb, attachment);
+		auth.lookupPassword(auth_username, completer, this, null);
+	}
 
-	static class SecureHash
+	@Override
+	public void saslPasswordFound(ByteChars usrnam, ByteChars passwd, Object attachment)
 	{
-		private final com.grey.base.crypto.HMAC.KeyMaterial km;
-		private char[] hexbuf;
-		private int hexlen;
+		boolean is_valid = (passwd != null && SecureHash.matches(passwd, srvnonce, rspdigest.buffer(), rspdigest.offset(), rspdigest.size(), hexbuf));
+		completeVerification(is_valid);
+	}
 
-		public SecureHash() throws java.security.NoSuchAlgorithmException {
-			km = new com.grey.base.crypto.HMAC.KeyMaterial("MD5", null);
-		}
 
-		private void calculate(ByteChars secret, ByteArrayRef data)
-		{
-			km.reset(secret.buffer(), secret.offset(), secret.size());
-			byte[] hash = km.encode(data.buffer(), data.offset(), data.size());
-			hexbuf = Ascii.hexEncode(hash, 0, hash.length, hexbuf);
-			hexlen = Ascii.hexEncodeLength(hash.length);
+	/*
+	 * The MD5 digest and HMAC key material are not specific to any one session, so we use the instance in the CryptoRegistry,
+	 * which is shared by all the servers and clients that run in a given thread - which means one per Dispatcher, in a NAF context.
+	 */
+	static final class SecureHash
+	{
+		private static com.grey.base.crypto.HMAC.KeyMaterial get() {
+			try {
+				return CryptoRegistry.get().getHMAC(Defs.ALG_DIGEST_MD5);
+			} catch (java.security.NoSuchAlgorithmException ex) {
+				throw new IllegalStateException("Failed to create CRAM-MD5 hash", ex);
+			}
 		}
 
-		public void append(ByteChars secret, ByteArrayRef data, ByteChars outbuf)
+		public static void append(ByteChars secret, ByteArrayRef data, ByteChars outbuf)
 		{
-			calculate(secret, data);
-			outbuf.append(hexbuf, 0, hexlen);
+			com.grey.base.crypto.HMAC.KeyMaterial km = get().reset(secret.buffer(), secret.offset(), secret.size());
+			byte[] hash = km.encode(data.buffer(), data.offset(), data.size());
+			Ascii.hexAppend(hash, 0, hash.length, outbuf);
 		}
 
-		public boolean matches(ByteChars secret, ByteArrayRef data, byte[] buf, int off, int len)
+		public static boolean matches(ByteChars secret, ByteArrayRef data, byte[] buf, int off, int len, ByteChars hexbuf)
 		{
-			calculate(secret, data);
-			if (hexlen != len) return false;
+			append(secret, data, hexbuf.clear());
+			if (hexbuf.size() != len) return false;
+			byte[] hexarr = hexbuf.buffer();
+			int hexoff = hexbuf.offset();
 			for (int idx = 0; idx != len; idx++) {
-				if (hexbuf[idx] != buf[off++]) return false;
+				if (hexarr[hexoff++] != buf[off++]) return false;
 			}
 			return true;
 		}
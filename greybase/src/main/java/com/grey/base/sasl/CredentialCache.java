@@ -0,0 +1,160 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.base.sasl;
+
+import com.grey.base.crypto.CryptoRegistry;
+import com.grey.base.utils.ByteChars;
+
+/**
+ * A bounded cache of recently verified username/password combinations, which allows repeat logins to be accepted without
+ * consulting the (possibly remote and slow) authentication backend.
+ * <br>
+ * The plaintext passwords are never retained. Instead, each entry holds a salted SHA-256 hash of the credentials, where the
+ * salt is generated randomly for each cache instance. Entries expire after a fixed time-to-live, and once the cache is full the
+ * oldest entry is discarded to make way for a new one.
+ * <br>
+ * Only successful authentications are recorded, so a wrong password always goes to the backend.
+ * <p>
+ * This class is thread-safe and is intended to be shared by all the Dispatchers that use a given backend. The hashing is done
+ * outside the lock, using the calling thread's MessageDigest from the CryptoRegistry.
+ */
+public final class CredentialCache
+{
+	private static final String HASHALG = "SHA-256";
+
+	private final int maxEntries;
+	private final long ttl;
+	private final byte[] salt = new byte[16];
+	private final java.util.LinkedHashMap<ByteChars, Entry> entries;
+
+	private long hits;
+	private long misses;
+
+	public int getMaxEntries() {return maxEntries;}
+	public long getTTL() {return ttl;}
+	public synchronized long getHits() {return hits;}
+	public synchronized long getMisses() {return misses;}
+	public synchronized int size() {return entries.size();}
+
+	public CredentialCache(int maxEntries, long ttl)
+	{
+		if (maxEntries <= 0) throw new IllegalArgumentException("CredentialCache has invalid max="+maxEntries);
+		if (ttl <= 0) throw new IllegalArgumentException("CredentialCache has invalid TTL="+ttl);
+		this.maxEntries = maxEntries;
+		this.ttl = ttl;
+		new java.security.SecureRandom().nextBytes(salt);
+
+		// insertion order equates to expiry order, as all entries have the same TTL
+		entries = new java.util.LinkedHashMap<ByteChars, Entry>(Math.min(maxEntries, 1024), 0.75f, false) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(java.util.Map.Entry<ByteChars, Entry> eldest) {
+				return size() > CredentialCache.this.maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Returns true if these credentials match a successful authentication which was recorded less than the TTL ago.
+	 */
+	public boolean isVerified(ByteChars usrnam, ByteChars passwd, long systime)
+	{
+		if (usrnam == null || usrnam.size() == 0 || passwd == null) return false;
+		byte[] hash = null;
+		synchronized (this) {
+			Entry entry = entries.get(usrnam);
+			if (entry != null && entry.expiry <= systime) {
+				entries.remove(usrnam);
+				entry = null;
+			}
+			if (entry == null) {
+				misses++;
+				return false;
+			}
+			hash = entry.hash;
+		}
+		boolean ok = java.security.MessageDigest.isEqual(hash, calculateHash(usrnam, passwd));
+		synchronized (this) {
+			if (ok) {
+				hits++;
+			} else {
+				misses++;
+			}
+		}
+		return ok;
+	}
+
+	/**
+	 * Records a successful authentication.
+	 */
+	public void verified(ByteChars usrnam, ByteChars passwd, long systime)
+	{
+		if (usrnam == null || usrnam.size() == 0 || passwd == null) return;
+		Entry entry = new Entry(calculateHash(usrnam, passwd), systime + ttl);
+		ByteChars key = new ByteChars(usrnam, true);
+		synchronized (this) {
+			entries.remove(key); //so that re-insertion moves it to the back of the expiry order
+			entries.put(key, entry);
+		}
+	}
+
+	/**
+	 * Discards any cached credentials for this user, eg. because their password has changed.
+	 */
+	public synchronized void invalidate(ByteChars usrnam)
+	{
+		entries.remove(usrnam);
+	}
+
+	public synchronized void clear()
+	{
+		entries.clear();
+	}
+
+	/**
+	 * Discards all expired entries. There is no need to call this for correctness, as expired entries are never reported as
+	 * verified, but it releases their memory sooner.
+	 */
+	public synchronized int purge(long systime)
+	{
+		int cnt = 0;
+		java.util.Iterator<Entry> it = entries.values().iterator();
+		while (it.hasNext()) {
+			if (it.next().expiry > systime) break;
+			it.remove();
+			cnt++;
+		}
+		return cnt;
+	}
+
+	private byte[] calculateHash(ByteChars usrnam, ByteChars passwd)
+	{
+		java.security.MessageDigest hashfunc;
+		try {
+			hashfunc = CryptoRegistry.get().getDigest(HASHALG);
+		} catch (java.security.NoSuchAlgorithmException ex) {
+			throw new IllegalStateException("Failed to create credentials hash="+HASHALG, ex);
+		}
+		hashfunc.update(salt);
+		hashfunc.update(usrnam.buffer(), usrnam.offset(), usrnam.size());
+		hashfunc.update((byte)0);
+		if (passwd.size() != 0) hashfunc.update(passwd.buffer(), passwd.offset(), passwd.size());
+		return hashfunc.digest();
+	}
+
+	@Override
+	public String toString()
+	{
+		return super.toString()+" with max="+maxEntries+", TTL="+ttl+" - size="+size()+", hits="+getHits()+", misses="+getMisses();
+	}
+
+
+	private static final class Entry
+	{
+		final byte[] hash;
+		final long expiry;
+		Entry(byte[] hash, long expiry) {this.hash = hash; this.expiry = expiry;}
+	}
+}
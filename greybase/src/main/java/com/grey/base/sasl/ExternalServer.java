@@ -11,8 +11,10 @@ import com.grey.base.utils.ByteChars;
 // See RFC-4959 for some more examples based on the email protocols.
 public final class ExternalServer
 	extends SaslServer
+	implements AsyncAuthenticator.AuthCallback
 {
-	private final ByteChars auth_rolename = new ByteChars(-1);
+	private final ByteChars auth_rolename = new ByteChars(-1); //references caller's buffer in synchronous mode
+	private final ByteChars async_rolename = new ByteChars(); //private copy which outlives the caller's buffer in async mode
 	private java.security.cert.X509Certificate clientcert;
 
 	public ExternalServer(Authenticator authenticator, boolean base64)
@@ -24,6 +26,7 @@ public final class ExternalServer
 	{
 		init();
 		auth_rolename.clear();
+		async_rolename.clear();
 		clientcert = (java.security.cert.X509Certificate)cert;
 		return this;
 	}
@@ -39,4 +42,26 @@ public final class ExternalServer
 		if (is_valid) is_valid = authorise(auth_rolename);
 		return is_valid;
 	}
+
+	@Override
+	protected void verifyDecodedResponse(ByteArrayRef msg, AsyncAuthenticator auth, java.util.concurrent.Executor completer,
+			VerifyCallback cb, Object attachment)
+	{
+		String cn = (clientcert == null ? null : com.grey.base.crypto.SSLCertificate.getCN(clientcert));
+		if (cn == null) {
+			cb.saslResponseVerified(this, false, attachment);
+			return;
+		}
+		auth_username.populate(cn);
+		async_rolename.populate(msg.buffer(), msg.offset(), msg.size());
+		setPendingVerification(cb, attachment);
+		auth.authenticate(auth_username, null, completer, this, null);
+	}
+
+	@Override
+	public void saslAuthenticated(ByteChars usrnam, boolean is_valid, Object attachment)
+	{
+		if (is_valid) is_valid = authorise(async_rolename);
+		completeVerification(is_valid);
+	}
 }
\ No newline at end of file
@@ -11,9 +11,12 @@ import com.grey.base.utils.ByteOps;
 // The SASL Plain mechanism is defined in RFC-4616 (Aug 2006)
 public final class PlainServer
 	extends SaslServer
+	implements AsyncAuthenticator.AuthCallback
 {
-	private final ByteChars auth_rolename = new ByteChars(-1);
+	private final ByteChars auth_rolename = new ByteChars(-1); //references caller's buffer in synchronous mode
 	private final ByteChars auth_passwd = new ByteChars(-1);
+	private final ByteChars async_rolename = new ByteChars(); //private copies which outlive the caller's buffer in async mode
+	private final ByteChars async_passwd = new ByteChars();
 
 	public PlainServer(Authenticator authenticator, boolean base64)
 	{
@@ -26,20 +29,56 @@ public final class PlainServer
 		super.init();
 		auth_rolename.clear();
 		auth_passwd.clear();
+		async_rolename.clear();
+		async_passwd.clear();
 		return this;
 	}
 
 	@Override
 	protected boolean verifyDecodedResponse(ByteArrayRef msg)
+	{
+		if (!parseResponse(msg, false)) return false;
+		boolean is_valid = authenticator.saslAuthenticate(auth_username, auth_passwd);
+		if (is_valid) is_valid = authorise(auth_rolename);
+		return is_valid;
+	}
+
+	@Override
+	protected void verifyDecodedResponse(ByteArrayRef msg, AsyncAuthenticator auth, java.util.concurrent.Executor completer,
+			VerifyCallback cb, Object attachment)
+	{
+		if (!parseResponse(msg, true)) {
+			cb.saslResponseVerified(this, false, attachment);
+			return;
+		}
+		setPendingVerification(cb, attachment);
+		auth.authenticate(auth_username, async_passwd, completer, this, null);
+	}
+
+	@Override
+	public void saslAuthenticated(ByteChars usrnam, boolean is_valid, Object attachment)
+	{
+		if (is_valid) is_valid = authorise(async_rolename);
+		completeVerification(is_valid);
+	}
+
+	// The rolename and password merely reference the msg buffer, unless the copy arg is true, in which case they are copied
+	// into our private async buffers instead.
+	private boolean parseResponse(ByteArrayRef msg, boolean copy)
 	{
 		int dlm1 = ByteOps.indexOf(msg.buffer(), msg.offset(), msg.size(), (byte)0);
 		int dlm2 = (dlm1 == -1 ? -1 : ByteOps.indexOf(msg.buffer(), dlm1+1, msg.size() - (dlm1 - msg.offset() + 1), (byte)0));
 		if (dlm2 == -1) return false;
-		auth_rolename.set(msg.buffer(), msg.offset(), dlm1 - msg.offset()); //authzid
+		int rolelen = dlm1 - msg.offset();
+		int passlen = msg.offset() + msg.size() - dlm2 - 1;
+		if (copy) {
+			async_rolename.populate(msg.buffer(), msg.offset(), rolelen);
+			async_passwd.populate(msg.buffer(), dlm2 + 1, passlen);
+		} else {
+			auth_rolename.set(msg.buffer(), msg.offset(), rolelen); //authzid
+			auth_passwd.set(msg.buffer(), dlm2 + 1, passlen);
+		}
 		auth_username.populate(msg.buffer(), dlm1 + 1, dlm2 - dlm1 - 1); //authcid
-		auth_passwd.set(msg.buffer(), dlm2 + 1, msg.offset() + msg.size() - dlm2 - 1);
-		boolean is_valid = authenticator.saslAuthenticate(auth_username, auth_passwd);
-		if (is_valid) is_valid = authorise(auth_rolename);
-		return is_valid;
+		return true;
 	}
 }
\ No newline at end of file
@@ -51,9 +51,19 @@ public abstract class SaslServer
 	}
 
 
+	public interface VerifyCallback
+	{
+		void saslResponseVerified(SaslServer server, boolean is_valid, Object attachment);
+	}
+
+
 	protected final Authenticator authenticator;
 	protected final ByteChars auth_username = new ByteChars();
 
+	// the caller awaiting the outcome of a non-blocking verifyResponse()
+	private VerifyCallback pending_cb;
+	private Object pending_attachment;
+
 	abstract protected boolean verifyDecodedResponse(ByteArrayRef rspdata);
 
 	public com.grey.base.utils.ByteChars getUser() {return auth_username;}
@@ -66,7 +76,7 @@ public abstract class SaslServer
 	public boolean sendsChallenge() {return false;}
 
 	@Override
-	public SaslServer init() {super.init(); auth_username.clear(); return this;}
+	public SaslServer init() {super.init(); auth_username.clear(); pending_cb = null; pending_attachment = null; return this;}
 
 	// default is to send an empty challenge - override to actually include one
 	public ByteChars setChallenge(ByteChars outbuf) {return outbuf;}
@@ -86,6 +96,50 @@ public abstract class SaslServer
 		return verifyDecodedResponse(msg);
 	}
 
+	/**
+	 * Non-blocking version of verifyResponse(), which consults the authentication backend via the given AsyncAuthenticator
+	 * rather than calling this object's own Authenticator directly.
+	 * <br>
+	 * The callback is invoked by the completer once the backend has replied, or synchronously if the outcome is known without
+	 * consulting the backend. Either way, it is not safe to call init() on this object until the callback has been invoked.
+	 */
+	public final void verifyResponse(ByteArrayRef msg, AsyncAuthenticator auth, java.util.concurrent.Executor completer,
+			VerifyCallback cb, Object attachment)
+	{
+		if (msg.size() != 0) {
+			try {
+				msg = decode(msg);
+			} catch (Throwable ex) {
+				cb.saslResponseVerified(this, false, attachment);
+				return;
+			}
+		}
+		verifyDecodedResponse(msg, auth, completer, cb, attachment);
+	}
+
+	// Mechanisms which consult the backend override this to do so asynchronously, and must copy anything they need to retain
+	// from the msg buffer, as it may be overwritten once this call returns.
+	protected void verifyDecodedResponse(ByteArrayRef msg, AsyncAuthenticator auth, java.util.concurrent.Executor completer,
+			VerifyCallback cb, Object attachment)
+	{
+		cb.saslResponseVerified(this, verifyDecodedResponse(msg), attachment);
+	}
+
+	protected final void setPendingVerification(VerifyCallback cb, Object attachment)
+	{
+		pending_cb = cb;
+		pending_attachment = attachment;
+	}
+
+	protected final void completeVerification(boolean is_valid)
+	{
+		VerifyCallback cb = pending_cb;
+		Object attachment = pending_attachment;
+		pending_cb = null;
+		pending_attachment = null;
+		if (cb != null) cb.saslResponseVerified(this, is_valid, attachment);
+	}
+
 	protected final boolean authorise(ByteChars rolename)
 	{
 		if (rolename == null || rolename.size() == 0) return true;
@@ -36,7 +36,7 @@ public class ArrayRef<T>
 	public final int size() {return ar_len;}
 	public final int offset() {return ar_off;}
 	public final T buffer() {return ar_buf;}
-	public final void setSize(int len) {ar_len = len;}
+	public final void setSize(int len) {ar_len = len; contentsChanged();}
 	private final void setOffset(int off) {ar_off = off;}
 	private final void setBuffer(T buf) {ar_buf = buf;}
 
@@ -80,6 +80,10 @@ public class ArrayRef<T>
 		}
 	}
 
+	// Called whenever this object is repointed or resized, or its contents are modified via this class's own methods.
+	// Subclasses which derive any cached state from the contents can override this to invalidate it.
+	protected void contentsChanged() {}
+
 	// subclasses should override this for efficiency, to avoid doing reflection
 	protected T allocBuffer(int capacity) {
 		if (buffer() == null)
@@ -97,6 +101,7 @@ public class ArrayRef<T>
 
 	public void copyIn(T src_buf, int src_off, int off, int len) {
 		if (len != 0) System.arraycopy(src_buf, src_off, buffer(), offset(off), len);
+		contentsChanged();
 	}
 
 	public void copyIn(T src_buf, int src_off, int len) {
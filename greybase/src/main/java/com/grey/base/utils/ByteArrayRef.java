@@ -8,6 +8,10 @@ public class ByteArrayRef extends ArrayRef<byte[]>
 {
 	private static final Allocator<byte[]> ALLOCATOR = (n) -> (n == 0 ? ByteOps.EMPTYBUF : new byte[n]);
 
+	private boolean hashCaching;
+	private boolean hashValid;
+	private int hashValue;
+
 	public ByteArrayRef() {this(0);}
 	public ByteArrayRef(int cap) {super(cap, ALLOCATOR);}
 	public ByteArrayRef(byte[] src) {this(src, false);}
@@ -17,7 +21,8 @@ public class ByteArrayRef extends ArrayRef<byte[]>
 	public ByteArrayRef(ByteArrayRef src, boolean copy) {this(src, 0, getSize(src), copy);}
 
 	public final int byteAt(int idx) {return buffer()[offset(idx)] & 0xff;} //return Int to handle sign-extension
-	public final void setByte(int idx, int val) {buffer()[offset(idx)] = (byte)val;}
+	public final void setByte(int idx, int val) {buffer()[offset(idx)] = (byte)val; hashValid = false;}
+	public final boolean isHashCaching() {return hashCaching;}
 	public boolean equalsBytes(byte[] arr) {return equalsBytes(arr, 0, totalBufferSize(arr));}
 
 	public int count(int val) {return count(0, val);}
@@ -29,6 +34,8 @@ public class ByteArrayRef extends ArrayRef<byte[]>
 	protected int totalBufferSize(byte[] buf) {return arraySize(buf);}
 	@Override
 	protected byte[] allocBuffer(int cap) {return ALLOCATOR.allocate(cap);}
+	@Override
+	protected void contentsChanged() {hashValid = false;}
 
 	public ByteArrayRef(ByteArrayRef src, int off, int len, boolean copy) {
 		this(getBuffer(src), getOffset(src, off), len, copy);
@@ -38,19 +45,37 @@ public class ByteArrayRef extends ArrayRef<byte[]>
 		super(src, off, len, copy ? ALLOCATOR : null);
 	}
 
-	// Shift-Add-XOR hash - see http://eternallyconfuzzled.com/tuts/algorithms/jsw_tut_hashing.aspx
+	/**
+	 * Enables or disables the caching of this object's hashcode, which is useful for long-lived hash keys that are looked up
+	 * many times.
+	 * <br>
+	 * The cached value is discarded whenever this object is modified via its own methods, but the caller is responsible for
+	 * calling invalidateHash() if it modifies the underlying buffer directly.
+	 */
+	public ByteArrayRef setHashCaching(boolean enable)
+	{
+		hashCaching = enable;
+		hashValid = false;
+		return this;
+	}
+
+	public final void invalidateHash()
+	{
+		hashValid = false;
+	}
+
+	// Processes the bytes a word at a time, and mixes the result so that the low-order bits used by hash tables are well distributed
 	@Override
 	public int hashCode()
 	{
-		int hash = 0;
-		int off = offset();
-		final byte[] buf = buffer();
-		final int lmt = off + size();
-
-		while (off != lmt) {
-			hash ^= ((hash << 5) + (hash >>> 2) + buf[off++]);
+		if (hashCaching) {
+			if (!hashValid) {
+				hashValue = ByteOps.hashCode(buffer(), offset(), size());
+				hashValid = true;
+			}
+			return hashValue;
 		}
-		return hash;
+		return ByteOps.hashCode(buffer(), offset(), size());
 	}
 
 	@Override
@@ -68,6 +68,8 @@ public final class ByteChars
 	public ByteChars set(byte[] src, int off, int len) {return (ByteChars)super.set(src, off, len);}
 	@Override
 	public ByteChars set(byte[] src) {return set(src, 0, arraySize(src));}
+	@Override
+	public ByteChars setHashCaching(boolean enable) {return (ByteChars)super.setHashCaching(enable);}
 
 	public ByteChars(CharSequence src, int off, int len)
 	{
@@ -310,6 +312,7 @@ public final class ByteChars
 		for (int off = offset(); off != lmt; off++) {
 			buf[off] = (byte)Character.toLowerCase(buf[off] & 0xff);
 		}
+		invalidateHash();
 		return this;
 	}
 
@@ -320,6 +323,7 @@ public final class ByteChars
 		for (int off = offset(); off != lmt; off++) {
 			buf[off] = (byte)Character.toUpperCase(buf[off] & 0xff);
 		}
+		invalidateHash();
 		return this;
 	}
 
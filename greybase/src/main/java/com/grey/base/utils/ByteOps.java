@@ -17,6 +17,16 @@ public final class ByteOps
 
 	public static final byte[] EMPTYBUF = new byte[0];
 
+	private static final long HASH_SEED = 0x27d4eb2f165667c5L;
+	private static final long HASH_PRIME1 = 0x9e3779b97f4a7c15L;
+	private static final long HASH_PRIME2 = 0xc2b2ae3d27d4eb4fL;
+	private static final long HASH_PRIME3 = 0x165667b19e3779f9L;
+	static final long SWAR_ONES = 0x0101010101010101L;
+	private static final long SWAR_HIGHBITS = 0x8080808080808080L;
+	private static final long SWAR_LOWBITS = ~SWAR_HIGHBITS;
+	private static final int SWAR_WRAPLEN = 256; //inputs of at least this length are searched via a ByteBuffer - see below
+	private static final byte[] CRLF = new byte[]{'\r', '\n'};
+
 	public static byte[] getBytesUTF16(CharSequence str) {return getBytesUTF16(str, 0, str.length());}
 	public static byte[] getBytesUTF16(CharSequence str, int off, int len) {return getBytesUTF16(str, off, len, null, 0);}
 	public static byte[] getBytesUTF16(CharSequence str, int coff, int clen, byte[] barr, int boff) {return getBytesUTF16(str, null, coff, clen, barr, boff);}
@@ -28,8 +38,14 @@ public final class ByteOps
 	public static int count(byte[] container, byte[] seq) {return count(container, 0, container==null?0:container.length, seq, 0, seq==null?0:seq.length);}
 	public static int indexOf(byte[] container, int val) {return indexOf(container, 0, container==null?0:container.length, val);}
 	public static int indexOf(byte[] container, byte[] seq) {return indexOf(container, 0, container==null?0:container.length, seq, 0, seq==null?0:seq.length);}
+	public static int indexOfCRLF(byte[] container, int coff, int clen) {return indexOf(container, coff, clen, CRLF, 0, CRLF.length);}
 	public static int find(byte[] container, byte[] seq, int soff) {return find(container, 0, container==null?0:container.length, seq, soff);}
 	public static StringBuilder expandByteSize(long size) {return expandByteSize(size, null, false);}
+	public static long hash64(byte[] buf, int off, int len) {return hash64(buf, off, len, false);}
+	public static int hashCode(byte[] buf, int off, int len) {return foldHash(hash64(buf, off, len, false));}
+	public static int hashCodeIgnoreCase(byte[] buf, int off, int len) {return foldHash(hash64(buf, off, len, true));}
+	public static int hashCode(CharSequence str) {return foldHash(hash64(str, false));}
+	public static int hashCodeIgnoreCase(CharSequence str) {return foldHash(hash64(str, true));}
 
 	// only suitable for 8-bit characters that map to bytes 1-to-1
 	public static byte[] getBytes8(CharSequence str)
@@ -108,12 +124,32 @@ public final class ByteOps
 		return true;
 	}
 
+	/*
+	 * The search methods below process the container 8 bytes at a time (SWAR - SIMD Within A Register), by loading each
+	 * 8-byte word into a long and locating all the matching bytes within it in one go, without any per-byte branches.
+	 * Any bytes left over after the final full word are processed one at a time.
+	 * Inputs of at least SWAR_WRAPLEN bytes read their words via a little-endian ByteBuffer wrapper, as on Java 9+ its getLong()
+	 * is compiled into a single load, which makes the search about twice as fast as assembling each word from 8 byte loads via
+	 * getLongLE(). On Java 8 getLong() assembles the word from individual bytes much as getLongLE() does, so the wrapper is
+	 * no faster there, but the cost of allocating it is negligible compared to scanning SWAR_WRAPLEN bytes.
+	 * Shorter inputs allocate nothing. The single-byte searches just process them a byte at a time, as they don't gain anything
+	 * from SWAR without single-load words, while the sequence search still gains from it and reads its words via getLongLE().
+	 * ByteOpsSearchBenchmark (in the test tree) compares the timings.
+	 */
+
 	// take a value argument of int type just to simplify the calling syntax
 	public static int count(int val, byte[] container, int coff, int clen)
 	{
-		byte bval = (byte)(val);
+		final long pattern = SWAR_ONES * (val & 0xFF);
+		final java.nio.ByteBuffer words = wordReader(container, clen);
+		final int wordlmt = (words == null ? coff : coff + (clen & ~7));
+		final int clmt = coff + clen;
 		int cnt = 0;
-		int clmt = coff + clen;
+		while (coff != wordlmt) {
+			cnt += Long.bitCount(zeroBytes(words.getLong(coff) ^ pattern));
+			coff += 8;
+		}
+		final byte bval = (byte)val;
 		while (coff != clmt) {
 			if (container[coff++] == bval) cnt++;
 		}
@@ -137,38 +173,129 @@ public final class ByteOps
 	// take a value argument of int type just to simplify the calling syntax
 	public static int indexOf(byte[] container, int coff, int clen, int val)
 	{
-		byte bval = (byte)(val);
-		int lmt = coff + clen;
-		for (int idx = coff; idx != lmt; idx++) {
+		final long pattern = SWAR_ONES * (val & 0xFF);
+		final java.nio.ByteBuffer words = wordReader(container, clen);
+		final int wordlmt = (words == null ? coff : coff + (clen & ~7));
+		int idx = coff;
+		while (idx != wordlmt) {
+			long matches = zeroBytes(words.getLong(idx) ^ pattern);
+			if (matches != 0) return idx + (Long.numberOfTrailingZeros(matches) >>> 3);
+			idx += 8;
+		}
+		final byte bval = (byte)val;
+		final int lmt = coff + clen;
+		for (; idx != lmt; idx++) {
 			if (container[idx] == bval) return idx;
 		}
 		return -1;
 	}
 
+	/**
+	 * Same as indexOf(byte[], int, int, int) except that upper and lower case ASCII letters are treated as equal.
+	 */
+	public static int indexOfIgnoreCase(byte[] container, int coff, int clen, int val)
+	{
+		final long lowval = toLowerCaseASCII(val & 0xFF);
+		if (lowval == toUpperCaseASCII(lowval)) return indexOf(container, coff, clen, val); //not a letter
+		final long pattern = SWAR_ONES * lowval;
+		final java.nio.ByteBuffer words = wordReader(container, clen);
+		final int wordlmt = (words == null ? coff : coff + (clen & ~7));
+		int idx = coff;
+		while (idx != wordlmt) {
+			long matches = zeroBytes(toLowerCaseASCII(words.getLong(idx)) ^ pattern);
+			if (matches != 0) return idx + (Long.numberOfTrailingZeros(matches) >>> 3);
+			idx += 8;
+		}
+		final int lmt = coff + clen;
+		for (; idx != lmt; idx++) {
+			if (toLowerCaseASCII(container[idx] & 0xFF) == lowval) return idx;
+		}
+		return -1;
+	}
+
 	public static int indexOf(byte[] container, int coff, int clen, byte[] seq, int soff, int slen)
 	{
-		if (slen == 0) return -1;
-		int clmt = coff + clen;
-		while (coff != clmt) {
-			int off1 = coff;
-			coff = indexOf(container, coff, clen, seq[soff]);
-			if (coff == -1) return -1;
-			clen -= (coff - off1);
-			if (clen < slen) return -1;
-			boolean found = true;
-			for (int idx = 0; idx != slen; idx++) {
-				if (container[coff+idx] != seq[soff+idx]) {
-					found = false;
-					break;
-				}
+		if (slen == 0 || slen > clen) return -1;
+		if (slen == 1) return indexOf(container, coff, clen, seq[soff]);
+		return indexOf(false, container, coff, clen, seq, soff, slen);
+	}
+
+	/**
+	 * Same as indexOf(byte[], int, int, byte[], int, int) except that upper and lower case ASCII letters are treated as equal.
+	 */
+	public static int indexOfIgnoreCase(byte[] container, int coff, int clen, byte[] seq, int soff, int slen)
+	{
+		if (slen == 0 || slen > clen) return -1;
+		if (slen == 1) return indexOfIgnoreCase(container, coff, clen, seq[soff]);
+		return indexOf(true, container, coff, clen, seq, soff, slen);
+	}
+
+	// Searches for a sequence of at least 2 bytes, by looking for its first and last bytes at the appropriate distance apart, 8
+	// candidate positions at a time. We only need to compare the rest of the sequence where both of those match, and in the
+	// very common case of a 2-byte sequence (eg. CRLF) there is nothing else to compare.
+	private static int indexOf(boolean nocase, byte[] container, int coff, int clen, byte[] seq, int soff, int slen)
+	{
+		final int lastoff = slen - 1;
+		long firstval = seq[soff] & 0xFF;
+		long lastval = seq[soff + lastoff] & 0xFF;
+		if (nocase) {
+			firstval = toLowerCaseASCII(firstval);
+			lastval = toLowerCaseASCII(lastval);
+		}
+		final long firstpatt = SWAR_ONES * firstval;
+		final long lastpatt = SWAR_ONES * lastval;
+		final int maxpos = coff + clen - slen; //the last possible match position
+		final java.nio.ByteBuffer words = wordReader(container, clen);
+		int pos = coff;
+
+		while (maxpos - pos >= 7) {
+			long w1 = getWord(words, container, pos);
+			long w2 = getWord(words, container, pos + lastoff);
+			if (nocase) {
+				w1 = toLowerCaseASCII(w1);
+				w2 = toLowerCaseASCII(w2);
+			}
+			long matches = zeroBytes(w1 ^ firstpatt) & zeroBytes(w2 ^ lastpatt);
+			while (matches != 0) {
+				int candidate = pos + (Long.numberOfTrailingZeros(matches) >>> 3);
+				if (slen == 2 || matchesAt(nocase, container, candidate + 1, seq, soff + 1, slen - 2)) return candidate;
+				matches &= (matches - 1); //clear lowest match
 			}
-			if (found) return coff;
-			coff++;
-			clen--;
+			pos += 8;
+		}
+		for (; pos <= maxpos; pos++) {
+			if (matchesAt(nocase, container, pos, seq, soff, slen)) return pos;
 		}
 		return -1;
 	}
 
+	private static boolean matchesAt(boolean nocase, byte[] container, int coff, byte[] seq, int soff, int len)
+	{
+		if (nocase) return equalsIgnoreCase(container, coff, seq, soff, len);
+		return cmp(container, coff, seq, soff, len);
+	}
+
+	// Returns null if the input is too short to be worth allocating a ByteBuffer for, in which case getWord() uses getLongLE()
+	private static java.nio.ByteBuffer wordReader(byte[] buf, int len)
+	{
+		if (len < SWAR_WRAPLEN) return null;
+		return java.nio.ByteBuffer.wrap(buf).order(java.nio.ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static long getWord(java.nio.ByteBuffer words, byte[] buf, int off)
+	{
+		return (words == null ? getLongLE(buf, off) : words.getLong(off));
+	}
+
+	// Returns a word with the top bit set in each byte of the input word which was zero, and all other bits clear.
+	// Unlike the better known (x - 0x01..01) & ~x & 0x80..80 formula, this is exact for every byte, as it cannot generate borrows
+	// across byte boundaries, so the result can be used to count matches as well as to locate the first one.
+	static long zeroBytes(long word)
+	{
+		long tmp = (word & SWAR_LOWBITS) + SWAR_LOWBITS; //top bit of each byte is now set if its low 7 bits were non-zero
+		return ~(tmp | word | SWAR_LOWBITS);
+	}
+
 	/*
 	 * Finds an occurence of the specified sequence in the specified data buffer, including cases
 	 * where the beginning of the sequence was found in a previous data buffer and allowing us to
@@ -183,6 +310,11 @@ public final class ByteOps
 		if (seq == null || seq.length == 0) return soff;
 		int clmt = coff + clen;
 		while (coff != clmt) {
+			if (soff == 0) {
+				// not in the middle of a partial match, so skip ahead to the next potential start of one
+				coff = indexOf(container, coff, clmt - coff, seq[0]);
+				if (coff == -1) return 0;
+			}
 			byte val = container[coff++];
 			if (val == seq[soff]) {
 				if (++soff == seq.length) {
@@ -246,6 +378,156 @@ public final class ByteOps
 		return encodeInt(intval & ByteOps.INTMASK, len);
 	}
 
+	// Reads 8 bytes as a little-endian long, for processing byte arrays a word at a time.
+	// The individual byte loads are independent of each other, so this is much cheaper than the equivalent 8 iterations of a
+	// per-byte loop in which each step depends on the previous one.
+	public static long getLongLE(byte[] buf, int off)
+	{
+		return (buf[off] & 0xFFL)
+				| ((buf[off+1] & 0xFFL) << 8)
+				| ((buf[off+2] & 0xFFL) << 16)
+				| ((buf[off+3] & 0xFFL) << 24)
+				| ((buf[off+4] & 0xFFL) << 32)
+				| ((buf[off+5] & 0xFFL) << 40)
+				| ((buf[off+6] & 0xFFL) << 48)
+				| ((buf[off+7] & 0xFFL) << 56);
+	}
+
+	/**
+	 * Returns a well distributed 64-bit hash of the given bytes, consuming them 8 at a time.
+	 * This is intended for data structures such as Bloom filters which need more hash bits than hashCode() provides,
+	 * and is not a cryptographic hash.
+	 * <br>
+	 * If ignoreCase is true, ASCII letters are hashed as if they were lower case.
+	 */
+	public static long hash64(byte[] buf, int off, int len, boolean ignoreCase)
+	{
+		long hash = HASH_SEED ^ (len * HASH_PRIME1);
+		final int lmt = off + (len & ~7);
+
+		while (off != lmt) {
+			long k = getLongLE(buf, off);
+			if (ignoreCase) k = toLowerCaseASCII(k);
+			hash = hashWord(hash, k);
+			off += 8;
+		}
+		if ((len & 7) != 0) {
+			long k = 0;
+			for (int shift = 0; off != lmt + (len & 7); shift += 8) {
+				k |= (buf[off++] & 0xFFL) << shift;
+			}
+			if (ignoreCase) k = toLowerCaseASCII(k);
+			hash ^= Long.rotateLeft(k * HASH_PRIME2, 31) * HASH_PRIME1;
+		}
+		return mix64(hash);
+	}
+
+	/**
+	 * Returns the same hash for a sequence of 8-bit chars as hash64(byte[], int, int, boolean) does for the equivalent bytes,
+	 * so that a ByteChars and a String with the same contents can be matched.
+	 */
+	public static long hash64(CharSequence str, boolean ignoreCase)
+	{
+		final int len = str.length();
+		long hash = HASH_SEED ^ (len * HASH_PRIME1);
+		int off = 0;
+
+		while (off != len) {
+			long k = 0;
+			int shift = 0;
+			while (shift != 64 && off != len) {
+				k |= (str.charAt(off++) & 0xFFL) << shift;
+				shift += 8;
+			}
+			if (ignoreCase) k = toLowerCaseASCII(k);
+			if (shift == 64) {
+				hash = hashWord(hash, k);
+			} else {
+				hash ^= Long.rotateLeft(k * HASH_PRIME2, 31) * HASH_PRIME1;
+			}
+		}
+		return mix64(hash);
+	}
+
+	private static long hashWord(long hash, long k)
+	{
+		hash ^= Long.rotateLeft(k * HASH_PRIME2, 31) * HASH_PRIME1;
+		return Long.rotateLeft(hash, 27) * HASH_PRIME1 + HASH_PRIME3;
+	}
+
+	// Reduces a 64-bit hash to a hashCode() value, in which the low-order bits (as used by hash tables) depend on all 64 bits
+	private static int foldHash(long hash)
+	{
+		return (int)(hash ^ (hash >>> 32));
+	}
+
+	/**
+	 * Converts any upper-case ASCII letters among the 8 bytes packed into the given long to lower case, and leaves the
+	 * other bytes unchanged.
+	 * This operates on all 8 bytes at once, without testing or branching on the individual bytes.
+	 */
+	public static long toLowerCaseASCII(long word)
+	{
+		long heptets = word & ~SWAR_HIGHBITS; //clear the top bit of each byte, so the additions below can't carry into the next byte
+		long ge_A = heptets + (SWAR_ONES * (0x80 - 'A')); //top bit of each byte is now set if it was >= 'A'
+		long gt_Z = heptets + (SWAR_ONES * (0x80 - 'Z' - 1)); //top bit of each byte is now set if it was > 'Z'
+		long upper = ge_A & ~gt_Z & ~word & SWAR_HIGHBITS; //top bit of each byte is now set if it was an upper-case letter
+		return word | (upper >>> 2); //0x80 >>> 2 = 0x20, which is the lower-case bit
+	}
+
+	/**
+	 * The converse of toLowerCaseASCII()
+	 */
+	public static long toUpperCaseASCII(long word)
+	{
+		long heptets = word & ~SWAR_HIGHBITS;
+		long ge_a = heptets + (SWAR_ONES * (0x80 - 'a'));
+		long gt_z = heptets + (SWAR_ONES * (0x80 - 'z' - 1));
+		long lower = ge_a & ~gt_z & ~word & SWAR_HIGHBITS;
+		return word & ~(lower >>> 2);
+	}
+
+	/**
+	 * Compares two byte sequences of the same length, treating upper and lower case ASCII letters as equal.
+	 * Processes the input 8 bytes at a time.
+	 */
+	public static boolean equalsIgnoreCase(byte[] buf1, int off1, byte[] buf2, int off2, int len)
+	{
+		final int lmt = off1 + (len & ~7);
+		while (off1 != lmt) {
+			long w1 = getLongLE(buf1, off1);
+			long w2 = getLongLE(buf2, off2);
+			if (w1 != w2 && toLowerCaseASCII(w1) != toLowerCaseASCII(w2)) return false;
+			off1 += 8;
+			off2 += 8;
+		}
+		final int lmt2 = lmt + (len & 7);
+		while (off1 != lmt2) {
+			long b1 = buf1[off1++] & 0xFFL;
+			long b2 = buf2[off2++] & 0xFFL;
+			if (b1 != b2 && toLowerCaseASCII(b1) != toLowerCaseASCII(b2)) return false;
+		}
+		return true;
+	}
+
+	// Hashes a primitive key. The key is seeded first, as mix64() maps zero to zero.
+	public static long hash64(long key)
+	{
+		return mix64(key ^ HASH_SEED);
+	}
+
+	// This is the 64-bit finaliser from MurmurHash3, which turns keys with poorly distributed bits (eg. sequential integers)
+	// into well distributed hashes.
+	public static long mix64(long val)
+	{
+		val ^= (val >>> 33);
+		val *= 0xff51afd7ed558ccdL;
+		val ^= (val >>> 33);
+		val *= 0xc4ceb9fe1a85ec53L;
+		val ^= (val >>> 33);
+		return val;
+	}
+
 	public static long parseByteSize(CharSequence str)
 	{
 		return parseByteSize(str, 0, str == null ? 0 : str.length());
@@ -45,6 +45,20 @@ public class FileOps
 		public boolean processLine(String line, int line_number, int mode, Object cbdata) throws Exception;
 	}
 
+	/**
+	 * Processes one chunk of the records passed to scanRecords(), and reduces the per-chunk results to a single result.
+	 * Both methods are called in the fork-join pool threads, so they must be thread-safe, but any state which is local to one chunk
+	 * (such as the iterator) can be used without synchronisation.
+	 */
+	public interface ChunkHandler<T>
+	{
+		T processChunk(RecordIterator records);
+		/**
+		 * The r1 result is from the chunk which precedes that of r2, so order-sensitive results can be combined correctly.
+		 */
+		T combine(T r1, T r2);
+	}
+
 	private static class PathComparator_ByFilename
 		implements java.util.Comparator<Path>, java.io.Serializable
 	{
@@ -265,6 +279,81 @@ public class FileOps
 		return readTextLines(strm, consumer, bufsiz, cmnt, mode, cbdata);
 	}
 
+	/**
+	 * Maps the whole file into memory as a read-only buffer, which avoids reading it into the heap (and the copying involved
+	 * in doing so) and allows the OS to page it in and out on demand.
+	 * <br>
+	 * The mapping remains valid after this method returns, and is released when the buffer is garbage-collected.
+	 * Files larger than 2GB cannot be mapped in one go, so see {@link #mapFile(Path, long, long)}.
+	 */
+	public static java.nio.MappedByteBuffer mapFile(Path fh) throws java.io.IOException
+	{
+		return mapFile(fh, 0, -1);
+	}
+
+	/**
+	 * Maps the specified region of a file into memory as a read-only buffer. A len of -1 means up to the end of the file.
+	 */
+	public static java.nio.MappedByteBuffer mapFile(Path fh, long off, long len) throws java.io.IOException
+	{
+		try (java.nio.channels.FileChannel chan = java.nio.channels.FileChannel.open(fh, OPENOPTS_READ)) {
+			if (len == -1) len = chan.size() - off;
+			if (off < 0 || len < 0 || len > Integer.MAX_VALUE) {
+				throw new java.io.IOException("Cannot map region="+off+"/"+len+" of file="+fh+" with size="+chan.size());
+			}
+			return chan.map(java.nio.channels.FileChannel.MapMode.READ_ONLY, off, len);
+		}
+	}
+
+	/**
+	 * Returns an iterator over the lines of the given file, which is mapped into memory rather than read.
+	 */
+	public static RecordIterator lines(Path fh) throws java.io.IOException
+	{
+		return RecordIterator.lines(mapFile(fh));
+	}
+
+	/**
+	 * Maps the given file into memory and scans its records in parallel. See {@link #scanRecords(java.nio.ByteBuffer, byte, boolean, int, java.util.concurrent.ForkJoinPool, ChunkHandler)}
+	 */
+	public static <T> T scanRecords(Path fh, byte dlm, boolean stripCR, int chunksiz,
+			java.util.concurrent.ForkJoinPool pool, ChunkHandler<T> handler) throws java.io.IOException
+	{
+		return scanRecords(mapFile(fh), dlm, stripCR, chunksiz, pool, handler);
+	}
+
+	/**
+	 * Splits the buffer's remaining content into chunks of roughly the given size, and hands each chunk to the handler (via an
+	 * iterator over its records) in the threads of the given fork-join pool. The per-chunk results are then combined in order,
+	 * and the final result is returned.
+	 * <br>
+	 * The chunk boundaries are moved forward to the end of the record in which they would otherwise fall, so no record ever
+	 * spans two chunks. There is always at least one chunk, even if the buffer is empty.
+	 * <br>
+	 * The pool may be null, to use the common pool. The buffer's position and limit are not modified.
+	 */
+	public static <T> T scanRecords(java.nio.ByteBuffer buf, byte dlm, boolean stripCR, int chunksiz,
+			java.util.concurrent.ForkJoinPool pool, ChunkHandler<T> handler)
+	{
+		if (chunksiz <= 0) throw new IllegalArgumentException("Invalid chunk size="+chunksiz);
+		final int lmt = buf.limit();
+		final com.grey.base.collections.NumberList boundaries = new com.grey.base.collections.NumberList();
+		int off = buf.position();
+		boundaries.append(off);
+		while (off != lmt) {
+			if (lmt - off <= chunksiz) {
+				off = lmt;
+			} else {
+				off = NIOBuffers.indexOf(buf, off + chunksiz - 1, lmt, dlm);
+				off = (off == -1 ? lmt : off + 1);
+			}
+			boundaries.append(off);
+		}
+		if (boundaries.size() == 1) boundaries.append(off); //empty buffer, so create one empty chunk
+		if (pool == null) pool = java.util.concurrent.ForkJoinPool.commonPool();
+		return pool.invoke(new ScanTask<T>(buf, boundaries.buffer(), 0, boundaries.size() - 1, dlm, stripCR, handler));
+	}
+
 	public static long copyFile(Path srcfile, Path dstfile) throws java.io.IOException
 	{
 		java.nio.channels.FileChannel inchan = java.nio.channels.FileChannel.open(srcfile, OPENOPTS_READ);
@@ -553,4 +642,44 @@ public class FileOps
 		if (pos <= pos_slash) return null;
 		return filename.substring(pos+1);
 	}
-}
\ No newline at end of file
+
+
+	// Processes the chunks from index lo (inclusive) to hi (exclusive), by recursively splitting the range in two
+	private static final class ScanTask<T>
+		extends java.util.concurrent.RecursiveTask<T>
+	{
+		private static final long serialVersionUID = 1L;
+		private final java.nio.ByteBuffer buf;
+		private final int[] boundaries;
+		private final int lo;
+		private final int hi;
+		private final byte dlm;
+		private final boolean stripCR;
+		private final ChunkHandler<T> handler;
+
+		ScanTask(java.nio.ByteBuffer buf, int[] boundaries, int lo, int hi, byte dlm, boolean stripCR, ChunkHandler<T> handler) {
+			this.buf = buf;
+			this.boundaries = boundaries;
+			this.lo = lo;
+			this.hi = hi;
+			this.dlm = dlm;
+			this.stripCR = stripCR;
+			this.handler = handler;
+		}
+
+		@Override
+		protected T compute() {
+			if (hi - lo == 1) {
+				RecordIterator records = new RecordIterator(buf, boundaries[lo], boundaries[hi], dlm, stripCR);
+				return handler.processChunk(records);
+			}
+			int mid = (lo + hi) >>> 1;
+			ScanTask<T> left = new ScanTask<T>(buf, boundaries, lo, mid, dlm, stripCR, handler);
+			ScanTask<T> right = new ScanTask<T>(buf, boundaries, mid, hi, dlm, stripCR, handler);
+			left.fork();
+			T r2 = right.compute();
+			T r1 = left.join();
+			return handler.combine(r1, r2);
+		}
+	}
+}
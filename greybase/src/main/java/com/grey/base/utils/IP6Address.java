@@ -0,0 +1,399 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.base.utils;
+
+/**
+ * A mutable IPv6 address, held as a pair of longs (the high and low order 64 bits, in network order) in the same way as
+ * {@link com.grey.base.collections.IPPrefixTable}.
+ * <br>
+ * This is the IPv6 counterpart of the primitive ints which the {@link IP} class uses to represent IPv4 addresses, and it allows
+ * IPv6 addresses to be parsed, formatted, compared and hashed without creating any InetAddress objects (or any other garbage).
+ * IPv4 addresses can be held in their IPv4-mapped form (ie. ::ffff:a.b.c.d), so that both families can share the one key type.
+ * <br>
+ * Addresses are formatted in the canonical text form of RFC-5952, ie. lower-case hex with no leading zeroes, the longest run of
+ * two or more zero groups compressed to "::", and IPv4-mapped addresses in mixed notation.
+ * <p>
+ * Being mutable, instances are intended to be recycled by their owners, and the hashCode() of an instance that is being used as a
+ * map key must obviously not be modified. See {@link com.grey.base.collections.HashedMapIP6Key} for a map which holds the address
+ * values themselves, rather than instances of this class.
+ */
+public final class IP6Address
+	implements Comparable<IP6Address>
+{
+	public static final int MAXCHARS = 45; //max length of the text form, eg. ffff:ffff:ffff:ffff:ffff:ffff:255.255.255.255
+
+	private static final int GROUPS = 8;
+	private static final int GROUPBITS = 16;
+	private static final long MAPPED_PREFIX = 0xffffL << 32; //the low-order long of an IPv4-mapped address, minus the IPv4 part
+	private static final char[] HEXDIGITS = "0123456789abcdef".toCharArray();
+
+	private long hi;
+	private long lo;
+
+	public IP6Address() {}
+	public IP6Address(long hi, long lo) {set(hi, lo);}
+	public IP6Address(IP6Address addr) {set(addr);}
+
+	public long getHigh() {return hi;}
+	public long getLow() {return lo;}
+	public IP6Address set(IP6Address addr) {return set(addr.hi, addr.lo);}
+	public IP6Address clear() {return set(0, 0);}
+	public boolean isUnspecified() {return (hi == 0 && lo == 0);}
+	public boolean isLoopback() {return (hi == 0 && lo == 1);}
+	public boolean isMappedIP4() {return (hi == 0 && (lo & ~0xffffffffL) == MAPPED_PREFIX);}
+	public boolean equals(long ahi, long alo) {return (hi == ahi && lo == alo);}
+	public boolean parse(CharSequence cs) {return parse(cs, 0, cs.length());}
+	public byte[] toBytes() {return toBytes(null, 0);}
+	public java.net.InetAddress toInetAddress() {return toInetAddress(null);}
+
+	public IP6Address set(long hi, long lo)
+	{
+		this.hi = hi;
+		this.lo = lo;
+		return this;
+	}
+
+	/**
+	 * Sets this to the IPv4-mapped form of the given IPv4 address.
+	 */
+	public IP6Address setMappedIP4(int ip)
+	{
+		return set(0, MAPPED_PREFIX | (ip & 0xffffffffL));
+	}
+
+	/**
+	 * Returns the IPv4 address embedded in an IPv4-mapped address, or zero (ie. 0.0.0.0) if this is not one.
+	 */
+	public int getMappedIP4()
+	{
+		return (isMappedIP4() ? (int)lo : 0);
+	}
+
+	/**
+	 * Sets this to the 16-byte address (in network order) at the given offset.
+	 */
+	public IP6Address set(byte[] netaddr, int off)
+	{
+		return set(ByteOps.decodeLong(netaddr, off, 8), ByteOps.decodeLong(netaddr, off + 8, 8));
+	}
+
+	/**
+	 * Sets this to the given address, converting IPv4 addresses to their IPv4-mapped form.
+	 * <br>
+	 * Note that the JDK allocates a new byte array to hold the address every time we read it, so this is not garbage-free.
+	 */
+	public IP6Address set(java.net.InetAddress jdkip)
+	{
+		if (jdkip instanceof java.net.Inet6Address) return set(jdkip.getAddress(), 0);
+		return setMappedIP4(IP.convertIP(jdkip));
+	}
+
+	/**
+	 * Writes this address in network order to the given buffer, which is allocated if null.
+	 */
+	public byte[] toBytes(byte[] netaddr, int off)
+	{
+		if (netaddr == null) {
+			netaddr = new byte[IP.IPV6ADDR_OCTETS];
+			off = 0;
+		}
+		ByteOps.encodeInt(hi, netaddr, off, 8);
+		ByteOps.encodeInt(lo, netaddr, off + 8, 8);
+		return netaddr;
+	}
+
+	/**
+	 * Beware that the JDK converts IPv4-mapped addresses to an Inet4Address.
+	 * The workbuf parameter may be null, but if not it must be exactly IPV6ADDR_OCTETS in size.
+	 */
+	public java.net.InetAddress toInetAddress(byte[] workbuf)
+	{
+		workbuf = toBytes(workbuf, 0);
+		try {
+			return java.net.InetAddress.getByAddress(workbuf);
+		} catch (Exception ex) {
+			throw new IllegalArgumentException("Converting IPv6="+this+" in bufsiz="+workbuf.length);
+		}
+	}
+
+	/**
+	 * Parses the text form of an IPv6 address, including the "::" abbreviation and an embedded dotted IPv4 address in the final
+	 * 32 bits.
+	 * Zone IDs (eg. fe80::1%eth0) and enclosing brackets are not accepted.
+	 * <br>
+	 * This can be passed a ByteChars to parse addresses directly from a network buffer.
+	 * @return False if the input is not a valid IPv6 address, in which case this object is left unchanged.
+	 */
+	public boolean parse(CharSequence cs, int off, int len)
+	{
+		final int lmt = off + len;
+		long ahi = 0;
+		long alo = 0;
+		int grpcnt = 0;
+		int dcgrp = -1; //the number of groups which preceded the "::"
+		long ip4 = -1; //embedded IPv4 address, if any
+		int pos = off;
+
+		if (len > 1 && cs.charAt(off) == ':') {
+			if (cs.charAt(off+1) != ':') return false;
+			dcgrp = 0;
+			pos += 2;
+		}
+
+		while (pos != lmt) {
+			final int start = pos;
+			long grpval = 0;
+			while (pos != lmt) {
+				int digit = hexDigit(cs.charAt(pos));
+				if (digit == -1) break;
+				grpval = (grpval << 4) + digit;
+				pos++;
+			}
+			if (pos != lmt && cs.charAt(pos) == '.') {
+				// the rest must be an embedded IPv4 address, occupying the final 2 groups
+				if (grpcnt > GROUPS - 2) return false;
+				ip4 = parseDottedIP(cs, start, lmt);
+				if (ip4 == -1) return false;
+				grpcnt += 2; //but we hold it aside, as it's already in its final position
+				break;
+			}
+			if (pos == start || pos - start > 4 || grpcnt == GROUPS) return false;
+			final int shift = (GROUPS/2 - 1 - (grpcnt & 3)) * GROUPBITS;
+			if (grpcnt < GROUPS/2) {
+				ahi |= grpval << shift;
+			} else {
+				alo |= grpval << shift;
+			}
+			grpcnt++;
+			if (pos == lmt) break;
+			if (cs.charAt(pos++) != ':' || pos == lmt) return false; //also rejects a trailing single colon
+			if (cs.charAt(pos) == ':') {
+				if (dcgrp != -1) return false;
+				dcgrp = grpcnt;
+				pos++;
+			}
+		}
+
+		if (dcgrp == -1) {
+			if (grpcnt != GROUPS) return false;
+		} else {
+			if (grpcnt == GROUPS) return false; //"::" has to stand for at least one group
+			// Move the groups that followed the "::" along to the end of the address (or to just before the IPv4 part). We know
+			// where they are, because the groups that came before the "::" are confined to the leading dcgrp groups.
+			final int headbits = dcgrp * GROUPBITS;
+			final long headhi = (headbits >= 64 ? ahi : ahi & ~(-1L >>> headbits));
+			final long headlo = (headbits > 64 ? alo & ~(-1L >>> (headbits - 64)) : 0);
+			final long tailhi = ahi ^ headhi;
+			final long taillo = alo ^ headlo;
+			final int shift = (GROUPS - grpcnt) * GROUPBITS;
+			if (shift >= 64) {
+				ahi = headhi;
+				alo = headlo | (tailhi >>> (shift - 64));
+			} else {
+				ahi = headhi | (tailhi >>> shift);
+				alo = headlo | (taillo >>> shift) | (tailhi << (64 - shift));
+			}
+		}
+		if (ip4 != -1) alo |= ip4;
+		set(ahi, alo);
+		return true;
+	}
+
+	/**
+	 * Appends the canonical text form of this address to the given ByteChars, without any intermediate objects.
+	 */
+	public ByteChars appendTo(ByteChars bc)
+	{
+		bc.ensureSpareCapacity(MAXCHARS);
+		appendTo(bc, null);
+		return bc;
+	}
+
+	/**
+	 * Appends the canonical text form of this address to the given StringBuilder, which is allocated if null.
+	 */
+	public StringBuilder appendTo(StringBuilder sb)
+	{
+		if (sb == null) sb = new StringBuilder(MAXCHARS);
+		appendTo(null, sb);
+		return sb;
+	}
+
+	/**
+	 * Appends the reverse-lookup domain of this address, as used in PTR queries (ie. 32 nibbles under ip6.arpa).
+	 */
+	public StringBuilder appendArpaDomain(StringBuilder sb)
+	{
+		if (sb == null) sb = new StringBuilder(80);
+		for (int shift = 0; shift != 64; shift += 4) {
+			sb.append(HEXDIGITS[(int)(lo >>> shift) & 0xf]).append('.');
+		}
+		for (int shift = 0; shift != 64; shift += 4) {
+			sb.append(HEXDIGITS[(int)(hi >>> shift) & 0xf]).append('.');
+		}
+		return sb.append("ip6.arpa");
+	}
+
+	// Exactly one of bc and sb is non-null
+	private void appendTo(ByteChars bc, StringBuilder sb)
+	{
+		if (isMappedIP4()) {
+			append("::ffff:", bc, sb);
+			int ip4 = (int)lo;
+			for (int shift = 24; shift >= 0; shift -= 8) {
+				appendDecimal((ip4 >>> shift) & 0xff, bc, sb);
+				if (shift != 0) append('.', bc, sb);
+			}
+			return;
+		}
+
+		// find the longest run of zero groups, which we only compress if it spans at least two groups
+		int zstart = -1;
+		int zlen = 1;
+		for (int grp = 0; grp != GROUPS; grp++) {
+			if (getGroup(grp) != 0) continue;
+			int end = grp + 1;
+			while (end != GROUPS && getGroup(end) == 0) end++;
+			if (end - grp > zlen) {
+				zstart = grp;
+				zlen = end - grp;
+			}
+			grp = end - 1;
+		}
+		final int zend = (zstart == -1 ? -1 : zstart + zlen);
+
+		for (int grp = 0; grp != GROUPS; grp++) {
+			if (grp == zstart) {
+				append("::", bc, sb);
+				grp = zend - 1;
+				continue;
+			}
+			if (grp != 0 && grp != zend) append(':', bc, sb);
+			int grpval = getGroup(grp);
+			boolean started = false;
+			for (int shift = 12; shift >= 0; shift -= 4) {
+				int nibble = (grpval >>> shift) & 0xf;
+				if (nibble == 0 && !started && shift != 0) continue;
+				append(HEXDIGITS[nibble], bc, sb);
+				started = true;
+			}
+		}
+	}
+
+	private int getGroup(int grp)
+	{
+		long val = (grp < GROUPS/2 ? hi : lo);
+		return (int)(val >>> ((GROUPS/2 - 1 - (grp & 3)) * GROUPBITS)) & 0xffff;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return hash(hi, lo);
+	}
+
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (obj == this) return true;
+		if (!(obj instanceof IP6Address)) return false;
+		IP6Address addr = (IP6Address)obj;
+		return equals(addr.hi, addr.lo);
+	}
+
+	// Orders addresses numerically, as unsigned 128-bit values
+	@Override
+	public int compareTo(IP6Address addr)
+	{
+		int cmp = Long.compareUnsigned(hi, addr.hi);
+		if (cmp == 0) cmp = Long.compareUnsigned(lo, addr.lo);
+		return cmp;
+	}
+
+	@Override
+	public String toString()
+	{
+		return appendTo((StringBuilder)null).toString();
+	}
+
+	/**
+	 * Mixes all 128 bits of an address into a 32-bit hash code.
+	 * Addresses within a subnet often differ only in their low-order bits, or only in their high-order ones, so we can't simply
+	 * fold the two halves together.
+	 */
+	public static int hash(long hi, long lo)
+	{
+		long h = (hi * 0x9e3779b97f4a7c15L) ^ lo;
+		h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+		h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		return (int)(h ^ (h >>> 33));
+	}
+
+	/**
+	 * Convenience method which parses the given text into a new instance.
+	 * @throws IllegalArgumentException If the text is not a valid IPv6 address
+	 */
+	public static IP6Address valueOf(CharSequence cs)
+	{
+		IP6Address addr = new IP6Address();
+		if (!addr.parse(cs)) throw new IllegalArgumentException("Invalid IPv6 address="+cs);
+		return addr;
+	}
+
+	// Returns -1 if the text from off to lmt is not a strict dotted IPv4 address, else the address as an unsigned 32-bit value
+	private static long parseDottedIP(CharSequence cs, int off, int lmt)
+	{
+		long ip = 0;
+		int octets = 0;
+		int pos = off;
+		while (pos != lmt) {
+			final int start = pos;
+			int val = 0;
+			while (pos != lmt) {
+				char ch = cs.charAt(pos);
+				if (ch < '0' || ch > '9') break;
+				val = (val * 10) + (ch - '0');
+				pos++;
+			}
+			if (pos == start || pos - start > 3 || val > 255 || octets == IP.IPADDR_OCTETS) return -1;
+			ip = (ip << 8) | val;
+			octets++;
+			if (pos == lmt) break;
+			if (cs.charAt(pos++) != '.' || pos == lmt) return -1;
+		}
+		return (octets == IP.IPADDR_OCTETS ? ip : -1);
+	}
+
+	private static int hexDigit(char ch)
+	{
+		if (ch >= '0' && ch <= '9') return ch - '0';
+		if (ch >= 'a' && ch <= 'f') return ch - 'a' + 10;
+		if (ch >= 'A' && ch <= 'F') return ch - 'A' + 10;
+		return -1;
+	}
+
+	private static void append(char ch, ByteChars bc, StringBuilder sb)
+	{
+		if (bc == null) {
+			sb.append(ch);
+		} else {
+			bc.append(ch);
+		}
+	}
+
+	private static void append(String str, ByteChars bc, StringBuilder sb)
+	{
+		for (int idx = 0; idx != str.length(); idx++) {
+			append(str.charAt(idx), bc, sb);
+		}
+	}
+
+	private static void appendDecimal(int val, ByteChars bc, StringBuilder sb)
+	{
+		if (val >= 100) append((char)('0' + (val / 100)), bc, sb);
+		if (val >= 10) append((char)('0' + ((val / 10) % 10)), bc, sb);
+		append((char)('0' + (val % 10)), bc, sb);
+	}
+}
@@ -195,6 +195,34 @@ public class NIOBuffers
 		return nbytes;
 	}
 
+	/**
+	 * Returns the index of the first occurrence of the given byte value in the specified region of the buffer, or -1 if not found.
+	 * The region is specified in absolute terms, and the buffer's position and limit are ignored, and not modified.
+	 * This works on direct and memory-mapped buffers as well as heap ones.
+	 */
+	public static int indexOf(java.nio.ByteBuffer buf, int off, int lmt, int val)
+	{
+		if (buf.hasArray()) {
+			final int base = buf.arrayOffset();
+			int pos = ByteOps.indexOf(buf.array(), base + off, lmt - off, val);
+			return (pos == -1 ? -1 : pos - base);
+		}
+		final long pattern = ByteOps.SWAR_ONES * (val & 0xFF);
+		final boolean bigendian = (buf.order() == java.nio.ByteOrder.BIG_ENDIAN);
+		final int wordlmt = off + ((lmt - off) & ~7);
+		int idx = off;
+		while (idx != wordlmt) {
+			long matches = ByteOps.zeroBytes(buf.getLong(idx) ^ pattern);
+			if (matches != 0) return idx + ((bigendian ? Long.numberOfLeadingZeros(matches) : Long.numberOfTrailingZeros(matches)) >>> 3);
+			idx += 8;
+		}
+		final byte bval = (byte)val;
+		for (; idx != lmt; idx++) {
+			if (buf.get(idx) == bval) return idx;
+		}
+		return -1;
+	}
+
 	public static java.nio.charset.CharsetEncoder getEncoder(String charset)
 	{
 		return java.nio.charset.Charset.forName(charset).newEncoder();
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.base.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Iterates over the delimiter-terminated records (eg. lines of text) in a ByteBuffer, without copying them.
+ * <br>
+ * This is intended for scanning large files which have been mapped into memory by {@link FileOps#mapFile(java.nio.file.Path)},
+ * but it works on any ByteBuffer. Each call to next() simply locates the next delimiter, and the current record is then exposed
+ * as an offset and length within the buffer, or via getRecord() as a view buffer whose position and limit frame the record.
+ * That view is the same object every time, so iterating over a file of any size generates no garbage.
+ * <br>
+ * The delimiter is not included in the record, and neither is a preceding CR if CR-stripping is enabled, so that line iteration
+ * handles both LF and CRLF line endings. A final record with no delimiter is still returned, but a trailing delimiter does not
+ * give rise to an empty final record.
+ * <p>
+ * The iterator does not modify the position or limit of the buffer it was constructed from, so multiple iterators can scan
+ * different regions of a buffer concurrently (see {@link FileOps#scanRecords(ByteBuffer, byte, boolean, int, java.util.concurrent.ForkJoinPool, FileOps.ChunkHandler)}).
+ * Each individual iterator is single-threaded however.
+ */
+public final class RecordIterator
+{
+	private final ByteBuffer buf; //our own duplicate of the source buffer
+	private final ByteBuffer view;
+	private final byte dlm;
+	private final boolean stripCR;
+	private final int startpos;
+	private final int lmt;
+
+	private int pos; //where the search for the next record begins
+	private int recoff;
+	private int reclen;
+	private int recnum;
+
+	public int getOffset() {return recoff;}
+	public int getLength() {return reclen;}
+	public int getRecordNumber() {return recnum;}
+	public byte getDelimiter() {return dlm;}
+
+	/**
+	 * Returns an iterator over the lines of text between the buffer's current position and its limit.
+	 */
+	public static RecordIterator lines(ByteBuffer src) {return new RecordIterator(src, (byte)'\n', true);}
+
+	public RecordIterator(ByteBuffer src, byte dlm, boolean stripCR) {this(src, src.position(), src.limit(), dlm, stripCR);}
+
+	/**
+	 * Iterates over the records in the region of the source buffer from off (inclusive) to lmt (exclusive), regardless of its
+	 * current position and limit.
+	 */
+	public RecordIterator(ByteBuffer src, int off, int lmt, byte dlm, boolean stripCR)
+	{
+		if (off < 0 || off > lmt || lmt > src.capacity()) throw new IllegalArgumentException("Invalid region="+off+"/"+lmt+" in buffer="+src);
+		this.buf = src.duplicate();
+		this.view = src.duplicate();
+		this.startpos = off;
+		this.lmt = lmt;
+		this.dlm = dlm;
+		this.stripCR = stripCR;
+		reset();
+	}
+
+	public RecordIterator reset()
+	{
+		pos = startpos;
+		recoff = startpos;
+		reclen = 0;
+		recnum = 0;
+		return this;
+	}
+
+	/**
+	 * Advances to the next record.
+	 * @return False if there are no more records.
+	 */
+	public boolean next()
+	{
+		if (pos == lmt) return false;
+		int end = NIOBuffers.indexOf(buf, pos, lmt, dlm);
+		recoff = pos;
+		if (end == -1) {
+			end = lmt;
+			pos = lmt;
+		} else {
+			pos = end + 1;
+		}
+		reclen = end - recoff;
+		if (stripCR && reclen != 0 && buf.get(end - 1) == '\r') reclen--;
+		recnum++;
+		return true;
+	}
+
+	/**
+	 * Returns a view of the current record, positioned at its start and limited at its end. The view shares the underlying
+	 * buffer's content, but the caller is free to modify its position and limit, as next() resets them.
+	 * <br>
+	 * The same view object is returned on every call.
+	 */
+	public ByteBuffer getRecord()
+	{
+		view.limit(lmt);
+		view.position(recoff);
+		view.limit(recoff + reclen);
+		return view;
+	}
+
+	/**
+	 * Copies the current record onto the end of the given ByteArrayRef, which is grown as necessary.
+	 * <br>
+	 * This is the one way to get a record of a memory-mapped (or other direct) buffer into a byte array, but a recycled holder
+	 * soon grows to the max record size, after which this does not allocate any memory.
+	 * Whereas if the source buffer is backed by an array, getRecordArray() provides an array-based view without any copying.
+	 */
+	public <T extends ByteArrayRef> T appendRecord(T dst)
+	{
+		dst.ensureSpareCapacity(reclen);
+		getRecord().get(dst.buffer(), dst.limit(), reclen);
+		dst.incrementSize(reclen);
+		return dst;
+	}
+
+	/**
+	 * Sets the given ByteArrayRef to point at the current record, without copying it.
+	 * @return False if the source buffer is not backed by an accessible array (eg. if it is memory-mapped), in which case the
+	 * ByteArrayRef is left unchanged.
+	 */
+	public boolean getRecordArray(ByteArrayRef dst)
+	{
+		if (!buf.hasArray()) return false;
+		dst.set(buf.array(), buf.arrayOffset() + recoff, reclen);
+		return true;
+	}
+
+	@Override
+	public String toString()
+	{
+		return super.toString()+" with region="+startpos+"/"+lmt+", delimiter="+dlm+", strip-CR="+stripCR+" - pos="+pos+", records="+recnum;
+	}
+}
@@ -78,6 +78,10 @@ public class StringOps
 
 	public static int count(CharSequence container, int coff, int clen, char target)
 	{
+		if (container instanceof ByteChars && target <= 0xFF) {
+			ByteChars bc = (ByteChars)container;
+			return ByteOps.count(target, bc.buffer(), bc.offset(coff), clen);
+		}
 		int cnt = 0;
 		int clmt = coff + clen;
 		for (int idx = coff; idx != clmt; idx++) {
@@ -86,8 +90,17 @@ public class StringOps
 		return cnt;
 	}
 
+	// If the container is a ByteChars, then we can search its underlying byte array a word at a time. In the case-insensitive
+	// case, that is only possible for ASCII targets, but no non-ASCII char in a ByteChars (whose chars are Latin-1) has a
+	// lower-case form in the ASCII range, so ASCII case folding gives the same result as Character.toLowerCase() then.
 	private static int indexOf(boolean nocase, CharSequence container, int coff, int clen, char target)
 	{
+		if (container instanceof ByteChars && target < (nocase ? 0x80 : 0x100)) {
+			ByteChars bc = (ByteChars)container;
+			int pos = (nocase ? ByteOps.indexOfIgnoreCase(bc.buffer(), bc.offset(coff), clen, target)
+					: ByteOps.indexOf(bc.buffer(), bc.offset(coff), clen, target));
+			return (pos == -1 ? -1 : pos - bc.offset());
+		}
 		if (nocase) target = Character.toLowerCase(target);
 		int clmt = coff + clen;
 		for (int idx = coff; idx != clmt; idx++) {
@@ -102,6 +115,13 @@ public class StringOps
 	{
 		int tlen = (target == null ? 0 : target.length());
 		if (tlen == 0) return -1;
+		if (container instanceof ByteChars && target instanceof ByteChars && (!nocase || isASCII((ByteChars)target))) {
+			ByteChars bc = (ByteChars)container;
+			ByteChars tbc = (ByteChars)target;
+			int pos = (nocase ? ByteOps.indexOfIgnoreCase(bc.buffer(), bc.offset(coff), clen, tbc.buffer(), tbc.offset(), tlen)
+					: ByteOps.indexOf(bc.buffer(), bc.offset(coff), clen, tbc.buffer(), tbc.offset(), tlen));
+			return (pos == -1 ? -1 : pos - bc.offset());
+		}
 		int clmt = coff + clen;
 		int cmaxpos = clmt - tlen;
 		int toff = 0;
@@ -128,6 +148,16 @@ public class StringOps
 		return -1;
 	}
 
+	private static boolean isASCII(ByteChars bc)
+	{
+		final byte[] buf = bc.buffer();
+		final int lmt = bc.limit();
+		for (int idx = bc.offset(); idx != lmt; idx++) {
+			if (buf[idx] < 0) return false;
+		}
+		return true;
+	}
+
 	// zero-pad numbers without generating any memory garbage
 	public static StringBuilder zeroPad(StringBuilder sbuf, int numval, int size)
 	{
@@ -158,6 +158,141 @@ public final class TimeOps
 		return buf;
 	}
 
+	/**
+	 * Renders timestamps in one of the fixed formats of the makeTime methods above, but caches the rendered text for the current
+	 * second so that timestamping a burst of log entries or protocol headers costs no more than a memory copy.
+	 * <br>
+	 * The date and time fields are only recalculated (via a Calendar, so time zones and DST are honoured) when the second changes,
+	 * and in the millisecond formats the milliseconds field is then patched into the output on each call.
+	 * The output can be written straight into a byte array or ByteChars, as well as a StringBuilder.
+	 * <p>
+	 * Instances are not thread-safe, and are intended to be owned by a single logger or connection handler.
+	 */
+	public static final class CachedFormatter
+	{
+		public enum FORMAT
+		{
+			LOG_TIME(false, false), //HH:mm:ss
+			LOG_TIME_MILLI(false, true), //HH:mm:ss.SSS
+			LOG_DATETIME(true, false), //yyyy-MM-dd HH:mm:ss
+			LOG_DATETIME_MILLI(true, true), //yyyy-MM-dd HH:mm:ss.SSS
+			RFC822(true, false); //EEE, dd MMM yyyy HH:mm:ss +hhmm
+
+			final boolean withdate;
+			final boolean withmilli;
+			FORMAT(boolean d, boolean m) {withdate=d; withmilli=m;}
+
+			public static FORMAT logger(boolean withdate, boolean withmilli) {
+				if (withdate) return (withmilli ? LOG_DATETIME_MILLI : LOG_DATETIME);
+				return (withmilli ? LOG_TIME_MILLI : LOG_TIME);
+			}
+		}
+
+		private final FORMAT fmt;
+		private final java.util.Calendar dtcal;
+		private final StringBuilder tmpbuf = new StringBuilder(40);
+		private byte[] cache = new byte[40];
+		private int cachelen; //length of the cached text, which includes the '.000' placeholder in the milliseconds formats
+		private long cachesecs = Long.MIN_VALUE; //the second to which the cached text corresponds
+
+		public FORMAT getFormat() {return fmt;}
+		public java.util.TimeZone getTimeZone() {return dtcal.getTimeZone();}
+
+		public CachedFormatter(FORMAT fmt) {this(fmt, null);}
+
+		/**
+		 * @param tz The time zone ID - null means the default zone, as in {@link TimeOps#getCalendar(String)}
+		 */
+		public CachedFormatter(FORMAT fmt, String tz)
+		{
+			this.fmt = fmt;
+			dtcal = getCalendar(tz);
+		}
+
+		/**
+		 * Writes the timestamp into the given array, which must have room for at least {@link #length(long)} bytes.
+		 * @return The offset immediately after the timestamp
+		 */
+		public int format(long systime, byte[] buf, int off)
+		{
+			int msecs = refresh(systime);
+			System.arraycopy(cache, 0, buf, off, cachelen);
+			off += cachelen;
+			if (fmt.withmilli) {
+				buf[off-3] = (byte)('0' + msecs / 100);
+				buf[off-2] = (byte)('0' + (msecs / 10) % 10);
+				buf[off-1] = (byte)('0' + msecs % 10);
+			}
+			return off;
+		}
+
+		/**
+		 * Appends the timestamp to the given ByteChars, which is grown as necessary.
+		 */
+		public ByteChars format(long systime, ByteChars buf)
+		{
+			refresh(systime);
+			buf.ensureSpareCapacity(cachelen);
+			int off = format(systime, buf.buffer(), buf.limit());
+			buf.incrementSize(off - buf.limit());
+			return buf;
+		}
+
+		/**
+		 * Appends the timestamp to the given StringBuilder.
+		 */
+		public StringBuilder format(long systime, StringBuilder buf)
+		{
+			int msecs = refresh(systime);
+			int len = (fmt.withmilli ? cachelen - 3 : cachelen);
+			for (int idx = 0; idx != len; idx++) {
+				buf.append((char)cache[idx]);
+			}
+			if (fmt.withmilli) StringOps.zeroPad(buf, msecs, 3);
+			return buf;
+		}
+
+		/**
+		 * Returns the length of the timestamp that would be rendered for the given time, which is constant for the
+		 * logger formats (until the year 10000), but can vary by a byte in the RFC-822 format.
+		 */
+		public int length(long systime)
+		{
+			refresh(systime);
+			return cachelen;
+		}
+
+		// Re-renders the cache if we have moved into a different second, and returns the milliseconds within the second
+		private int refresh(long systime)
+		{
+			long secs = Math.floorDiv(systime, MSECS_PER_SECOND);
+			int msecs = (int)(systime - (secs * MSECS_PER_SECOND));
+			if (secs == cachesecs) return msecs;
+
+			dtcal.setTimeInMillis(secs * MSECS_PER_SECOND);
+			tmpbuf.setLength(0);
+			if (fmt == FORMAT.RFC822) {
+				makeTimeRFC822(dtcal, tmpbuf);
+			} else {
+				makeTimeLogger(dtcal, tmpbuf, fmt.withdate, fmt.withmilli);
+			}
+			int len = tmpbuf.length();
+			if (len > cache.length) cache = new byte[len + 8];
+			for (int idx = 0; idx != len; idx++) {
+				cache[idx] = (byte)tmpbuf.charAt(idx);
+			}
+			cachelen = len;
+			cachesecs = secs;
+			return msecs;
+		}
+
+		@Override
+		public String toString()
+		{
+			return super.toString()+" with format="+fmt+", TZ="+dtcal.getTimeZone().getID();
+		}
+	}
+
 	// The year is 4 digits and months are numbered from 0, days from 1
 	public static long getSystime(java.util.Calendar dtcal, int yy, int mm, int dd, int hh, int mins)
 	{
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.base.collections;
+
+import com.grey.base.utils.ByteChars;
+
+public class BloomFilterTest
+{
+	private static final int ENTRIES = 10_000;
+
+	@org.junit.Test
+	public void testBasic()
+	{
+		verifyFilter(false);
+	}
+
+	@org.junit.Test
+	public void testBasicMT()
+	{
+		verifyFilter(true);
+	}
+
+	@org.junit.Test
+	public void testZeroKey()
+	{
+		org.junit.Assert.assertNotEquals(0, com.grey.base.utils.ByteOps.hash64(0L));
+		org.junit.Assert.assertNotEquals(com.grey.base.utils.ByteOps.hash64(0L), com.grey.base.utils.ByteOps.hash64(1L));
+		BloomFilter bf = new BloomFilter(100);
+		org.junit.Assert.assertTrue(bf.add(0));
+		org.junit.Assert.assertFalse(bf.add(0L));
+		org.junit.Assert.assertTrue(bf.mightContain(0));
+	}
+
+	@org.junit.Test
+	public void testBytes()
+	{
+		BloomFilter bf = new BloomFilter(100);
+		ByteChars key = new ByteChars("key1");
+		org.junit.Assert.assertFalse(bf.mightContain(key));
+		org.junit.Assert.assertTrue(bf.add(key));
+		org.junit.Assert.assertFalse(bf.add(key));
+		org.junit.Assert.assertTrue(bf.mightContain(key));
+		org.junit.Assert.assertTrue(bf.mightContain(new ByteChars("key1")));
+		org.junit.Assert.assertFalse(bf.mightContain(new ByteChars("key2")));
+		org.junit.Assert.assertFalse(bf.mightContain(new ByteChars("Key1")));
+		byte[] buf = "xxkey1yy".getBytes();
+		org.junit.Assert.assertTrue(bf.mightContain(buf, 2, 4));
+		org.junit.Assert.assertFalse(bf.mightContain(buf, 2, 5));
+		bf.clear();
+		org.junit.Assert.assertFalse(bf.mightContain(key));
+		org.junit.Assert.assertEquals(0, bf.getFillRatio(), 0);
+	}
+
+	@org.junit.Test
+	public void testCounting()
+	{
+		verifyCounting(false);
+		verifyCounting(true);
+	}
+
+	@org.junit.Test
+	public void testScalable()
+	{
+		ScalableBloomFilter bf = new ScalableBloomFilter(100, 0.01, 10, false);
+		org.junit.Assert.assertEquals(1, bf.getStageCount());
+		for (int idx = 0; idx != ENTRIES; idx++) {
+			bf.add(idx);
+		}
+		org.junit.Assert.assertTrue(bf.getStageCount() > 1);
+		org.junit.Assert.assertTrue(bf.getStageCount() <= 10);
+		for (int idx = 0; idx != ENTRIES; idx++) {
+			org.junit.Assert.assertTrue(bf.mightContain(idx));
+		}
+		int fpcnt = countFalsePositives(bf);
+		org.junit.Assert.assertTrue("false positives="+fpcnt, fpcnt < ENTRIES * 0.02);
+
+		bf.clear();
+		org.junit.Assert.assertEquals(1, bf.getStageCount());
+		org.junit.Assert.assertFalse(bf.mightContain(1));
+	}
+
+	@org.junit.Test
+	public void testRotating()
+	{
+		RotatingBloomFilter bf = new RotatingBloomFilter(1000, 0.01, 1000, false);
+		org.junit.Assert.assertTrue(bf.rotateIfDue(5000)); //first call always rotates, as we start with a zero timestamp
+		org.junit.Assert.assertTrue(bf.add(1L));
+		org.junit.Assert.assertFalse(bf.add(1L));
+		org.junit.Assert.assertFalse(bf.rotateIfDue(5999));
+		org.junit.Assert.assertTrue(bf.rotateIfDue(6000));
+		org.junit.Assert.assertTrue(bf.mightContain(1L)); //now in the previous generation
+		org.junit.Assert.assertFalse(bf.add(1L)); //still remembered, but now refreshed into the current generation
+		org.junit.Assert.assertTrue(bf.add(2L));
+		bf.rotate();
+		org.junit.Assert.assertTrue(bf.mightContain(1L));
+		org.junit.Assert.assertTrue(bf.mightContain(2L));
+		bf.rotate();
+		org.junit.Assert.assertFalse(bf.mightContain(1L));
+		org.junit.Assert.assertFalse(bf.mightContain(2L));
+		bf.add(3L);
+		bf.clear();
+		org.junit.Assert.assertFalse(bf.mightContain(3L));
+	}
+
+	@org.junit.Test
+	public void testConcurrent() throws InterruptedException
+	{
+		final BloomFilter bf = new BloomFilter(ENTRIES * 4, 0.01, true);
+		final CountingBloomFilter cbf = new CountingBloomFilter(ENTRIES * 4, 0.01, true);
+		Thread[] threads = new Thread[4];
+		for (int idx = 0; idx != threads.length; idx++) {
+			final int base = idx * ENTRIES;
+			threads[idx] = new Thread(() -> {
+				for (int idx2 = 0; idx2 != ENTRIES; idx2++) {
+					bf.add(base + idx2);
+					cbf.add(base + idx2);
+				}
+			});
+		}
+		for (int idx = 0; idx != threads.length; idx++) threads[idx].start();
+		for (int idx = 0; idx != threads.length; idx++) threads[idx].join();
+		for (int idx = 0; idx != ENTRIES * threads.length; idx++) {
+			org.junit.Assert.assertTrue(bf.mightContain(idx));
+			org.junit.Assert.assertTrue(cbf.mightContain(idx));
+		}
+	}
+
+	private static void verifyFilter(boolean mt)
+	{
+		BloomFilter bf = new BloomFilter(ENTRIES, 0.01, mt);
+		org.junit.Assert.assertEquals(mt, bf.isMT());
+		org.junit.Assert.assertEquals(ENTRIES, bf.getCapacity());
+		org.junit.Assert.assertEquals(1, Integer.bitCount(bf.getBitCount())); //power of 2
+		for (int idx = 0; idx != ENTRIES; idx++) {
+			bf.add((long)idx);
+			org.junit.Assert.assertTrue(bf.mightContain((long)idx));
+		}
+		int fpcnt = 0;
+		for (int idx = ENTRIES; idx != ENTRIES * 2; idx++) {
+			if (bf.mightContain((long)idx)) fpcnt++;
+		}
+		org.junit.Assert.assertTrue("false positives="+fpcnt, fpcnt < ENTRIES * 0.02);
+		int est = bf.estimateSize();
+		org.junit.Assert.assertTrue("estimate="+est, est > ENTRIES * 0.9 && est < ENTRIES * 1.1);
+	}
+
+	private static void verifyCounting(boolean mt)
+	{
+		CountingBloomFilter bf = new CountingBloomFilter(ENTRIES, 0.01, mt);
+		org.junit.Assert.assertEquals(mt, bf.isMT());
+		int addcnt = 0;
+		for (int idx = 0; idx != ENTRIES; idx++) {
+			if (bf.add(idx)) addcnt++;
+		}
+		org.junit.Assert.assertTrue("added="+addcnt, addcnt > ENTRIES * 0.98); //the rest were false positives
+		for (int idx = 0; idx != ENTRIES; idx++) {
+			org.junit.Assert.assertTrue(bf.mightContain(idx));
+		}
+		for (int idx = 0; idx != ENTRIES; idx += 2) {
+			org.junit.Assert.assertTrue(bf.remove(idx));
+		}
+		int fpcnt = 0;
+		for (int idx = 0; idx != ENTRIES; idx++) {
+			if ((idx & 1) == 0) {
+				if (bf.mightContain(idx)) fpcnt++;
+			} else {
+				org.junit.Assert.assertTrue(bf.mightContain(idx));
+			}
+		}
+		org.junit.Assert.assertTrue("false positives="+fpcnt, fpcnt < ENTRIES * 0.02);
+		ByteChars key = new ByteChars("key1");
+		bf.add(key);
+		org.junit.Assert.assertTrue(bf.mightContain(key));
+		org.junit.Assert.assertTrue(bf.remove(key));
+		bf.clear();
+		org.junit.Assert.assertFalse(bf.mightContain(1));
+	}
+
+	private static int countFalsePositives(ScalableBloomFilter bf)
+	{
+		int fpcnt = 0;
+		for (int idx = ENTRIES; idx != ENTRIES * 2; idx++) {
+			if (bf.mightContain(idx)) fpcnt++;
+		}
+		return fpcnt;
+	}
+}
@@ -92,4 +92,67 @@ public class CanonByteCharsTest
 		canon.clear();
 		org.junit.Assert.assertEquals(0, canon.size());
 	}
+
+	@org.junit.Test
+	public void testBounded()
+	{
+		CanonByteChars canon = new CanonByteChars("utest_bounded", 3, false);
+		org.junit.Assert.assertEquals(3, canon.getMaxEntries());
+		ByteChars bc1 = canon.intern("Item1");
+		ByteChars bc2 = canon.intern(new ByteChars("Item2"));
+		ByteChars bc3 = canon.intern("Item3");
+		org.junit.Assert.assertEquals(3, canon.size());
+		org.junit.Assert.assertSame(bc1, canon.intern("Item1"));
+		org.junit.Assert.assertSame(bc3, canon.intern(new ByteChars("Item3")));
+		org.junit.Assert.assertEquals(0, canon.getEvictions());
+
+		// Item2 is the only one not referenced since it was added, so it gets evicted
+		ByteChars bc4 = canon.intern("Item4");
+		org.junit.Assert.assertEquals("Item4", bc4.toString());
+		org.junit.Assert.assertEquals(3, canon.size());
+		org.junit.Assert.assertEquals(1, canon.getEvictions());
+		org.junit.Assert.assertSame(bc1, canon.intern("Item1"));
+		org.junit.Assert.assertSame(bc4, canon.intern("Item4"));
+		ByteChars bc2b = canon.intern("Item2");
+		org.junit.Assert.assertNotSame(bc2, bc2b);
+		org.junit.Assert.assertEquals(bc2, bc2b);
+		org.junit.Assert.assertEquals("Item2", bc2.toString()); //evicted values are not recycled
+		org.junit.Assert.assertEquals(3, canon.size());
+		org.junit.Assert.assertEquals(2, canon.getEvictions());
+
+		org.junit.Assert.assertEquals(9, canon.getLookups());
+		org.junit.Assert.assertEquals(4, canon.getHits());
+		org.junit.Assert.assertEquals(4.0/9.0, canon.getHitRate(), 0.0001);
+		canon.resetStats();
+		org.junit.Assert.assertEquals(0, canon.getLookups());
+		org.junit.Assert.assertEquals(0, canon.getHitRate(), 0);
+
+		for (int idx = 0; idx != 1000; idx++) {
+			ByteChars bc = canon.intern("Value"+idx);
+			org.junit.Assert.assertEquals("Value"+idx, bc.toString());
+			org.junit.Assert.assertSame(bc, canon.intern("Value"+idx));
+			org.junit.Assert.assertTrue(canon.size() <= 3);
+		}
+		org.junit.Assert.assertEquals(3, canon.size());
+		canon.clear();
+		org.junit.Assert.assertEquals(0, canon.size());
+		org.junit.Assert.assertEquals("Value1", canon.intern("Value1").toString());
+	}
+
+	@org.junit.Test
+	public void testWeakRefs()
+	{
+		CanonByteChars canon = new CanonByteChars("utest_weak", 2, true);
+		ByteChars bc1 = canon.intern("Item1");
+		canon.intern("Item2");
+		canon.intern("Item3");
+		canon.intern("Item4");
+		org.junit.Assert.assertEquals(2, canon.size());
+		org.junit.Assert.assertEquals(2, canon.getEvictions());
+		// Item1 was evicted, but is still referenced so it is restored with the same identity
+		canon.resetStats();
+		org.junit.Assert.assertSame(bc1, canon.intern("Item1"));
+		org.junit.Assert.assertEquals(1, canon.getHits());
+		org.junit.Assert.assertEquals(2, canon.size());
+	}
 }
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.base.collections;
+
+import com.grey.base.utils.ByteChars;
+
+public class ConcurrentCanonByteCharsTest
+{
+	@org.junit.Test
+	public void testBasic()
+	{
+		ConcurrentCanonByteChars canon = new ConcurrentCanonByteChars("utest_concurrent", 0, false, 3);
+		org.junit.Assert.assertEquals(4, canon.getSegmentCount());
+		org.junit.Assert.assertNull(canon.intern((ByteChars)null));
+		org.junit.Assert.assertNull(canon.intern((CharSequence)null));
+		ByteChars bc1 = canon.intern("Item1");
+		org.junit.Assert.assertSame(bc1, canon.intern(new ByteChars("Item1")));
+		org.junit.Assert.assertSame(bc1, canon.intern("Item1"));
+		ByteChars bc2 = canon.intern(new ByteChars("Item2"));
+		org.junit.Assert.assertNotSame(bc1, bc2);
+		org.junit.Assert.assertSame(bc2, canon.intern("Item2"));
+		org.junit.Assert.assertEquals(2, canon.size());
+		org.junit.Assert.assertEquals(5, canon.getLookups());
+		org.junit.Assert.assertEquals(3, canon.getHits());
+		canon.clear();
+		org.junit.Assert.assertEquals(0, canon.size());
+		canon.resetStats();
+		org.junit.Assert.assertEquals(0, canon.getHitRate(), 0);
+	}
+
+	@org.junit.Test
+	public void testThreads() throws InterruptedException
+	{
+		final int maxentries = 64;
+		final ConcurrentCanonByteChars canon = new ConcurrentCanonByteChars("utest_threads", maxentries, false, 4);
+		final java.util.concurrent.atomic.AtomicReference<Throwable> failure = new java.util.concurrent.atomic.AtomicReference<>();
+		Thread[] threads = new Thread[4];
+		for (int idx = 0; idx != threads.length; idx++) {
+			threads[idx] = new Thread(() -> {
+				try {
+					for (int idx2 = 0; idx2 != 10_000; idx2++) {
+						String val = "Value"+(idx2 % 200);
+						ByteChars bc = canon.intern(val);
+						org.junit.Assert.assertEquals(val, bc.toString());
+					}
+				} catch (Throwable ex) {
+					failure.set(ex);
+				}
+			});
+		}
+		for (int idx = 0; idx != threads.length; idx++) threads[idx].start();
+		for (int idx = 0; idx != threads.length; idx++) threads[idx].join();
+		org.junit.Assert.assertNull(failure.get());
+		org.junit.Assert.assertTrue(canon.size() <= maxentries);
+		org.junit.Assert.assertEquals(40_000, canon.getLookups());
+		org.junit.Assert.assertTrue(canon.getEvictions() > 0);
+	}
+}
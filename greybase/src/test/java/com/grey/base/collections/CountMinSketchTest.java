@@ -0,0 +1,109 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.base.collections;
+
+import com.grey.base.utils.ByteChars;
+
+public class CountMinSketchTest
+{
+	@org.junit.Test
+	public void testCounts()
+	{
+		verifyCounts(false);
+	}
+
+	@org.junit.Test
+	public void testCountsMT()
+	{
+		verifyCounts(true);
+	}
+
+	@org.junit.Test
+	public void testErrorBounds()
+	{
+		CountMinSketch cms = CountMinSketch.withErrorBounds(0.001, 0.01, false);
+		org.junit.Assert.assertEquals(4096, cms.getWidth());
+		org.junit.Assert.assertEquals(5, cms.getDepth());
+		for (int idx = 0; idx != 100_000; idx++) {
+			cms.add(idx % 1000, 1); //every key has a true count of 100
+		}
+		int maxerr = (int)(0.001 * cms.getTotal());
+		for (int idx = 0; idx != 1000; idx++) {
+			int est = cms.estimate(idx);
+			org.junit.Assert.assertTrue("key="+idx+" est="+est, est >= 100 && est <= 100 + maxerr);
+		}
+	}
+
+	@org.junit.Test
+	public void testTooLarge()
+	{
+		// these sizes overflow an int, so make sure they are rejected without attempting the allocation
+		try {
+			CountMinSketch.withErrorBounds(1e-9, 1e-6, false);
+			org.junit.Assert.fail("Failed to reject oversized error bounds");
+		} catch (IllegalArgumentException ex) {
+			org.junit.Assert.assertTrue(ex.getMessage(), ex.getMessage().contains("epsilon=1.0E-9"));
+		}
+		try {
+			new CountMinSketch(1 << 30, 4, true);
+			org.junit.Assert.fail("Failed to reject oversized sketch");
+		} catch (IllegalArgumentException ex) {}
+		try {
+			new CountMinSketch(Integer.MAX_VALUE, 1, false);
+			org.junit.Assert.fail("Failed to reject oversized width");
+		} catch (IllegalArgumentException ex) {}
+	}
+
+	@org.junit.Test
+	public void testDecay()
+	{
+		CountMinSketch cms = new CountMinSketch(1024, 4, false);
+		ByteChars key = new ByteChars("hitter");
+		org.junit.Assert.assertEquals(100, cms.add(key, 100));
+		org.junit.Assert.assertEquals(101, cms.add(key, 1));
+		org.junit.Assert.assertEquals(101, cms.getTotal());
+		cms.decay();
+		org.junit.Assert.assertEquals(50, cms.estimate(key));
+		org.junit.Assert.assertEquals(50, cms.getTotal());
+		cms.decay();
+		org.junit.Assert.assertEquals(25, cms.estimate(new ByteChars("hitter")));
+		cms.clear();
+		org.junit.Assert.assertEquals(0, cms.estimate(key));
+		org.junit.Assert.assertEquals(0, cms.getTotal());
+	}
+
+	@org.junit.Test
+	public void testConcurrent() throws InterruptedException
+	{
+		final CountMinSketch cms = new CountMinSketch(1024, 4, true);
+		Thread[] threads = new Thread[4];
+		for (int idx = 0; idx != threads.length; idx++) {
+			threads[idx] = new Thread(() -> {
+				for (int idx2 = 0; idx2 != 10_000; idx2++) cms.add(99L, 1);
+			});
+		}
+		for (int idx = 0; idx != threads.length; idx++) threads[idx].start();
+		for (int idx = 0; idx != threads.length; idx++) threads[idx].join();
+		org.junit.Assert.assertEquals(40_000, cms.estimate(99L));
+		org.junit.Assert.assertEquals(40_000, cms.getTotal());
+	}
+
+	private static void verifyCounts(boolean mt)
+	{
+		CountMinSketch cms = new CountMinSketch(1000, 4, mt);
+		org.junit.Assert.assertEquals(1024, cms.getWidth());
+		org.junit.Assert.assertEquals(mt, cms.isMT());
+		org.junit.Assert.assertEquals(0, cms.estimate(1));
+		for (int idx = 0; idx != 500; idx++) {
+			cms.add(idx, 1);
+		}
+		org.junit.Assert.assertEquals(1001, cms.add(7, 1000));
+		for (int idx = 0; idx != 500; idx++) {
+			int est = cms.estimate(idx);
+			org.junit.Assert.assertTrue("key="+idx+" est="+est, est >= (idx == 7 ? 1001 : 1)); //never underestimates
+		}
+		org.junit.Assert.assertEquals(1500, cms.getTotal());
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.base.collections;
+
+import com.grey.base.utils.ByteChars;
+
+public class DomainTrieTest
+{
+	@org.junit.Test
+	public void testExactMatch()
+	{
+		DomainTrie<String> trie = new DomainTrie<>();
+		org.junit.Assert.assertEquals(0, trie.size());
+		org.junit.Assert.assertTrue(trie.isEmpty());
+		org.junit.Assert.assertNull(trie.get("example.com"));
+		org.junit.Assert.assertNull(trie.remove("example.com"));
+
+		org.junit.Assert.assertNull(trie.put("example.com", "v1"));
+		org.junit.Assert.assertNull(trie.put("mail.example.com.", "v2"));
+		org.junit.Assert.assertNull(trie.put("example.org", "v3"));
+		org.junit.Assert.assertEquals(3, trie.size());
+		org.junit.Assert.assertEquals("v1", trie.get("example.com"));
+		org.junit.Assert.assertEquals("v1", trie.get(new ByteChars("example.com.")));
+		org.junit.Assert.assertEquals("v2", trie.get("mail.example.com"));
+		org.junit.Assert.assertEquals("v3", trie.get("example.org"));
+		org.junit.Assert.assertNull(trie.get("com"));
+		org.junit.Assert.assertNull(trie.get("www.example.com"));
+		org.junit.Assert.assertNull(trie.get("xample.com"));
+		org.junit.Assert.assertNull(trie.get("."));
+		org.junit.Assert.assertFalse(trie.containsKey("com"));
+		org.junit.Assert.assertTrue(trie.containsKey("example.org"));
+
+		org.junit.Assert.assertEquals("v1", trie.put("example.com", "v1b"));
+		org.junit.Assert.assertEquals(3, trie.size());
+		org.junit.Assert.assertEquals("v1b", trie.get("example.com"));
+
+		org.junit.Assert.assertEquals("v1b", trie.remove("example.com"));
+		org.junit.Assert.assertEquals(2, trie.size());
+		org.junit.Assert.assertNull(trie.get("example.com"));
+		org.junit.Assert.assertEquals("v2", trie.get("mail.example.com"));
+		org.junit.Assert.assertEquals("v2", trie.remove("mail.example.com"));
+		org.junit.Assert.assertNull(trie.remove("mail.example.com"));
+		org.junit.Assert.assertEquals(1, trie.size());
+
+		trie.clear();
+		org.junit.Assert.assertEquals(0, trie.size());
+		org.junit.Assert.assertNull(trie.get("example.org"));
+	}
+
+	@org.junit.Test
+	public void testRoot()
+	{
+		DomainTrie<String> trie = new DomainTrie<>();
+		trie.put(".", "root");
+		org.junit.Assert.assertEquals(1, trie.size());
+		org.junit.Assert.assertEquals("root", trie.get("."));
+		org.junit.Assert.assertEquals("root", trie.get(""));
+		org.junit.Assert.assertNull(trie.get("com"));
+		ByteChars matched = new ByteChars(-1);
+		org.junit.Assert.assertEquals("root", trie.findLongestSuffix("www.example.com", matched));
+		org.junit.Assert.assertEquals(0, matched.size());
+		org.junit.Assert.assertEquals("root", trie.remove(""));
+		org.junit.Assert.assertEquals(0, trie.size());
+	}
+
+	@org.junit.Test
+	public void testLongestSuffix()
+	{
+		DomainTrie<String> trie = new DomainTrie<>();
+		trie.put("com", "tld");
+		trie.put("example.com", "dom");
+		trie.put("a.b.example.com", "deep");
+		ByteChars matched = new ByteChars(-1);
+
+		org.junit.Assert.assertEquals("dom", trie.findLongestSuffix("www.example.com", matched));
+		org.junit.Assert.assertEquals("example.com", matched.toString());
+		org.junit.Assert.assertEquals("dom", trie.findLongestSuffix("b.example.com.", matched));
+		org.junit.Assert.assertEquals("example.com", matched.toString());
+		org.junit.Assert.assertEquals("deep", trie.findLongestSuffix("x.a.b.example.com", matched));
+		org.junit.Assert.assertEquals("a.b.example.com", matched.toString());
+		org.junit.Assert.assertEquals("tld", trie.findLongestSuffix("other.com", matched));
+		org.junit.Assert.assertEquals("com", matched.toString());
+		org.junit.Assert.assertEquals("tld", trie.findLongestSuffix("com"));
+		matched.clear();
+		org.junit.Assert.assertNull(trie.findLongestSuffix("example.org", matched));
+		org.junit.Assert.assertEquals(0, matched.size());
+		org.junit.Assert.assertNull(trie.findLongestSuffix("xcom"));
+
+		// the matched suffix points into the caller's own buffer
+		ByteChars dom = new ByteChars("host.example.com");
+		org.junit.Assert.assertEquals("dom", trie.findLongestSuffix(dom, matched));
+		org.junit.Assert.assertSame(dom.buffer(), matched.buffer());
+		org.junit.Assert.assertEquals(dom.offset()+5, matched.offset());
+	}
+
+	@org.junit.Test
+	public void testWalkSuffixes()
+	{
+		DomainTrie<String> trie = new DomainTrie<>();
+		trie.put("com", "tld");
+		trie.put("a.b.example.com", "deep");
+		java.util.ArrayList<String> visited = new java.util.ArrayList<>();
+		DomainTrie.SuffixVisitor<String> visitor = (dom, off, labelcnt, val) -> {
+			visited.add(labelcnt+":"+dom.toString(off, dom.length() - off)+"="+val);
+			return true;
+		};
+
+		int cnt = trie.walkSuffixes("x.a.b.example.com", visitor);
+		org.junit.Assert.assertEquals(4, cnt);
+		org.junit.Assert.assertEquals("[1:com=tld, 2:example.com=null, 3:b.example.com=null, 4:a.b.example.com=deep]", visited.toString());
+
+		visited.clear();
+		cnt = trie.walkSuffixes("b.example.com", (dom, off, labelcnt, val) -> {visited.add(val); return labelcnt != 2;});
+		org.junit.Assert.assertEquals(2, cnt);
+		org.junit.Assert.assertEquals("[tld, null]", visited.toString());
+
+		visited.clear();
+		cnt = trie.walkSuffixes("example.org", visitor);
+		org.junit.Assert.assertEquals(0, cnt);
+		org.junit.Assert.assertEquals(0, visited.size());
+	}
+
+	@org.junit.Test
+	public void testSubtree()
+	{
+		DomainTrie<Integer> trie = new DomainTrie<>();
+		trie.put("example.com", 1);
+		trie.put("www.example.com", 2);
+		trie.put("mail.example.com", 3);
+		trie.put("a.mail.example.com", 4);
+		trie.put("example.org", 5);
+		trie.put("xexample.com", 6);
+		java.util.TreeMap<String, Integer> visited = new java.util.TreeMap<>();
+		DomainTrie.EntryVisitor<Integer> visitor = (dom, val) -> {visited.put(dom.toString(), val); return true;};
+
+		int cnt = trie.visitSubtree("example.com", visitor);
+		org.junit.Assert.assertEquals(4, cnt);
+		org.junit.Assert.assertEquals("{a.mail.example.com=4, example.com=1, mail.example.com=3, www.example.com=2}", visited.toString());
+		visited.clear();
+		cnt = trie.visitSubtree(".", visitor);
+		org.junit.Assert.assertEquals(trie.size(), cnt);
+		org.junit.Assert.assertEquals(6, visited.size());
+		visited.clear();
+		cnt = trie.visitSubtree("nonsuch.com", visitor);
+		org.junit.Assert.assertEquals(0, cnt);
+		org.junit.Assert.assertEquals(0, visited.size());
+
+		cnt = trie.removeSubtree("mail.example.com");
+		org.junit.Assert.assertEquals(2, cnt);
+		org.junit.Assert.assertEquals(4, trie.size());
+		org.junit.Assert.assertNull(trie.get("a.mail.example.com"));
+		org.junit.Assert.assertEquals(Integer.valueOf(1), trie.findLongestSuffix("a.mail.example.com"));
+		cnt = trie.removeSubtree("example.com");
+		org.junit.Assert.assertEquals(2, cnt);
+		org.junit.Assert.assertEquals(2, trie.size());
+		org.junit.Assert.assertEquals(Integer.valueOf(6), trie.get("xexample.com"));
+		org.junit.Assert.assertEquals(Integer.valueOf(5), trie.get("example.org"));
+		cnt = trie.removeSubtree("");
+		org.junit.Assert.assertEquals(2, cnt);
+		org.junit.Assert.assertEquals(0, trie.size());
+	}
+
+	@org.junit.Test
+	public void testBulk()
+	{
+		DomainTrie<Integer> trie = new DomainTrie<>();
+		java.util.HashMap<String, Integer> jdkmap = new java.util.HashMap<>();
+		java.util.Random rnd = new java.util.Random(0);
+		for (int loop = 0; loop != 5000; loop++) {
+			String dom = "h"+rnd.nextInt(100)+".d"+rnd.nextInt(50)+".tld"+rnd.nextInt(5);
+			trie.put(dom, loop);
+			jdkmap.put(dom, loop);
+		}
+		org.junit.Assert.assertEquals(jdkmap.size(), trie.size());
+		for (java.util.Map.Entry<String, Integer> ent : jdkmap.entrySet()) {
+			org.junit.Assert.assertEquals(ent.getValue(), trie.get(ent.getKey()));
+		}
+		for (java.util.Map.Entry<String, Integer> ent : jdkmap.entrySet()) {
+			org.junit.Assert.assertEquals(ent.getValue(), trie.remove(ent.getKey()));
+		}
+		org.junit.Assert.assertEquals(0, trie.size());
+		org.junit.Assert.assertEquals(0, trie.visitSubtree("", (dom, val) -> true));
+	}
+}
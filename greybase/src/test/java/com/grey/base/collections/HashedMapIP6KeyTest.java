@@ -0,0 +1,105 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.base.collections;
+
+import com.grey.base.utils.IP6Address;
+
+public class HashedMapIP6KeyTest
+{
+	private static final long PREFIX = 0x20010db800000000L;
+
+	@org.junit.Test
+	public void testBasic()
+	{
+		HashedMapIP6Key<String> map = new HashedMapIP6Key<String>(4);
+		IP6Address key = IP6Address.valueOf("2001:db8::1");
+		org.junit.Assert.assertTrue(map.isEmpty());
+		org.junit.Assert.assertNull(map.put(key, "v1"));
+		org.junit.Assert.assertEquals("v1", map.put(key, "v1b"));
+		org.junit.Assert.assertEquals(1, map.size());
+		org.junit.Assert.assertTrue(map.containsKey(key));
+		org.junit.Assert.assertTrue(map.containsKey(PREFIX, 1));
+		org.junit.Assert.assertFalse(map.containsKey(PREFIX, 2));
+		org.junit.Assert.assertFalse(map.containsKey(PREFIX+1, 1));
+		org.junit.Assert.assertEquals("v1b", map.get(key));
+		org.junit.Assert.assertTrue(map.containsValue("v1b"));
+		org.junit.Assert.assertFalse(map.containsValue(null));
+		org.junit.Assert.assertNull(map.put(new IP6Address().setMappedIP4(0x7f000001), null));
+		org.junit.Assert.assertTrue(map.containsValue(null));
+		org.junit.Assert.assertEquals(2, map.size());
+		org.junit.Assert.assertTrue(map.toString(), map.toString().contains("::ffff:127.0.0.1=null"));
+		org.junit.Assert.assertEquals("v1b", map.remove(key));
+		org.junit.Assert.assertNull(map.remove(key));
+		org.junit.Assert.assertEquals(1, map.size());
+		map.clear();
+		org.junit.Assert.assertTrue(map.isEmpty());
+		org.junit.Assert.assertNull(map.get(key));
+	}
+
+	@org.junit.Test
+	public void testBulk()
+	{
+		HashedMapIP6Key<Integer> map = new HashedMapIP6Key<Integer>();
+		int max = 5000;
+		for (int idx = 0; idx != max; idx++) {
+			// mix addresses which differ only in the low bits with ones which differ only in the high bits
+			org.junit.Assert.assertNull(map.put(PREFIX, idx, idx));
+			org.junit.Assert.assertNull(map.put(PREFIX + idx + 1, 0, -idx - 1));
+		}
+		org.junit.Assert.assertEquals(max * 2, map.size());
+		for (int idx = 0; idx != max; idx++) {
+			org.junit.Assert.assertEquals(Integer.valueOf(idx), map.get(PREFIX, idx));
+			org.junit.Assert.assertEquals(Integer.valueOf(-idx - 1), map.get(PREFIX + idx + 1, 0));
+		}
+
+		// iterate over keys and remove half of them
+		HashedMapIP6Key.KeysIterator<Integer> it = map.recycledKeysIterator();
+		IP6Address key = new IP6Address();
+		int cnt = 0;
+		while (it.hasNext()) {
+			it.next(key);
+			cnt++;
+			if (key.getLow() == 0 && key.getHigh() != PREFIX) it.remove();
+		}
+		org.junit.Assert.assertEquals(max * 2, cnt);
+		org.junit.Assert.assertEquals(max, map.size());
+		java.util.Iterator<Integer> itv = map.recycledValuesIterator();
+		cnt = 0;
+		while (itv.hasNext()) {
+			org.junit.Assert.assertTrue(itv.next() >= 0);
+			cnt++;
+		}
+		org.junit.Assert.assertEquals(max, cnt);
+		map.trimToSize();
+		org.junit.Assert.assertEquals(max, map.size());
+		org.junit.Assert.assertEquals(Integer.valueOf(max - 1), map.get(PREFIX, max - 1));
+		org.junit.Assert.assertEquals(max, map.getValues().size());
+	}
+
+	@org.junit.Test
+	public void testSet()
+	{
+		HashedSetIP6 set = new HashedSetIP6();
+		IP6Address key = IP6Address.valueOf("fe80::1");
+		org.junit.Assert.assertTrue(set.add(key));
+		org.junit.Assert.assertFalse(set.add(key));
+		org.junit.Assert.assertTrue(set.add(0, 1));
+		org.junit.Assert.assertTrue(set.contains(key));
+		org.junit.Assert.assertTrue(set.contains(0, 1));
+		org.junit.Assert.assertEquals(2, set.size());
+		HashedMapIP6Key.KeysIterator<Object> it = set.recycledIterator();
+		IP6Address key2 = new IP6Address();
+		int cnt = 0;
+		while (it.hasNext()) {
+			if (it.next(key2).equals(key)) cnt++;
+		}
+		org.junit.Assert.assertEquals(1, cnt);
+		org.junit.Assert.assertTrue(set.remove(key));
+		org.junit.Assert.assertFalse(set.remove(key));
+		org.junit.Assert.assertEquals(1, set.size());
+		set.clear();
+		org.junit.Assert.assertTrue(set.isEmpty());
+	}
+}
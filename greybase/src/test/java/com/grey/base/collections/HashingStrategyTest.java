@@ -0,0 +1,83 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.base.collections;
+
+import com.grey.base.utils.ByteChars;
+
+public class HashingStrategyTest
+{
+	private static final HashingStrategy STRATEGY = HashingStrategy.ASCII_IGNORECASE;
+
+	@org.junit.Test
+	public void testStrategy()
+	{
+		String[] names = new String[]{"", "a", "Example.COM", "www.Long-Domain-Name.example.org", "12345678", "ABCDEFGHabcdefgh@[]`{}"};
+		for (String name : names) {
+			String lower = name.toLowerCase();
+			String upper = name.toUpperCase();
+			ByteChars bc = new ByteChars(name);
+			ByteChars bclower = new ByteChars(lower);
+			ByteChars bcupper = new ByteChars(upper);
+			int hash = STRATEGY.hashCode(bc);
+			org.junit.Assert.assertEquals(name, hash, STRATEGY.hashCode(bclower));
+			org.junit.Assert.assertEquals(name, hash, STRATEGY.hashCode(bcupper));
+			org.junit.Assert.assertEquals(name, hash, STRATEGY.hashCode(name));
+			org.junit.Assert.assertEquals(name, hash, STRATEGY.hashCode(upper));
+			org.junit.Assert.assertTrue(name, STRATEGY.equals(bc, bcupper));
+			org.junit.Assert.assertTrue(name, STRATEGY.equals(bclower, bc));
+			org.junit.Assert.assertTrue(name, STRATEGY.equals(upper, bc));
+			org.junit.Assert.assertTrue(name, STRATEGY.equals(bc, lower));
+			org.junit.Assert.assertFalse(name, STRATEGY.equals(bc, name+"x"));
+			org.junit.Assert.assertFalse(name, STRATEGY.equals(bc, new ByteChars(name+"x")));
+		}
+		// the characters either side of the upper-case and lower-case ranges are distinct
+		org.junit.Assert.assertFalse(STRATEGY.equals(new ByteChars("@[`{"), new ByteChars("`{@[")));
+		org.junit.Assert.assertFalse(STRATEGY.equals(new ByteChars("abcdefgh@"), new ByteChars("ABCDEFGH`")));
+		org.junit.Assert.assertFalse(STRATEGY.equals(new ByteChars("abcdefgh["), new ByteChars("ABCDEFGH{")));
+		// non-ASCII bytes are not folded
+		org.junit.Assert.assertFalse(STRATEGY.equals(new ByteChars("À"), new ByteChars("à")));
+		// other key types fall back to their own methods
+		org.junit.Assert.assertTrue(STRATEGY.equals(Integer.valueOf(9), Integer.valueOf(9)));
+		org.junit.Assert.assertEquals(Integer.valueOf(9).hashCode(), STRATEGY.hashCode(Integer.valueOf(9)));
+	}
+
+	@org.junit.Test
+	public void testMap()
+	{
+		HashedMap<ByteChars, String> map = new HashedMap<>(4, 0, STRATEGY);
+		for (int idx = 0; idx != 100; idx++) {
+			org.junit.Assert.assertNull(map.put(new ByteChars("Host"+idx+".Example.com"), "v"+idx));
+		}
+		org.junit.Assert.assertEquals(100, map.size());
+		for (int idx = 0; idx != 100; idx++) {
+			org.junit.Assert.assertEquals("v"+idx, map.get(new ByteChars("HOST"+idx+".EXAMPLE.COM")));
+			org.junit.Assert.assertEquals("v"+idx, map.get("host"+idx+".example.com"));
+		}
+		org.junit.Assert.assertEquals("v5", map.put(new ByteChars("host5.example.COM"), "v5b"));
+		org.junit.Assert.assertEquals(100, map.size());
+		org.junit.Assert.assertEquals("v5b", map.remove(new ByteChars("HOST5.example.com")));
+		org.junit.Assert.assertFalse(map.containsKey(new ByteChars("host5.example.com")));
+		org.junit.Assert.assertEquals(99, map.size());
+
+		map.put(null, "nullval");
+		org.junit.Assert.assertEquals("nullval", map.get(null));
+		org.junit.Assert.assertEquals("v0", map.get(new ByteChars("host0.example.com")));
+	}
+
+	@org.junit.Test
+	public void testSet()
+	{
+		HashedSet<ByteChars> set = new HashedSet<>(0, 0, STRATEGY);
+		ByteChars key = new ByteChars("Content-Type");
+		org.junit.Assert.assertTrue(set.add(key));
+		org.junit.Assert.assertFalse(set.add(new ByteChars("content-type")));
+		org.junit.Assert.assertTrue(set.contains(new ByteChars("CONTENT-TYPE")));
+		org.junit.Assert.assertTrue(set.contains("content-TYPE"));
+		org.junit.Assert.assertSame(key, set.get(new ByteChars("content-type")));
+		org.junit.Assert.assertFalse(set.contains(new ByteChars("content-typ")));
+		org.junit.Assert.assertTrue(set.remove(new ByteChars("Content-type")));
+		org.junit.Assert.assertEquals(0, set.size());
+	}
+}
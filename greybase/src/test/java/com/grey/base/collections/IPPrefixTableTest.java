@@ -0,0 +1,162 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.base.collections;
+
+import com.grey.base.utils.IP;
+
+public class IPPrefixTableTest
+{
+	@org.junit.Test
+	public void testIPv4() throws java.net.UnknownHostException
+	{
+		IPPrefixTable<String> tbl = new IPPrefixTable<>();
+		org.junit.Assert.assertEquals(0, tbl.size());
+		org.junit.Assert.assertNull(tbl.get(IP.convertDottedIP("10.1.2.3")));
+
+		org.junit.Assert.assertNull(tbl.put("10.0.0.0/8", "ten"));
+		org.junit.Assert.assertNull(tbl.put("10.1.0.0/16", "ten-one"));
+		org.junit.Assert.assertNull(tbl.put("10.1.2.0/23", "ten-one-two"));
+		org.junit.Assert.assertNull(tbl.put("10.1.2.3", "host"));
+		org.junit.Assert.assertNull(tbl.put("192.168.1.77/26", "lan"));
+		org.junit.Assert.assertEquals(5, tbl.size());
+
+		org.junit.Assert.assertEquals("host", tbl.get(IP.convertDottedIP("10.1.2.3")));
+		org.junit.Assert.assertEquals("ten-one-two", tbl.get(IP.convertDottedIP("10.1.2.4")));
+		org.junit.Assert.assertEquals("ten-one-two", tbl.get(IP.convertDottedIP("10.1.3.255")));
+		org.junit.Assert.assertEquals("ten-one", tbl.get(IP.convertDottedIP("10.1.4.0")));
+		org.junit.Assert.assertEquals("ten-one", tbl.get(IP.convertDottedIP("10.1.1.255")));
+		org.junit.Assert.assertEquals("ten", tbl.get(IP.convertDottedIP("10.2.2.3")));
+		org.junit.Assert.assertNull(tbl.get(IP.convertDottedIP("11.1.2.3")));
+		org.junit.Assert.assertEquals("lan", tbl.get(IP.convertDottedIP("192.168.1.64")));
+		org.junit.Assert.assertEquals("lan", tbl.get(IP.convertDottedIP("192.168.1.127")));
+		org.junit.Assert.assertNull(tbl.get(IP.convertDottedIP("192.168.1.128")));
+		org.junit.Assert.assertNull(tbl.get(IP.convertDottedIP("192.168.1.63")));
+		org.junit.Assert.assertEquals("ten-one", tbl.get(IP.convertIP(IP.convertDottedIP("10.1.9.9"))));
+
+		// the order of insertion doesn't matter - a shorter prefix mustn't overwrite a longer one
+		org.junit.Assert.assertNull(tbl.put("10.1.0.0/15", "ten-zero"));
+		org.junit.Assert.assertEquals("ten-zero", tbl.get(IP.convertDottedIP("10.0.0.1")));
+		org.junit.Assert.assertEquals("ten-one", tbl.get(IP.convertDottedIP("10.1.4.0")));
+		org.junit.Assert.assertEquals("host", tbl.get(IP.convertDottedIP("10.1.2.3")));
+
+		org.junit.Assert.assertEquals("ten-one", tbl.put(IP.convertDottedIP("10.1.99.99"), 16, "ten-one-b"));
+		org.junit.Assert.assertEquals(6, tbl.size());
+		org.junit.Assert.assertEquals("ten-one-b", tbl.get(IP.convertDottedIP("10.1.4.0")));
+
+		org.junit.Assert.assertEquals("ten-one-b", tbl.remove(IP.convertDottedIP("10.1.0.0"), 16));
+		org.junit.Assert.assertNull(tbl.remove(IP.convertDottedIP("10.1.0.0"), 16));
+		org.junit.Assert.assertEquals(5, tbl.size());
+		org.junit.Assert.assertEquals("ten-zero", tbl.get(IP.convertDottedIP("10.1.4.0")));
+		org.junit.Assert.assertEquals("ten-one-two", tbl.get(IP.convertDottedIP("10.1.2.4")));
+		org.junit.Assert.assertEquals("host", tbl.get(IP.convertDottedIP("10.1.2.3")));
+
+		org.junit.Assert.assertNull(tbl.put("0.0.0.0/0", "default"));
+		org.junit.Assert.assertEquals("default", tbl.get(IP.convertDottedIP("11.1.2.3")));
+		org.junit.Assert.assertEquals("host", tbl.get(IP.convertDottedIP("10.1.2.3")));
+
+		tbl.clear();
+		org.junit.Assert.assertEquals(0, tbl.size());
+		org.junit.Assert.assertNull(tbl.get(IP.convertDottedIP("10.1.2.3")));
+	}
+
+	@org.junit.Test
+	public void testIPv6() throws java.net.UnknownHostException
+	{
+		IPPrefixTable<String> tbl = new IPPrefixTable<>();
+		tbl.put("2001:db8::/32", "doc");
+		tbl.put("2001:db8:1234::/47", "sub");
+		tbl.put("2001:db8:1234::1", "host");
+		tbl.put("10.0.0.0/8", "ip4");
+		org.junit.Assert.assertEquals(4, tbl.size());
+
+		org.junit.Assert.assertEquals("host", tbl.get(java.net.InetAddress.getByName("2001:db8:1234::1")));
+		org.junit.Assert.assertEquals("sub", tbl.get(java.net.InetAddress.getByName("2001:db8:1234::2")));
+		org.junit.Assert.assertEquals("sub", tbl.get(java.net.InetAddress.getByName("2001:db8:1235:ffff::2")));
+		org.junit.Assert.assertEquals("doc", tbl.get(java.net.InetAddress.getByName("2001:db8:1236::1")));
+		org.junit.Assert.assertNull(tbl.get(java.net.InetAddress.getByName("2001:db9::1")));
+		org.junit.Assert.assertEquals("ip4", tbl.get(java.net.InetAddress.getByName("10.9.9.9")));
+		org.junit.Assert.assertEquals("doc", tbl.get(0x20010db800000000L, 1L));
+
+		org.junit.Assert.assertEquals("sub", tbl.remove(0x20010db812340000L, 0, 47));
+		org.junit.Assert.assertEquals("doc", tbl.get(java.net.InetAddress.getByName("2001:db8:1234::2")));
+		org.junit.Assert.assertEquals("host", tbl.get(java.net.InetAddress.getByName("2001:db8:1234::1")));
+		tbl.put(0, 0, 0, "default6");
+		org.junit.Assert.assertEquals("default6", tbl.get(java.net.InetAddress.getByName("2002::1")));
+		org.junit.Assert.assertNull(tbl.get(java.net.InetAddress.getByName("11.9.9.9")));
+	}
+
+	@org.junit.Test
+	public void testMappedIPv4() throws java.net.UnknownHostException
+	{
+		IPPrefixTable<String> tbl = new IPPrefixTable<>();
+		org.junit.Assert.assertNull(tbl.put("::ffff:192.168.1.0/120", "mapped"));
+		org.junit.Assert.assertNull(tbl.put("::ffff:10.0.0.1", "mapped-host"));
+		org.junit.Assert.assertNull(tbl.put("::ffff:0.0.0.0/95", "mapped-wide"));
+		org.junit.Assert.assertEquals(3, tbl.size());
+
+		// /96 and longer are stored as the IPv4 equivalent
+		org.junit.Assert.assertEquals("mapped", tbl.get(IP.convertDottedIP("192.168.1.99")));
+		org.junit.Assert.assertEquals("mapped-host", tbl.get(IP.convertDottedIP("10.0.0.1")));
+		org.junit.Assert.assertNull(tbl.get(IP.convertDottedIP("192.168.2.1")));
+		org.junit.Assert.assertEquals("mapped", tbl.put("192.168.1.0/24", "ip4"));
+		org.junit.Assert.assertEquals(3, tbl.size());
+
+		// IPv6 lookups of mapped addresses see the IPv4 prefixes, and fall back to the shorter IPv6 ones
+		org.junit.Assert.assertEquals("ip4", tbl.get(0, 0xffffc0a80163L));
+		org.junit.Assert.assertEquals("mapped-wide", tbl.get(0, 0xffffc0a80263L));
+		org.junit.Assert.assertNull(tbl.get(0, 0xc0a80163L));
+
+		org.junit.Assert.assertEquals("mapped-host", tbl.remove(IP.convertDottedIP("10.0.0.1"), 32));
+		org.junit.Assert.assertEquals("mapped-wide", tbl.remove(0, 0xffff00000000L, 95));
+		org.junit.Assert.assertEquals(1, tbl.size());
+
+		// the same applies to prefixes given as primitive IPv6 addresses
+		org.junit.Assert.assertNull(tbl.put(0, 0xffff0a000000L, 104, "mapped-long"));
+		org.junit.Assert.assertEquals("mapped-long", tbl.get(IP.convertDottedIP("10.1.2.3")));
+		org.junit.Assert.assertEquals("mapped-long", tbl.put("10.0.0.0/8", "ip4-long"));
+		org.junit.Assert.assertEquals("ip4-long", tbl.remove(0, 0xffff0a000000L, 104));
+		org.junit.Assert.assertNull(tbl.get(IP.convertDottedIP("10.1.2.3")));
+		org.junit.Assert.assertEquals(1, tbl.size());
+		try {
+			tbl.put("::ffff:10.0.0.1/129", "bad");
+			org.junit.Assert.fail("Failed to reject invalid prefix length");
+		} catch (IllegalArgumentException ex) {}
+		try {
+			tbl.remove(IP.convertDottedIP("10.0.0.1"), 33);
+			org.junit.Assert.fail("Failed to reject invalid prefix length");
+		} catch (IllegalArgumentException ex) {}
+		try {
+			tbl.remove(0, 0, -1);
+			org.junit.Assert.fail("Failed to reject invalid prefix length");
+		} catch (IllegalArgumentException ex) {}
+	}
+
+	@org.junit.Test
+	public void testBulk()
+	{
+		IPPrefixTable<Integer> tbl = new IPPrefixTable<>();
+		java.util.Random rnd = new java.util.Random(0);
+		IP.Subnet[] nets = new IP.Subnet[2000];
+		for (int idx = 0; idx != nets.length; idx++) {
+			nets[idx] = new IP.Subnet(rnd.nextInt(), 8 + rnd.nextInt(25));
+			tbl.put(nets[idx].ip, nets[idx].netprefix, idx);
+		}
+		for (int loop = 0; loop != 20000; loop++) {
+			int ip = (loop % 2 == 0 ? rnd.nextInt() : nets[rnd.nextInt(nets.length)].ip + rnd.nextInt(256));
+			int best = -1;
+			for (int idx = 0; idx != nets.length; idx++) {
+				if (nets[idx].isMember(ip) && (best == -1 || nets[idx].netprefix >= nets[best].netprefix)) best = idx;
+			}
+			Integer val = tbl.get(ip);
+			if (best == -1) {
+				org.junit.Assert.assertNull(val);
+			} else {
+				org.junit.Assert.assertNotNull(val);
+				org.junit.Assert.assertEquals(nets[best].netprefix, nets[val].netprefix);
+				org.junit.Assert.assertTrue(nets[val].isMember(ip));
+			}
+		}
+	}
+}
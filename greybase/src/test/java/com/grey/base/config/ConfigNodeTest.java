@@ -0,0 +1,100 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.base.config;
+
+public class ConfigNodeTest
+{
+	private static final String XML = "<root rattr='r1'>"
+			+"<tag1 attr1='a1'>val1</tag1>"
+			+"<tag1 attr2='a2'> val2 </tag1>"
+			+"<mixed>text1<!-- comment --><![CDATA[cdata1]]>text2</mixed>"
+			+"<list1>"
+				+"<item name='n1'><sub>s1</sub></item>"
+				+"<item name='n2' enabled='N'><sub>s2</sub></item>"
+				+"<item name='n3' enabled='Y'><sub attr='x'>s3</sub><sub>s3b</sub></item>"
+				+"<other/>"
+				+"<item name='n4'/>"
+			+"</list1>"
+			+"<list1><item name='n5'><sub>s5</sub></item></list1>"
+			+"<a.b-c_d>dotted</a.b-c_d>"
+			+"<empty/>"
+			+"</root>";
+
+	private static final String[] SUPPORTED = new String[] {
+		".", "./@rattr", "@rattr", "tag1", "./tag1", "tag1/@attr1", "tag1/@attr2", "tag1[2]", "tag1[2]/@attr2", "tag1[3]",
+		"mixed", "list1", "list1/item", "list1/item/sub", "list1/item[2]/sub", "list1/item[3]/sub", "list1/item/sub/@attr",
+		"list1/item[@name='n3']/sub", "list1/item[@name=\"n2\"]/@enabled", "list1/item"+XmlConfig.XPATH_ENABLED+"/@name",
+		"list1/item[@name='n2']"+XmlConfig.XPATH_ENABLED, "list1/item[@name='n3']"+XmlConfig.XPATH_ENABLED+"/sub[2]",
+		"list1/item[@name='n9']", "list1/item[@name='n4']/@name", "a.b-c_d", "empty", "nosuchtag", "nosuchtag/@x", "tag1/.",
+		"/root/tag1", "/root/list1/item[3]/sub", "/root/@rattr", "/nosuchroot"
+	};
+
+	private static final String[] UNSUPPORTED = new String[] {
+		"", "/", "//tag1", "tag1/", "tag1//x", "*", "tag1[last()]", "tag1[0]", "tag1[2][1]", "tag1[1][@attr1='a1']",
+		"tag1[@attr1='a1'][@attr2='a2']", "tag1 ", "ns:tag1", "tag1/@*", "@a/b", "tag1[@attr1='a1' and @x]", "count(tag1)",
+		"tag1[", "tag1]", "text()", "..", "tag1[@attr1=a1]", "1tag"
+	};
+
+	@org.junit.Test
+	public void testEquivalence() throws Exception
+	{
+		org.w3c.dom.Document doc = com.grey.base.utils.XML.makeDOM(XML);
+		ConfigNode docnode = ConfigNode.compile(doc);
+		javax.xml.xpath.XPath xpathproc = com.grey.base.utils.XML.getXpathProcessor();
+		org.w3c.dom.Node rootelem = doc.getDocumentElement();
+		ConfigNode rootnode = docnode.lookup(rootelem);
+		org.junit.Assert.assertNotNull(rootnode);
+
+		for (String xpath : SUPPORTED) {
+			ConfigNode.Path path = ConfigNode.compilePath(xpath);
+			org.junit.Assert.assertNotNull("Failed to compile "+xpath, path);
+			org.w3c.dom.Node expect = (org.w3c.dom.Node)xpathproc.evaluate(xpath, rootelem, javax.xml.xpath.XPathConstants.NODE);
+			String actual = rootnode.selectValue(path);
+			org.junit.Assert.assertEquals(xpath, (expect == null ? null : expect.getTextContent()), actual);
+			if (path.attr != null) continue;
+
+			ConfigNode node = rootnode.selectNode(path);
+			org.junit.Assert.assertSame(xpath, expect, node == null ? null : node.domnode);
+			org.w3c.dom.NodeList expectlist = (org.w3c.dom.NodeList)xpathproc.evaluate(xpath, rootelem, javax.xml.xpath.XPathConstants.NODESET);
+			java.util.ArrayList<ConfigNode> nodes = new java.util.ArrayList<>();
+			rootnode.selectNodes(path, nodes);
+			org.junit.Assert.assertEquals(xpath, expectlist.getLength(), nodes.size());
+			for (int idx = 0; idx != nodes.size(); idx++) {
+				org.junit.Assert.assertSame(xpath+" - "+idx, expectlist.item(idx), nodes.get(idx).domnode);
+				org.junit.Assert.assertSame(nodes.get(idx), docnode.lookup(expectlist.item(idx)));
+			}
+		}
+
+		for (String xpath : UNSUPPORTED) {
+			org.junit.Assert.assertNull("Unexpectedly compiled "+xpath, ConfigNode.compilePath(xpath));
+		}
+	}
+
+	@org.junit.Test
+	public void testXmlConfigStats()
+	{
+		long compiled = XmlConfig.getCompiledLookups();
+		long xpath = XmlConfig.getXPathLookups();
+		XmlConfig cfg = XmlConfig.makeSection(XML, "/root");
+		org.junit.Assert.assertTrue(cfg.exists());
+		org.junit.Assert.assertEquals("s3", cfg.getValue("list1/item[@name='n3']"+XmlConfig.XPATH_ENABLED+"/sub", false, null));
+		XmlConfig[] sects = cfg.getSections("list1/item"+XmlConfig.XPATH_ENABLED);
+		org.junit.Assert.assertEquals(4, sects.length);
+		org.junit.Assert.assertEquals("n5", sects[3].getValue("@name", false, null));
+		org.junit.Assert.assertEquals("s1", sects[0].getValue("sub", false, null));
+		org.junit.Assert.assertEquals(compiled + 5, XmlConfig.getCompiledLookups()); //includes the lookup of the /root section
+		org.junit.Assert.assertEquals(xpath, XmlConfig.getXPathLookups());
+
+		// sections obtained via the XPath fallback still use the compiled tree for their own lookups
+		sects = cfg.getSections("list1/item[position() < 3]");
+		org.junit.Assert.assertEquals(3, sects.length);
+		org.junit.Assert.assertEquals(xpath + 1, XmlConfig.getXPathLookups());
+		org.junit.Assert.assertEquals("n2", sects[1].getValue("@name", false, null));
+		org.junit.Assert.assertEquals("s5", sects[2].getValue("sub", false, null));
+		org.junit.Assert.assertEquals(xpath + 1, XmlConfig.getXPathLookups());
+		org.junit.Assert.assertEquals("dotted", cfg.getValue("//a.b-c_d", false, null));
+		org.junit.Assert.assertEquals(xpath + 2, XmlConfig.getXPathLookups());
+	}
+}
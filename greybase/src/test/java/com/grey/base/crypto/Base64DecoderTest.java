@@ -0,0 +1,127 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.base.crypto;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.grey.base.utils.ByteChars;
+
+public class Base64DecoderTest
+{
+	@org.junit.Test
+	public void testVectors()
+	{
+		// the test vectors in section 10 of RFC-4648
+		verifyVector("", "");
+		verifyVector("f", "Zg==");
+		verifyVector("fo", "Zm8=");
+		verifyVector("foo", "Zm9v");
+		verifyVector("foob", "Zm9vYg==");
+		verifyVector("fooba", "Zm9vYmE=");
+		verifyVector("foobar", "Zm9vYmFy");
+		// unpadded and with embedded whitespace
+		verifyVector("f", "Zg");
+		verifyVector("fooba", "Zm9vYmE");
+		verifyVector("foobar", " Zm9v\r\nYm\tFy\n");
+		verifyVector("fooba", "Zm9v\nYmE=\r\n");
+		verifyVector("foob", "Zm9vYg=\r\n=");
+	}
+
+	@org.junit.Test
+	public void testChunks()
+	{
+		java.util.Random rnd = new java.util.Random(99);
+		for (int len : new int[]{1, 2, 3, 4, 5, 57, 58, 59, 1000, 10_000}) {
+			byte[] data = new byte[len];
+			rnd.nextBytes(data);
+			for (int maxline : new int[]{-1, 0, 4, 10}) {
+				byte[] enc = Base64.encodeBytes(data, 0, len, maxline, null);
+				verifyChunked(enc, data, 1, false, ByteOrder.BIG_ENDIAN);
+				verifyChunked(enc, data, 3, true, ByteOrder.LITTLE_ENDIAN);
+				verifyChunked(enc, data, 77, false, ByteOrder.LITTLE_ENDIAN);
+				verifyChunked(enc, data, 4096, true, ByteOrder.BIG_ENDIAN);
+			}
+		}
+	}
+
+	@org.junit.Test
+	public void testSmallOutput()
+	{
+		byte[] data = "The quick brown fox jumps over the lazy dog".getBytes();
+		byte[] enc = Base64.encodeBytes(data, 0, data.length, 10, null);
+		Base64Decoder dec = new Base64Decoder();
+		ByteBuffer src = ByteBuffer.wrap(enc);
+		ByteBuffer dst = ByteBuffer.allocate(4);
+		ByteChars out = new ByteChars();
+		boolean done;
+		do {
+			done = dec.decode(src, dst);
+			dst.flip();
+			while (dst.hasRemaining()) out.append(dst.get());
+			dst.clear();
+		} while (!done);
+		org.junit.Assert.assertTrue(dec.finish(dst));
+		dst.flip();
+		while (dst.hasRemaining()) out.append(dst.get());
+		org.junit.Assert.assertEquals(new String(data), out.toString());
+	}
+
+	@org.junit.Test
+	public void testErrors()
+	{
+		verifyError("Zm9v*mFy");
+		verifyError("Zm9vYmFy=");
+		verifyError("Zm9vY===");
+		verifyError("Zm9vYg==Zm9v");
+		verifyError("Zm9vY");
+		verifyError("Zm9vYg=");
+	}
+
+	private static void verifyVector(String plain, String enc)
+	{
+		Base64Decoder dec = new Base64Decoder();
+		ByteChars out = new ByteChars();
+		dec.decode(ByteBuffer.wrap(enc.getBytes()), out);
+		dec.finish(out);
+		org.junit.Assert.assertEquals(plain, out.toString());
+
+		ByteBuffer dst = ByteBuffer.allocate(10);
+		byte[] encbuf = ("xx"+enc).getBytes();
+		org.junit.Assert.assertEquals(enc.length(), dec.decode(new ByteChars(encbuf, 2, enc.length(), false), dst));
+		org.junit.Assert.assertTrue(dec.finish(dst));
+		org.junit.Assert.assertEquals(plain, new String(dst.array(), 0, dst.position()));
+	}
+
+	private static void verifyChunked(byte[] enc, byte[] expect, int chunksiz, boolean direct, ByteOrder order)
+	{
+		Base64Decoder dec = new Base64Decoder();
+		ByteBuffer src = (direct ? ByteBuffer.allocateDirect(chunksiz) : ByteBuffer.allocate(chunksiz)).order(order);
+		ByteBuffer dst = (direct ? ByteBuffer.allocateDirect(expect.length + 3) : ByteBuffer.allocate(expect.length + 3)).order(order);
+		for (int off = 0; off < enc.length; off += chunksiz) {
+			int len = Math.min(chunksiz, enc.length - off);
+			src.clear();
+			src.put(enc, off, len);
+			src.flip();
+			org.junit.Assert.assertTrue(dec.decode(src, dst));
+		}
+		org.junit.Assert.assertTrue(dec.finish(dst));
+		dst.flip();
+		byte[] out = new byte[dst.remaining()];
+		dst.get(out);
+		org.junit.Assert.assertArrayEquals("len="+expect.length+", chunk="+chunksiz, expect, out);
+	}
+
+	private static void verifyError(String enc)
+	{
+		Base64Decoder dec = new Base64Decoder();
+		ByteChars out = new ByteChars();
+		try {
+			dec.decode(ByteBuffer.wrap(enc.getBytes()), out);
+			dec.finish(out);
+			org.junit.Assert.fail("Failed to detect bad input="+enc+" - decoded="+out);
+		} catch (IllegalArgumentException ex) {}
+	}
+}
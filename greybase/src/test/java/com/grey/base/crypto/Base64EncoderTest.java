@@ -0,0 +1,110 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.base.crypto;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.grey.base.utils.ByteChars;
+
+public class Base64EncoderTest
+{
+	@org.junit.Test
+	public void testVectors()
+	{
+		// the test vectors in section 10 of RFC-4648
+		verifyVector("", "");
+		verifyVector("f", "Zg==");
+		verifyVector("fo", "Zm8=");
+		verifyVector("foo", "Zm9v");
+		verifyVector("foob", "Zm9vYg==");
+		verifyVector("fooba", "Zm9vYmE=");
+		verifyVector("foobar", "Zm9vYmFy");
+	}
+
+	@org.junit.Test
+	public void testChunks()
+	{
+		java.util.Random rnd = new java.util.Random(99);
+		int[] linesizes = new int[]{-1, 0, 4, 10, 64};
+		for (int len : new int[]{1, 2, 3, 4, 5, 57, 58, 59, 1000, 10_000}) {
+			byte[] data = new byte[len];
+			rnd.nextBytes(data);
+			for (int maxline : linesizes) {
+				byte[] expect = Base64.encodeBytes(data, 0, len, maxline, null);
+				verifyChunked(data, expect, maxline, 1, false, ByteOrder.BIG_ENDIAN);
+				verifyChunked(data, expect, maxline, 2, false, ByteOrder.LITTLE_ENDIAN);
+				verifyChunked(data, expect, maxline, 7, true, ByteOrder.BIG_ENDIAN);
+				verifyChunked(data, expect, maxline, 100, true, ByteOrder.LITTLE_ENDIAN);
+				verifyChunked(data, expect, maxline, len, false, ByteOrder.BIG_ENDIAN);
+			}
+		}
+	}
+
+	@org.junit.Test
+	public void testSmallOutput()
+	{
+		byte[] data = "The quick brown fox jumps over the lazy dog".getBytes();
+		byte[] expect = Base64.encodeBytes(data, 0, data.length, 8, null);
+		Base64Encoder enc = new Base64Encoder(8);
+		ByteBuffer src = ByteBuffer.wrap(data);
+		ByteBuffer dst = ByteBuffer.allocate(6); //just enough for a line break plus one unit
+		ByteChars out = new ByteChars();
+		boolean done;
+		do {
+			done = enc.encode(src, dst);
+			dst.flip();
+			while (dst.hasRemaining()) out.append(dst.get());
+			dst.clear();
+		} while (!done);
+		dst.limit(3);
+		org.junit.Assert.assertFalse(enc.finish(dst));
+		dst.clear();
+		org.junit.Assert.assertTrue(enc.finish(dst));
+		dst.flip();
+		while (dst.hasRemaining()) out.append(dst.get());
+		org.junit.Assert.assertEquals(new String(expect), out.toString());
+	}
+
+	private static void verifyVector(String plain, String expect)
+	{
+		Base64Encoder enc = new Base64Encoder(-1);
+		ByteChars out = new ByteChars();
+		enc.encode(ByteBuffer.wrap(plain.getBytes()), out);
+		enc.finish(out);
+		org.junit.Assert.assertEquals(expect, out.toString());
+		org.junit.Assert.assertTrue(expect.length() <= new Base64Encoder(-1).maxEncodedSize(plain.length()));
+	}
+
+	private static void verifyChunked(byte[] data, byte[] expect, int maxline, int chunksiz, boolean direct, ByteOrder order)
+	{
+		Base64Encoder enc = new Base64Encoder(maxline);
+		ByteBuffer src = (direct ? ByteBuffer.allocateDirect(chunksiz) : ByteBuffer.allocate(chunksiz)).order(order);
+		ByteBuffer dst = (direct ? ByteBuffer.allocateDirect(expect.length + 8) : ByteBuffer.allocate(expect.length + 8)).order(order);
+		ByteChars bcout = new ByteChars(1);
+		for (int off = 0; off < data.length; off += chunksiz) {
+			int len = Math.min(chunksiz, data.length - off);
+			src.clear();
+			src.put(data, off, len);
+			src.flip();
+			org.junit.Assert.assertTrue(enc.encode(src, dst));
+			org.junit.Assert.assertFalse(src.hasRemaining());
+		}
+		org.junit.Assert.assertTrue(enc.finish(dst));
+		dst.flip();
+		byte[] out = new byte[dst.remaining()];
+		dst.get(out);
+		String desc = "len="+data.length+", maxline="+maxline+", chunk="+chunksiz+", direct="+direct+"/"+order;
+		org.junit.Assert.assertEquals(desc, new String(expect), new String(out));
+
+		enc = new Base64Encoder(maxline);
+		for (int off = 0; off < data.length; off += chunksiz) {
+			int len = Math.min(chunksiz, data.length - off);
+			enc.encode(ByteBuffer.wrap(data, off, len).order(order), bcout);
+		}
+		enc.finish(bcout);
+		org.junit.Assert.assertEquals(desc, new String(expect), bcout.toString());
+	}
+}
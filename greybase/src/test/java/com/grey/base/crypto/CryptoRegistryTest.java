@@ -0,0 +1,109 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.base.crypto;
+
+import com.grey.base.utils.ByteChars;
+
+public class CryptoRegistryTest
+{
+	private static final String[] DATA = {"", "a", "The quick brown fox", "jumps over the lazy dog and then some more text to span a block"};
+
+	@org.junit.Test
+	public void testInstances() throws Exception
+	{
+		CryptoRegistry reg = CryptoRegistry.get();
+		org.junit.Assert.assertSame(reg, CryptoRegistry.get());
+		java.security.MessageDigest md = reg.getDigest(Defs.ALG_DIGEST_SHA256);
+		md.update((byte)1); //leave it in a dirty state
+		org.junit.Assert.assertSame(md, reg.getDigest(Defs.ALG_DIGEST_SHA256));
+		org.junit.Assert.assertArrayEquals(java.security.MessageDigest.getInstance(Defs.ALG_DIGEST_SHA256).digest(), md.digest());
+		org.junit.Assert.assertNotSame(md, reg.getDigest(Defs.ALG_DIGEST_MD5));
+		org.junit.Assert.assertSame(reg.getMac("HmacSHA256"), reg.getMac("HmacSHA256"));
+		org.junit.Assert.assertSame(reg.getCipher(Defs.ALG_CPHR_AES), reg.getCipher(Defs.ALG_CPHR_AES));
+		org.junit.Assert.assertSame(reg.getHMAC(Defs.ALG_DIGEST_MD5), reg.getHMAC(Defs.ALG_DIGEST_MD5));
+		try {
+			reg.getDigest("no-such-algorithm");
+			org.junit.Assert.fail("Failed to reject bad algorithm");
+		} catch (java.security.NoSuchAlgorithmException ex) {}
+
+		final CryptoRegistry[] other = new CryptoRegistry[1];
+		Thread thrd = new Thread(() -> other[0] = CryptoRegistry.get());
+		thrd.start();
+		thrd.join();
+		org.junit.Assert.assertNotNull(other[0]);
+		org.junit.Assert.assertNotSame(reg, other[0]);
+	}
+
+	@org.junit.Test
+	public void testBulkDigest() throws Exception
+	{
+		java.util.List<ByteChars> inputs = inputs();
+		ByteChars outbuf = new ByteChars("prefix");
+		int dlen = CryptoRegistry.get().digest(Defs.ALG_DIGEST_SHA1, inputs, outbuf);
+		org.junit.Assert.assertEquals(20, dlen);
+		org.junit.Assert.assertEquals(6 + (DATA.length * dlen), outbuf.size());
+		java.security.MessageDigest md = java.security.MessageDigest.getInstance(Defs.ALG_DIGEST_SHA1);
+		for (int idx = 0; idx != DATA.length; idx++) {
+			byte[] exp = md.digest(DATA[idx].getBytes());
+			byte[] act = java.util.Arrays.copyOfRange(outbuf.buffer(), outbuf.offset() + 6 + (idx * dlen), outbuf.offset() + 6 + ((idx + 1) * dlen));
+			org.junit.Assert.assertArrayEquals(exp, act);
+		}
+	}
+
+	@org.junit.Test
+	public void testBulkMac() throws Exception
+	{
+		java.util.List<ByteChars> inputs = inputs();
+		java.security.Key key = new javax.crypto.spec.SecretKeySpec("secret-key".getBytes(), "HmacMD5");
+		ByteChars outbuf = new ByteChars();
+		int mlen = CryptoRegistry.get().mac("HmacMD5", key, inputs, outbuf);
+		org.junit.Assert.assertEquals(16, mlen);
+		org.junit.Assert.assertEquals(DATA.length * mlen, outbuf.size());
+		for (int idx = 0; idx != DATA.length; idx++) {
+			byte[] exp = HMAC.encode(Defs.ALG_DIGEST_MD5, "secret-key".getBytes(), DATA[idx].getBytes());
+			byte[] act = java.util.Arrays.copyOfRange(outbuf.buffer(), outbuf.offset() + (idx * mlen), outbuf.offset() + ((idx + 1) * mlen));
+			org.junit.Assert.assertArrayEquals(exp, act);
+		}
+	}
+
+	@org.junit.Test
+	public void testBulkCrypt() throws Exception
+	{
+		java.util.List<ByteChars> inputs = inputs();
+		java.security.Key key = SymKey.generateKey(Defs.ALG_CPHR_AES, 0);
+		java.util.List<ByteChars> encrypted = outputs();
+		CryptoRegistry.get().crypt(javax.crypto.Cipher.ENCRYPT_MODE, Defs.ALG_CPHR_AES, key, null, inputs, encrypted);
+		java.util.List<ByteChars> decrypted = outputs();
+		CryptoRegistry.get().crypt(javax.crypto.Cipher.DECRYPT_MODE, Defs.ALG_CPHR_AES, key, null, encrypted, decrypted);
+		for (int idx = 0; idx != DATA.length; idx++) {
+			ByteChars enc = encrypted.get(idx);
+			byte[] plain = SymKey.decrypt(key, null, enc.buffer(), enc.offset(), enc.size());
+			org.junit.Assert.assertEquals(DATA[idx], new String(plain));
+			org.junit.Assert.assertEquals(DATA[idx], decrypted.get(idx).toString());
+		}
+		try {
+			CryptoRegistry.get().crypt(javax.crypto.Cipher.ENCRYPT_MODE, Defs.ALG_CPHR_AES, key, null, inputs, new java.util.ArrayList<ByteChars>());
+			org.junit.Assert.fail("Failed to reject missing outputs");
+		} catch (IllegalArgumentException ex) {}
+	}
+
+	private static java.util.List<ByteChars> inputs()
+	{
+		java.util.List<ByteChars> lst = new java.util.ArrayList<>();
+		for (int idx = 0; idx != DATA.length; idx++) {
+			lst.add(new ByteChars(DATA[idx]));
+		}
+		return lst;
+	}
+
+	private static java.util.List<ByteChars> outputs()
+	{
+		java.util.List<ByteChars> lst = new java.util.ArrayList<>();
+		for (int idx = 0; idx != DATA.length; idx++) {
+			lst.add(new ByteChars());
+		}
+		return lst;
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.base.sasl;
+
+import com.grey.base.utils.ByteChars;
+import com.grey.base.utils.StringOps;
+
+public class AsyncAuthenticatorTest
+	implements SaslServer.VerifyCallback
+{
+	private static final String USRNAM = "user1";
+	private static final ByteChars PASSWD = new ByteChars("secret1");
+
+	private final Backend backend = new Backend();
+	private final java.util.concurrent.ExecutorService workers = java.util.concurrent.Executors.newSingleThreadExecutor();
+	private final java.util.concurrent.ExecutorService completer = java.util.concurrent.Executors.newSingleThreadExecutor();
+	private final java.util.concurrent.LinkedBlockingQueue<Boolean> results = new java.util.concurrent.LinkedBlockingQueue<>();
+	private volatile Thread completionThread;
+
+	@org.junit.After
+	public void shutdown()
+	{
+		workers.shutdownNow();
+		completer.shutdownNow();
+	}
+
+	@org.junit.Test
+	public void testPlain() throws InterruptedException
+	{
+		CredentialCache cache = new CredentialCache(10, 60_000);
+		AsyncAuthenticator auth = new AsyncAuthenticator(backend, workers, cache);
+		PlainServer server = new PlainServer(backend, false);
+		PlainClient client = new PlainClient(false);
+
+		org.junit.Assert.assertTrue(verifyPlain(client, server, auth, USRNAM, PASSWD));
+		org.junit.Assert.assertEquals(1, auth.getBackendCalls());
+		org.junit.Assert.assertEquals(new ByteChars(USRNAM), server.getUser());
+		org.junit.Assert.assertNotNull(completionThread);
+		org.junit.Assert.assertNotSame(Thread.currentThread(), completionThread);
+
+		// repeat login is satisfied from the cache, synchronously
+		completionThread = null;
+		org.junit.Assert.assertTrue(verifyPlain(client, server, auth, USRNAM, PASSWD));
+		org.junit.Assert.assertEquals(1, auth.getBackendCalls());
+		org.junit.Assert.assertEquals(1, cache.getHits());
+		org.junit.Assert.assertSame(Thread.currentThread(), completionThread);
+
+		// a wrong password has to go to the backend
+		org.junit.Assert.assertFalse(verifyPlain(client, server, auth, USRNAM, new ByteChars("badpass")));
+		org.junit.Assert.assertEquals(2, auth.getBackendCalls());
+		org.junit.Assert.assertFalse(verifyPlain(client, server, auth, "nosuchuser", PASSWD));
+		org.junit.Assert.assertEquals(3, auth.getBackendCalls());
+
+		// backend errors are treated as failures
+		backend.fail = true;
+		cache.invalidate(new ByteChars(USRNAM));
+		org.junit.Assert.assertFalse(verifyPlain(client, server, auth, USRNAM, PASSWD));
+		org.junit.Assert.assertEquals(1, auth.getBackendErrors());
+	}
+
+	@org.junit.Test
+	public void testReusedServer() throws InterruptedException
+	{
+		// a synchronous verification leaves the server referencing the caller's buffer, which the async one mustn't write to
+		AsyncAuthenticator auth = new AsyncAuthenticator(backend, workers, null);
+		PlainServer server = new PlainServer(backend, false);
+		PlainClient client = new PlainClient(false);
+		client.init();
+		ByteChars rsp1 = new ByteChars(client.setResponse(null, USRNAM, "badpass", null));
+		String rsp1_orig = rsp1.toString();
+		org.junit.Assert.assertFalse(server.init().verifyResponse(rsp1));
+		org.junit.Assert.assertTrue(verifyPlain(client, server, auth, USRNAM, PASSWD));
+		org.junit.Assert.assertEquals(rsp1_orig, rsp1.toString());
+	}
+
+	@org.junit.Test
+	public void testCramMD5() throws java.security.NoSuchAlgorithmException, InterruptedException
+	{
+		AsyncAuthenticator auth = new AsyncAuthenticator(backend, workers, null);
+		CramMD5Server server = new CramMD5Server(backend, true);
+		CramMD5Client client = new CramMD5Client(true);
+		org.junit.Assert.assertTrue(verifyCramMD5(client, server, auth, USRNAM, PASSWD));
+		org.junit.Assert.assertEquals(new ByteChars(USRNAM), server.getUser());
+		org.junit.Assert.assertFalse(verifyCramMD5(client, server, auth, USRNAM, new ByteChars("badpass")));
+		org.junit.Assert.assertFalse(verifyCramMD5(client, server, auth, "nosuchuser", PASSWD));
+		org.junit.Assert.assertEquals(3, auth.getBackendCalls());
+		org.junit.Assert.assertTrue(verifyCramMD5(client, server, auth, USRNAM, PASSWD));
+
+		// response is missing the digest, so the backend should not be consulted
+		server.init();
+		server.verifyResponse(new ByteChars(USRNAM+" "), auth, completer, this, null);
+		org.junit.Assert.assertEquals(Boolean.FALSE, results.poll());
+		org.junit.Assert.assertEquals(4, auth.getBackendCalls());
+	}
+
+	@Override
+	public void saslResponseVerified(SaslServer server, boolean is_valid, Object attachment)
+	{
+		completionThread = Thread.currentThread();
+		results.add(is_valid);
+	}
+
+	private boolean verifyPlain(PlainClient client, PlainServer server, AsyncAuthenticator auth, CharSequence usrnam, ByteChars passwd)
+		throws InterruptedException
+	{
+		client.init();
+		ByteChars rsp = client.setResponse(null, usrnam, passwd, null);
+		server.init().verifyResponse(rsp, auth, completer, this, null);
+		rsp.clear().append("overwritten"); //should not affect the pending verification
+		return getResult();
+	}
+
+	private boolean verifyCramMD5(CramMD5Client client, CramMD5Server server, AsyncAuthenticator auth, CharSequence usrnam, ByteChars passwd)
+		throws InterruptedException
+	{
+		ByteChars challenge = server.init(null, 0, null).setChallenge(null);
+		ByteChars rsp = client.setResponse(usrnam, passwd, challenge, null);
+		server.verifyResponse(rsp, auth, completer, this, null);
+		rsp.clear().append("overwritten");
+		return getResult();
+	}
+
+	private boolean getResult() throws InterruptedException
+	{
+		Boolean result = results.poll(10, java.util.concurrent.TimeUnit.SECONDS);
+		org.junit.Assert.assertNotNull("Timed out waiting for result", result);
+		return result;
+	}
+
+
+	private static final class Backend
+		extends SaslServer.Authenticator
+	{
+		volatile boolean fail;
+		Backend() {} //defined purely to avoid synthetic accessor
+
+		@Override
+		public ByteChars saslPasswordLookup(ByteChars usrnam) {
+			if (fail) throw new IllegalStateException("Simulated backend failure");
+			if (StringOps.sameSeq(usrnam, USRNAM)) return PASSWD;
+			return null;
+		}
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.base.sasl;
+
+import com.grey.base.utils.ByteChars;
+
+public class CredentialCacheTest
+{
+	@org.junit.Test
+	public void testExpiry()
+	{
+		ByteChars usr = new ByteChars("user1");
+		ByteChars pwd = new ByteChars("secret1");
+		CredentialCache cache = new CredentialCache(10, 1000);
+		org.junit.Assert.assertFalse(cache.isVerified(usr, pwd, 100));
+		cache.verified(usr, pwd, 100);
+		org.junit.Assert.assertEquals(1, cache.size());
+		org.junit.Assert.assertTrue(cache.isVerified(usr, pwd, 100));
+		org.junit.Assert.assertTrue(cache.isVerified(new ByteChars("user1"), new ByteChars("secret1"), 1099));
+		org.junit.Assert.assertFalse(cache.isVerified(usr, new ByteChars("secret2"), 100));
+		org.junit.Assert.assertFalse(cache.isVerified(usr, new ByteChars(""), 100));
+		org.junit.Assert.assertFalse(cache.isVerified(usr, null, 100));
+		org.junit.Assert.assertFalse(cache.isVerified(new ByteChars("user2"), pwd, 100));
+		org.junit.Assert.assertEquals(2, cache.getHits());
+		org.junit.Assert.assertEquals(4, cache.getMisses());
+
+		// usernames and passwords are not allowed to bleed into each other
+		cache.verified(new ByteChars("ab"), new ByteChars("c"), 100);
+		org.junit.Assert.assertFalse(cache.isVerified(new ByteChars("a"), new ByteChars("bc"), 100));
+		org.junit.Assert.assertTrue(cache.isVerified(new ByteChars("ab"), new ByteChars("c"), 100));
+
+		org.junit.Assert.assertFalse(cache.isVerified(usr, pwd, 1100));
+		org.junit.Assert.assertEquals(1, cache.size());
+		cache.verified(usr, pwd, 2000);
+		org.junit.Assert.assertEquals(1, cache.purge(1100)); //the "ab" entry expired
+		org.junit.Assert.assertEquals(1, cache.size());
+		cache.invalidate(usr);
+		org.junit.Assert.assertFalse(cache.isVerified(usr, pwd, 2000));
+		org.junit.Assert.assertEquals(0, cache.size());
+	}
+
+	@org.junit.Test
+	public void testBounded()
+	{
+		CredentialCache cache = new CredentialCache(3, 1000);
+		ByteChars pwd = new ByteChars("secret");
+		for (int idx = 0; idx != 5; idx++) {
+			cache.verified(new ByteChars("user"+idx), pwd, idx);
+		}
+		org.junit.Assert.assertEquals(3, cache.size());
+		org.junit.Assert.assertFalse(cache.isVerified(new ByteChars("user0"), pwd, 10));
+		org.junit.Assert.assertFalse(cache.isVerified(new ByteChars("user1"), pwd, 10));
+		org.junit.Assert.assertTrue(cache.isVerified(new ByteChars("user2"), pwd, 10));
+		org.junit.Assert.assertTrue(cache.isVerified(new ByteChars("user4"), pwd, 10));
+
+		// re-verifying an entry refreshes its position
+		cache.verified(new ByteChars("user2"), pwd, 20);
+		cache.verified(new ByteChars("user5"), pwd, 20);
+		org.junit.Assert.assertTrue(cache.isVerified(new ByteChars("user2"), pwd, 30));
+		org.junit.Assert.assertFalse(cache.isVerified(new ByteChars("user3"), pwd, 30));
+	}
+}
@@ -208,6 +208,36 @@ public class ByteCharsTest
 		org.junit.Assert.assertEquals(prevlen, ah1.size());
 	}
 
+	@org.junit.Test
+	public void testCachedHash()
+	{
+		ByteChars bc = new ByteChars("abc").setHashCaching(true);
+		org.junit.Assert.assertTrue(bc.isHashCaching());
+		int hash = bc.hashCode();
+		org.junit.Assert.assertEquals(new ByteChars("abc").hashCode(), hash);
+		org.junit.Assert.assertEquals(hash, bc.hashCode());
+		bc.append('d');
+		org.junit.Assert.assertEquals(new ByteChars("abcd").hashCode(), bc.hashCode());
+		bc.setByte(0, 'x');
+		org.junit.Assert.assertEquals(new ByteChars("xbcd").hashCode(), bc.hashCode());
+		bc.toUpperCase();
+		org.junit.Assert.assertEquals(new ByteChars("XBCD").hashCode(), bc.hashCode());
+		bc.populate("xyz");
+		org.junit.Assert.assertEquals(new ByteChars("xyz").hashCode(), bc.hashCode());
+		bc.populate("abc");
+		org.junit.Assert.assertEquals(hash, bc.hashCode());
+		bc.advance(1);
+		org.junit.Assert.assertEquals(new ByteChars("bc").hashCode(), bc.hashCode());
+		bc.set(new ByteChars("pqr"));
+		org.junit.Assert.assertEquals(new ByteChars("pqr").hashCode(), bc.hashCode());
+		bc.buffer()[bc.offset()] = 'P'; //direct modification of the buffer isn't detected
+		bc.invalidateHash();
+		org.junit.Assert.assertEquals(new ByteChars("Pqr").hashCode(), bc.hashCode());
+		bc.setHashCaching(false);
+		org.junit.Assert.assertFalse(bc.isHashCaching());
+		org.junit.Assert.assertEquals(new ByteChars("Pqr").hashCode(), bc.hashCode());
+	}
+
 	// Note that in general, we can't guarantee that hashcodes will ever be unequal, but we can guarantee when they are equal.
 	@org.junit.Test
 	public void testEquals()
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.base.utils;
+
+/**
+ * Compares the speed of the word-at-a-time (SWAR) search methods in ByteOps with the byte-at-a-time equivalents in
+ * ByteOpsSearchTest.
+ * This is not a unit test and is not run by the build, as it makes no assertions and takes several seconds. Run it by hand:
+ * <br>
+ * java -cp greybase/target/classes:greybase/target/test-classes com.grey.base.utils.ByteOpsSearchBenchmark [bufsize [iterations]]
+ */
+public class ByteOpsSearchBenchmark
+{
+	public static void main(String[] args)
+	{
+		int bufsize = (args.length > 0 ? Integer.parseInt(args[0]) : 64 * 1024);
+		int iterations = (args.length > 1 ? Integer.parseInt(args[1]) : 1000);
+		byte[] buf = ByteOpsSearchTest.randomBytes(bufsize, 26);
+		byte[] crlf = new byte[]{'\r', '\n'};
+		buf[buf.length - 2] = '\r';
+		buf[buf.length - 1] = '\n';
+		long t0 = 0, t1 = 0, t2 = 0, t3 = 0, t4 = 0, t5 = 0;
+		long chk = 0;
+		for (int round = 0; round != 5; round++) { //the first rounds serve as warmup
+			long time0 = System.nanoTime();
+			for (int loop = 0; loop != iterations; loop++) chk += ByteOpsSearchTest.slowIndexOf(buf, 0, buf.length, '\n', false);
+			long time1 = System.nanoTime();
+			for (int loop = 0; loop != iterations; loop++) chk += ByteOps.indexOf(buf, 0, buf.length, '\n');
+			long time2 = System.nanoTime();
+			for (int loop = 0; loop != iterations; loop++) chk += ByteOpsSearchTest.slowIndexOf(buf, 0, buf.length, crlf, false);
+			long time3 = System.nanoTime();
+			for (int loop = 0; loop != iterations; loop++) chk += ByteOps.indexOfCRLF(buf, 0, buf.length);
+			long time4 = System.nanoTime();
+			for (int loop = 0; loop != iterations; loop++) chk += ByteOpsSearchTest.slowCount(buf, 0, buf.length, 'a');
+			long time5 = System.nanoTime();
+			for (int loop = 0; loop != iterations; loop++) chk += ByteOps.count('a', buf, 0, buf.length);
+			long time6 = System.nanoTime();
+			t0 = time1 - time0; t1 = time2 - time1; t2 = time3 - time2; t3 = time4 - time3; t4 = time5 - time4; t5 = time6 - time5;
+		}
+		long mb = (long)buf.length * iterations / (1024 * 1024);
+		System.out.println("ByteOps search of "+mb+"MB (scalar vs SWAR):");
+		System.out.println("indexOf: "+TimeOps.expandMilliTime(t0/1000000)+" vs "+TimeOps.expandMilliTime(t1/1000000));
+		System.out.println("CRLF: "+TimeOps.expandMilliTime(t2/1000000)+" vs "+TimeOps.expandMilliTime(t3/1000000));
+		System.out.println("count: "+TimeOps.expandMilliTime(t4/1000000)+" vs "+TimeOps.expandMilliTime(t5/1000000));
+		System.out.println("checksum="+chk);
+	}
+}
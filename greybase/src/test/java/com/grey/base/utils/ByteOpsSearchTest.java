@@ -0,0 +1,138 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.base.utils;
+
+/**
+ * Verifies the word-at-a-time search methods against straightforward byte-at-a-time equivalents.
+ */
+public class ByteOpsSearchTest
+{
+	private static final java.util.Random RND = new java.util.Random(5);
+
+	@org.junit.Test
+	public void testSingleByte()
+	{
+		for (int loop = 0; loop != 2000; loop++) {
+			byte[] buf = randomBytes(RND.nextInt(loop % 4 == 0 ? 600 : 40), 4); //larger inputs are searched by word
+			int off = (buf.length == 0 ? 0 : RND.nextInt(buf.length));
+			int len = buf.length - off - (buf.length == off ? 0 : RND.nextInt(buf.length - off));
+			int val = "abABÁ".charAt(RND.nextInt(5));
+			String msg = "loop="+loop+", off="+off+", len="+len+", val="+val;
+			org.junit.Assert.assertEquals(msg, slowIndexOf(buf, off, len, val, false), ByteOps.indexOf(buf, off, len, val));
+			org.junit.Assert.assertEquals(msg, slowIndexOf(buf, off, len, val, true), ByteOps.indexOfIgnoreCase(buf, off, len, val));
+			org.junit.Assert.assertEquals(msg, slowCount(buf, off, len, val), ByteOps.count(val, buf, off, len));
+			java.nio.ByteBuffer dbuf = java.nio.ByteBuffer.allocateDirect(buf.length);
+			dbuf.put(buf);
+			if (RND.nextBoolean()) dbuf.order(java.nio.ByteOrder.LITTLE_ENDIAN);
+			org.junit.Assert.assertEquals(msg, slowIndexOf(buf, off, len, val, false), NIOBuffers.indexOf(dbuf, off, off + len, val));
+			org.junit.Assert.assertEquals(msg, slowIndexOf(buf, off, len, val, false), NIOBuffers.indexOf(java.nio.ByteBuffer.wrap(buf), off, off + len, val));
+		}
+		byte[] buf = new byte[]{(byte)0x80, 0, (byte)0xff, 0x7f, 1, 0, (byte)0x80, (byte)0xff, 0, 0x7f};
+		org.junit.Assert.assertEquals(3, ByteOps.count(0, buf, 0, buf.length));
+		org.junit.Assert.assertEquals(2, ByteOps.count(0x80, buf, 0, buf.length));
+		org.junit.Assert.assertEquals(2, ByteOps.count(0xff, buf, 0, buf.length));
+		org.junit.Assert.assertEquals(9, ByteOps.indexOf(buf, 4, 6, 0x7f));
+		org.junit.Assert.assertEquals(7, ByteOps.indexOf(buf, 3, 7, -1));
+		byte[] bigbuf = new byte[buf.length * 40];
+		for (int idx = 0; idx != 40; idx++) System.arraycopy(buf, 0, bigbuf, idx * buf.length, buf.length);
+		org.junit.Assert.assertEquals(120, ByteOps.count(0, bigbuf, 0, bigbuf.length));
+		org.junit.Assert.assertEquals(80, ByteOps.count(0x80, bigbuf, 0, bigbuf.length));
+		org.junit.Assert.assertEquals(80, ByteOps.count(0xff, bigbuf, 0, bigbuf.length));
+		org.junit.Assert.assertEquals(303, ByteOps.indexOf(bigbuf, 301, 300, 0x7f));
+	}
+
+	@org.junit.Test
+	public void testSequence()
+	{
+		for (int loop = 0; loop != 5000; loop++) {
+			byte[] buf = randomBytes(RND.nextInt(loop % 4 == 0 ? 600 : 50), 3);
+			byte[] seq = randomBytes(1 + RND.nextInt(4), 3);
+			int off = (buf.length == 0 ? 0 : RND.nextInt(buf.length));
+			int len = buf.length - off;
+			String msg = "loop="+loop+", buf="+new String(buf)+", off="+off+", seq="+new String(seq);
+			org.junit.Assert.assertEquals(msg, slowIndexOf(buf, off, len, seq, false), ByteOps.indexOf(buf, off, len, seq, 0, seq.length));
+			org.junit.Assert.assertEquals(msg, slowIndexOf(buf, off, len, seq, true), ByteOps.indexOfIgnoreCase(buf, off, len, seq, 0, seq.length));
+		}
+		byte[] buf = "GET / HTTP/1.1\r\nHost: x\r\n\r\n".getBytes();
+		org.junit.Assert.assertEquals(14, ByteOps.indexOfCRLF(buf, 0, buf.length));
+		org.junit.Assert.assertEquals(23, ByteOps.indexOfCRLF(buf, 15, buf.length - 15));
+		org.junit.Assert.assertEquals(-1, ByteOps.indexOfCRLF(buf, 0, 15));
+		org.junit.Assert.assertEquals(23, ByteOps.indexOf(buf, 0, buf.length, "\r\n\r\n".getBytes(), 0, 4));
+		org.junit.Assert.assertEquals(16, ByteOps.indexOfIgnoreCase(buf, 0, buf.length, "hOST:".getBytes(), 0, 5));
+		org.junit.Assert.assertEquals(-1, ByteOps.indexOf(buf, 0, buf.length, "hOST:".getBytes(), 0, 5));
+	}
+
+	@org.junit.Test
+	public void testStringOps()
+	{
+		ByteChars bc = new ByteChars("xxContent-Type: text/plain; charset=UTF-8\r\n");
+		bc.advance(2); //make sure offsets are handled
+		String str = bc.toString();
+		org.junit.Assert.assertEquals(str.indexOf(':'), StringOps.indexOf(bc, ':'));
+		org.junit.Assert.assertEquals(str.indexOf('t', 20), StringOps.indexOf(bc, 20, 't'));
+		org.junit.Assert.assertEquals(str.toLowerCase().indexOf('t'), StringOps.indexOfNoCase(bc, 'T'));
+		org.junit.Assert.assertEquals(str.indexOf('\r'), StringOps.indexOf(bc, '\r'));
+		org.junit.Assert.assertEquals(str.indexOf("UTF"), StringOps.indexOf(bc, new ByteChars("UTF")));
+		org.junit.Assert.assertEquals(str.indexOf("charset"), StringOps.indexOfNoCase(bc, new ByteChars("CHARSET")));
+		org.junit.Assert.assertEquals(StringOps.indexOfNoCase(str, "CHARSET"), StringOps.indexOfNoCase(bc, new ByteChars("CHARSET")));
+		org.junit.Assert.assertEquals(5, StringOps.count(bc, 't'));
+		org.junit.Assert.assertEquals(StringOps.count(str, 't'), StringOps.count(bc, 't'));
+	}
+
+	// mostly letters, with the occasional CR and LF
+	static byte[] randomBytes(int len, int alphabet)
+	{
+		byte[] buf = new byte[len];
+		for (int idx = 0; idx != len; idx++) {
+			int r = RND.nextInt(alphabet * 2 + 1);
+			if (r == alphabet * 2) {
+				buf[idx] = (alphabet > 20 ? (byte)'b' : (RND.nextBoolean() ? (byte)'\r' : (byte)'\n'));
+			} else {
+				buf[idx] = (byte)((r < alphabet ? 'a' : 'A') + (r % alphabet));
+			}
+		}
+		return buf;
+	}
+
+	static int slowIndexOf(byte[] buf, int off, int len, int val, boolean nocase)
+	{
+		for (int idx = off; idx != off + len; idx++) {
+			if (buf[idx] == (byte)val) return idx;
+			if (nocase && Character.toLowerCase((char)(buf[idx] & 0xff)) == Character.toLowerCase((char)(val & 0xff))
+					&& (val & 0xff) < 0x80) return idx;
+		}
+		return -1;
+	}
+
+	static int slowIndexOf(byte[] buf, int off, int len, byte[] seq, boolean nocase)
+	{
+		for (int idx = off; idx <= off + len - seq.length; idx++) {
+			boolean match = true;
+			for (int idx2 = 0; idx2 != seq.length; idx2++) {
+				int b1 = buf[idx + idx2] & 0xff;
+				int b2 = seq[idx2] & 0xff;
+				if (nocase && b1 < 0x80 && b2 < 0x80) {
+					b1 = Character.toLowerCase(b1);
+					b2 = Character.toLowerCase(b2);
+				}
+				if (b1 != b2) {
+					match = false;
+					break;
+				}
+			}
+			if (match) return idx;
+		}
+		return -1;
+	}
+
+	static int slowCount(byte[] buf, int off, int len, int val)
+	{
+		int cnt = 0;
+		for (int idx = off; idx != off + len; idx++) {
+			if (buf[idx] == (byte)val) cnt++;
+		}
+		return cnt;
+	}
+}
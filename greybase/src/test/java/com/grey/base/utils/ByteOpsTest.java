@@ -301,6 +301,28 @@ public class ByteOpsTest
 		org.junit.Assert.assertEquals(-1, idx);
 	}
 
+	@org.junit.Test
+	public void testIgnoreCase()
+	{
+		for (int val = 0; val != 256; val++) {
+			int expect = (val >= 'A' && val <= 'Z' ? val + ('a' - 'A') : val);
+			long word = (val * 0x0101010101010101L);
+			org.junit.Assert.assertEquals("val="+val, expect * 0x0101010101010101L, ByteOps.toLowerCaseASCII(word));
+		}
+		byte[] buf1 = ByteOps.getBytes8("xxThe Quick Brown Fox!");
+		byte[] buf2 = ByteOps.getBytes8("THE QUICK BROWN FOX!");
+		org.junit.Assert.assertTrue(ByteOps.equalsIgnoreCase(buf1, 2, buf2, 0, buf2.length));
+		org.junit.Assert.assertFalse(ByteOps.equalsIgnoreCase(buf1, 1, buf2, 0, buf2.length));
+		buf2[buf2.length - 1] = '?';
+		org.junit.Assert.assertFalse(ByteOps.equalsIgnoreCase(buf1, 2, buf2, 0, buf2.length));
+		org.junit.Assert.assertTrue(ByteOps.equalsIgnoreCase(buf1, 2, buf2, 0, buf2.length - 1));
+		org.junit.Assert.assertEquals(ByteOps.hashCodeIgnoreCase(buf2, 0, buf2.length), ByteOps.hashCodeIgnoreCase("the quick brown fox?"));
+		org.junit.Assert.assertEquals(ByteOps.hashCodeIgnoreCase(buf1, 2, buf2.length), ByteOps.hashCodeIgnoreCase("the quick brown FOX!"));
+		org.junit.Assert.assertNotEquals(ByteOps.hashCode(buf1, 2, buf2.length), ByteOps.hashCode(buf2, 0, buf2.length));
+		org.junit.Assert.assertEquals(ByteOps.hash64(buf2, 0, buf2.length), ByteOps.hash64("THE QUICK BROWN FOX?", false));
+		org.junit.Assert.assertEquals(ByteOps.hash64(buf2, 0, 16), ByteOps.hash64("THE QUICK BROWN ", false));
+	}
+
 	@org.junit.Test
 	public void testCompare()
 	{
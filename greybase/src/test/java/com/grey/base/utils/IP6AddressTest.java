@@ -0,0 +1,124 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.base.utils;
+
+public class IP6AddressTest
+{
+	// pairs of input text and canonical form
+	private static final String[][] VALID = new String[][] {
+		{"::", "::"},
+		{"::1", "::1"},
+		{"1::", "1::"},
+		{"2001:DB8:0:0:0:0:0:1", "2001:db8::1"},
+		{"2001:0db8:0000:0000:0000:ff00:0042:8329", "2001:db8::ff00:42:8329"},
+		{"2001:db8:0:1:1:1:1:1", "2001:db8:0:1:1:1:1:1"},
+		{"2001:db8:0:0:1:0:0:1", "2001:db8::1:0:0:1"},
+		{"2001:0:0:1:0:0:0:1", "2001:0:0:1::1"},
+		{"1:2:3:4:5:6:7::", "1:2:3:4:5:6:7:0"},
+		{"::2:3:4:5:6:7:8", "0:2:3:4:5:6:7:8"},
+		{"fe80::1:2", "fe80::1:2"},
+		{"ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff", "ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff"},
+		{"::ffff:192.168.1.2", "::ffff:192.168.1.2"},
+		{"0:0:0:0:0:ffff:10.0.0.255", "::ffff:10.0.0.255"},
+		{"64:ff9b::192.0.2.33", "64:ff9b::c000:221"},
+		{"1:2:3:4:5:6:1.2.3.4", "1:2:3:4:5:6:102:304"},
+		{"1::5:6:1.2.3.4", "1::5:6:102:304"}
+	};
+
+	private static final String[] INVALID = new String[] {
+		"", ":", ":::", "1:2", "1::2::3", ":1::2", "1::2:", "12345::", "1:2:3:4:5:6:7:8:9", "1:2:3:4:5:6:7::8",
+		"1:2:3:4:5:6:7:8::", "g::1", "::1.2.3", "::1.2.3.256", "1.2.3.4", "::1.2.3.4:5", "1:2:3:4:5:6:7:1.2.3.4", "fe80::1%eth0"
+	};
+
+	@org.junit.Test
+	public void testParseAndFormat() throws java.net.UnknownHostException
+	{
+		IP6Address addr = new IP6Address();
+		ByteChars bc = new ByteChars();
+		for (int idx = 0; idx != VALID.length; idx++) {
+			String txt = VALID[idx][0];
+			org.junit.Assert.assertTrue(txt, addr.parse(txt));
+			org.junit.Assert.assertEquals(txt, VALID[idx][1], addr.toString());
+			bc.clear();
+			org.junit.Assert.assertEquals(txt, VALID[idx][1], addr.appendTo(bc).toString());
+
+			// verify against the JDK's parser
+			byte[] jdkaddr = java.net.InetAddress.getByName(txt).getAddress();
+			if (jdkaddr.length == IP.IPADDR_OCTETS) {
+				org.junit.Assert.assertTrue(txt, addr.isMappedIP4());
+				org.junit.Assert.assertEquals(txt, IP.net2ip(jdkaddr, 0), addr.getMappedIP4());
+			} else {
+				org.junit.Assert.assertArrayEquals(txt, jdkaddr, addr.toBytes());
+			}
+
+			// and parse it again from a ByteChars
+			IP6Address addr2 = new IP6Address();
+			bc.populate("[").append(txt).append("]");
+			org.junit.Assert.assertTrue(txt, addr2.parse(bc, 1, bc.size() - 2));
+			org.junit.Assert.assertEquals(txt, addr, addr2);
+			org.junit.Assert.assertEquals(txt, addr.hashCode(), addr2.hashCode());
+		}
+	}
+
+	@org.junit.Test
+	public void testInvalid()
+	{
+		IP6Address addr = new IP6Address(1, 2);
+		for (int idx = 0; idx != INVALID.length; idx++) {
+			org.junit.Assert.assertFalse(INVALID[idx], addr.parse(INVALID[idx]));
+			org.junit.Assert.assertTrue(addr.equals(1, 2));
+		}
+		try {
+			IP6Address.valueOf("1::2::3");
+			org.junit.Assert.fail("Failed to reject invalid address");
+		} catch (IllegalArgumentException ex) {}
+	}
+
+	@org.junit.Test
+	public void testInetAddress() throws java.net.UnknownHostException
+	{
+		java.net.InetAddress jdkip = java.net.InetAddress.getByName("2001:db8::8:800:200c:417a");
+		IP6Address addr = new IP6Address().set(jdkip);
+		org.junit.Assert.assertEquals(0x20010db800000000L, addr.getHigh());
+		org.junit.Assert.assertEquals(0x00080800200c417aL, addr.getLow());
+		org.junit.Assert.assertEquals(jdkip, addr.toInetAddress());
+		org.junit.Assert.assertEquals(jdkip, addr.toInetAddress(new byte[IP.IPV6ADDR_OCTETS]));
+
+		jdkip = java.net.InetAddress.getByName("192.168.101.1");
+		addr.set(jdkip);
+		org.junit.Assert.assertTrue(addr.isMappedIP4());
+		org.junit.Assert.assertEquals(IP.convertDottedIP("192.168.101.1"), addr.getMappedIP4());
+		org.junit.Assert.assertEquals("::ffff:192.168.101.1", addr.toString());
+		org.junit.Assert.assertEquals(jdkip, addr.toInetAddress());
+
+		addr.setMappedIP4(IP.IP_LOCALHOST);
+		org.junit.Assert.assertEquals("::ffff:127.0.0.1", addr.toString());
+		addr.set(0, 1);
+		org.junit.Assert.assertTrue(addr.isLoopback());
+		org.junit.Assert.assertFalse(addr.isMappedIP4());
+		org.junit.Assert.assertEquals(0, addr.getMappedIP4());
+		org.junit.Assert.assertTrue(addr.clear().isUnspecified());
+	}
+
+	@org.junit.Test
+	public void testCompare()
+	{
+		IP6Address addr1 = IP6Address.valueOf("::ffff");
+		IP6Address addr2 = IP6Address.valueOf("::1:0");
+		IP6Address addr3 = IP6Address.valueOf("8000::");
+		org.junit.Assert.assertTrue(addr1.compareTo(addr2) < 0);
+		org.junit.Assert.assertTrue(addr2.compareTo(addr3) < 0); //unsigned comparison
+		org.junit.Assert.assertTrue(addr3.compareTo(addr1) > 0);
+		org.junit.Assert.assertEquals(0, addr1.compareTo(new IP6Address(addr1)));
+	}
+
+	@org.junit.Test
+	public void testArpaDomain()
+	{
+		IP6Address addr = IP6Address.valueOf("2001:db8::567:89ab");
+		String expect = "b.a.9.8.7.6.5.0.0.0.0.0.0.0.0.0.0.0.0.0.0.0.0.0.8.b.d.0.1.0.0.2.ip6.arpa";
+		org.junit.Assert.assertEquals(expect, addr.appendArpaDomain(null).toString());
+	}
+}
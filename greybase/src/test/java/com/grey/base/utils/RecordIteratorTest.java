@@ -0,0 +1,151 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.base.utils;
+
+import java.nio.ByteBuffer;
+
+import com.grey.base.config.SysProps;
+
+public class RecordIteratorTest
+{
+	private final String workdir = SysProps.TMPDIR+"/utest/greybase/"+getClass().getSimpleName();
+
+	@org.junit.Test
+	public void testLines()
+	{
+		String txt = "line1\r\nline2\n\nline4\r\n\r\nline6";
+		verifyLines(ByteBuffer.wrap(txt.getBytes()), "line1", "line2", "", "line4", "", "line6");
+		verifyLines(ByteBuffer.wrap((txt+"\n").getBytes()), "line1", "line2", "", "line4", "", "line6");
+
+		ByteBuffer dbuf = ByteBuffer.allocateDirect(txt.length() + 10);
+		dbuf.position(5);
+		dbuf.put(txt.getBytes());
+		dbuf.flip();
+		dbuf.position(5);
+		verifyLines(dbuf, "line1", "line2", "", "line4", "", "line6");
+		org.junit.Assert.assertEquals(5, dbuf.position());
+		org.junit.Assert.assertEquals(txt.length() + 5, dbuf.limit());
+
+		verifyLines(ByteBuffer.allocate(0));
+		verifyLines(ByteBuffer.wrap("\n".getBytes()), "");
+		verifyLines(ByteBuffer.wrap("x".getBytes()), "x");
+	}
+
+	@org.junit.Test
+	public void testRecords()
+	{
+		byte[] arr = "--a,bb,,ccc\r,--".getBytes();
+		ByteBuffer buf = ByteBuffer.wrap(arr);
+		RecordIterator it = new RecordIterator(buf, 2, arr.length - 2, (byte)',', false);
+		ByteChars bc = new ByteChars();
+		String[] expect = new String[]{"a", "bb", "", "ccc\r"};
+		for (int idx = 0; idx != expect.length; idx++) {
+			org.junit.Assert.assertTrue(it.next());
+			org.junit.Assert.assertEquals(idx + 1, it.getRecordNumber());
+			org.junit.Assert.assertTrue(it.getRecordArray(bc));
+			org.junit.Assert.assertEquals(expect[idx], bc.toString());
+			org.junit.Assert.assertSame(arr, bc.buffer());
+		}
+		org.junit.Assert.assertFalse(it.next());
+		it.reset();
+		org.junit.Assert.assertTrue(it.next());
+		org.junit.Assert.assertEquals("a", it.appendRecord(new ByteChars()).toString());
+	}
+
+	@org.junit.Test
+	public void testMappedFile() throws java.io.IOException
+	{
+		FileOps.deleteDirectory(workdir);
+		FileOps.ensureDirExists(workdir);
+		java.nio.file.Path fh = java.nio.file.Paths.get(workdir, "lines.txt");
+		StringBuilder sb = new StringBuilder();
+		int max = 10000;
+		long total = 0;
+		for (int idx = 1; idx <= max; idx++) {
+			sb.append(idx).append(idx % 2 == 0 ? "\r\n" : "\n");
+			total += idx;
+		}
+		java.nio.file.Files.write(fh, sb.toString().getBytes());
+
+		java.nio.MappedByteBuffer mbuf = FileOps.mapFile(fh);
+		org.junit.Assert.assertEquals(sb.length(), mbuf.remaining());
+		RecordIterator it = FileOps.lines(fh);
+		ByteChars bc = new ByteChars();
+		int cnt = 0;
+		while (it.next()) {
+			org.junit.Assert.assertFalse(it.getRecordArray(bc));
+			bc.clear();
+			org.junit.Assert.assertEquals(++cnt, it.appendRecord(bc).parseDecimal());
+		}
+		org.junit.Assert.assertEquals(max, cnt);
+
+		// parallel scan, with chunks small enough to test the boundary adjustments
+		LineSummer summer = new LineSummer();
+		long[] result = FileOps.scanRecords(fh, (byte)'\n', true, 1001, null, summer);
+		org.junit.Assert.assertEquals(max, result[0]);
+		org.junit.Assert.assertEquals(total, result[1]);
+		org.junit.Assert.assertEquals(1, result[2]); //first line
+		org.junit.Assert.assertEquals(max, result[3]); //last line
+		java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(2);
+		result = FileOps.scanRecords(mbuf, (byte)'\n', true, Integer.MAX_VALUE, pool, summer);
+		pool.shutdown();
+		org.junit.Assert.assertEquals(max, result[0]);
+		org.junit.Assert.assertEquals(total, result[1]);
+
+		// region mapping
+		mbuf = FileOps.mapFile(fh, 2, 4);
+		org.junit.Assert.assertEquals(4, mbuf.remaining());
+		org.junit.Assert.assertEquals('2', mbuf.get(0));
+
+		// empty file
+		java.nio.file.Files.write(fh, new byte[0]);
+		result = FileOps.scanRecords(fh, (byte)'\n', true, 10, null, summer);
+		org.junit.Assert.assertEquals(0, result[0]);
+		FileOps.deleteDirectory(workdir);
+	}
+
+	private static void verifyLines(ByteBuffer buf, String... expect)
+	{
+		RecordIterator it = RecordIterator.lines(buf);
+		for (int idx = 0; idx != expect.length; idx++) {
+			org.junit.Assert.assertTrue(it.next());
+			ByteBuffer view = it.getRecord();
+			org.junit.Assert.assertEquals(expect[idx].length(), view.remaining());
+			org.junit.Assert.assertEquals(expect[idx].length(), it.getLength());
+			byte[] rec = new byte[view.remaining()];
+			view.get(rec);
+			org.junit.Assert.assertEquals(expect[idx], new String(rec));
+		}
+		org.junit.Assert.assertFalse(it.next());
+		org.junit.Assert.assertFalse(it.next());
+	}
+
+
+	// Result is: count, sum, first, last
+	private static class LineSummer implements FileOps.ChunkHandler<long[]>
+	{
+		LineSummer() {}
+		@Override
+		public long[] processChunk(RecordIterator records) {
+			long[] result = new long[]{0, 0, -1, -1};
+			ByteChars bc = new ByteChars();
+			while (records.next()) {
+				bc.clear();
+				long val = records.appendRecord(bc).parseDecimal();
+				result[0]++;
+				result[1] += val;
+				if (result[2] == -1) result[2] = val;
+				result[3] = val;
+			}
+			return result;
+		}
+		@Override
+		public long[] combine(long[] r1, long[] r2) {
+			if (r1[0] == 0) return r2;
+			if (r2[0] == 0) return r1;
+			return new long[]{r1[0] + r2[0], r1[1] + r2[1], r1[2], r2[3]};
+		}
+	}
+}
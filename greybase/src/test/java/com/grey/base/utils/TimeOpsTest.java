@@ -204,6 +204,47 @@ public class TimeOpsTest
 		org.junit.Assert.assertEquals(systime, Long.valueOf(sb.subSequence(len, sb.length()).toString()).longValue());
 	}
 
+	@org.junit.Test
+	public void testCachedFormatter()
+	{
+		final String tz = "Europe/London";
+		final Calendar dtcal = TimeOps.getCalendar(tz);
+		dtcal.clear();
+		dtcal.set(2009, Calendar.JULY, 5, 14, 3, 2);
+		long systime = dtcal.getTimeInMillis() + 1;
+		TimeOps.CachedFormatter fmt = new TimeOps.CachedFormatter(TimeOps.CachedFormatter.FORMAT.LOG_DATETIME_MILLI, tz);
+		StringBuilder sb = fmt.format(systime, new StringBuilder());
+		org.junit.Assert.assertEquals("2009-07-05 14:03:02.001", sb.toString());
+		sb = fmt.format(systime + 998, new StringBuilder());
+		org.junit.Assert.assertEquals("2009-07-05 14:03:02.999", sb.toString());
+		sb = fmt.format(systime + 999, new StringBuilder());
+		org.junit.Assert.assertEquals("2009-07-05 14:03:03.000", sb.toString());
+		ByteChars bc = new ByteChars("pfx:");
+		fmt.format(systime + 42, bc);
+		org.junit.Assert.assertEquals("pfx:2009-07-05 14:03:02.043", bc.toString());
+		byte[] arr = new byte[30];
+		int off = fmt.format(systime + 3600_000 - 1, arr, 2);
+		org.junit.Assert.assertEquals(25, off);
+		org.junit.Assert.assertEquals("2009-07-05 15:03:02.000", new String(arr, 2, off - 2, java.nio.charset.StandardCharsets.US_ASCII));
+		org.junit.Assert.assertEquals(23, fmt.length(systime));
+
+		fmt = new TimeOps.CachedFormatter(TimeOps.CachedFormatter.FORMAT.LOG_TIME, tz);
+		org.junit.Assert.assertEquals("14:03:02", fmt.format(systime + 500, new StringBuilder()).toString());
+		fmt = new TimeOps.CachedFormatter(TimeOps.CachedFormatter.FORMAT.RFC822, tz);
+		org.junit.Assert.assertEquals("Sun, 05 Jul 2009 14:03:02 +0100", fmt.format(systime, new ByteChars()).toString());
+
+		// cross a DST transition (clocks went back at 02:00 BST on 25th Oct 2009) and compare to the uncached methods
+		dtcal.set(2009, Calendar.OCTOBER, 25, 0, 59, 58);
+		systime = dtcal.getTimeInMillis();
+		TimeOps.CachedFormatter fmt2 = new TimeOps.CachedFormatter(TimeOps.CachedFormatter.FORMAT.LOG_DATETIME_MILLI, tz);
+		for (long t = systime; t < systime + 2 * TimeOps.MSECS_PER_HOUR; t += 250) {
+			org.junit.Assert.assertEquals(TimeOps.makeTimeRFC822(t, tz, null).toString(), fmt.format(t, new StringBuilder()).toString());
+			org.junit.Assert.assertEquals(TimeOps.makeTimeLogger(t, tz, null, true, true).toString(), fmt2.format(t, new ByteChars()).toString());
+		}
+		// times before the epoch
+		org.junit.Assert.assertEquals(TimeOps.makeTimeLogger(-1, tz, null, true, true).toString(), fmt2.format(-1, new StringBuilder()).toString());
+	}
+
 	private static void verifyParse(String str, long exptime)
 	{
 		org.junit.Assert.assertEquals(exptime, TimeOps.parseMilliTime(str));
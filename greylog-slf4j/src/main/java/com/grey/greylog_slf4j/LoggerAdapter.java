@@ -7,15 +7,20 @@ package com.grey.greylog_slf4j;
 import com.grey.logging.Logger.LEVEL;
 
 //NB: This class is of type org.slf4j.Logger, as its MarkerIgnoringBase superclass implements the interface
+// The {} placeholders are formatted directly into a per-thread buffer (following the same rules as SLF4J's MessageFormatter), so
+// that libraries which log via SLF4J in our Dispatcher threads don't generate garbage on every call.
 public class LoggerAdapter
 	extends org.slf4j.helpers.MarkerIgnoringBase
 	implements java.io.Closeable, java.io.Flushable
 {
 	private static final long serialVersionUID = 1L;
 	private static final boolean dumpStack = com.grey.base.config.SysProps.get("grey.logger.slf4j.dumpstack", true);
+	private static final int MAXBUFSIZ = 64 * 1024; //don't let one huge message inflate the buffer forever
+	private static final ThreadLocal<FormatBuffer> formatBuffers = ThreadLocal.withInitial(FormatBuffer::new);
 
 	private final com.grey.logging.Logger defaultLogger;
 	private final String lname;
+	private final String pfx;
 
 	public com.grey.logging.Logger getDelegate() {return defaultLogger;}
 
@@ -24,6 +29,7 @@ public class LoggerAdapter
 		if (logger == null) throw new IllegalArgumentException(getClass().getName()+" has null delegate");
 		this.lname = lname;
 		this.defaultLogger = logger;
+		pfx = "SLF4J-"+lname+" ";
 	}
 
 	//override org.slf4j.helpers.MarkerIgnoringBase method
@@ -78,13 +84,13 @@ public class LoggerAdapter
 	@Override
 	public void trace(String fmt, Object arg)
 	{
-		trace(fmt, arg, null);
+		formatAndLog(LEVEL.TRC2, fmt, arg, null, 1);
 	}
 
 	@Override
 	public void trace(String fmt, Object arg1, Object arg2)
 	{
-		formatAndLog(LEVEL.TRC2, fmt, arg1, arg2);
+		formatAndLog(LEVEL.TRC2, fmt, arg1, arg2, 2);
 	}
 
 	@Override
@@ -108,13 +114,13 @@ public class LoggerAdapter
 	@Override
 	public void debug(String fmt, Object arg)
 	{
-		debug(fmt, arg, null);
+		formatAndLog(LEVEL.TRC, fmt, arg, null, 1);
 	}
 
 	@Override
 	public void debug(String fmt, Object arg1, Object arg2)
 	{
-		formatAndLog(LEVEL.TRC, fmt, arg1, arg2);
+		formatAndLog(LEVEL.TRC, fmt, arg1, arg2, 2);
 	}
 
 	@Override
@@ -138,13 +144,13 @@ public class LoggerAdapter
 	@Override
 	public void info(String fmt, Object arg)
 	{
-		info(fmt, arg, null);
+		formatAndLog(LEVEL.INFO, fmt, arg, null, 1);
 	}
 
 	@Override
 	public void info(String fmt, Object arg1, Object arg2)
 	{
-		formatAndLog(LEVEL.INFO, fmt, arg1, arg2);
+		formatAndLog(LEVEL.INFO, fmt, arg1, arg2, 2);
 	}
 
 	@Override
@@ -168,13 +174,13 @@ public class LoggerAdapter
 	@Override
 	public void warn(String fmt, Object arg)
 	{
-		warn(fmt, arg, null);
+		formatAndLog(LEVEL.WARN, fmt, arg, null, 1);
 	}
 
 	@Override
 	public void warn(String fmt, Object arg1, Object arg2)
 	{
-		formatAndLog(LEVEL.WARN, fmt, arg1, arg2);
+		formatAndLog(LEVEL.WARN, fmt, arg1, arg2, 2);
 	}
 
 	@Override
@@ -198,13 +204,13 @@ public class LoggerAdapter
 	@Override
 	public void error(String fmt, Object arg)
 	{
-		error(fmt, arg, null);
+		formatAndLog(LEVEL.ERR, fmt, arg, null, 1);
 	}
 
 	@Override
 	public void error(String fmt, Object arg1, Object arg2)
 	{
-		formatAndLog(LEVEL.ERR, fmt, arg1, arg2);
+		formatAndLog(LEVEL.ERR, fmt, arg1, arg2, 2);
 	}
 
 	@Override
@@ -213,25 +219,107 @@ public class LoggerAdapter
 		formatAndLog(LEVEL.ERR, fmt, args);
 	}
 
-	private void formatAndLog(LEVEL lvl, String fmt, Object arg1, Object arg2)
+	private void formatAndLog(LEVEL lvl, String fmt, Object arg1, Object arg2, int argcnt)
 	{
-		if (!isActive(lvl)) return;
-		formatAndLog(lvl, fmt, new Object[] {arg1, arg2});
+		com.grey.logging.Logger logger = getLogger();
+		if (!logger.isActive(lvl)) return;
+		Object last = (argcnt == 1 ? arg1 : arg2);
+		Throwable ex = (last instanceof Throwable ? (Throwable)last : null);
+		if (ex != null) argcnt--;
+		FormatBuffer fbuf = formatBuffers.get();
+		StringBuilder sb = fbuf.acquire();
+		try {
+			sb.append(pfx);
+			format(sb, fmt, arg1, arg2, null, argcnt);
+			logger.log(lvl, ex, dumpStack, sb);
+		} finally {
+			fbuf.release(sb);
+		}
 	}
 
 	private void formatAndLog(LEVEL lvl, String fmt, Object[] args)
 	{
-		if (!isActive(lvl)) return;
-		org.slf4j.helpers.FormattingTuple tp = org.slf4j.helpers.MessageFormatter.arrayFormat(fmt, args);
-		log(lvl, tp.getMessage(), tp.getThrowable());
+		com.grey.logging.Logger logger = getLogger();
+		if (!logger.isActive(lvl)) return;
+		int argcnt = (args == null ? 0 : args.length);
+		Throwable ex = (argcnt != 0 && args[argcnt - 1] instanceof Throwable ? (Throwable)args[argcnt - 1] : null);
+		if (ex != null) argcnt--;
+		FormatBuffer fbuf = formatBuffers.get();
+		StringBuilder sb = fbuf.acquire();
+		try {
+			sb.append(pfx);
+			format(sb, fmt, null, null, args, argcnt);
+			logger.log(lvl, ex, dumpStack, sb);
+		} finally {
+			fbuf.release(sb);
+		}
 	}
 
 	private void log(LEVEL lvl, String msg, Throwable ex)
 	{
-		getLogger().log(lvl, ex, dumpStack, "SLF4J-"+getName()+" "+msg);
+		com.grey.logging.Logger logger = getLogger();
+		if (!logger.isActive(lvl)) return;
+		FormatBuffer fbuf = formatBuffers.get();
+		StringBuilder sb = fbuf.acquire();
+		try {
+			sb.append(pfx).append(msg);
+			logger.log(lvl, ex, dumpStack, sb);
+		} finally {
+			fbuf.release(sb);
+		}
+	}
+
+	// Substitutes the args for the {} placeholders, using arg1 and arg2 if the args array is null.
+	// As with SLF4J, a placeholder can be escaped by a preceding backslash, which can itself be escaped by another backslash.
+	static StringBuilder format(StringBuilder sb, String fmt, Object arg1, Object arg2, Object[] args, int argcnt)
+	{
+		if (fmt == null) return sb.append((String)null);
+		int off = 0;
+		int argnum = 0;
+		while (argnum != argcnt) {
+			int pos = fmt.indexOf("{}", off);
+			if (pos == -1) break;
+			if (pos != 0 && fmt.charAt(pos - 1) == '\\') {
+				if (pos > 1 && fmt.charAt(pos - 2) == '\\') {
+					// escaped backslash, so the placeholder is still live
+					sb.append(fmt, off, pos - 1);
+				} else {
+					// escaped placeholder, so output it literally
+					sb.append(fmt, off, pos - 1).append("{}");
+					off = pos + 2;
+					continue;
+				}
+			} else {
+				sb.append(fmt, off, pos);
+			}
+			Object arg = (args == null ? (argnum == 0 ? arg1 : arg2) : args[argnum]);
+			appendArg(sb, arg);
+			argnum++;
+			off = pos + 2;
+		}
+		return sb.append(fmt, off, fmt.length());
+	}
+
+	private static void appendArg(StringBuilder sb, Object arg)
+	{
+		if (arg == null) {
+			sb.append("null");
+		} else if (arg instanceof CharSequence) {
+			sb.append((CharSequence)arg);
+		} else if (arg instanceof Object[]) {
+			sb.append(java.util.Arrays.deepToString((Object[])arg));
+		} else if (arg.getClass().isArray()) {
+			String str = java.util.Arrays.deepToString(new Object[]{arg}); //handles all the primitive array types
+			sb.append(str, 1, str.length() - 1);
+		} else {
+			try {
+				sb.append(arg.toString());
+			} catch (Throwable ex) {
+				sb.append("[FAILED toString()]");
+			}
+		}
 	}
 
-
 	@Override
 	public void flush() throws java.io.IOException
 	{
@@ -261,4 +349,24 @@ public class LoggerAdapter
 	{
 		return super.toString()+" with delegate="+defaultLogger.getClass().getName()+"/"+defaultLogger+" - current="+getLogger();
 	}
+
+
+	// Guards against reentrant use of the buffer, in case an argument's toString() itself logs via SLF4J
+	private static final class FormatBuffer {
+		private StringBuilder buf = new StringBuilder(256);
+		private boolean busy;
+
+		StringBuilder acquire() {
+			if (busy) return new StringBuilder();
+			busy = true;
+			buf.setLength(0);
+			return buf;
+		}
+
+		void release(StringBuilder sb) {
+			if (sb != buf) return;
+			busy = false;
+			if (buf.capacity() > MAXBUFSIZ) buf = new StringBuilder(256);
+		}
+	}
 }
\ No newline at end of file
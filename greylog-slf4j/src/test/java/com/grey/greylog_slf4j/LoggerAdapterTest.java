@@ -0,0 +1,85 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.greylog_slf4j;
+
+import org.junit.Test;
+import org.junit.Assert;
+
+import com.grey.logging.Logger.LEVEL;
+import com.grey.logging.MemLogger;
+import com.grey.logging.Parameters;
+
+public class LoggerAdapterTest {
+	@Test
+	public void testFormatMatchesSLF4J() {
+		verifyFormat("No placeholders");
+		verifyFormat("No placeholders", "excess arg");
+		verifyFormat("One={}", "val1");
+		verifyFormat("Two={}/{} end", 1, 2L);
+		verifyFormat("Missing={}/{} end", "val1");
+		verifyFormat("Null={}", (Object)null);
+		verifyFormat("Escaped=\\{} and {}", "val1");
+		verifyFormat("Escaped backslash=\\\\{} and {}", "val1", "val2");
+		verifyFormat("Arrays={} and {} and {}", new int[]{1, 2}, new String[]{"a", "b"}, new Object[]{new long[]{3}});
+		verifyFormat("{}{}{}", 'x', true, 1.5);
+	}
+
+	@Test
+	public void testLogging() throws java.io.IOException {
+		Parameters params = new Parameters.Builder()
+				.withLogClass(MemLogger.class)
+				.withLogLevel(LEVEL.INFO)
+				.withPathname("any-old-name-as-will-discard-it")
+				.build();
+		MemLogger mlog = (MemLogger)com.grey.logging.Factory.getLogger(params, "slf4j-adapter");
+		LoggerAdapter log = new LoggerAdapter("adapter1", mlog);
+
+		log.info("Message with {} and {}", "arg1", 2);
+		Assert.assertTrue(mlog.get().toString(), mlog.get().toString().endsWith(" SLF4J-adapter1 Message with arg1 and 2\n"));
+		mlog.reset();
+		log.info("One arg={} and missing={}", "arg1");
+		Assert.assertTrue(mlog.get().toString(), mlog.get().toString().endsWith(" SLF4J-adapter1 One arg=arg1 and missing={}\n"));
+		mlog.reset();
+		log.warn("Varargs {}/{}/{}", 1, 2, 3);
+		Assert.assertTrue(mlog.get().toString(), mlog.get().toString().endsWith(" SLF4J-adapter1 Varargs 1/2/3\n"));
+		mlog.reset();
+		log.debug("Disabled {}", "arg1");
+		log.trace("Disabled {}/{}", "arg1", "arg2");
+		Assert.assertEquals(0, mlog.length());
+
+		// trailing exception is not consumed as an arg
+		log.error("Failed with {}", "arg1", new java.io.IOException("simulated error"));
+		String output = mlog.get().toString();
+		Assert.assertTrue(output, output.contains("SLF4J-adapter1 Failed with arg1"));
+		Assert.assertTrue(output, output.contains("simulated error"));
+		mlog.reset();
+
+		// reentrant logging from an argument's toString()
+		Object reentrant = new Object() {
+			@Override
+			public String toString() {
+				log.info("Inner message");
+				return "outer-arg";
+			}
+		};
+		log.info("Outer message={}", reentrant);
+		output = mlog.get().toString();
+		Assert.assertTrue(output, output.contains("SLF4J-adapter1 Inner message\n"));
+		Assert.assertTrue(output, output.contains("SLF4J-adapter1 Outer message=outer-arg\n"));
+		mlog.close();
+	}
+
+	private static void verifyFormat(String fmt, Object... args) {
+		String expect = org.slf4j.helpers.MessageFormatter.arrayFormat(fmt, args).getMessage();
+		String actual = LoggerAdapter.format(new StringBuilder(), fmt, null, null, args, args.length).toString();
+		Assert.assertEquals(expect, actual);
+		if (args.length <= 2) {
+			Object arg1 = (args.length == 0 ? null : args[0]);
+			Object arg2 = (args.length < 2 ? null : args[1]);
+			actual = LoggerAdapter.format(new StringBuilder(), fmt, arg1, arg2, null, args.length).toString();
+			Assert.assertEquals(expect, actual);
+		}
+	}
+}
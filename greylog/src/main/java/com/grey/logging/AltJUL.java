@@ -15,6 +15,10 @@ import java.util.logging.Level;
 // JUL logger, as the more arcane log(), logp() and logrb() variants will pass straight through to the base JUL logger, which will then call
 // our log(LogRecord) method.
 // The convenience methods such as Logger.info() will get routed to our more efficient replacements rather than log(LogRecord).
+// The parameterised and Supplier variants of log() are also handled here, with the level being checked before anything else happens,
+// so filtered-out messages cost nothing. Parameters are formatted into a reusable buffer, by Interop.formatJUL().
+// The logp() variants also check the level before passing through to the base JUL logger, so a LogRecord is only created for messages
+// which will actually be logged.
 // Anything to with the Handler, Filter or ResourceBundle classes will become effectively a no-op (but in practice a wasted op), as we allow the
 // calls to pass through.
 // This class is constructed with a null parent, and parent operations don't really make sense for us, but we don't intercept them.
@@ -27,9 +31,11 @@ public class AltJUL
 {
 	private final Clock clock;
 	private final java.io.PrintStream strm;
-	private final java.util.Calendar dtcal;
+	private final com.grey.base.utils.TimeOps.CachedFormatter tsfmt;
 	private final StringBuilder logbuf;
 	private final StringBuilder msgbuf;
+	private final StringBuilder parambuf;
+	private final Object[] singleParam = new Object[1];
 	private int minlvl;  // JUL logger uses volatile levelValue, so cache our own
 
 	@Override
@@ -49,9 +55,10 @@ public class AltJUL
 		super("greybase.anon", (String)null);
 		this.strm = strm;
 		this.clock = clock;
-		dtcal = com.grey.base.utils.TimeOps.getCalendar(null);
+		tsfmt = new com.grey.base.utils.TimeOps.CachedFormatter(com.grey.base.utils.TimeOps.CachedFormatter.FORMAT.LOG_DATETIME_MILLI);
 		logbuf = new StringBuilder();
 		msgbuf = new StringBuilder();
+		parambuf = new StringBuilder();
 		setLevel(Level.INFO);
 	}
 
@@ -87,12 +94,82 @@ public class AltJUL
 		log(rec.getLevel(), msgbuf, rec.getThrown(), true);
 	}
 
+	@Override
+	public void log(Level lvl, String msg, Object param)
+	{
+		if (lvl.intValue() < minlvl) return;
+		log(lvl, msg, null, param);
+	}
+
+	@Override
+	public void log(Level lvl, String msg, Object[] params)
+	{
+		if (lvl.intValue() < minlvl) return;
+		log(lvl, msg, params, null);
+	}
+
+	@Override
+	public void log(Level lvl, java.util.function.Supplier<String> msgSupplier)
+	{
+		if (lvl.intValue() < minlvl) return;
+		log(lvl, (CharSequence)msgSupplier.get());
+	}
+
+	@Override
+	public void log(Level lvl, Throwable ex, java.util.function.Supplier<String> msgSupplier)
+	{
+		if (lvl.intValue() < minlvl) return;
+		log(lvl, msgSupplier.get(), ex, true);
+	}
+
+	@Override
+	public void logp(Level lvl, String srcClass, String srcMethod, String msg)
+	{
+		if (lvl.intValue() < minlvl) return;
+		super.logp(lvl, srcClass, srcMethod, msg);
+	}
+
+	@Override
+	public void logp(Level lvl, String srcClass, String srcMethod, String msg, Object param)
+	{
+		if (lvl.intValue() < minlvl) return;
+		super.logp(lvl, srcClass, srcMethod, msg, param);
+	}
+
+	@Override
+	public void logp(Level lvl, String srcClass, String srcMethod, String msg, Object[] params)
+	{
+		if (lvl.intValue() < minlvl) return;
+		super.logp(lvl, srcClass, srcMethod, msg, params);
+	}
+
+	@Override
+	public void logp(Level lvl, String srcClass, String srcMethod, String msg, Throwable ex)
+	{
+		if (lvl.intValue() < minlvl) return;
+		super.logp(lvl, srcClass, srcMethod, msg, ex);
+	}
+
 	public void log(Level lvl, CharSequence msg)
 	{
 		if (lvl.intValue() < minlvl) return;
 		log(msg, lvl);
 	}
 
+	// Level has already been approved. The single param is passed separately to avoid creating an array for it.
+	void log(Level lvl, String msg, Object[] params, Object param)
+	{
+		parambuf.setLength(0);
+		if (params == null) {
+			singleParam[0] = param;
+			Interop.formatJUL(parambuf, msg, singleParam);
+			singleParam[0] = null;
+		} else {
+			Interop.formatJUL(parambuf, msg, params);
+		}
+		log(parambuf, lvl);
+	}
+
 	public void log(Level lvl, CharSequence msg, Throwable ex, boolean withstack)
 	{
 		if (ex == null)
@@ -108,9 +185,8 @@ public class AltJUL
 	private void log(CharSequence msg, Level lvl)
 	{
 		long systime = clock.millis();
-		dtcal.setTimeInMillis(systime);
 		logbuf.setLength(0);
-		com.grey.base.utils.TimeOps.makeTimeLogger(dtcal, logbuf, true, true);
+		tsfmt.format(systime, logbuf);
 		logbuf.append(' ');
 		logbuf.append('T').append(Thread.currentThread().getId()).append(' ');
 		logbuf.append(lvl).append(' ').append(msg);
@@ -0,0 +1,404 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import com.grey.base.config.SysProps;
+import com.grey.base.utils.ByteChars;
+
+/**
+ * MT-safe logger which does not make its callers wait for the formatting and I/O.
+ * <br>
+ * Each log() call merely copies the level, timestamp, calling thread and message bytes into a pre-allocated ring buffer, and a
+ * dedicated writer thread then formats the entries (including the standard prefix, on behalf of the original caller) and
+ * writes them to the logfile in batches of up to the configured buffer size. Logfile rotation also happens on the writer thread.
+ * <br>
+ * The ring is divided into fixed-size slots, and a message occupies as many consecutive slots as it needs. The callers claim slots
+ * with a CAS on a shared cursor and never take a lock, so multiple Dispatchers can share this logger without contending on it.
+ * Like LatinLogger, this assumes 8-bit characters.
+ * <br>
+ * Records committed via the LogRecord API are copied into the ring in their binary form, so their formatting is also done by the
+ * writer thread.
+ * <p>
+ * If the ring is full, the configured overflow policy determines whether the caller blocks till the writer frees up some space,
+ * or the message is discarded. The DROP_BELOW policy discards messages whose level is lower than the overflow level (ie. the
+ * less important ones) but blocks for the rest. The writer thread never blocks on its own logging (eg. announcing a rotated
+ * logfile) and will drop such messages if the ring is full.
+ * <br>
+ * The getDropped(), getBlocked() and getQueued() methods report on how well the writer is keeping up.
+ */
+public class AsyncLogger
+	extends Logger
+{
+	public enum OVERFLOW {BLOCK, DROP, DROP_BELOW}
+
+	private static final int SLOTSIZE = SysProps.get("grey.logger.async.slotsize", 128);
+	private static final long IDLE_NANOS = java.util.concurrent.TimeUnit.MILLISECONDS.toNanos(SysProps.getTime("grey.logger.async.idle", 50));
+	private static final long BLOCK_NANOS = java.util.concurrent.TimeUnit.MICROSECONDS.toNanos(50);
+	private static final long SHUTDOWN_WAIT = SysProps.getTime("grey.logger.async.shutdownwait", "2s");
+	private static final byte[] eolbytes = SysProps.EOL.getBytes();
+
+	private final OVERFLOW overflowPolicy;
+	private final LEVEL overflowLevel;
+	private final int capacity; //number of slots
+	private final int slotmask;
+	private final int maxmsg; //max message size in bytes - longer ones are truncated
+	private final byte[] ringbuf;
+	private final LEVEL[] levels;
+	private final long[] times;
+	private final Thread[] threads;
+	private final int[] lengths;
+	private final boolean[] binary; //true means the slot holds a binary LogRecord rather than message text
+	private final AtomicLongArray published; //holds the sequence number of the record which starts in each slot, once it is ready
+	private final AtomicLong cursor = new AtomicLong(); //the next sequence number to be claimed
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong blocked = new AtomicLong();
+	private final Thread writer;
+	private final Thread shutdown_hook;
+	private volatile long consumed; //the next sequence number the writer will process - only modified by the writer
+	private volatile boolean writerIdle;
+	private volatile boolean flushRequested;
+	private volatile boolean closing;
+
+	// these are only accessed by the writer thread (or by the closing thread, once the writer has exited)
+	private final StringBuilder pfxbuf = new StringBuilder();
+	private final ByteChars batchbuf = new ByteChars();
+	private final StringBuilder recfmtbuf = new StringBuilder();
+	private byte[] recbuf = new byte[SLOTSIZE];
+	private java.io.OutputStream logstrm;
+	private long last_writetime;
+	private long written;
+
+	public OVERFLOW getOverflowPolicy() {return overflowPolicy;}
+	public LEVEL getOverflowLevel() {return overflowLevel;}
+	public int getCapacity() {return capacity;}
+	public long getDropped() {return dropped.get();}
+	public long getBlocked() {return blocked.get();}
+	public long getQueued() {return cursor.get() - consumed;} //measured in slots
+	public long getWritten() {return written;}
+
+	protected AsyncLogger(Parameters params, String logname)
+	{
+		super(params, logname, true);
+		overflowPolicy = params.getOverflowPolicy();
+		overflowLevel = params.getOverflowLevel();
+		if (params.getQueueSize() <= 0) throw new IllegalArgumentException("AsyncLogger has invalid queue size="+params.getQueueSize());
+		capacity = Integer.highestOneBit(params.getQueueSize() * 2 - 1); //round up to power of 2
+		slotmask = capacity - 1;
+		maxmsg = Math.max(SLOTSIZE, (capacity / 4) * SLOTSIZE);
+		ringbuf = new byte[capacity * SLOTSIZE];
+		levels = new LEVEL[capacity];
+		times = new long[capacity];
+		threads = new Thread[capacity];
+		lengths = new int[capacity];
+		binary = new boolean[capacity];
+		published = new AtomicLongArray(capacity);
+		for (int idx = 0; idx != capacity; idx++) {
+			published.set(idx, -1);
+		}
+		writer = new Thread(this::runWriter, "GreyLog-Async-"+logname);
+		writer.setDaemon(true);
+		shutdown_hook = new Thread(() -> drain(SHUTDOWN_WAIT), "GreyLog-Async-Shutdown-"+logname);
+	}
+
+	@Override
+	protected void init() throws java.io.IOException
+	{
+		super.init();
+		writer.start();
+		Runtime.getRuntime().addShutdownHook(shutdown_hook);
+	}
+
+	@Override
+	public void log(LEVEL lvl, CharSequence msg)
+	{
+		if (!isActive(lvl) || closing) return;
+		enqueue(lvl, msg, null, Math.min(msg.length(), maxmsg));
+	}
+
+	@Override
+	protected void log(LogRecord rec)
+	{
+		if (closing) return;
+		if (rec.length() > maxmsg) {
+			// a binary record cannot be truncated, so format it here and let the text get truncated instead
+			log(rec.getLevel(), rec.format());
+			return;
+		}
+		enqueue(rec.getLevel(), null, rec.buffer(), rec.length());
+	}
+
+	// Exactly one of msg and rec is non-null
+	private void enqueue(LEVEL lvl, CharSequence msg, byte[] rec, int len)
+	{
+		long systime = getClock().millis();
+		int nslots = (len == 0 ? 1 : (len + SLOTSIZE - 1) / SLOTSIZE);
+		long seq = claim(lvl, nslots);
+		if (seq == -1) return;
+
+		int idx = (int)(seq & slotmask);
+		levels[idx] = lvl;
+		times[idx] = systime;
+		threads[idx] = Thread.currentThread();
+		lengths[idx] = len;
+		binary[idx] = (rec != null);
+		if (rec == null) {
+			copyIn(msg, len, idx * SLOTSIZE);
+		} else {
+			copyIn(rec, len, idx * SLOTSIZE);
+		}
+		published.lazySet(idx, seq);
+		if (writerIdle) LockSupport.unpark(writer);
+	}
+
+	@Override
+	public void flush() throws java.io.IOException
+	{
+		if (Thread.currentThread() == writer || !writer.isAlive()) {
+			writeBatch();
+			if (logstrm != null) logstrm.flush();
+			return;
+		}
+		flushRequested = true;
+		LockSupport.unpark(writer);
+	}
+
+	/**
+	 * Waits for the writer thread to catch up with all the messages logged so far, and flush them.
+	 * @return False if it failed to do so within the timeout
+	 */
+	public boolean drain(long timeout)
+	{
+		long limit = System.nanoTime() + java.util.concurrent.TimeUnit.MILLISECONDS.toNanos(timeout);
+		long target = cursor.get();
+		flushRequested = true;
+		while (writer.isAlive() && (consumed < target || flushRequested)) {
+			if (System.nanoTime() > limit) return false;
+			LockSupport.unpark(writer);
+			LockSupport.parkNanos(BLOCK_NANOS);
+		}
+		return true;
+	}
+
+	@Override
+	public void close()
+	{
+		closing = true;
+		if (writer.isAlive()) {
+			LockSupport.unpark(writer);
+			try {
+				writer.join();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		try {
+			Runtime.getRuntime().removeShutdownHook(shutdown_hook);
+		} catch (IllegalStateException ex) {} //JVM is already shutting down
+		super.close();
+	}
+
+	@Override
+	protected void openStream(java.io.OutputStream strm)
+	{
+		logstrm = strm;
+	}
+
+	// We do our own buffering in batchbuf, so the file stream is unbuffered
+	@Override
+	protected void openStream(String pthnam) throws java.io.IOException
+	{
+		logstrm = new java.io.FileOutputStream(pthnam, true);
+	}
+
+	@Override
+	protected void closeStream(boolean is_owner) throws java.io.IOException
+	{
+		writeBatch();
+		if (logstrm != null) {
+			java.io.OutputStream strm = logstrm;
+			logstrm = null;
+			if (isOwner()) strm.close();
+		}
+	}
+
+	// Returns the first sequence number of the claimed slots, or -1 if the message has to be dropped
+	private long claim(LEVEL lvl, int nslots)
+	{
+		boolean is_blocked = false;
+		for (;;) {
+			long seq = cursor.get();
+			if (seq + nslots - consumed <= capacity) {
+				if (cursor.compareAndSet(seq, seq + nslots)) return seq;
+				continue;
+			}
+			if (!mustBlock(lvl)) {
+				dropped.incrementAndGet();
+				return -1;
+			}
+			if (!is_blocked) {
+				is_blocked = true;
+				blocked.incrementAndGet();
+			}
+			LockSupport.unpark(writer);
+			LockSupport.parkNanos(BLOCK_NANOS);
+		}
+	}
+
+	private boolean mustBlock(LEVEL lvl)
+	{
+		if (closing || Thread.currentThread() == writer || !writer.isAlive()) return false;
+		switch (overflowPolicy)
+		{
+		case BLOCK:
+			return true;
+		case DROP:
+			return false;
+		case DROP_BELOW:
+			return (lvl == LEVEL.ALL || lvl.ordinal() <= overflowLevel.ordinal());
+		default:
+			throw new Error("Missing case for overflow policy="+overflowPolicy);
+		}
+	}
+
+	private void copyIn(CharSequence msg, int len, int pos)
+	{
+		if (len == 0) return;
+		int len1 = Math.min(len, ringbuf.length - pos);
+		if (msg instanceof ByteChars) {
+			ByteChars bc = (ByteChars)msg;
+			System.arraycopy(bc.buffer(), bc.offset(), ringbuf, pos, len1);
+			System.arraycopy(bc.buffer(), bc.offset() + len1, ringbuf, 0, len - len1);
+			return;
+		}
+		for (int idx = 0; idx != len1; idx++) {
+			ringbuf[pos++] = (byte)msg.charAt(idx);
+		}
+		pos = 0;
+		for (int idx = len1; idx != len; idx++) {
+			ringbuf[pos++] = (byte)msg.charAt(idx);
+		}
+	}
+
+	private void copyIn(byte[] rec, int len, int pos)
+	{
+		int len1 = Math.min(len, ringbuf.length - pos);
+		System.arraycopy(rec, 0, ringbuf, pos, len1);
+		System.arraycopy(rec, len1, ringbuf, 0, len - len1);
+	}
+
+	private void runWriter()
+	{
+		try {
+			for (;;) {
+				int cnt = processRecords();
+				if (flushRequested) {
+					flushRequested = false;
+					flush();
+				}
+				if (cnt != 0) continue;
+
+				if (closing) {
+					if (consumed == cursor.get()) break;
+					LockSupport.parkNanos(BLOCK_NANOS); //a caller is still copying in a message
+					continue;
+				}
+				long flushInterval = getFlushInterval();
+				if (batchbuf.size() != 0 && (flushInterval == 0 || getClock().millis() - last_writetime >= flushInterval)) writeBatch();
+				writerIdle = true;
+				if (published.get((int)(consumed & slotmask)) != consumed && !flushRequested && !closing) {
+					LockSupport.parkNanos(IDLE_NANOS);
+				}
+				writerIdle = false;
+			}
+			flush();
+		} catch (Throwable ex) {
+			System.out.println(new java.util.Date(getClock().millis())+" FATAL ERROR: Failed to write AsyncLogger - "
+					+com.grey.base.ExceptionUtils.summary(ex, true));
+			System.exit(1);
+		}
+	}
+
+	private int processRecords() throws java.io.IOException
+	{
+		int cnt = 0;
+		long seq = consumed;
+		for (;;) {
+			int idx = (int)(seq & slotmask);
+			if (published.get(idx) != seq) break;
+			int len = lengths[idx];
+			if (binary[idx]) {
+				writeRecord(levels[idx], times[idx], threads[idx], formatRecord(idx * SLOTSIZE, len));
+			} else {
+				writeRecord(levels[idx], times[idx], threads[idx], idx * SLOTSIZE, len);
+			}
+			threads[idx] = null; //don't hold on to dead threads
+			seq += (len == 0 ? 1 : (len + SLOTSIZE - 1) / SLOTSIZE);
+			consumed = seq;
+			cnt++;
+		}
+		return cnt;
+	}
+
+	private void writeRecord(LEVEL lvl, long systime, Thread thrd, int pos, int len) throws java.io.IOException
+	{
+		setLogEntry(lvl, systime, thrd, pfxbuf);
+		int len1 = Math.min(len, ringbuf.length - pos);
+		int prevsize = batchbuf.size();
+		batchbuf.append(pfxbuf);
+		batchbuf.append(ringbuf, pos, len1);
+		if (len1 != len) batchbuf.append(ringbuf, 0, len - len1);
+		batchbuf.append(eolbytes, 0, eolbytes.length);
+		addWritten(batchbuf.size() - prevsize);
+		written++;
+		if (batchbuf.size() >= getBufferSize()) writeBatch();
+	}
+
+	private void writeRecord(LEVEL lvl, long systime, Thread thrd, CharSequence msg) throws java.io.IOException
+	{
+		setLogEntry(lvl, systime, thrd, pfxbuf);
+		int prevsize = batchbuf.size();
+		batchbuf.append(pfxbuf);
+		batchbuf.append(msg);
+		batchbuf.append(eolbytes, 0, eolbytes.length);
+		addWritten(batchbuf.size() - prevsize);
+		written++;
+		if (batchbuf.size() >= getBufferSize()) writeBatch();
+	}
+
+	// Decodes a binary LogRecord, which first has to be made contiguous if it wraps around the end of the ring
+	private StringBuilder formatRecord(int pos, int len)
+	{
+		byte[] buf = ringbuf;
+		if (pos + len > ringbuf.length) {
+			if (recbuf.length < len) recbuf = new byte[len];
+			int len1 = ringbuf.length - pos;
+			System.arraycopy(ringbuf, pos, recbuf, 0, len1);
+			System.arraycopy(ringbuf, 0, recbuf, len1, len - len1);
+			buf = recbuf;
+			pos = 0;
+		}
+		recfmtbuf.setLength(0);
+		return LogRecord.format(buf, pos, len, recfmtbuf);
+	}
+
+	private void writeBatch() throws java.io.IOException
+	{
+		if (batchbuf.size() == 0) return;
+		if (logstrm != null) logstrm.write(batchbuf.buffer(), batchbuf.offset(), batchbuf.size());
+		batchbuf.clear();
+		last_writetime = getClock().millis();
+	}
+
+	@Override
+	public String toString()
+	{
+		return super.toString()+" Async="+capacity+"x"+SLOTSIZE+"/"+overflowPolicy
+				+(overflowPolicy == OVERFLOW.DROP_BELOW ? "/"+overflowLevel : "");
+	}
+}
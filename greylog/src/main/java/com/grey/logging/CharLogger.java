@@ -73,6 +73,7 @@ public class CharLogger
 			logmsg_buf.getChars(0, mlen, logmsg_chars, 0);
 
 			logstrm.write(logmsg_chars, 0, logmsg_buf.length());
+			addWritten(mlen);
 		} catch (Throwable ex) {
 	        System.out.println(new java.util.Date(getClock().millis())+" FATAL ERROR: Failed to write CharLogger - "
 	        		+com.grey.base.ExceptionUtils.summary(ex, true));
@@ -8,6 +8,9 @@ import com.grey.logging.Logger.LEVEL;
 
 public class Interop
 {
+	// Java 9 extended the range of placeholders which JUL recognises - the spec version is "1.8" for Java 8 and "9" etc thereafter
+	private static final boolean JUL_ANYDIGIT = !System.getProperty("java.specification.version", "").startsWith("1.");
+
 	public static boolean isActive(LEVEL logger, LEVEL msg)
 	{
 		if (logger == LEVEL.OFF || msg == LEVEL.OFF) return false;
@@ -75,6 +78,79 @@ public class Interop
 		}
 	}
 
+	/**
+	 * Formats a JUL message with its parameters, in the manner of java.util.logging.Formatter.formatMessage(), and appends it to
+	 * the given buffer.
+	 * <br>
+	 * The simple {0}, {1} etc placeholders are substituted directly, using the parameters' toString(), which avoids the garbage
+	 * generated by java.text.MessageFormat. Unlike MessageFormat, this means numbers and dates are not rendered in locale-specific
+	 * forms. Messages which use the fuller MessageFormat syntax (format types or quotes) are passed on to MessageFormat itself.
+	 * As in JUL, messages which don't contain any placeholders are not formatted at all, and neither are invalid patterns.
+	 */
+	public static StringBuilder formatJUL(StringBuilder sb, CharSequence msg, Object[] params)
+	{
+		if (msg == null) return sb.append((String)null);
+		int len = msg.length();
+		if (params == null || params.length == 0 || !hasJULPlaceholder(msg, JUL_ANYDIGIT)) return sb.append(msg);
+		int startlen = sb.length();
+		int off = 0;
+		int pos = 0;
+
+		while (pos < len) {
+			char ch = msg.charAt(pos);
+			if (ch == '\'') {
+				// MessageFormat quoting - too arcane for us
+				return formatMessageFormat(sb, startlen, msg, params);
+			}
+			if (ch != '{') {
+				pos++;
+				continue;
+			}
+			int pos2 = pos + 1;
+			int argnum = 0;
+			while (pos2 < len && Character.isDigit(msg.charAt(pos2))) {
+				argnum = (argnum * 10) + (msg.charAt(pos2++) - '0');
+			}
+			if (pos2 == pos + 1 || pos2 == len || msg.charAt(pos2) != '}') {
+				// not a simple placeholder, so either it has a format type or the pattern is invalid
+				return formatMessageFormat(sb, startlen, msg, params);
+			}
+			sb.append(msg, off, pos);
+			if (argnum < params.length) {
+				sb.append(params[argnum]);
+			} else {
+				sb.append(msg, pos, pos2 + 1); //MessageFormat leaves it as is
+			}
+			pos = pos2 + 1;
+			off = pos;
+		}
+		return sb.append(msg, off, len);
+	}
+
+	private static StringBuilder formatMessageFormat(StringBuilder sb, int startlen, CharSequence msg, Object[] params)
+	{
+		sb.setLength(startlen);
+		try {
+			return sb.append(java.text.MessageFormat.format(msg.toString(), params));
+		} catch (IllegalArgumentException ex) {
+			return sb.append(msg); //JUL also outputs invalid patterns as is
+		}
+	}
+
+	// JUL only attempts to format messages which contain a brace followed by a digit, and before Java 9 the digit had to be 0 to 3
+	static boolean hasJULPlaceholder(CharSequence msg, boolean anydigit)
+	{
+		char maxdigit = (anydigit ? '9' : '3');
+		int lmt = msg.length() - 1;
+		for (int idx = 0; idx < lmt; idx++) {
+			if (msg.charAt(idx) == '{') {
+				char ch = msg.charAt(idx + 1);
+				if (ch >= '0' && ch <= maxdigit) return true;
+			}
+		}
+		return false;
+	}
+
 	// there will be a Level set somewhere up the Logger hierarchy
 	public static java.util.logging.Level getEffectiveLevel(java.util.logging.Logger log)
 	{
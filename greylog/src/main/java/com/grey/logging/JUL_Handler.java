@@ -6,11 +6,18 @@ package com.grey.logging;
 
 /**
  * This class wraps the Grey Logger in a JUL handler.
+ * <br>
+ * The Grey Logger's original level is transferred to this handler, and to the JUL logger created by getLogger(), so that JUL
+ * discards filtered-out messages before it even creates a LogRecord for them. A shared (non-exclusive) JUL logger keeps any level
+ * that has already been set on it though, in which case this handler's own level does the filtering.
+ * Messages which do get published are formatted with their parameters into a reusable per-thread buffer.
  */
 public class JUL_Handler
 	extends java.util.logging.Handler
 	implements java.io.Closeable, java.io.Flushable
 {
+	private static final ThreadLocal<StringBuilder> msgbufs = ThreadLocal.withInitial(() -> new StringBuilder(128));
+
 	private final com.grey.logging.Logger log;
 	private final boolean fullinfo;
 
@@ -32,6 +39,7 @@ public class JUL_Handler
 	{
 		this.log = log;
 		this.fullinfo = fullinfo;
+		setLevel(Interop.mapLevel(log.getLevel()));
 		log.setLevel(Logger.LEVEL.ALL);  //anything routed to this handler has already been approved, so make sure Grey Logger allows it
 	}
 
@@ -54,12 +62,14 @@ public class JUL_Handler
 	@Override
 	public void publish(java.util.logging.LogRecord rec)
 	{
+		if (!isLoggable(rec)) return;
 		CharSequence msg = rec.getMessage();
 		Throwable ex = rec.getThrown();
+		StringBuilder buf = msgbufs.get();
+		buf.setLength(0);
 
 		if (fullinfo || ex != null)
 		{
-			StringBuilder buf = new StringBuilder(128);
 			buf.append("[T").append(rec.getThreadID()).append("/SEQ=").append(rec.getSequenceNumber());
 			buf.append(' ').append(rec.getSourceClassName()).append(':').append(rec.getSourceMethodName()).append("] ");
 			buf.append(msg);
@@ -76,6 +86,10 @@ public class JUL_Handler
 			if (ex != null) buf.append(com.grey.base.ExceptionUtils.summary(ex, true));
 			msg = buf;
 		}
+		else if (rec.getParameters() != null)
+		{
+			msg = Interop.formatJUL(buf, msg, rec.getParameters());
+		}
 		Logger.LEVEL lvl = Interop.mapLevel(rec.getLevel());
 		log.log(lvl, msg);
 	}
@@ -101,6 +115,7 @@ public class JUL_Handler
 			}
 		}
 		java.util.logging.Handler handler = new JUL_Handler(grylog, fullinfo);
+		if (exclusive || log.getLevel() == null) log.setLevel(handler.getLevel());
 		log.addHandler(handler);
 		if (exclusive) log.setUseParentHandlers(false);
 		return log;
@@ -44,9 +44,15 @@ public class LatinLogger
 
 	@Override
 	protected void openStream(String pthnam) throws java.io.IOException
+	{
+		logstrm = createFileStream(pthnam);
+	}
+
+	// subclasses may override this to provide a different type of file output
+	protected java.io.OutputStream createFileStream(String pthnam) throws java.io.IOException
 	{
 		java.io.FileOutputStream fstrm = new java.io.FileOutputStream(pthnam, true);
-		logstrm = new java.io.BufferedOutputStream(fstrm, getBufferSize());
+		return new java.io.BufferedOutputStream(fstrm, getBufferSize());
 	}
 
 	@Override
@@ -75,6 +81,7 @@ public class LatinLogger
 			setLogEntry(lvl, tmpstrbuf);
 			logmsg_buf.populate(tmpstrbuf).append(msg).append(eolbytes, 0, eolbytes.length);
 			logstrm.write(logmsg_buf.buffer(), logmsg_buf.offset(), logmsg_buf.size());
+			addWritten(logmsg_buf.size());
 		} catch (Throwable ex) {
 	        System.out.println(new java.util.Date(getClock().millis())+" FATAL ERROR: Failed to write LatinLogger - "
 	        		+com.grey.base.ExceptionUtils.summary(ex, true));
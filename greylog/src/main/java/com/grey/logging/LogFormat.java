@@ -0,0 +1,94 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.logging;
+
+/**
+ * A registered log message template, for use with the deferred-formatting {@link LogRecord} API.
+ * <br>
+ * Templates use the SLF4J-style {} placeholder for each argument, and are expected to be registered once and held in static
+ * fields, eg.<br>
+ * <code>private static final LogFormat FMT_BLOCKED = LogFormat.register("Send blocked with {}/{} on {}");</code>
+ * <br>
+ * Each template is assigned a numeric ID, which is all that a LogRecord needs to record, and the registry maps it back to the
+ * template when the record is eventually formatted.
+ * <p>
+ * If there are more arguments than placeholders then the excess arguments are appended to the end of the message, and if there
+ * are fewer then the unmatched placeholders are output as is.
+ */
+public final class LogFormat
+{
+	static final String PLACEHOLDER = "{}";
+	private static final java.util.HashMap<String, LogFormat> lookup = new java.util.HashMap<>(); //also serves as our lock
+	private static volatile LogFormat[] registry = new LogFormat[0]; //indexed by ID - copy-on-write, so that lookups don't lock
+
+	private final int id;
+	private final String template;
+	private final String[] segments; //the literal text before each placeholder, plus the trailing text
+
+	public int getId() {return id;}
+	public String getTemplate() {return template;}
+	public int getPlaceholderCount() {return segments.length - 1;}
+	String getSegment(int idx) {return segments[idx];}
+
+	/**
+	 * Registers a template and returns its descriptor. Registering the same template twice returns the same descriptor.
+	 */
+	public static LogFormat register(String template)
+	{
+		synchronized (lookup) {
+			LogFormat fmt = lookup.get(template);
+			if (fmt == null) {
+				LogFormat[] arr = java.util.Arrays.copyOf(registry, registry.length + 1);
+				fmt = new LogFormat(registry.length, template);
+				arr[fmt.id] = fmt;
+				lookup.put(template, fmt);
+				registry = arr;
+			}
+			return fmt;
+		}
+	}
+
+	/**
+	 * Returns the template with the given ID, or null if there is none.
+	 */
+	public static LogFormat get(int id)
+	{
+		LogFormat[] arr = registry;
+		return (id < 0 || id >= arr.length ? null : arr[id]);
+	}
+
+	/**
+	 * Writes out all the registered templates, one per line, prefixed by their ID and a tab.
+	 * This provides the dictionary needed to decode binary records which are saved for offline formatting.
+	 */
+	public static void dumpRegistry(Appendable out) throws java.io.IOException
+	{
+		LogFormat[] arr = registry;
+		for (int idx = 0; idx != arr.length; idx++) {
+			out.append(String.valueOf(idx)).append('\t').append(arr[idx].template).append('\n');
+		}
+	}
+
+	private LogFormat(int id, String template)
+	{
+		this.id = id;
+		this.template = template;
+		java.util.ArrayList<String> lst = new java.util.ArrayList<>();
+		int off = 0;
+		int pos;
+		while ((pos = template.indexOf(PLACEHOLDER, off)) != -1) {
+			lst.add(template.substring(off, pos));
+			off = pos + PLACEHOLDER.length();
+		}
+		lst.add(template.substring(off));
+		segments = lst.toArray(new String[lst.size()]);
+	}
+
+	@Override
+	public String toString()
+	{
+		return super.toString()+" with ID="+id+", template="+template;
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.logging;
+
+import com.grey.base.config.SysProps;
+import com.grey.logging.Logger.LEVEL;
+
+/**
+ * Rate limiter for repetitive log messages, which could otherwise flood the logfile (and make an overload worse) when
+ * something like a DoS attack or a misbehaving peer triggers them thousands of times a second.
+ * <br>
+ * Each limiter is a token bucket which is identified by a message ID, and call sites are expected to obtain it once via
+ * register() and hold it in a field. The call site then checks isAllowed() before building and logging its message, eg.<br>
+ * <code>if (LIMITER.isAllowed(logger, LEVEL.INFO)) logger.info("Dropping connection ...");</code>
+ * <br>
+ * Messages are allowed through at the configured sustained rate, with bursts of up to the configured size, and the rest are
+ * suppressed. The number of suppressed messages is reported in a summary line once per summary interval. There is no timer
+ * behind this, so the summary is logged by the first call after the interval has expired.
+ * <br>
+ * Messages logged at the trace levels (TRC and below) can also be sampled, so that only the given fraction of them even make
+ * it to the token bucket. Sampled-out messages are counted as suppressed.
+ * <p>
+ * The defaults which are passed to register() can be overridden for each message ID with a system property of the form
+ * <code>grey.logger.limit.ID=rate[:burst[:sample]]</code>, and a rate of zero disables the limiting.
+ * <br>
+ * Limiters are MT-safe, so they can be shared by multiple Dispatchers.
+ */
+public final class LogLimiter
+{
+	public static final String SYSPROP_PREFIX = "grey.logger.limit.";
+	private static final long SUMMARY_INTERVAL = SysProps.getTime("grey.logger.limit.summary", "1m");
+
+	private static final java.util.concurrent.ConcurrentHashMap<String, LogLimiter> limiters = new java.util.concurrent.ConcurrentHashMap<>();
+
+	private final String id;
+	private final double rate; //sustained rate, in messages per second - zero means unlimited
+	private final int burst;
+	private final double sampleRate; //fraction of trace messages that are eligible to be logged
+
+	private double tokens;
+	private long last_refill;
+	private long last_summary;
+	private long suppressed; //since last summary
+	private long total_suppressed;
+
+	public String getId() {return id;}
+	public double getRate() {return rate;}
+	public int getBurst() {return burst;}
+	public double getSampleRate() {return sampleRate;}
+	public synchronized long getSuppressed() {return total_suppressed;}
+
+	/**
+	 * Returns the limiter for the given message ID, creating it with the given settings (unless overridden by the system
+	 * property) if it doesn't already exist.
+	 * @param rate The sustained number of messages per second to allow
+	 * @param burst The number of messages that can be logged in quick succession before the rate limit kicks in
+	 * @param sampleRate A number between 0 and 1, representing the fraction of trace messages to consider. Use 1 to disable sampling.
+	 */
+	public static LogLimiter register(String id, double rate, int burst, double sampleRate)
+	{
+		return limiters.computeIfAbsent(id, k -> {
+			String cfg = SysProps.get(SYSPROP_PREFIX+k);
+			if (cfg == null) return new LogLimiter(k, rate, burst, sampleRate);
+			String[] parts = cfg.split(":");
+			return new LogLimiter(k, Double.parseDouble(parts[0]),
+					parts.length > 1 ? Integer.parseInt(parts[1]) : burst,
+					parts.length > 2 ? Double.parseDouble(parts[2]) : sampleRate);
+		});
+	}
+
+	public static LogLimiter register(String id, double rate, int burst)
+	{
+		return register(id, rate, burst, 1.0);
+	}
+
+	LogLimiter(String id, double rate, int burst, double sampleRate)
+	{
+		if (rate < 0 || burst < 1 || sampleRate < 0 || sampleRate > 1) {
+			throw new IllegalArgumentException("LogLimiter="+id+" has invalid settings - rate="+rate+", burst="+burst+", sample="+sampleRate);
+		}
+		this.id = id;
+		this.rate = rate;
+		this.burst = burst;
+		this.sampleRate = sampleRate;
+		tokens = burst;
+		last_refill = Long.MIN_VALUE;
+	}
+
+	/**
+	 * Says whether a message should be logged at the given level. This returns false without affecting the limiter if the level
+	 * is not enabled in the logger, so it also serves as the call site's isActive() check.
+	 * <br>
+	 * If the summary interval has expired and there have been suppressed messages, the summary is logged to the given logger as a
+	 * side effect of this call.
+	 */
+	public boolean isAllowed(Logger log, LEVEL lvl)
+	{
+		if (!log.isActive(lvl)) return false;
+		if (rate == 0) return true;
+		boolean sampled = (sampleRate == 1.0 || lvl == LEVEL.ALL || lvl.ordinal() < LEVEL.TRC.ordinal()
+				|| java.util.concurrent.ThreadLocalRandom.current().nextDouble() < sampleRate);
+		long now = log.getClock().millis();
+		long summary_cnt = 0;
+		boolean allowed;
+
+		synchronized (this) {
+			if (last_refill == Long.MIN_VALUE) {
+				last_refill = now;
+				last_summary = now;
+			} else if (now > last_refill) {
+				tokens = Math.min(burst, tokens + ((now - last_refill) * rate / 1000));
+				last_refill = now;
+			}
+			allowed = (sampled && tokens >= 1);
+			if (allowed) {
+				tokens--;
+			} else {
+				// the summary interval starts with the first message it has to report on
+				if (suppressed++ == 0 && now - last_summary >= SUMMARY_INTERVAL) last_summary = now;
+				total_suppressed++;
+			}
+			if (suppressed != 0 && now - last_summary >= SUMMARY_INTERVAL) {
+				summary_cnt = suppressed;
+				suppressed = 0;
+				last_summary = now;
+			}
+		}
+
+		if (summary_cnt != 0) {
+			log.log(lvl, "LogLimiter="+id+" suppressed "+summary_cnt+" messages since last report - total="+getSuppressed());
+		}
+		return allowed;
+	}
+
+	@Override
+	public String toString()
+	{
+		return super.toString()+" with ID="+id+", rate="+rate+"/"+burst+", sample="+sampleRate+" - suppressed="+getSuppressed();
+	}
+}
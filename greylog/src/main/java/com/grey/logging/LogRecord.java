@@ -0,0 +1,286 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.logging;
+
+/**
+ * A parameterised log message, captured in binary form so that the formatting can be deferred.
+ * <br>
+ * Records are obtained from {@link Logger#record(Logger.LEVEL, LogFormat)}, which returns a per-thread instance, and the
+ * arguments are then added in order before the record is committed, eg.<br>
+ * <code>logger.record(LEVEL.TRC, FMT_BLOCKED).arg(bufsize).arg(chan).commit();</code>
+ * <br>
+ * The record consists of the format's ID followed by each argument as a type byte and its binary value, so adding an argument
+ * merely copies it into a reusable buffer. Any other Object arguments are converted with String.valueOf(), so callers should
+ * prefer to pass primitives and CharSequences.
+ * If the requested level is not enabled, a shared no-op record is returned, so the arguments are discarded without any effort.
+ * <p>
+ * Loggers which can defer the formatting (such as AsyncLogger) copy the binary record and format it on their own thread, while
+ * others simply format it on the spot. Binary records can also be saved and formatted offline, with the help of the static
+ * format() method and LogFormat.dumpRegistry().
+ * <br>
+ * A record must be committed before the same thread obtains another one, and must not be retained after being committed.
+ */
+public final class LogRecord
+{
+	static final byte TYPE_NULL = 0;
+	static final byte TYPE_LONG = 1;
+	static final byte TYPE_DOUBLE = 2;
+	static final byte TYPE_BOOL = 3;
+	static final byte TYPE_CHAR = 4;
+	static final byte TYPE_STR8 = 5; //string whose chars all fit into one byte
+	static final byte TYPE_STR16 = 6;
+
+	static final LogRecord DISABLED = new LogRecord();
+
+	private final StringBuilder fmtbuf = new StringBuilder();
+	private byte[] recbuf = new byte[256];
+	private int reclen;
+	private Logger logger; //null if record is disabled or already committed
+	private Logger.LEVEL level;
+	private LogFormat fmt;
+
+	public Logger.LEVEL getLevel() {return level;}
+	public LogFormat getFormat() {return fmt;}
+	public byte[] buffer() {return recbuf;}
+	public int length() {return reclen;}
+
+	LogRecord init(Logger log, Logger.LEVEL lvl, LogFormat f)
+	{
+		logger = log;
+		level = lvl;
+		fmt = f;
+		reclen = 0;
+		putInt(f.getId());
+		return this;
+	}
+
+	public LogRecord arg(long val)
+	{
+		if (logger == null) return this;
+		ensureSpace(9);
+		recbuf[reclen++] = TYPE_LONG;
+		putLong(val);
+		return this;
+	}
+
+	public LogRecord arg(int val)
+	{
+		return arg((long)val);
+	}
+
+	public LogRecord arg(double val)
+	{
+		if (logger == null) return this;
+		ensureSpace(9);
+		recbuf[reclen++] = TYPE_DOUBLE;
+		putLong(Double.doubleToRawLongBits(val));
+		return this;
+	}
+
+	public LogRecord arg(boolean val)
+	{
+		if (logger == null) return this;
+		ensureSpace(2);
+		recbuf[reclen++] = TYPE_BOOL;
+		recbuf[reclen++] = (byte)(val ? 1 : 0);
+		return this;
+	}
+
+	public LogRecord arg(char val)
+	{
+		if (logger == null) return this;
+		ensureSpace(3);
+		recbuf[reclen++] = TYPE_CHAR;
+		putChar(val);
+		return this;
+	}
+
+	public LogRecord arg(CharSequence val)
+	{
+		if (logger == null) return this;
+		if (val == null) return putNull();
+		int len = val.length();
+		boolean is8bit = true;
+		for (int idx = 0; idx != len; idx++) {
+			if (val.charAt(idx) > 0xFF) {
+				is8bit = false;
+				break;
+			}
+		}
+		ensureSpace(5 + (is8bit ? len : len * 2));
+		recbuf[reclen++] = (is8bit ? TYPE_STR8 : TYPE_STR16);
+		putInt(len);
+		if (is8bit) {
+			for (int idx = 0; idx != len; idx++) {
+				recbuf[reclen++] = (byte)val.charAt(idx);
+			}
+		} else {
+			for (int idx = 0; idx != len; idx++) {
+				putChar(val.charAt(idx));
+			}
+		}
+		return this;
+	}
+
+	public LogRecord arg(Object val)
+	{
+		if (logger == null) return this;
+		if (val == null) return putNull();
+		if (val instanceof CharSequence) return arg((CharSequence)val);
+		return arg(String.valueOf(val));
+	}
+
+	/**
+	 * Passes the completed record to the logger.
+	 */
+	public void commit()
+	{
+		if (logger == null) return;
+		Logger log = logger;
+		logger = null;
+		log.log(this);
+	}
+
+	/**
+	 * Formats this record into a private buffer, which remains valid till the record is reused.
+	 */
+	public StringBuilder format()
+	{
+		fmtbuf.setLength(0);
+		return format(recbuf, 0, reclen, fmtbuf);
+	}
+
+	/**
+	 * Decodes a binary record and appends the formatted message to the given buffer.
+	 * The record's format must be registered in this JVM, and if not, the raw arguments are output after its ID.
+	 */
+	public static StringBuilder format(byte[] buf, int off, int len, StringBuilder sb)
+	{
+		int lmt = off + len;
+		int id = getInt(buf, off);
+		off += 4;
+		LogFormat f = LogFormat.get(id);
+		int segcnt = (f == null ? 0 : f.getPlaceholderCount());
+		if (f == null) sb.append("LogFormat-").append(id).append(':');
+		int argnum = 0;
+
+		while (off != lmt) {
+			if (argnum < segcnt) {
+				sb.append(f.getSegment(argnum));
+			} else {
+				// excess arguments are appended to the end of the message
+				if (argnum == segcnt && f != null) sb.append(f.getSegment(segcnt));
+				sb.append(' ');
+			}
+			argnum++;
+			byte type = buf[off++];
+			switch (type)
+			{
+			case TYPE_NULL:
+				sb.append((String)null);
+				break;
+			case TYPE_LONG:
+				sb.append(getLong(buf, off));
+				off += 8;
+				break;
+			case TYPE_DOUBLE:
+				sb.append(Double.longBitsToDouble(getLong(buf, off)));
+				off += 8;
+				break;
+			case TYPE_BOOL:
+				sb.append(buf[off++] != 0);
+				break;
+			case TYPE_CHAR:
+				sb.append(getChar(buf, off));
+				off += 2;
+				break;
+			case TYPE_STR8:
+				{
+					int slen = getInt(buf, off);
+					off += 4;
+					for (int idx = 0; idx != slen; idx++) {
+						sb.append((char)(buf[off++] & 0xFF));
+					}
+				}
+				break;
+			case TYPE_STR16:
+				{
+					int slen = getInt(buf, off);
+					off += 4;
+					for (int idx = 0; idx != slen; idx++) {
+						sb.append(getChar(buf, off));
+						off += 2;
+					}
+				}
+				break;
+			default:
+				throw new IllegalArgumentException("Corrupt LogRecord for format="+id+" - arg="+argnum+" has type="+type);
+			}
+		}
+
+		if (f != null && argnum <= segcnt) {
+			// the unmatched placeholders are output as is
+			for (int idx = argnum; idx != segcnt; idx++) {
+				sb.append(f.getSegment(idx)).append(LogFormat.PLACEHOLDER);
+			}
+			sb.append(f.getSegment(segcnt));
+		}
+		return sb;
+	}
+
+	private LogRecord putNull()
+	{
+		ensureSpace(1);
+		recbuf[reclen++] = TYPE_NULL;
+		return this;
+	}
+
+	private void putInt(int val)
+	{
+		ensureSpace(4);
+		recbuf[reclen++] = (byte)(val >>> 24);
+		recbuf[reclen++] = (byte)(val >>> 16);
+		recbuf[reclen++] = (byte)(val >>> 8);
+		recbuf[reclen++] = (byte)val;
+	}
+
+	private void putLong(long val)
+	{
+		putInt((int)(val >>> 32));
+		putInt((int)val);
+	}
+
+	private void putChar(char val)
+	{
+		recbuf[reclen++] = (byte)(val >>> 8);
+		recbuf[reclen++] = (byte)val;
+	}
+
+	private void ensureSpace(int len)
+	{
+		if (reclen + len > recbuf.length) recbuf = java.util.Arrays.copyOf(recbuf, Math.max(recbuf.length * 2, reclen + len));
+	}
+
+	private static int getInt(byte[] buf, int off)
+	{
+		return ((buf[off] & 0xFF) << 24) | ((buf[off+1] & 0xFF) << 16) | ((buf[off+2] & 0xFF) << 8) | (buf[off+3] & 0xFF);
+	}
+
+	private static long getLong(byte[] buf, int off)
+	{
+		return ((long)getInt(buf, off) << 32) | (getInt(buf, off+4) & 0xFFFFFFFFL);
+	}
+
+	private static char getChar(byte[] buf, int off)
+	{
+		return (char)(((buf[off] & 0xFF) << 8) | (buf[off+1] & 0xFF));
+	}
+
+	@Override
+	public String toString()
+	{
+		return super.toString()+" with level="+level+", format="+(fmt == null ? null : fmt.getId())+", length="+reclen;
+	}
+}
@@ -33,8 +33,16 @@ abstract public class Logger
 	static final boolean DIAGNOSTICS = SysProps.get("grey.logger.diagnostics", false);
 	static final String DIAGMARK = "GREYLOG: ";
 
+	// Interval at which we confirm our own tally of the logfile size against the filesystem, in case it is also being modified externally
+	private static final long SIZECHECK_INTERVAL = SysProps.getTime("grey.logger.sizecheck", "10s");
+	private static final String COMPRESSED_SUFFIX = ".gz";
+	private static java.util.concurrent.ExecutorService compressor; //created on demand
+
 	private static final java.util.HashSet<Logger> Loggers = new java.util.HashSet<Logger>();
 	private static final Map<Long,Logger> ThreadLoggers = new ConcurrentHashMap<>();
+	private static final ThreadLocal<LogRecord> ThreadRecords = ThreadLocal.withInitial(LogRecord::new);
+	private static final ThreadLocal<CachedThreadLogger> CachedThreadLoggers = ThreadLocal.withInitial(CachedThreadLogger::new);
+	private static volatile int threadLoggersVersion; //incremented whenever ThreadLoggers is modified, to invalidate the cached entries
 	private static Thread shutdown_hook;
 
 	private final boolean isMT;
@@ -51,14 +59,18 @@ abstract public class Logger
 	private final boolean withMillisecs;
 	private final boolean withLevel;
 	private final boolean withInitMark;
+	private final boolean compressRotated;
 	private final long flushInterval;  // interval between logfile flushes, in milliseconds
 	private final int bufsiz;
 	private final Clock clock;
 	private final java.util.Calendar dtcal = TimeOps.getCalendar(null); //merely pre-allocated for efficiency
+	private final TimeOps.CachedFormatter tsfmt;
 
 	private LEVEL maxLevel; //active log level
 	private long prevtime;
 	private long last_flushtime;
+	private long filesize; //our own running total of the size of the active logfile
+	private long last_sizecheck;
 
 	// All access to these fields is MT-safe.
 	// They are rarely accessed, so synchronisation cost is not an issue.
@@ -81,6 +93,7 @@ abstract public class Logger
 	boolean isOwner() {return isOwner;}
 	Clock getClock() {return clock;}
 	int getBufferSize() {return bufsiz;}
+	long getFlushInterval() {return flushInterval;}
 	public boolean isActive(LEVEL lvl) {return  Interop.isActive(getLevel(), lvl);}
 	public String getName() {return name;}
 	public String getPathTemplate() {return pthnam_tmpl;}
@@ -117,6 +130,9 @@ abstract public class Logger
 		withDelta = (withMillisecs ? params.withDelta() : false);
 		bufsiz = params.getBufSize();
 		flushInterval = params.getFlushInterval();
+		compressRotated = params.compressRotated();
+		boolean withdate = (rotsched == null || rotsched.compare(ScheduledTime.FREQ.DAILY) < 0);
+		tsfmt = new TimeOps.CachedFormatter(TimeOps.CachedFormatter.FORMAT.logger(withdate, withMillisecs));
 
 		set_level(params.getLogLevel());
 
@@ -160,9 +176,18 @@ abstract public class Logger
 		}
 	}
 
+	// Subclasses must call this to report the number of bytes (or characters, if the exact byte count is unknown) they have written
+	// to the logfile, so that size-based rotation does not have to query the filesystem for every log entry.
+	// It is not synchronised, but should only be called by the same code that calls setLogEntry(), which has the same restriction.
+	protected final void addWritten(int len)
+	{
+		filesize += len;
+	}
+
 	// even if we're not in MT mode, this is a rarely called method, so we can easily afford the cost of synchronising
 	synchronized private void open(long systime, String nextpath) throws java.io.IOException
 	{
+		java.io.File fh_prev = fh_active;
 		close(true);
 
 		if (pthnam_tmpl == null) {
@@ -175,6 +200,7 @@ abstract public class Logger
 				rotsched.set(systime);
 				path = rotsched.embedTimestamp(systime, pthnam_tmpl);
 			} else if (maxsize != 0) {
+				dtcal.setTimeInMillis(systime);
 				path = ScheduledTime.embedTimestamp(null, dtcal, pthnam_tmpl, null);
 			}
 			fh_active = new java.io.File(path);
@@ -182,6 +208,9 @@ abstract public class Logger
 			if (dirh != null) FileOps.ensureDirExists(dirh);  //beware this can be null, if filename specified without slashes
 			openStream(path);
 			isOwner = true;
+			filesize = getFileSize(fh_active);
+			last_sizecheck = systime;
+			if (compressRotated && fh_prev != null && !fh_prev.equals(fh_active)) compressInBackground(fh_prev);
 		}
 		prevtime = systime;
 
@@ -250,10 +279,28 @@ abstract public class Logger
 						ThreadLoggers.remove(ent.getKey());
 					}
 				}
+				threadLoggersVersion++;
 			}
 		}
 	}
 
+	/**
+	 * Returns a record into which the arguments of the given message template can be added, to be formatted when the logger
+	 * chooses (which might not be in the calling thread). See LogRecord.
+	 * If the level is not enabled, the returned record silently discards its arguments.
+	 */
+	public LogRecord record(LEVEL lvl, LogFormat fmt)
+	{
+		if (!isActive(lvl)) return LogRecord.DISABLED;
+		return ThreadRecords.get().init(this, lvl, fmt);
+	}
+
+	// This is called when a LogRecord is committed. Loggers which can defer the formatting should override it.
+	protected void log(LogRecord rec)
+	{
+		log(rec.getLevel(), rec.format());
+	}
+
 	public void log(LEVEL lvl, Throwable ex, boolean dumpStack, CharSequence msg)
 	{
 		if (!isActive(lvl)) return;
@@ -268,21 +315,22 @@ abstract public class Logger
 	// message.
 	// SimpleDateFormat turns out to be a performance pig, time-wise and memory-wise, and String.format() turned out to be even worse.
 	// The date-time formatting code below has been shown to consume zero memory (even the String.valueOf(LEVEL) costs nothing).
-	// One possible optimisation is to pre-build the portion up to the Minute and just rebuild that once an hour (can record prev hour and compare to
-	// dtcal.get(DAY)), but the calls to zeropad() turn out to have no measurable time cost, so they're probably at least as cheap as the arithmetic
-	// to compare change-of-hour (which would also have to confirm whether the day has changed as well, to guarantee we don't miss the hour change).
+	// The timestamp is rendered by a TimeOps.CachedFormatter, which only recalculates the date and time fields once per second and
+	// merely patches in the milliseconds for subsequent entries within the same second.
 	//
 	// NB: There is no synchronisation performed in here, and multi-threaded loggers need to ensure that all necessary synchronisation
 	// happens at a higher level.
 	// This is a very low-level routine where synchronisation would be a significant and unnecessary burden on non-MT loggers.
 	protected StringBuilder setLogEntry(LEVEL lvl, StringBuilder pfxbuf) throws java.io.IOException
 	{
-		long systime = getClock().millis();
-		if (withMillisecs || systime - dtcal.getTimeInMillis() > 500) dtcal.setTimeInMillis(systime);
-		boolean withdate = (rotsched == null || rotsched.compare(ScheduledTime.FREQ.DAILY) < 0);
+		return setLogEntry(lvl, getClock().millis(), Thread.currentThread(), pfxbuf);
+	}
 
+	// This variant allows the entry to be written on behalf of another thread, at a time other than the present.
+	protected StringBuilder setLogEntry(LEVEL lvl, long systime, Thread thrd, StringBuilder pfxbuf) throws java.io.IOException
+	{
 		pfxbuf.setLength(0);
-		TimeOps.makeTimeLogger(dtcal, pfxbuf, withdate, withMillisecs);
+		tsfmt.format(systime, pfxbuf);
 
 		if (withDelta) {
 			com.grey.base.utils.StringOps.zeroPad(pfxbuf.append('+'), (int)(systime - prevtime), 3);
@@ -301,11 +349,11 @@ abstract public class Logger
 			intro = '-';
 		}
 		if (withTID) {
-			pfxbuf.append(intro).append('T').append(Thread.currentThread().getId());
+			pfxbuf.append(intro).append('T').append(thrd.getId());
 			intro = '-';
 		}
 		if (withThreadName) {
-			String tnam = Thread.currentThread().getName();
+			String tnam = thrd.getName();
 			if (tnam != null && tnam.length() != 0) pfxbuf.append(intro).append(tnam);
 		}
 		if (intro != '[') pfxbuf.append("] ");
@@ -313,8 +361,9 @@ abstract public class Logger
 		if (rotsched != null && systime >= rotsched.get()) {
 			// this message will be written to a newlu rotated logfile
 			open(systime, null);
-		} else if (maxsize != 0 && fh_active.length() >= maxsize) {
+		} else if (maxsize != 0 && checkFileSize(systime) >= maxsize) {
 			// rotate if file exceeds max size and we are on next naming interval
+			dtcal.setTimeInMillis(systime);
 			String nextpath = ScheduledTime.embedTimestamp(null, dtcal, pthnam_tmpl, null);
 			if (!nextpath.equals(getActivePath())) open(systime, nextpath);
 		} else if (flushInterval != 0) {
@@ -326,6 +375,56 @@ abstract public class Logger
 		return pfxbuf;
 	}
 
+	// Returns our running total of the logfile size, but periodically flushes and re-syncs it with the actual file size, in case it has
+	// been appended to or truncated by other processes.
+	private long checkFileSize(long systime) throws java.io.IOException
+	{
+		if (systime - last_sizecheck >= SIZECHECK_INTERVAL) {
+			flush();
+			filesize = getFileSize(fh_active);
+			last_sizecheck = systime;
+		}
+		return filesize;
+	}
+
+	// Returns the size of the logfile's actual content. Subclasses whose logfiles are pre-allocated would override this.
+	protected long getFileSize(java.io.File fh) throws java.io.IOException
+	{
+		return fh.length();
+	}
+
+	// Compresses a rotated logfile on a background thread, and deletes the original once that succeeds. The compressed data is
+	// written to a temp file first and then renamed, so an interrupted compression never leaves a truncated .gz file.
+	private void compressInBackground(java.io.File fh)
+	{
+		java.util.concurrent.ExecutorService exec;
+		synchronized (Loggers) {
+			if (compressor == null) {
+				compressor = java.util.concurrent.Executors.newSingleThreadExecutor((r) -> {
+					Thread t = new Thread(r, "GreyLog-Compressor");
+					t.setDaemon(true);
+					return t;
+				});
+			}
+			exec = compressor;
+		}
+		exec.execute(() -> {
+			java.io.File fh_gz = new java.io.File(fh.getPath()+COMPRESSED_SUFFIX);
+			java.io.File fh_tmp = new java.io.File(fh_gz.getPath()+".tmp");
+			try {
+				try (java.io.OutputStream ostrm = new java.util.zip.GZIPOutputStream(new java.io.FileOutputStream(fh_tmp), 64*1024)) {
+					java.nio.file.Files.copy(fh.toPath(), ostrm);
+				}
+				java.nio.file.Files.move(fh_tmp.toPath(), fh_gz.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+				if (!fh.delete()) throw new java.io.IOException("Failed to delete "+fh.getAbsolutePath());
+			} catch (Exception ex) {
+				fh_tmp.delete();
+				System.out.println(new java.util.Date(getClock().millis())+" Logger failed to compress rotated logfile="+fh.getAbsolutePath()+" - "
+						+this_string+" - "+com.grey.base.ExceptionUtils.summary(ex, false));
+			}
+		});
+	}
+
 	// Convenenience methods to ease the transition from SLF4J to this logger
 	public void error(CharSequence msg) {log(LEVEL.ERR, msg);}
 	public void warn(CharSequence msg) {log(LEVEL.WARN, msg);}
@@ -333,10 +432,16 @@ abstract public class Logger
 	public void trace(CharSequence msg) {log(LEVEL.TRC, msg);}
 
 	public static Logger setThreadLogger(Logger log, Long tid) {
-		if (log == null) {
-			return ThreadLoggers.remove(tid);
+		Logger prev;
+		synchronized (Loggers) {
+			if (log == null) {
+				prev = ThreadLoggers.remove(tid);
+			} else {
+				prev = ThreadLoggers.put(tid, log);
+			}
+			threadLoggersVersion++;
 		}
-		return ThreadLoggers.put(tid, log);
+		return prev;
 	}
 
 	public static Logger setThreadLogger(Logger log) {
@@ -348,8 +453,21 @@ abstract public class Logger
 		return ThreadLoggers.get(tid);
 	}
 
+	// This is called on every log call by some adapters, so the mapping is cached in a ThreadLocal to avoid boxing the thread ID and
+	// doing a map lookup each time. The cached entry is refreshed whenever the version shows that ThreadLoggers has changed.
 	public static Logger getThreadLogger() {
-		Long tid = Long.valueOf(Thread.currentThread().getId());
-		return getThreadLogger(tid);
+		CachedThreadLogger cache = CachedThreadLoggers.get();
+		int ver = threadLoggersVersion;
+		if (cache.version != ver) {
+			cache.logger = getThreadLogger(Long.valueOf(Thread.currentThread().getId()));
+			cache.version = ver;
+		}
+		return cache.logger;
+	}
+
+
+	private static final class CachedThreadLogger {
+		Logger logger;
+		int version = -1;
 	}
 }
@@ -35,6 +35,20 @@ public class MTAltJUL
 		synchronized (this) {super.log(rec);}
 	}
 
+	@Override
+	public void log(Level lvl, String msg, Object param)
+	{
+		if (lvl.intValue() < minlvl) return;
+		synchronized (this) {super.log(lvl, msg, null, param);}
+	}
+
+	@Override
+	public void log(Level lvl, String msg, Object[] params)
+	{
+		if (lvl.intValue() < minlvl) return;
+		synchronized (this) {super.log(lvl, msg, params, null);}
+	}
+
 	@Override
 	public void log(Level lvl, CharSequence msg)
 	{
@@ -0,0 +1,367 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.grey.base.config.SysProps;
+import com.grey.base.utils.ByteChars;
+
+/**
+ * MT-safe logger in which each calling thread appends to its own private buffer, so the callers never contend with each other.
+ * <br>
+ * This is an alternative to MTLatinLogger (whose log() method is synchronized) for logs that are shared by many busy Dispatchers.
+ * Each thread's buffer is a single-producer ring of raw log entries (timestamp, level and message bytes), and a dedicated writer
+ * thread wakes up at each flush interval to merge all the buffers into the logfile, in timestamp order. The writer formats the
+ * standard prefix on behalf of the original callers, and also takes care of logfile rotation.
+ * Like LatinLogger, this assumes 8-bit characters and generates no garbage in steady state.
+ * <br>
+ * The entries are merged in timestamp order within each pass of the writer, but an entry which is timestamped just before a pass
+ * and only gets published after it has started will appear in the next pass, after some slightly later entries.
+ * <p>
+ * If a thread's buffer is full, the overflow policy and level in the logger's Parameters (as for AsyncLogger) determine whether
+ * the caller waits for the writer to make space, or the message is discarded.
+ * The size of each thread's buffer is set by the grey.logger.threadbufsiz system property.
+ */
+public class MTMergingLogger
+	extends Logger
+{
+	private static final int THREADBUFSIZ = SysProps.get("grey.logger.threadbufsiz", 64*1024);
+	private static final long IDLE_NANOS = java.util.concurrent.TimeUnit.MILLISECONDS.toNanos(SysProps.getTime("grey.logger.merge.idle", 50));
+	private static final long BLOCK_NANOS = java.util.concurrent.TimeUnit.MICROSECONDS.toNanos(50);
+	private static final long SHUTDOWN_WAIT = SysProps.getTime("grey.logger.merge.shutdownwait", "2s");
+	private static final int HDRSIZ = 13; //8-byte timestamp, 1-byte level and 4-byte message length
+	private static final LEVEL[] LEVELS = LEVEL.values();
+	private static final byte[] eolbytes = SysProps.EOL.getBytes();
+
+	private final AsyncLogger.OVERFLOW overflowPolicy;
+	private final LEVEL overflowLevel;
+	private final int bufsize; //size of each thread's buffer
+	private final int maxmsg; //max message size in bytes - longer ones are truncated
+	private final java.util.concurrent.CopyOnWriteArrayList<ThreadBuffer> buffers = new java.util.concurrent.CopyOnWriteArrayList<>();
+	private final ThreadLocal<ThreadBuffer> threadBuffers = ThreadLocal.withInitial(this::createBuffer);
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong blocked = new AtomicLong();
+	private final Thread writer;
+	private final Thread shutdown_hook;
+	private volatile long merges; //number of completed merge passes
+	private volatile boolean flushRequested;
+	private volatile boolean closing;
+
+	// these are only accessed by the writer thread (or by the closing thread, once the writer has exited)
+	private final StringBuilder pfxbuf = new StringBuilder();
+	private final ByteChars batchbuf = new ByteChars();
+	private ThreadBuffer[] mergebufs = new ThreadBuffer[8];
+	private java.io.OutputStream logstrm;
+	private long written;
+
+	public int getThreadBufferSize() {return bufsize;}
+	public int getThreadCount() {return buffers.size();}
+	public long getDropped() {return dropped.get();}
+	public long getBlocked() {return blocked.get();}
+	public long getWritten() {return written;}
+
+	protected MTMergingLogger(Parameters params, String logname)
+	{
+		super(params, logname, true);
+		overflowPolicy = params.getOverflowPolicy();
+		overflowLevel = params.getOverflowLevel();
+		if (THREADBUFSIZ < 1024) throw new IllegalArgumentException("MTMergingLogger has invalid thread buffer size="+THREADBUFSIZ);
+		bufsize = Integer.highestOneBit(THREADBUFSIZ * 2 - 1); //round up to power of 2
+		maxmsg = bufsize / 4;
+		writer = new Thread(this::runWriter, "GreyLog-Merge-"+logname);
+		writer.setDaemon(true);
+		shutdown_hook = new Thread(() -> drain(SHUTDOWN_WAIT), "GreyLog-Merge-Shutdown-"+logname);
+	}
+
+	@Override
+	protected void init() throws java.io.IOException
+	{
+		super.init();
+		writer.start();
+		Runtime.getRuntime().addShutdownHook(shutdown_hook);
+	}
+
+	@Override
+	public void log(LEVEL lvl, CharSequence msg)
+	{
+		if (!isActive(lvl) || closing) return;
+		long systime = getClock().millis();
+		int msglen = Math.min(msg.length(), maxmsg);
+		ThreadBuffer tbuf = threadBuffers.get();
+		if (!tbuf.waitForSpace(HDRSIZ + msglen, lvl)) {
+			dropped.incrementAndGet();
+			return;
+		}
+		tbuf.append(systime, lvl, msg, msglen);
+	}
+
+	@Override
+	public void flush() throws java.io.IOException
+	{
+		if (Thread.currentThread() == writer || !writer.isAlive()) {
+			writeBatch();
+			if (logstrm != null) logstrm.flush();
+			return;
+		}
+		flushRequested = true;
+		LockSupport.unpark(writer);
+	}
+
+	/**
+	 * Waits for the writer thread to merge and flush all the messages logged so far.
+	 * @return False if it failed to do so within the timeout
+	 */
+	public boolean drain(long timeout)
+	{
+		long limit = System.nanoTime() + java.util.concurrent.TimeUnit.MILLISECONDS.toNanos(timeout);
+		long target = merges + 2; //the current pass may have started before the latest messages were published
+		flushRequested = true;
+		while (writer.isAlive() && merges < target) {
+			if (System.nanoTime() > limit) return false;
+			LockSupport.unpark(writer);
+			LockSupport.parkNanos(BLOCK_NANOS);
+		}
+		return true;
+	}
+
+	@Override
+	public void close()
+	{
+		closing = true;
+		if (writer.isAlive()) {
+			LockSupport.unpark(writer);
+			try {
+				writer.join();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		try {
+			Runtime.getRuntime().removeShutdownHook(shutdown_hook);
+		} catch (IllegalStateException ex) {} //JVM is already shutting down
+		super.close();
+	}
+
+	@Override
+	protected void openStream(java.io.OutputStream strm)
+	{
+		logstrm = strm;
+	}
+
+	// We do our own buffering in batchbuf, so the file stream is unbuffered
+	@Override
+	protected void openStream(String pthnam) throws java.io.IOException
+	{
+		logstrm = new java.io.FileOutputStream(pthnam, true);
+	}
+
+	@Override
+	protected void closeStream(boolean is_owner) throws java.io.IOException
+	{
+		writeBatch();
+		if (logstrm != null) {
+			java.io.OutputStream strm = logstrm;
+			logstrm = null;
+			if (isOwner()) strm.close();
+		}
+	}
+
+	private ThreadBuffer createBuffer()
+	{
+		ThreadBuffer tbuf = new ThreadBuffer(Thread.currentThread(), bufsize);
+		buffers.add(tbuf);
+		return tbuf;
+	}
+
+	private boolean mustBlock(LEVEL lvl)
+	{
+		if (closing || Thread.currentThread() == writer || !writer.isAlive()) return false;
+		switch (overflowPolicy)
+		{
+		case BLOCK:
+			return true;
+		case DROP:
+			return false;
+		case DROP_BELOW:
+			return (lvl == LEVEL.ALL || lvl.ordinal() <= overflowLevel.ordinal());
+		default:
+			throw new Error("Missing case for overflow policy="+overflowPolicy);
+		}
+	}
+
+	private void runWriter()
+	{
+		try {
+			for (;;) {
+				boolean stop = closing;
+				merge();
+				if (flushRequested) {
+					flushRequested = false;
+					flush();
+				}
+				merges++;
+				if (stop) break;
+				long flushInterval = getFlushInterval();
+				LockSupport.parkNanos(flushInterval == 0 ? IDLE_NANOS : java.util.concurrent.TimeUnit.MILLISECONDS.toNanos(flushInterval));
+			}
+			flush();
+		} catch (Throwable ex) {
+			System.out.println(new java.util.Date(getClock().millis())+" FATAL ERROR: Failed to write MTMergingLogger - "
+					+com.grey.base.ExceptionUtils.summary(ex, true));
+			System.exit(1);
+		}
+	}
+
+	// Writes out all the entries published so far, by repeatedly taking the earliest entry at the head of the thread buffers
+	private void merge() throws java.io.IOException
+	{
+		int cnt = 0;
+		for (ThreadBuffer tbuf : buffers) {
+			tbuf.limit = tbuf.head;
+			if (tbuf.tail == tbuf.limit) {
+				if (!tbuf.owner.isAlive()) buffers.remove(tbuf); //it's empty and can never be written to again
+				continue;
+			}
+			if (cnt == mergebufs.length) mergebufs = java.util.Arrays.copyOf(mergebufs, cnt * 2);
+			mergebufs[cnt++] = tbuf;
+		}
+
+		while (cnt != 0) {
+			int minidx = 0;
+			long mintime = mergebufs[0].getLong(mergebufs[0].tail);
+			for (int idx = 1; idx != cnt; idx++) {
+				long systime = mergebufs[idx].getLong(mergebufs[idx].tail);
+				if (systime < mintime) {
+					mintime = systime;
+					minidx = idx;
+				}
+			}
+			ThreadBuffer tbuf = mergebufs[minidx];
+			writeEntry(tbuf, mintime);
+			if (tbuf.tail == tbuf.limit) {
+				// this buffer is exhausted for this pass
+				mergebufs[minidx] = mergebufs[--cnt];
+				mergebufs[cnt] = null;
+			}
+		}
+		writeBatch();
+	}
+
+	private void writeEntry(ThreadBuffer tbuf, long systime) throws java.io.IOException
+	{
+		long pos = tbuf.tail;
+		LEVEL lvl = LEVELS[tbuf.ring[(int)((pos + 8) & tbuf.mask)]];
+		int len = tbuf.getInt(pos + 9);
+		setLogEntry(lvl, systime, tbuf.owner, pfxbuf);
+		int prevsize = batchbuf.size();
+		batchbuf.append(pfxbuf);
+		int off = (int)((pos + HDRSIZ) & tbuf.mask);
+		int len1 = Math.min(len, tbuf.ring.length - off);
+		batchbuf.append(tbuf.ring, off, len1);
+		if (len1 != len) batchbuf.append(tbuf.ring, 0, len - len1);
+		batchbuf.append(eolbytes, 0, eolbytes.length);
+		tbuf.tail = pos + HDRSIZ + len; //releases the space back to the owner
+		addWritten(batchbuf.size() - prevsize);
+		written++;
+		if (batchbuf.size() >= getBufferSize()) writeBatch();
+	}
+
+	private void writeBatch() throws java.io.IOException
+	{
+		if (batchbuf.size() == 0) return;
+		if (logstrm != null) logstrm.write(batchbuf.buffer(), batchbuf.offset(), batchbuf.size());
+		batchbuf.clear();
+	}
+
+	@Override
+	public String toString()
+	{
+		return super.toString()+" Merging="+bufsize+"/"+overflowPolicy
+				+(overflowPolicy == AsyncLogger.OVERFLOW.DROP_BELOW ? "/"+overflowLevel : "");
+	}
+
+
+	/*
+	 * Single-producer single-consumer ring buffer. Only the owner thread advances the head, and only the writer advances the tail,
+	 * so the two volatile positions are all the coordination that's required.
+	 */
+	private final class ThreadBuffer
+	{
+		final Thread owner;
+		final byte[] ring;
+		final int mask;
+		volatile long head; //position of the next entry to be appended
+		volatile long tail; //position of the next entry to be merged
+		long limit; //the writer's snapshot of head for the current merge pass
+
+		ThreadBuffer(Thread owner, int size)
+		{
+			this.owner = owner;
+			ring = new byte[size];
+			mask = size - 1;
+		}
+
+		boolean waitForSpace(int len, LEVEL lvl)
+		{
+			if (head + len - tail <= ring.length) return true;
+			if (!mustBlock(lvl)) return false;
+			blocked.incrementAndGet();
+			while (head + len - tail > ring.length) {
+				if (!mustBlock(lvl)) return false;
+				LockSupport.unpark(writer);
+				LockSupport.parkNanos(BLOCK_NANOS);
+			}
+			return true;
+		}
+
+		void append(long systime, LEVEL lvl, CharSequence msg, int len)
+		{
+			long pos = head;
+			putLong(pos, systime);
+			ring[(int)((pos + 8) & mask)] = (byte)lvl.ordinal();
+			putInt(pos + 9, len);
+			pos += HDRSIZ;
+			int off = (int)(pos & mask);
+			if (msg instanceof ByteChars) {
+				ByteChars bc = (ByteChars)msg;
+				int len1 = Math.min(len, ring.length - off);
+				System.arraycopy(bc.buffer(), bc.offset(), ring, off, len1);
+				System.arraycopy(bc.buffer(), bc.offset() + len1, ring, 0, len - len1);
+			} else {
+				for (int idx = 0; idx != len; idx++) {
+					ring[(int)((pos + idx) & mask)] = (byte)msg.charAt(idx);
+				}
+			}
+			head = pos + len; //publishes the entry to the writer
+		}
+
+		private void putLong(long pos, long val)
+		{
+			putInt(pos, (int)(val >>> 32));
+			putInt(pos + 4, (int)val);
+		}
+
+		private void putInt(long pos, int val)
+		{
+			ring[(int)(pos & mask)] = (byte)(val >>> 24);
+			ring[(int)((pos + 1) & mask)] = (byte)(val >>> 16);
+			ring[(int)((pos + 2) & mask)] = (byte)(val >>> 8);
+			ring[(int)((pos + 3) & mask)] = (byte)val;
+		}
+
+		long getLong(long pos)
+		{
+			return ((long)getInt(pos) << 32) | (getInt(pos + 4) & 0xFFFFFFFFL);
+		}
+
+		int getInt(long pos)
+		{
+			return ((ring[(int)(pos & mask)] & 0xFF) << 24) | ((ring[(int)((pos + 1) & mask)] & 0xFF) << 16)
+					| ((ring[(int)((pos + 2) & mask)] & 0xFF) << 8) | (ring[(int)((pos + 3) & mask)] & 0xFF);
+		}
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.logging;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only output stream which writes into a memory-mapped region of a file.
+ * <br>
+ * The file is extended in large chunks, by mapping the region beyond its current end, so most writes are just a memory copy and
+ * the kernel takes care of writing the pages back to disk. There is therefore nothing for flush() to do.
+ * When the stream is closed, the file is truncated back to the length of what was actually written.
+ * <p>
+ * If the process dies without closing the stream, the file will be left with trailing NUL bytes up to the end of the last chunk,
+ * so when an existing file is opened, any trailing NULs are skipped and new output is appended after the last real content.
+ * That includes the case where the process died just after mapping a new chunk, leaving one or more chunks which are all NULs.
+ * <p>
+ * Extending the mapping creates a sparse region of the file, so disk space is only allocated when the kernel writes the pages.
+ * If the disk is full at that point, the write into the mapping raises SIGBUS, which the JVM reports as an InternalError rather
+ * than an IOException. The write() methods convert it to an IOException, but the affected page of output is lost, and the stream
+ * should be closed since it cannot recover.
+ * <br>
+ * Superseded mappings cannot be explicitly released in Java 8, so they are left to the garbage collector.
+ * This class is not thread-safe.
+ */
+class MappedFileStream
+	extends java.io.OutputStream
+{
+	private final FileChannel chan;
+	private final int chunksize;
+	private java.nio.MappedByteBuffer mapbuf;
+	private long mapbase; //file offset at which mapbuf starts
+	private boolean closed;
+
+	public long size() {return mapbase + mapbuf.position();}
+
+	public MappedFileStream(String pthnam, int chunksize) throws java.io.IOException
+	{
+		if (chunksize <= 0) throw new IllegalArgumentException("MappedFileStream has invalid chunk size="+chunksize+" - "+pthnam);
+		this.chunksize = chunksize;
+		chan = FileChannel.open(java.nio.file.Paths.get(pthnam), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			map(findContentEnd(), chunksize);
+		} catch (java.io.IOException | RuntimeException ex) {
+			chan.close();
+			throw ex;
+		}
+	}
+
+	@Override
+	public void write(int b) throws java.io.IOException
+	{
+		if (!mapbuf.hasRemaining()) map(size(), chunksize);
+		try {
+			mapbuf.put((byte)b);
+		} catch (InternalError ex) {
+			throw writeFailed(ex);
+		}
+	}
+
+	@Override
+	public void write(byte[] buf, int off, int len) throws java.io.IOException
+	{
+		if (mapbuf.remaining() < len) map(size(), Math.max(chunksize, len));
+		try {
+			mapbuf.put(buf, off, len);
+		} catch (InternalError ex) {
+			throw writeFailed(ex);
+		}
+	}
+
+	@Override
+	public void flush() {}
+
+	@Override
+	public void close() throws java.io.IOException
+	{
+		if (closed) return;
+		closed = true;
+		long len = size();
+		mapbuf = null;
+		try {
+			chan.truncate(len);
+		} finally {
+			chan.close();
+		}
+	}
+
+	private void map(long pos, int len) throws java.io.IOException
+	{
+		if (closed) throw new java.io.IOException("MappedFileStream is closed");
+		mapbuf = chan.map(FileChannel.MapMode.READ_WRITE, pos, len);
+		mapbase = pos;
+	}
+
+	// Returns the offset just after the last non-NUL byte in the file, searching back a chunk at a time
+	private long findContentEnd() throws java.io.IOException
+	{
+		long end = chan.size();
+		while (end != 0) {
+			long start = Math.max(0, end - chunksize);
+			java.nio.MappedByteBuffer tail = chan.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+			int pos = tail.limit();
+			while (pos != 0 && tail.get(pos - 1) == 0) pos--;
+			if (pos != 0) return start + pos;
+			end = start;
+		}
+		return 0;
+	}
+
+	// SIGBUS on a mapped page (typically because the disk is full) is reported by the JVM as an InternalError
+	private java.io.IOException writeFailed(InternalError ex)
+	{
+		return new java.io.IOException("MappedFileStream failed to write at offset="+size()+" - disk may be full", ex);
+	}
+
+	@Override
+	public String toString()
+	{
+		return super.toString()+" with chunksize="+chunksize+" - size="+(closed ? "closed" : String.valueOf(size()));
+	}
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.logging;
+
+import com.grey.base.config.SysProps;
+
+/**
+ * Variant of LatinLogger which appends directly into a memory-mapped region of the logfile, rather than going through a buffered
+ * stream.
+ * <br>
+ * Logging is then mostly a memory copy, there are no write() syscalls, and flushing is a no-op as the kernel writes back the
+ * dirty pages in its own time (and they will still reach the file if this process crashes, though not if the host does).
+ * The file is pre-extended in chunks of the configured map size, and truncated to its true length when it is closed or rotated.
+ * <p>
+ * This only applies to logfiles. If this logger is configured to write to stdout or some other stream, it behaves exactly like
+ * LatinLogger.
+ */
+public class MappedLogger
+	extends LatinLogger
+{
+	public static final String SYSPROP_MAPSIZE = "grey.logger.mapsize";
+	private static final int MAPSIZE = SysProps.get(SYSPROP_MAPSIZE, 4 * 1024 * 1024);
+
+	private MappedFileStream mapstrm;
+
+	protected MappedLogger(Parameters params, String logname)
+	{
+		this(params, logname, false);
+	}
+
+	protected MappedLogger(Parameters params, String logname, boolean is_mt)
+	{
+		super(params, logname, is_mt);
+	}
+
+	@Override
+	protected void openStream(java.io.OutputStream strm)
+	{
+		mapstrm = null;
+		super.openStream(strm);
+	}
+
+	@Override
+	protected java.io.OutputStream createFileStream(String pthnam) throws java.io.IOException
+	{
+		mapstrm = new MappedFileStream(pthnam, Math.max(MAPSIZE, getBufferSize()));
+		return mapstrm;
+	}
+
+	// the physical file size includes the pre-allocated space
+	@Override
+	protected long getFileSize(java.io.File fh) throws java.io.IOException
+	{
+		if (mapstrm == null) return super.getFileSize(fh);
+		return mapstrm.size();
+	}
+}
@@ -28,6 +28,10 @@ public class Parameters
 	public static final String SYSPROP_SHOWTID = "grey.logger.tid";
 	public static final String SYSPROP_SHOWTHRDNAME = "grey.logger.threadname";
 	public static final String SYSPROP_SHOWDELTA = "grey.logger.delta";
+	public static final String SYSPROP_COMPRESS = "grey.logger.compress";
+	public static final String SYSPROP_QUEUESIZ = "grey.logger.queuesize";
+	public static final String SYSPROP_OVERFLOW = "grey.logger.overflow";
+	public static final String SYSPROP_OVERFLOWLEVEL = "grey.logger.overflowlevel";
 
 	public static final int CURRENT_PID = Integer.parseInt(ManagementFactory.getRuntimeMXBean().getName().split("@")[0]);
 
@@ -54,6 +58,10 @@ public class Parameters
 	private final boolean withThreadName;
 	private final boolean withDelta;
 	private final boolean quietMode;
+	private final boolean compressRotated;
+	private final int queueSize;
+	private final AsyncLogger.OVERFLOW overflowPolicy;
+	private final Logger.LEVEL overflowLevel;
 
 	private Parameters(Builder bldr) {
 		logClass = bldr.logClass;
@@ -70,7 +78,10 @@ public class Parameters
 		withThreadName = bldr.withThreadName;
 		withDelta = bldr.withDelta;
 		quietMode = bldr.quietMode;
-
+		compressRotated = bldr.compressRotated;
+		queueSize = bldr.queueSize;
+		overflowPolicy = bldr.overflowPolicy;
+		overflowLevel = bldr.overflowLevel;
 	}
 
 	public Parameters(XmlConfig cfg) {
@@ -133,6 +144,23 @@ public class Parameters
 		return quietMode;
 	}
 
+	public boolean compressRotated() {
+		return compressRotated;
+	}
+
+	// the following settings only apply to AsyncLogger, except that MTMergingLogger also obeys the overflow settings
+	public int getQueueSize() {
+		return queueSize;
+	}
+
+	public AsyncLogger.OVERFLOW getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	public Logger.LEVEL getOverflowLevel() {
+		return overflowLevel;
+	}
+
 	@Override
 	public String toString()
 	{
@@ -158,6 +186,7 @@ public class Parameters
 			} else {
 				ByteOps.expandByteSize(getMaxSize(), sb, false);
 			}
+			if (compressRotated()) sb.append("/gzip");
 		}
 		if (getBufSize() != 0) {
 			sb.append(" Buffer=");
@@ -184,6 +213,10 @@ public class Parameters
 		private boolean withThreadName = SysProps.get(SYSPROP_SHOWTHRDNAME, false);
 		private boolean withDelta = SysProps.get(SYSPROP_SHOWDELTA, false);
 		public boolean quietMode;
+		private boolean compressRotated = SysProps.get(SYSPROP_COMPRESS, false);
+		private int queueSize = SysProps.get(SYSPROP_QUEUESIZ, 8 * 1024);
+		private AsyncLogger.OVERFLOW overflowPolicy = AsyncLogger.OVERFLOW.valueOf(SysProps.get(SYSPROP_OVERFLOW, AsyncLogger.OVERFLOW.BLOCK.name()).toUpperCase());
+		private Logger.LEVEL overflowLevel = Logger.LEVEL.valueOf(SysProps.get(SYSPROP_OVERFLOWLEVEL, Logger.LEVEL.INFO.name()).toUpperCase());
 
 		public Builder() {}
 
@@ -202,6 +235,10 @@ public class Parameters
 			withThreadName = params.withThreadName();
 			withDelta = params.withDelta();
 			quietMode = params.isQuietMode();
+			compressRotated = params.compressRotated();
+			queueSize = params.getQueueSize();
+			overflowPolicy = params.getOverflowPolicy();
+			overflowLevel = params.getOverflowLevel();
 		}
 
 		public Builder withLogClass(String v) {
@@ -278,6 +315,26 @@ public class Parameters
 			return this;
 		}
 
+		public Builder withCompressRotated(boolean v) {
+			compressRotated = v;
+			return this;
+		}
+
+		public Builder withQueueSize(int v) {
+			queueSize = v;
+			return this;
+		}
+
+		public Builder withOverflowPolicy(AsyncLogger.OVERFLOW v) {
+			overflowPolicy = v;
+			return this;
+		}
+
+		public Builder withOverflowLevel(Logger.LEVEL v) {
+			overflowLevel = v;
+			return this;
+		}
+
 		private Builder reconcile()
 		{
 			if (SysProps.get(SYSPROP_FORCE_STDOUT, false)) {
@@ -344,6 +401,10 @@ public class Parameters
 			bldr.withTID = cfg.getBool("@tid", bldr.withTID);
 			bldr.withThreadName = cfg.getBool("@tname", bldr.withThreadName);
 			bldr.withDelta = cfg.getBool("@delta", bldr.withDelta);
+			bldr.compressRotated = cfg.getBool("@compress", bldr.compressRotated);
+			bldr.queueSize = (int)cfg.getSize("@queue", bldr.queueSize);
+			bldr.overflowPolicy = AsyncLogger.OVERFLOW.valueOf(cfg.getValue("@overflow", false, bldr.overflowPolicy.name()).toUpperCase());
+			bldr.overflowLevel = Logger.LEVEL.valueOf(cfg.getValue("@overflowlevel", false, bldr.overflowLevel.name()).toUpperCase());
 			return bldr.reconcile();
 		}
 	}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.logging;
+
+import java.util.logging.Level;
+
+import com.grey.logging.Logger.LEVEL;
+
+public class AltJULTest
+{
+	@org.junit.Test
+	public void testAltJUL()
+	{
+		java.io.ByteArrayOutputStream bstrm = new java.io.ByteArrayOutputStream();
+		AltJUL log = new MTAltJUL(new java.io.PrintStream(bstrm), java.time.Clock.systemUTC());
+		log.setLevel(Level.INFO);
+		final int[] calls = new int[1];
+
+		log.log(Level.FINE, "Filtered {0}", "arg1");
+		log.log(Level.FINE, "Filtered {0}/{1}", new Object[]{"arg1", "arg2"});
+		log.fine(() -> {calls[0]++; return "Filtered supplier";});
+		log.logp(Level.FINER, "SomeClass", "someMethod", "Filtered logp");
+		log.entering("SomeClass", "someMethod");
+		org.junit.Assert.assertEquals(0, calls[0]);
+		org.junit.Assert.assertEquals(0, bstrm.size());
+
+		log.log(Level.INFO, "One param={0}", "arg1");
+		log.log(Level.WARNING, "Two params={1}/{0}", new Object[]{"arg1", 2});
+		log.info(() -> {calls[0]++; return "From supplier";});
+		log.logp(Level.INFO, "SomeClass", "someMethod", "Via logp={0}", "arg1");
+		org.junit.Assert.assertEquals(1, calls[0]);
+		String[] lines = bstrm.toString().split(com.grey.base.config.SysProps.EOL);
+		org.junit.Assert.assertEquals(5, lines.length); //the logp() params get listed on a separate line
+		org.junit.Assert.assertTrue(lines[0], lines[0].endsWith(" INFO One param=arg1"));
+		org.junit.Assert.assertTrue(lines[1], lines[1].endsWith(" WARNING Two params=2/arg1"));
+		org.junit.Assert.assertTrue(lines[2], lines[2].endsWith(" INFO From supplier"));
+		org.junit.Assert.assertTrue(lines[3], lines[3].contains(" SomeClass:someMethod] Via logp={0} - PARAMS=1:"));
+		org.junit.Assert.assertEquals("- arg1", lines[4]);
+	}
+
+	@org.junit.Test
+	public void testHandler() throws java.io.IOException
+	{
+		Parameters params = new Parameters.Builder()
+				.withLogClass(MemLogger.class)
+				.withLogLevel(LEVEL.INFO)
+				.withPathname("any-old-name-as-will-discard-it")
+				.build();
+		MemLogger mlog = (MemLogger)Factory.getLogger(params, "jul-handler");
+		java.util.logging.Logger log = JUL_Handler.getLogger(mlog, getClass().getName()+".handler", false);
+		org.junit.Assert.assertEquals(Level.INFO, log.getLevel());
+		org.junit.Assert.assertFalse(log.isLoggable(Level.FINE)); //so JUL won't even create a LogRecord
+		mlog.reset();
+
+		log.fine("Filtered message");
+		org.junit.Assert.assertEquals(0, mlog.length());
+		log.log(Level.INFO, "Message with {0} and {1}", new Object[]{"arg1", 2});
+		org.junit.Assert.assertTrue(mlog.get().toString(), mlog.get().toString().endsWith(" Message with arg1 and 2\n"));
+		mlog.close();
+
+		// a shared JUL logger keeps its existing level, and the handler does the filtering
+		mlog = (MemLogger)Factory.getLogger(params, "jul-handler2");
+		java.util.logging.Logger log2 = java.util.logging.Logger.getLogger(getClass().getName()+".handler2");
+		log2.setLevel(Level.FINE);
+		log = JUL_Handler.getLogger(mlog, log2.getName(), false);
+		org.junit.Assert.assertSame(log2, log);
+		org.junit.Assert.assertEquals(Level.FINE, log.getLevel());
+		mlog.reset();
+		log.fine("Filtered message");
+		org.junit.Assert.assertEquals(0, mlog.length());
+		log.info("Published message");
+		org.junit.Assert.assertTrue(mlog.get().toString(), mlog.get().toString().endsWith(" Published message\n"));
+		mlog.close();
+	}
+}
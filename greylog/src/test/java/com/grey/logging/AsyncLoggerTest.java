@@ -0,0 +1,168 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.logging;
+
+import com.grey.logging.Logger.LEVEL;
+import com.grey.base.config.SysProps;
+import com.grey.base.utils.FileOps;
+
+public class AsyncLoggerTest
+{
+	private final String rootpath = SysProps.TMPDIR+"/utest/greylog/"+getClass().getName();
+
+	public AsyncLoggerTest() throws java.io.IOException {
+		FileOps.deleteDirectory(rootpath);
+	}
+
+	@org.junit.Test
+	public void testConcurrentWriters() throws Exception
+	{
+		final int thread_cnt = 4;
+		final int msg_cnt = 5000;
+		String logfile = rootpath+"/async.log";
+		Parameters params = new Parameters.Builder()
+				.withLogClass(AsyncLogger.class)
+				.withLogLevel(LEVEL.INFO)
+				.withPathname(logfile)
+				.withQueueSize(256)
+				.withOverflowPolicy(AsyncLogger.OVERFLOW.BLOCK)
+				.withQuietMode(true)
+				.build();
+		final AsyncLogger log = (AsyncLogger)Factory.getLogger(params, "async1");
+		org.junit.Assert.assertEquals(256, log.getCapacity());
+		StringBuilder longmsg = new StringBuilder();
+		for (int idx = 0; idx != 100; idx++) longmsg.append("0123456789");
+
+		Thread[] thrds = new Thread[thread_cnt];
+		for (int idx = 0; idx != thrds.length; idx++) {
+			final int tnum = idx;
+			thrds[idx] = new Thread(() -> {
+				for (int num = 0; num != msg_cnt; num++) {
+					log.info("Thread"+tnum+" message="+num);
+				}
+			});
+			thrds[idx].start();
+		}
+		log.trace("This message should not come out");
+		log.log(LEVEL.WARN, new com.grey.base.utils.ByteChars(longmsg));
+		for (int idx = 0; idx != thrds.length; idx++) {
+			thrds[idx].join();
+		}
+		org.junit.Assert.assertTrue(log.drain(10_000));
+		org.junit.Assert.assertEquals(0, log.getQueued());
+		org.junit.Assert.assertEquals(0, log.getDropped());
+		org.junit.Assert.assertEquals((thread_cnt * msg_cnt) + 1, log.getWritten());
+		log.close();
+
+		// verify that every message came out once, and in order within each thread
+		java.util.List<String> lines = java.nio.file.Files.readAllLines(java.nio.file.Paths.get(logfile));
+		org.junit.Assert.assertEquals((thread_cnt * msg_cnt) + 1, lines.size());
+		int[] next = new int[thread_cnt];
+		int longcnt = 0;
+		for (String line : lines) {
+			if (line.endsWith(longmsg.toString())) {
+				longcnt++;
+				continue;
+			}
+			int pos = line.indexOf(" Thread");
+			org.junit.Assert.assertTrue(line, pos != -1);
+			int tnum = line.charAt(pos + 7) - '0';
+			int num = Integer.parseInt(line.substring(line.indexOf('=', pos) + 1));
+			org.junit.Assert.assertEquals(line, next[tnum]++, num);
+		}
+		org.junit.Assert.assertEquals(1, longcnt);
+		for (int idx = 0; idx != thread_cnt; idx++) {
+			org.junit.Assert.assertEquals(msg_cnt, next[idx]);
+		}
+	}
+
+	@org.junit.Test
+	public void testRecords() throws Exception
+	{
+		LogFormat fmt = LogFormat.register("Deferred record={} with text={}");
+		java.io.ByteArrayOutputStream bstrm = new java.io.ByteArrayOutputStream();
+		Parameters params = new Parameters.Builder()
+				.withLogClass(AsyncLogger.class)
+				.withLogLevel(LEVEL.INFO)
+				.withStream(bstrm)
+				.withQueueSize(8)
+				.withQuietMode(true)
+				.build();
+		AsyncLogger log = (AsyncLogger)Factory.getLogger(params, "async-records");
+		int total = 100; //enough to wrap around the ring several times
+		for (int idx = 0; idx != total; idx++) {
+			log.record(LEVEL.INFO, fmt).arg(idx).arg("abcdefghijklmnopqrstuvwxyz0123456789-"+idx).commit();
+			log.record(LEVEL.TRC, fmt).arg(idx).arg("discarded").commit();
+		}
+		org.junit.Assert.assertTrue(log.drain(10_000));
+		org.junit.Assert.assertEquals(total, log.getWritten());
+		log.close();
+		String[] lines = bstrm.toString().split(com.grey.base.config.SysProps.EOL);
+		org.junit.Assert.assertEquals(total, lines.length);
+		for (int idx = 0; idx != total; idx++) {
+			org.junit.Assert.assertTrue(lines[idx], lines[idx].endsWith(" Deferred record="+idx+" with text=abcdefghijklmnopqrstuvwxyz0123456789-"+idx));
+		}
+	}
+
+	@org.junit.Test
+	public void testOverflow() throws Exception
+	{
+		verifyOverflow(AsyncLogger.OVERFLOW.DROP, 0);
+		verifyOverflow(AsyncLogger.OVERFLOW.DROP_BELOW, 5);
+	}
+
+	private void verifyOverflow(AsyncLogger.OVERFLOW policy, int expect_important) throws Exception
+	{
+		// the writer thread will stall on its first write, so the ring fills up behind it
+		final java.util.concurrent.CountDownLatch latch = new java.util.concurrent.CountDownLatch(1);
+		java.io.ByteArrayOutputStream bstrm = new java.io.ByteArrayOutputStream();
+		java.io.OutputStream strm = new java.io.FilterOutputStream(bstrm) {
+			@Override
+			public void write(byte[] b, int off, int len) throws java.io.IOException {
+				try {latch.await();} catch (InterruptedException ex) {throw new java.io.InterruptedIOException();}
+				bstrm.write(b, off, len);
+			}
+		};
+		Parameters params = new Parameters.Builder()
+				.withLogClass(AsyncLogger.class)
+				.withLogLevel(LEVEL.INFO)
+				.withStream(strm)
+				.withBufferSize(0)
+				.withQueueSize(4)
+				.withOverflowPolicy(policy)
+				.withOverflowLevel(LEVEL.WARN)
+				.withQuietMode(true)
+				.build();
+		AsyncLogger log = (AsyncLogger)Factory.getLogger(params, "async-"+policy);
+		org.junit.Assert.assertEquals(4, log.getCapacity());
+		int total = 20;
+		for (int idx = 0; idx != total; idx++) {
+			log.info("Info message "+idx);
+		}
+		org.junit.Assert.assertTrue(log.getDropped() >= total - 5); //the writer may have taken one before it stalled
+		org.junit.Assert.assertEquals(0, log.getBlocked());
+
+		// under the DROP_BELOW policy, these will block till the writer is released
+		Thread releaser = new Thread(() -> {
+			try {Thread.sleep(200);} catch (InterruptedException ex) {}
+			latch.countDown();
+		});
+		releaser.start();
+		for (int idx = 0; idx != expect_important; idx++) {
+			log.warn("Warning message "+idx);
+		}
+		latch.countDown();
+		releaser.join();
+		org.junit.Assert.assertTrue(log.drain(10_000));
+		long dropped = log.getDropped();
+		org.junit.Assert.assertEquals(total + expect_important, log.getWritten() + dropped);
+		if (expect_important != 0) org.junit.Assert.assertTrue(log.getBlocked() != 0);
+		String output = bstrm.toString();
+		for (int idx = 0; idx != expect_important; idx++) {
+			org.junit.Assert.assertTrue(output.contains("Warning message "+idx));
+		}
+		log.close();
+	}
+}
@@ -89,4 +89,45 @@ public class InteropTest
 		org.junit.Assert.assertEquals(lvl, Interop.getLevel(log));
 		org.junit.Assert.assertEquals(lvl, Interop.getLevel(handlers[0]));
 	}
+
+	@org.junit.Test
+	public void testFormatJUL()
+	{
+		verifyFormatJUL("No params");
+		verifyFormatJUL("No placeholders", "arg1");
+		verifyFormatJUL("One={0}", "arg1");
+		verifyFormatJUL("Reordered={1}/{0}/{1} end", "arg1", null);
+		verifyFormatJUL("Out of range={0}/{3}", "arg1");
+		verifyFormatJUL("Invalid={x} {0}", "arg1");
+		verifyFormatJUL("Invalid={0 {", "arg1");
+		verifyFormatJUL("Unreferenced={4}", "a", "b", "c", "d", "e");
+		verifyFormatJUL("{10}{0}", "a", "b", "c", "d", "e", "f", "g", "h", "i", "j", "k");
+		verifyFormatJUL("Quoted='{0}' {0}", "arg1");
+		verifyFormatJUL("Typed={0,number,#} {1}", 5, "arg2");
+		StringBuilder sb = new StringBuilder("prefix-");
+		org.junit.Assert.assertEquals("prefix-Quoted {0} arg1", Interop.formatJUL(sb, "Quoted '{0}' {0}", new Object[]{"arg1"}).toString());
+	}
+
+	@org.junit.Test
+	public void testJULPlaceholderRules()
+	{
+		// Java 8 only formats messages containing {0 to {3, whereas Java 9+ formats any {digit
+		org.junit.Assert.assertTrue(Interop.hasJULPlaceholder("x={3}", false));
+		org.junit.Assert.assertFalse(Interop.hasJULPlaceholder("x={4}", false));
+		org.junit.Assert.assertFalse(Interop.hasJULPlaceholder("x={x} {", false));
+		org.junit.Assert.assertTrue(Interop.hasJULPlaceholder("x={4}", true));
+		org.junit.Assert.assertTrue(Interop.hasJULPlaceholder("x={9}", true));
+		org.junit.Assert.assertFalse(Interop.hasJULPlaceholder("x={x} {", true));
+		org.junit.Assert.assertTrue(Interop.hasJULPlaceholder("{10}{0}", false));
+		org.junit.Assert.assertTrue(Interop.hasJULPlaceholder("{10}", false)); //Java 8 matches the {1 prefix
+		org.junit.Assert.assertFalse(Interop.hasJULPlaceholder("{4}{5}", false));
+	}
+
+	private static void verifyFormatJUL(String msg, Object... params)
+	{
+		java.util.logging.LogRecord rec = new java.util.logging.LogRecord(java.util.logging.Level.INFO, msg);
+		rec.setParameters(params);
+		String expect = new java.util.logging.SimpleFormatter().formatMessage(rec);
+		org.junit.Assert.assertEquals(expect, Interop.formatJUL(new StringBuilder(), msg, params).toString());
+	}
 }
\ No newline at end of file
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.logging;
+
+import com.grey.logging.Logger.LEVEL;
+
+public class LogLimiterTest
+{
+	private final long[] now = new long[]{1_600_000_000_000L};
+	private final java.time.Clock clock = new java.time.Clock() {
+		@Override public java.time.ZoneId getZone() {return java.time.ZoneOffset.UTC;}
+		@Override public java.time.Clock withZone(java.time.ZoneId z) {return this;}
+		@Override public java.time.Instant instant() {return java.time.Instant.ofEpochMilli(now[0]);}
+	};
+
+	@org.junit.Test
+	public void testRateLimit() throws java.io.IOException
+	{
+		MemLogger log = createLogger(LEVEL.INFO, "limit1");
+		LogLimiter limiter = LogLimiter.register("test.ratelimit", 10, 5);
+		org.junit.Assert.assertSame(limiter, LogLimiter.register("test.ratelimit", 99, 99));
+		org.junit.Assert.assertEquals(10, limiter.getRate(), 0);
+
+		// initial burst
+		org.junit.Assert.assertEquals(5, countAllowed(limiter, log, LEVEL.INFO, 100));
+		org.junit.Assert.assertEquals(95, limiter.getSuppressed());
+		org.junit.Assert.assertEquals(0, log.length()); //no summary yet
+
+		// inactive levels are neither allowed nor counted
+		org.junit.Assert.assertFalse(limiter.isAllowed(log, LEVEL.TRC));
+		org.junit.Assert.assertEquals(95, limiter.getSuppressed());
+
+		// half a second refills 5 tokens
+		now[0] += 500;
+		org.junit.Assert.assertEquals(5, countAllowed(limiter, log, LEVEL.INFO, 10));
+		org.junit.Assert.assertEquals(100, limiter.getSuppressed());
+
+		// a long pause refills the bucket no further than the burst size, and brings out the summary
+		now[0] += 3_600_000;
+		org.junit.Assert.assertEquals(5, countAllowed(limiter, log, LEVEL.INFO, 6));
+		org.junit.Assert.assertEquals(101, limiter.getSuppressed());
+		String output = log.get().toString();
+		org.junit.Assert.assertTrue(output, output.contains(" LogLimiter=test.ratelimit suppressed 100 messages since last report - total=100"));
+		log.close();
+	}
+
+	@org.junit.Test
+	public void testSampling() throws java.io.IOException
+	{
+		MemLogger log = createLogger(LEVEL.TRC, "limit2");
+		LogLimiter limiter = new LogLimiter("test.sampling", 1000, 1_000_000, 0.1);
+		int total = 10_000;
+		int cnt = countAllowed(limiter, log, LEVEL.TRC, total);
+		org.junit.Assert.assertTrue("Sampled="+cnt, cnt > total / 20 && cnt < total / 5);
+		org.junit.Assert.assertEquals(total - cnt, limiter.getSuppressed());
+
+		// non-trace levels are not sampled
+		org.junit.Assert.assertEquals(total, countAllowed(limiter, log, LEVEL.INFO, total));
+
+		// unlimited
+		limiter = new LogLimiter("test.unlimited", 0, 1, 0);
+		org.junit.Assert.assertEquals(total, countAllowed(limiter, log, LEVEL.TRC, total));
+		try {
+			new LogLimiter("test.invalid", 1, 1, 1.5);
+			org.junit.Assert.fail("Failed to reject invalid sample rate");
+		} catch (IllegalArgumentException ex) {}
+		log.close();
+	}
+
+	private MemLogger createLogger(LEVEL lvl, String name) throws java.io.IOException
+	{
+		Parameters params = new Parameters.Builder()
+				.withLogClass(MemLogger.class)
+				.withLogLevel(lvl)
+				.withPathname("any-old-name-as-will-discard-it")
+				.withClock(clock)
+				.build();
+		MemLogger log = (MemLogger)Factory.getLogger(params, name);
+		log.reset();
+		return log;
+	}
+
+	private static int countAllowed(LogLimiter limiter, Logger log, LEVEL lvl, int attempts)
+	{
+		int cnt = 0;
+		for (int idx = 0; idx != attempts; idx++) {
+			if (limiter.isAllowed(log, lvl)) cnt++;
+		}
+		return cnt;
+	}
+}
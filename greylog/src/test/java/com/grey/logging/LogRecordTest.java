@@ -0,0 +1,70 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.logging;
+
+import com.grey.logging.Logger.LEVEL;
+
+public class LogRecordTest
+{
+	private static final LogFormat FMT1 = LogFormat.register("Values={}/{}/{} - text={}, unicode={}, obj={}, null={}");
+	private static final LogFormat FMT2 = LogFormat.register("Two args {} and {} then trailer");
+
+	@org.junit.Test
+	public void testFormat() throws java.io.IOException
+	{
+		Parameters params = new Parameters.Builder()
+				.withLogClass(MemLogger.class)
+				.withLogLevel(LEVEL.INFO)
+				.withPathname("any-old-name-as-will-discard-it")
+				.build();
+		MemLogger log = (MemLogger)Factory.getLogger(params, "records1");
+		org.junit.Assert.assertSame(FMT1, LogFormat.register(FMT1.getTemplate()));
+		org.junit.Assert.assertSame(FMT1, LogFormat.get(FMT1.getId()));
+		org.junit.Assert.assertEquals(7, FMT1.getPlaceholderCount());
+
+		log.record(LEVEL.INFO, FMT1).arg(-5).arg(Long.MAX_VALUE).arg(1.5).arg("plain").arg("€100").arg(java.util.Arrays.asList(1, 2))
+				.arg((CharSequence)null).commit();
+		org.junit.Assert.assertTrue(log.get().toString(),
+				log.get().toString().endsWith(" Values=-5/9223372036854775807/1.5 - text=plain, unicode=€100, obj=[1, 2], null=null\n"));
+
+		log.reset();
+		org.junit.Assert.assertSame(LogRecord.DISABLED, log.record(LEVEL.TRC, FMT1));
+		log.record(LEVEL.TRC, FMT1).arg(1).arg("should not come out").commit();
+		org.junit.Assert.assertEquals(0, log.length());
+
+		// excess and missing args
+		log.record(LEVEL.INFO, FMT2).arg(true).arg('x').arg(99).commit();
+		org.junit.Assert.assertTrue(log.get().toString(), log.get().toString().endsWith(" Two args true and x then trailer 99\n"));
+		log.reset();
+		log.record(LEVEL.INFO, FMT2).arg("one").commit();
+		org.junit.Assert.assertTrue(log.get().toString(), log.get().toString().endsWith(" Two args one and {} then trailer\n"));
+		log.close();
+	}
+
+	@org.junit.Test
+	public void testOfflineDecode() throws java.io.IOException
+	{
+		Parameters params = new Parameters.Builder()
+				.withLogClass(SinkLogger.class)
+				.withLogLevel(LEVEL.INFO)
+				.build();
+		Logger log = Factory.getLogger(params, "records2");
+		LogRecord rec = log.record(LEVEL.INFO, FMT2).arg(7).arg("seven");
+		byte[] buf = java.util.Arrays.copyOf(rec.buffer(), rec.length());
+		rec.commit();
+		org.junit.Assert.assertEquals("Two args 7 and seven then trailer", LogRecord.format(buf, 0, buf.length, new StringBuilder()).toString());
+		org.junit.Assert.assertEquals("Two args 7 and seven then trailer", rec.format().toString());
+
+		// unknown format ID
+		org.junit.Assert.assertNull(LogFormat.get(Integer.MAX_VALUE));
+		buf[0] = 0x7F; buf[1] = buf[2] = buf[3] = (byte)0xFF;
+		org.junit.Assert.assertEquals("LogFormat-2147483647: 7 seven", LogRecord.format(buf, 0, buf.length, new StringBuilder()).toString());
+
+		StringBuilder sb = new StringBuilder();
+		LogFormat.dumpRegistry(sb);
+		org.junit.Assert.assertTrue(sb.toString(), sb.toString().contains(FMT2.getId()+"\t"+FMT2.getTemplate()+"\n"));
+		log.close();
+	}
+}
@@ -126,6 +126,129 @@ public class LoggerTest
 		org.junit.Assert.assertFalse(fh.exists());
 	}
 
+	@org.junit.Test
+	public void testSizeRotation() throws Exception
+	{
+		final long[] now = new long[]{TimeOps.getSystime(null, 2021, 3, 15, 10, 0)};
+		java.time.Clock clock = new java.time.Clock() {
+			@Override public java.time.ZoneId getZone() {return java.time.ZoneOffset.UTC;}
+			@Override public java.time.Clock withZone(java.time.ZoneId z) {return this;}
+			@Override public java.time.Instant instant() {return java.time.Instant.ofEpochMilli(now[0]);}
+		};
+		String template = rootpath+"/sizerot-"+ScheduledTime.TOKEN_MIN+ScheduledTime.TOKEN_SEC+".log";
+		Parameters params = new Parameters.Builder()
+				.withLogClass(LatinLogger.class)
+				.withLogLevel(LEVEL.INFO)
+				.withPathname(template)
+				.withMaxSize(1024)
+				.withCompressRotated(true)
+				.withClock(clock)
+				.build();
+		Logger log = Factory.getLogger(params, "sizerot");
+		String path1 = log.getActivePath();
+		for (int idx = 0; idx != 50; idx++) {
+			log.info("Message number "+idx+" to fill up the logfile");
+		}
+		// the size limit has been exceeded, but the pathname will not change till the next second
+		org.junit.Assert.assertEquals(path1, log.getActivePath());
+		now[0] += 1000;
+		log.info("This message goes into the next logfile");
+		String path2 = log.getActivePath();
+		org.junit.Assert.assertNotEquals(path1, path2);
+		log.close();
+
+		// the rotated logfile gets compressed in the background
+		java.io.File fh1 = new java.io.File(path1);
+		java.io.File fh_gz = new java.io.File(path1+".gz");
+		long limit = System.currentTimeMillis() + 10_000;
+		while (fh1.exists() && System.currentTimeMillis() < limit) Thread.sleep(50);
+		org.junit.Assert.assertFalse(fh1.exists());
+		org.junit.Assert.assertTrue(fh_gz.exists());
+		String txt;
+		try (java.io.InputStream istrm = new java.util.zip.GZIPInputStream(new java.io.FileInputStream(fh_gz))) {
+			txt = FileOps.readAsText(istrm, null);
+		}
+		org.junit.Assert.assertTrue(txt.contains("Message number 49 to fill"));
+		org.junit.Assert.assertFalse(txt.contains("next logfile"));
+		String txt2 = FileOps.readAsText(path2, null);
+		org.junit.Assert.assertTrue(txt2.contains("next logfile"));
+		org.junit.Assert.assertTrue(new java.io.File(path2).exists()); //the active logfile is not compressed on close
+	}
+
+	@org.junit.Test
+	public void testMappedLogger() throws java.io.IOException
+	{
+		String logfile = rootpath+"/mapped.log";
+		java.io.File fh = new java.io.File(logfile);
+		FileOps.ensureDirExists(fh.getParentFile());
+		// simulate the remains of a previous run which crashed before truncating its logfile
+		byte[] leftover = new byte[100];
+		byte[] prevtxt = "Previous content\n".getBytes();
+		System.arraycopy(prevtxt, 0, leftover, 0, prevtxt.length);
+		java.nio.file.Files.write(fh.toPath(), leftover);
+
+		Parameters params = new Parameters.Builder()
+				.withLogClass(MTMappedLogger.class)
+				.withLogLevel(LEVEL.INFO)
+				.withPathname(logfile)
+				.withQuietMode(true)
+				.build();
+		Logger log = Factory.getLogger(params, "mapped1");
+		org.junit.Assert.assertEquals(MTMappedLogger.class, log.getClass());
+		int cnt = 10_000;
+		for (int idx = 0; idx != cnt; idx++) {
+			log.info("Mapped message "+idx);
+		}
+		log.flush();
+		org.junit.Assert.assertTrue(fh.length() >= 4 * 1024 * 1024); //pre-extended
+		log.close();
+
+		java.util.List<String> lines = java.nio.file.Files.readAllLines(fh.toPath());
+		org.junit.Assert.assertEquals(cnt + 1, lines.size());
+		org.junit.Assert.assertEquals("Previous content", lines.get(0));
+		org.junit.Assert.assertTrue(lines.get(1).endsWith(" Mapped message 0"));
+		org.junit.Assert.assertTrue(lines.get(cnt).endsWith(" Mapped message "+(cnt-1)));
+		long len = fh.length();
+		org.junit.Assert.assertEquals(-1, new String(java.nio.file.Files.readAllBytes(fh.toPath())).indexOf('\0'));
+
+		// reopening appends to the existing content
+		log = Factory.getLogger(params, "mapped2");
+		log.info("Appended message");
+		log.close();
+		lines = java.nio.file.Files.readAllLines(fh.toPath());
+		org.junit.Assert.assertEquals(cnt + 2, lines.size());
+		org.junit.Assert.assertTrue(lines.get(cnt + 1).endsWith(" Appended message"));
+		org.junit.Assert.assertTrue(fh.length() > len);
+		org.junit.Assert.assertTrue(fh.delete());
+	}
+
+	@org.junit.Test
+	public void testMappedStreamNulChunks() throws java.io.IOException
+	{
+		// simulate a crash just after remapping, which leaves whole chunks of NULs after the real content
+		String pthnam = rootpath+"/mapped_nul.log";
+		java.io.File fh = new java.io.File(pthnam);
+		FileOps.ensureDirExists(fh.getParentFile());
+		int chunksize = 64;
+		byte[] leftover = new byte[10 + chunksize * 3];
+		System.arraycopy("Previous\n".getBytes(), 0, leftover, 0, 9);
+		java.nio.file.Files.write(fh.toPath(), leftover);
+
+		MappedFileStream strm = new MappedFileStream(pthnam, chunksize);
+		org.junit.Assert.assertEquals(9, strm.size());
+		strm.write("Appended\n".getBytes());
+		strm.close();
+		org.junit.Assert.assertEquals("Previous\nAppended\n", FileOps.readAsText(pthnam, null));
+
+		// a file which is nothing but NULs is treated as empty
+		java.nio.file.Files.write(fh.toPath(), new byte[chunksize * 2 + 1]);
+		strm = new MappedFileStream(pthnam, chunksize);
+		org.junit.Assert.assertEquals(0, strm.size());
+		strm.close();
+		org.junit.Assert.assertEquals(0, fh.length());
+		org.junit.Assert.assertTrue(fh.delete());
+	}
+
 	@org.junit.Test
 	public void testMemLogger() throws java.io.IOException
 	{
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.logging;
+
+import com.grey.logging.Logger.LEVEL;
+import com.grey.base.config.SysProps;
+import com.grey.base.utils.FileOps;
+
+public class MTMergingLoggerTest
+{
+	private final String rootpath = SysProps.TMPDIR+"/utest/greylog/"+getClass().getName();
+
+	public MTMergingLoggerTest() throws java.io.IOException {
+		FileOps.deleteDirectory(rootpath);
+	}
+
+	@org.junit.Test
+	public void testConcurrentWriters() throws Exception
+	{
+		final int thread_cnt = 4;
+		final int msg_cnt = 5000;
+		String logfile = rootpath+"/merge.log";
+		Parameters params = new Parameters.Builder()
+				.withLogClass(MTMergingLogger.class)
+				.withLogLevel(LEVEL.INFO)
+				.withPathname(logfile)
+				.withFlushInterval(10)
+				.withQuietMode(true)
+				.build();
+		final MTMergingLogger log = (MTMergingLogger)Factory.getLogger(params, "merge1");
+
+		Thread[] thrds = new Thread[thread_cnt];
+		for (int idx = 0; idx != thrds.length; idx++) {
+			final int tnum = idx;
+			thrds[idx] = new Thread(() -> {
+				for (int num = 0; num != msg_cnt; num++) {
+					log.info("Thread"+tnum+" message="+num);
+				}
+			});
+			thrds[idx].start();
+		}
+		log.trace("This message should not come out");
+		for (int idx = 0; idx != thrds.length; idx++) {
+			thrds[idx].join();
+		}
+		org.junit.Assert.assertTrue(log.drain(10_000));
+		org.junit.Assert.assertEquals(0, log.getDropped());
+		org.junit.Assert.assertEquals(thread_cnt * msg_cnt, log.getWritten());
+		log.close();
+
+		// verify that every message came out once, and in order within each thread
+		java.util.List<String> lines = java.nio.file.Files.readAllLines(java.nio.file.Paths.get(logfile));
+		org.junit.Assert.assertEquals(thread_cnt * msg_cnt, lines.size());
+		int[] next = new int[thread_cnt];
+		for (String line : lines) {
+			int pos = line.indexOf(" Thread");
+			org.junit.Assert.assertTrue(line, pos != -1);
+			int tnum = line.charAt(pos + 7) - '0';
+			int num = Integer.parseInt(line.substring(line.indexOf('=', pos) + 1));
+			org.junit.Assert.assertEquals(line, next[tnum]++, num);
+		}
+		for (int idx = 0; idx != thread_cnt; idx++) {
+			org.junit.Assert.assertEquals(msg_cnt, next[idx]);
+		}
+		org.junit.Assert.assertEquals(0, log.getThreadCount()); //the dead threads' buffers have been discarded
+	}
+
+	@org.junit.Test
+	public void testMergeOrder() throws Exception
+	{
+		final long[] now = new long[]{1_600_000_000_000L};
+		java.time.Clock clock = new java.time.Clock() {
+			@Override public java.time.ZoneId getZone() {return java.time.ZoneOffset.UTC;}
+			@Override public java.time.Clock withZone(java.time.ZoneId z) {return this;}
+			@Override public java.time.Instant instant() {return java.time.Instant.ofEpochMilli(now[0]);}
+		};
+		java.io.ByteArrayOutputStream bstrm = new java.io.ByteArrayOutputStream();
+		Parameters params = new Parameters.Builder()
+				.withLogClass(MTMergingLogger.class)
+				.withLogLevel(LEVEL.INFO)
+				.withStream(bstrm)
+				.withFlushInterval(com.grey.base.utils.TimeOps.MSECS_PER_DAY) //so that nothing is merged till we call drain()
+				.withQuietMode(true)
+				.withClock(clock)
+				.build();
+		MTMergingLogger log = (MTMergingLogger)Factory.getLogger(params, "merge2");
+
+		// interleave the timestamps of two threads' messages
+		java.util.concurrent.ExecutorService[] thrds = new java.util.concurrent.ExecutorService[] {
+				java.util.concurrent.Executors.newSingleThreadExecutor(),
+				java.util.concurrent.Executors.newSingleThreadExecutor()};
+		int total = 20;
+		for (int idx = 0; idx != total; idx++) {
+			final int num = idx;
+			now[0] += 10;
+			thrds[idx % 2].submit(() -> log.info("Message "+num)).get();
+		}
+		org.junit.Assert.assertEquals(2, log.getThreadCount());
+		org.junit.Assert.assertTrue(log.drain(10_000));
+		org.junit.Assert.assertEquals(total, log.getWritten());
+		log.close();
+		thrds[0].shutdown();
+		thrds[1].shutdown();
+		String[] lines = bstrm.toString().split(SysProps.EOL);
+		org.junit.Assert.assertEquals(total, lines.length);
+		for (int idx = 0; idx != total; idx++) {
+			org.junit.Assert.assertTrue(lines[idx], lines[idx].endsWith(" Message "+idx));
+		}
+	}
+}
@@ -19,10 +19,14 @@ import com.grey.naf.errors.NAFConfigException;
 
 public class ResolverConfig
 {
+	// EDNS(0) UDP payload size to advertise in our queries, which saves falling back to TCP for larger responses - zero disables EDNS
+	public static final int EDNS_UDPSIZE = ednsUdpSize(SysProps.get("greynaf.dns.ednsudp", PacketDNS.EDNS_UDPSIZE));
+	// how long we stop sending EDNS queries to a nameserver which has rejected one
+	public static final long NOEDNS_TTL = SysProps.getTime("greynaf.dns.noedns_ttl", "1h");
 	// UDP max: add a small bit extra to allow for sloppy encoding by remote host (NB: no reason to suspect that)
-	public static final int PKTSIZ_UDP = SysProps.get("greynaf.dns.maxudp", PacketDNS.UDPMAXMSG + 64);
+	public static final int PKTSIZ_UDP = SysProps.get("greynaf.dns.maxudp", Math.max(PacketDNS.UDPMAXMSG, EDNS_UDPSIZE) + 64);
 	// TCP max: allow for larger TCP messages (but we only really expect a fraction larger, not 4-fold)
-	public static final int PKTSIZ_TCP = SysProps.get("greynaf.dns.maxtcp", PacketDNS.UDPMAXMSG * 4);
+	public static final int PKTSIZ_TCP = SysProps.get("greynaf.dns.maxtcp", Math.max(PacketDNS.UDPMAXMSG * 4, PKTSIZ_UDP));
 	// Linux limit is 128K, while Windows seems to accept just about anything
 	public static final int UDPSOCKBUFSIZ = SysProps.get("greynaf.dns.sockbuf", PacketDNS.UDPMAXMSG * 128);
 	public static final boolean DIRECTNIOBUFS = com.grey.naf.BufferGenerator.directniobufs;
@@ -66,6 +70,12 @@ public class ResolverConfig
 	private final int cacheHiWaterMX;
 	private final boolean partialPrune;
 	private final boolean dumpOnExit;
+	private final String snapshotPath; //pathname of the persistent cache snapshot - null means don't take snapshots
+	private final long snapshotInterval; //interval for taking periodic snapshots - zero means only at shutdown
+	private final int prefetchHits; //cache hits that make an entry eligible for refresh-ahead - zero disables refresh-ahead
+	private final int prefetchThreshold; //percentage of an entry's TTL which must have elapsed before it is refreshed ahead
+	private final long staleWindow; //how long expired RRs are retained to serve stale answers (RFC-8767) - zero disables serve-stale
+	private final long staleDeadline; //how long callers wait on a query before being given a stale answer - zero means only on failure
 
 	private final int nsMaxRR; //the max no. of answer RRs to return for an MX query - zero means return all
 	private final int mxMaxRR; //the max no. of answer RRs to return for an NS query - zero means return all
@@ -99,6 +109,12 @@ public class ResolverConfig
 		cacheHiWaterMX = bldr.cacheHiWaterMX;
 		partialPrune = bldr.partialPrune;
 		dumpOnExit = bldr.dumpOnExit;
+		snapshotPath = bldr.snapshotPath;
+		snapshotInterval = bldr.snapshotInterval;
+		prefetchHits = bldr.prefetchHits;
+		prefetchThreshold = bldr.prefetchThreshold;
+		staleWindow = bldr.staleWindow;
+		staleDeadline = bldr.staleDeadline;
 		nsMaxRR = bldr.nsMaxRR;
 		mxMaxRR = bldr.mxMaxRR;
 		distributed = bldr.distributed;
@@ -247,6 +263,30 @@ public class ResolverConfig
 		return dumpOnExit;
 	}
 
+	public String getSnapshotPath() {
+		return snapshotPath;
+	}
+
+	public long getSnapshotInterval() {
+		return snapshotInterval;
+	}
+
+	public int getPrefetchHits() {
+		return prefetchHits;
+	}
+
+	public int getPrefetchThreshold() {
+		return prefetchThreshold;
+	}
+
+	public long getStaleWindow() {
+		return staleWindow;
+	}
+
+	public long getStaleDeadline() {
+		return staleDeadline;
+	}
+
 	public int getNsMaxRR() {
 		return nsMaxRR;
 	}
@@ -263,6 +303,11 @@ public class ResolverConfig
 		return distributedMaster;
 	}
 
+	// RFC-6891 says payload sizes below the classic DNS limit are to be treated as equal to it
+	public static int ednsUdpSize(int v) {
+		return (v <= 0 ? 0 : Math.max(v, PacketDNS.UDPMAXMSG));
+	}
+
 
 	public static class Builder {
 		private boolean recursive = true;
@@ -295,6 +340,12 @@ public class ResolverConfig
 		private int cacheHiWaterMX;
 		private boolean partialPrune;
 		private boolean dumpOnExit;
+		private String snapshotPath;
+		private long snapshotInterval = Duration.ofMinutes(15).toMillis();
+		private int prefetchHits;
+		private int prefetchThreshold = 90;
+		private long staleWindow;
+		private long staleDeadline = 1800;
 		private int nsMaxRR;
 		private int mxMaxRR;
 		private boolean distributed = true;
@@ -332,6 +383,15 @@ public class ResolverConfig
 			cacheLoWaterMX = getLowater(cfg, "cache_mx/@lowater", cacheHiWaterMX);
 			partialPrune = cfg.getBool("@partialprune", partialPrune);
 			dumpOnExit = cfg.getBool("@exitdump", dumpOnExit);
+			snapshotPath = cfg.getValue("snapshot", false, snapshotPath);
+			snapshotInterval = cfg.getTime("snapshot/@interval", snapshotInterval);
+			prefetchHits = cfg.getInt("prefetch/@hits", false, prefetchHits);
+			prefetchThreshold = cfg.getInt("prefetch/@threshold", false, prefetchThreshold);
+			if (prefetchThreshold < 1 || prefetchThreshold > 100) {
+				throw new NAFConfigException("prefetch threshold="+prefetchThreshold+" must be a percentage in range 1-100");
+			}
+			staleWindow = cfg.getTime("servestale/@window", staleWindow);
+			staleDeadline = cfg.getTime("servestale/@deadline", staleDeadline);
 			nsMaxRR = cfg.getInt("cache_ns/@maxrr", false, nsMaxRR);
 			mxMaxRR = cfg.getInt("cache_mx/@maxrr", false, mxMaxRR);
 
@@ -513,6 +573,36 @@ public class ResolverConfig
 			return this;
 		}
 
+		public Builder withSnapshotPath(String v) {
+			snapshotPath = v;
+			return this;
+		}
+
+		public Builder withSnapshotInterval(long v) {
+			snapshotInterval = v;
+			return this;
+		}
+
+		public Builder withPrefetchHits(int v) {
+			prefetchHits = v;
+			return this;
+		}
+
+		public Builder withPrefetchThreshold(int v) {
+			prefetchThreshold = v;
+			return this;
+		}
+
+		public Builder withStaleWindow(long v) {
+			staleWindow = v;
+			return this;
+		}
+
+		public Builder withStaleDeadline(long v) {
+			staleDeadline = v;
+			return this;
+		}
+
 		public Builder withNsMaxRR(int v) {
 			nsMaxRR = v;
 			return this;
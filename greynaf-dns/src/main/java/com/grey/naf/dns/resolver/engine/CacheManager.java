@@ -6,10 +6,12 @@ package com.grey.naf.dns.resolver.engine;
 
 import com.grey.base.config.SysProps;
 import com.grey.base.utils.ByteChars;
+import com.grey.base.collections.DomainTrie;
 import com.grey.base.collections.HashedMap;
 import com.grey.base.collections.HashedMapIntKey;
 import com.grey.base.collections.HashedSet;
 import com.grey.base.utils.IP;
+import com.grey.base.utils.StringOps;
 import com.grey.base.utils.TSAP;
 import com.grey.naf.dns.resolver.ResolverConfig;
 import com.grey.naf.dns.resolver.ResolverDNS;
@@ -38,6 +40,8 @@ class CacheManager
 	// maps domain name to list of type-NS RR records
 	private final HashedMap<ByteChars, java.util.ArrayList<ResourceData>> cache_ns
 								= new HashedMap<ByteChars, java.util.ArrayList<ResourceData>>(0, 2f);
+	// holds the same mappings as cache_ns, but keyed on reversed labels so that we can find the closest enclosing zone in one walk
+	private final DomainTrie<java.util.ArrayList<ResourceData>> tree_ns = new DomainTrie<>();
 	// maps nameserver IP address to its TSAP
 	private final HashedMapIntKey<java.net.InetSocketAddress> cache_nameservers
 									= new HashedMapIntKey<java.net.InetSocketAddress>(0, 10f);
@@ -63,8 +67,11 @@ class CacheManager
 	private long systime_prune;
 	private final com.grey.logging.Logger logger;
 
+	private final DelegationWalker delegation_walker = new DelegationWalker();
+
 	// temporary work areas, pre-allocated merely for efficiency
 	private final byte[] tmp_ipaddr = new byte[IP.IPADDR_OCTETS];
+	private final ByteChars tmplightbc = new ByteChars(-1); //lightweight object without own storage
 
 	public CacheManager(com.grey.naf.reactor.Dispatcher d, ResolverConfig c, String[] nameServers)
 	{
@@ -90,26 +97,38 @@ class CacheManager
 		return tsap;
 	}
 
+	/*
+	 * Returns the nameserver for the closest enclosing zone of the given domain, skipping over any parent domains which are
+	 * cached as having no nameservers of their own (as they are not zones).
+	 * We never ascend to the root, and certain TLDs are guaranteed to only delegate one level down, so we don't ascend to them
+	 * either. If no such zone is cached, this returns null and if we only found negatively cached parents, it returns NEGATIVE_TSAP.
+	 * This is equivalent to calling lookupNameServer() on each successive parent domain and stopping at the first one that is
+	 * not negative, but it does so in a single walk down tree_ns.
+	 */
+	public java.net.InetSocketAddress lookupEnclosingNameServer(ByteChars domnam)
+	{
+		int labelcnt = StringOps.count(domnam, ResolverDNS.DOMDLM) + 1;
+		if (labelcnt == 1 || domnam.charAt(domnam.size() - 1) == ResolverDNS.DOMDLM) return lookupNameServer(domnam);
+		int minlabels = 1;
+		if (domnam.endsWith(".com") || domnam.endsWith(".org") || domnam.endsWith(".net")) minlabels = 2;
+
+		delegation_walker.reset(minlabels, dsptch.getSystemTime() - config.getLookupMinTTL());
+		int cnt = tree_ns.walkSuffixes(domnam, delegation_walker);
+		int off = (cnt == labelcnt ? delegation_walker.getZoneOffset() : 0); //if the full path doesn't exist, domnam itself is not cached
+		if (off == 0) return lookupNameServer(domnam);
+		tmplightbc.set(domnam, off);
+		return lookupNameServer(tmplightbc);
+	}
+
 	public ResourceData lookup(byte qtype, ByteChars qname)
 	{
-		HashedMap<ByteChars, ResourceData> cache;
-		if (qtype == ResolverDNS.QTYPE_A) {
-			cache = cache_a;
-		} else if (qtype == ResolverDNS.QTYPE_AAAA) {
-			cache = cache_aaaa;
-		} else if (qtype == ResolverDNS.QTYPE_SOA) {
-			cache = cache_soa;
-		} else if (qtype == ResolverDNS.QTYPE_TXT) {
-			cache = cache_txt;
-		} else {
-			throw new UnsupportedOperationException(LOGLBL+"lookup qtype="+qtype+" - "+qname);
-		}
+		HashedMap<ByteChars, ResourceData> cache = getCache(qtype, qname);
 		ResourceData rr = cache.get(qname);
 		long min_age = dsptch.getSystemTime() - config.getLookupMinTTL();
 
 		if (rr != null && rr.isExpired(min_age)) {
-			// stale data, so remove it and say we found nothing
-			cache.remove(qname);
+			// stale data, so say we found nothing - and remove it, unless it's being retained to serve stale answers
+			if (rr.isExpired(min_age - config.getStaleWindow())) cache.remove(qname);
 			rr = null;
 		}
 		return rr;
@@ -122,27 +141,94 @@ class CacheManager
 		long min_age = dsptch.getSystemTime() - config.getLookupMinTTL();
 
 		if (rr != null && rr.isExpired(min_age)) {
-			// stale data, so remove it and say we found nothing
-			cache_ptr.remove(qip);
+			// stale data, so say we found nothing - and remove it, unless it's being retained to serve stale answers
+			if (rr.isExpired(min_age - config.getStaleWindow())) cache_ptr.remove(qip);
 			rr = null;
 		}
 		return rr;
 	}
 
+	// If serve-stale is enabled, then partially expired entries count as a miss, rather than being partially pruned.
 	public java.util.ArrayList<ResourceData> lookupList(byte qtype, ByteChars qname)
 	{
-		HashedMap<ByteChars, java.util.ArrayList<ResourceData>> cache;
-		if (qtype == ResolverDNS.QTYPE_MX) {
-			cache = cache_mx;
-		} else if (qtype == ResolverDNS.QTYPE_NS) {
-			cache = cache_ns;
-		} else if (qtype == ResolverDNS.QTYPE_SRV) {
-			cache = cache_srv;
-		} else {
-			throw new UnsupportedOperationException(LOGLBL+"lookup qtype="+qtype+" - "+qname);
+		HashedMap<ByteChars, java.util.ArrayList<ResourceData>> cache = getListCache(qtype, qname);
+		long min_age = dsptch.getSystemTime() - config.getLookupMinTTL();
+		long stale_window = getStaleWindow(cache);
+		if (stale_window == 0) return pruneList(cache, qname, null, min_age);
+		java.util.ArrayList<ResourceData> lst = pruneList(cache, qname, null, min_age - stale_window);
+		if (lst == null) return null;
+		for (int idx = 0; idx != lst.size(); idx++) {
+			if (lst.get(idx).isExpired(min_age)) return null;
 		}
+		return lst;
+	}
+
+	/*
+	 * The lookupStale() methods support RFC-8767 serve-stale, and return the cached entry even if it has expired, so long
+	 * as it is still within the stale window.
+	 * NS entries are never retained beyond their expiry, since they drive the resolution process itself.
+	 */
+	ResourceData lookupStale(byte qtype, ByteChars qname)
+	{
+		ResourceData rr = getCache(qtype, qname).get(qname);
+		long cutoff = dsptch.getSystemTime() - config.getLookupMinTTL() - config.getStaleWindow();
+		return (rr == null || rr.isExpired(cutoff) ? null : rr);
+	}
+
+	ResourceData lookupStale(byte qtype, int qip)
+	{
+		if (qtype != ResolverDNS.QTYPE_PTR) throw new UnsupportedOperationException(LOGLBL+"lookup qtype="+qtype+" - "+qip);
+		ResourceData rr = cache_ptr.get(qip);
+		long cutoff = dsptch.getSystemTime() - config.getLookupMinTTL() - config.getStaleWindow();
+		return (rr == null || rr.isExpired(cutoff) ? null : rr);
+	}
+
+	java.util.ArrayList<ResourceData> lookupStaleList(byte qtype, ByteChars qname)
+	{
+		HashedMap<ByteChars, java.util.ArrayList<ResourceData>> cache = getListCache(qtype, qname);
+		long stale_window = getStaleWindow(cache);
+		if (stale_window == 0) return null;
 		long min_age = dsptch.getSystemTime() - config.getLookupMinTTL();
-		return pruneList(cache, qname, null, min_age);
+		return pruneList(cache, qname, null, min_age - stale_window);
+	}
+
+	private HashedMap<ByteChars, ResourceData> getCache(byte qtype, ByteChars qname)
+	{
+		if (qtype == ResolverDNS.QTYPE_A) return cache_a;
+		if (qtype == ResolverDNS.QTYPE_AAAA) return cache_aaaa;
+		if (qtype == ResolverDNS.QTYPE_SOA) return cache_soa;
+		if (qtype == ResolverDNS.QTYPE_TXT) return cache_txt;
+		throw new UnsupportedOperationException(LOGLBL+"lookup qtype="+qtype+" - "+qname);
+	}
+
+	private HashedMap<ByteChars, java.util.ArrayList<ResourceData>> getListCache(byte qtype, ByteChars qname)
+	{
+		if (qtype == ResolverDNS.QTYPE_MX) return cache_mx;
+		if (qtype == ResolverDNS.QTYPE_NS) return cache_ns;
+		if (qtype == ResolverDNS.QTYPE_SRV) return cache_srv;
+		throw new UnsupportedOperationException(LOGLBL+"lookup qtype="+qtype+" - "+qname);
+	}
+
+	private long getStaleWindow(HashedMap<ByteChars, java.util.ArrayList<ResourceData>> cache)
+	{
+		return (cache == cache_ns ? 0 : config.getStaleWindow());
+	}
+
+	/*
+	 * Records a cache hit on the entry represented by rr (which is the first RR of list-based entries) and says whether
+	 * the entry is now due a refresh-ahead query, ie. it is popular and is nearing expiry.
+	 * The hit count restarts when this returns true, so that a refresh which fails does not trigger a new query on every
+	 * subsequent hit.
+	 */
+	boolean isRefreshDue(ResourceData rr)
+	{
+		if (config.getPrefetchHits() == 0 || rr.getExpiry() == Long.MAX_VALUE) return false; //disabled, or permanent entry
+		if (rr.recordHit() < config.getPrefetchHits()) return false;
+		long lifetime = rr.getExpiry() - rr.getCacheTime();
+		long age = dsptch.getSystemTime() - rr.getCacheTime();
+		if (age * 100 < lifetime * config.getPrefetchThreshold()) return false;
+		rr.resetHits();
+		return true;
 	}
 
 	// Answer.result can only be OK or NODOMAIN, and if the latter Answer.rrdata must be empty.
@@ -155,6 +241,9 @@ class CacheManager
 			ResourceData rr = ResourceData.createNegativeRR(ans.qtype, ttl);
 			ans.rrdata.add(rr);
 		}
+		for (int idx = 0; idx != ans.rrdata.size(); idx++) {
+			ans.rrdata.get(idx).setCacheTime(dsptch.getSystemTime());
+		}
 
 		if (dsptch.getSystemTime() >= systime_prune + PRUNE_INTERVAL) {
 			// we need this, else if hiwater was unlimited we'd never even remove most expired RRs
@@ -190,6 +279,7 @@ class CacheManager
 
 	public void storeHostAddress(ByteChars qname, ResourceData rr)
 	{
+		rr.setCacheTime(dsptch.getSystemTime());
 		storeResult("A", qname, rr, cache_a, config.getCacheLoWaterA(), config.getCacheHiWaterA());
 	}
 
@@ -211,6 +301,7 @@ class CacheManager
 		if (hiwater != 0 && cache.size() >= hiwater) pruneLists(desc, cache, lowater, hiwater);
 		java.util.ArrayList<ResourceData> rrdata = new java.util.ArrayList<ResourceData>(ans.rrdata);
 		cache.put(ans.qname, rrdata);
+		if (cache == cache_ns) tree_ns.put(ans.qname, rrdata);
 	}
 
 	public void loadRootServers()
@@ -231,6 +322,7 @@ class CacheManager
 			while (it.hasNext()) {
 				ByteChars domnam = it.next();
 				java.util.ArrayList<ResourceData> lst = cache_ns.remove(domnam);
+				tree_ns.remove(domnam);
 				for (int idx = 0; idx != lst.size(); idx++) {
 					ResourceData.RR_NS rr_ns = (ResourceData.RR_NS)lst.get(idx);
 					cache_nameservers.remove(rr_ns.getIP());
@@ -243,6 +335,11 @@ class CacheManager
 
 		ns_roots.addAll(newroots.keySet());
 		cache_ns.putAll(newroots);
+		java.util.Iterator<ByteChars> itroots = ns_roots.iterator();
+		while (itroots.hasNext()) {
+			ByteChars domnam = itroots.next();
+			tree_ns.put(domnam, newroots.get(domnam));
+		}
 		java.util.Iterator<java.util.ArrayList<ResourceData>> it = newroots.values().iterator();
 		while (it.hasNext()) {
 			java.util.ArrayList<ResourceData> lst = it.next();
@@ -343,6 +440,160 @@ class CacheManager
 		}
 	}
 
+	/*
+	 * Writes a CacheSnapshot record for each cache entry which has any unexpired RRs, and returns the number of entries
+	 * written. The root servers are omitted, as they come from our config.
+	 */
+	int saveSnapshot(java.io.DataOutputStream ostrm, long systime) throws java.io.IOException
+	{
+		int cnt = 0;
+		cnt += saveSnapshot(ostrm, ResolverDNS.QTYPE_A, cache_a, ns_roots_a, systime);
+		cnt += saveSnapshot(ostrm, ResolverDNS.QTYPE_AAAA, cache_aaaa, null, systime);
+		cnt += saveSnapshot(ostrm, ResolverDNS.QTYPE_SOA, cache_soa, null, systime);
+		cnt += saveSnapshot(ostrm, ResolverDNS.QTYPE_TXT, cache_txt, null, systime);
+		cnt += saveSnapshotLists(ostrm, ResolverDNS.QTYPE_NS, cache_ns, ns_roots, systime);
+		cnt += saveSnapshotLists(ostrm, ResolverDNS.QTYPE_MX, cache_mx, null, systime);
+		cnt += saveSnapshotLists(ostrm, ResolverDNS.QTYPE_SRV, cache_srv, null, systime);
+
+		com.grey.base.collections.IteratorInt it = cache_ptr.keysIterator();
+		while (it.hasNext()) {
+			int ip = it.next();
+			ResourceData rr = cache_ptr.get(ip);
+			if (rr.isExpired(systime)) continue;
+			ostrm.writeByte(ResolverDNS.QTYPE_PTR);
+			ostrm.writeInt(ip);
+			ostrm.writeShort(1);
+			CacheSnapshot.writeRR(ostrm, rr);
+			cnt++;
+		}
+		return cnt;
+	}
+
+	private static int saveSnapshot(java.io.DataOutputStream ostrm, byte qtype, HashedMap<ByteChars, ResourceData> cache,
+			HashedSet<ByteChars> excl, long systime) throws java.io.IOException
+	{
+		int cnt = 0;
+		java.util.Iterator<ByteChars> it = cache.keysIterator();
+		while (it.hasNext()) {
+			ByteChars qname = it.next();
+			ResourceData rr = cache.get(qname);
+			if (rr.isExpired(systime) || (excl != null && excl.contains(qname))) continue;
+			ostrm.writeByte(qtype);
+			CacheSnapshot.writeName(ostrm, qname);
+			ostrm.writeShort(1);
+			CacheSnapshot.writeRR(ostrm, rr);
+			cnt++;
+		}
+		return cnt;
+	}
+
+	private static int saveSnapshotLists(java.io.DataOutputStream ostrm, byte qtype,
+			HashedMap<ByteChars, java.util.ArrayList<ResourceData>> cache, HashedSet<ByteChars> excl, long systime)
+					throws java.io.IOException
+	{
+		int cnt = 0;
+		java.util.Iterator<ByteChars> it = cache.keysIterator();
+		while (it.hasNext()) {
+			ByteChars qname = it.next();
+			if (excl != null && excl.contains(qname)) continue;
+			java.util.ArrayList<ResourceData> lst = cache.get(qname);
+			int rrcnt = 0;
+			for (int idx = 0; idx != lst.size(); idx++) {
+				if (!lst.get(idx).isExpired(systime)) rrcnt++;
+			}
+			if (rrcnt == 0) continue;
+			ostrm.writeByte(qtype);
+			CacheSnapshot.writeName(ostrm, qname);
+			ostrm.writeShort(rrcnt);
+			for (int idx = 0; idx != lst.size(); idx++) {
+				ResourceData rr = lst.get(idx);
+				if (!rr.isExpired(systime)) CacheSnapshot.writeRR(ostrm, rr);
+			}
+			cnt++;
+		}
+		return cnt;
+	}
+
+	/*
+	 * Reads the CacheSnapshot records up to the end-of-records marker, and returns the number of cache entries restored.
+	 * RRs which have expired since the snapshot was taken are discarded, and existing entries take precedence over the
+	 * snapshot, since they are either root servers or fresher results.
+	 */
+	int loadSnapshot(java.nio.ByteBuffer buf, long systime)
+	{
+		java.util.ArrayList<ResourceData> rrlst = new java.util.ArrayList<>();
+		int cnt = 0;
+		byte qtype;
+		while ((qtype = buf.get()) != 0) {
+			ByteChars qname = null;
+			int qip = 0;
+			if (qtype == ResolverDNS.QTYPE_PTR) {
+				qip = buf.getInt();
+			} else {
+				qname = CacheSnapshot.readName(buf, null);
+			}
+			int rrcnt = buf.getShort() & 0xFFFF;
+			rrlst.clear();
+			for (int idx = 0; idx != rrcnt; idx++) {
+				ResourceData rr = CacheSnapshot.readRR(buf, qtype, qname);
+				if (rr.isExpired(systime)) continue;
+				rr.setCacheTime(systime); //the original cache time isn't saved, so refresh-ahead treats the entry as cached now
+				rrlst.add(rr);
+			}
+			if (rrlst.size() != 0 && restoreEntry(qtype, qname, qip, rrlst)) cnt++;
+		}
+		return cnt;
+	}
+
+	private boolean restoreEntry(byte qtype, ByteChars qname, int qip, java.util.ArrayList<ResourceData> rrlst)
+	{
+		if (qtype == ResolverDNS.QTYPE_PTR) {
+			int hiwater = config.getCacheHiWaterPTR();
+			if (cache_ptr.containsKey(qip) || (hiwater != 0 && cache_ptr.size() >= hiwater)) return false;
+			cache_ptr.put(qip, rrlst.get(0));
+			return true;
+		}
+		HashedMap<ByteChars, ResourceData> cache = null;
+		HashedMap<ByteChars, java.util.ArrayList<ResourceData>> listcache = null;
+		int hiwater;
+
+		if (qtype == ResolverDNS.QTYPE_A) {
+			cache = cache_a;
+			hiwater = config.getCacheHiWaterA();
+		} else if (qtype == ResolverDNS.QTYPE_AAAA) {
+			cache = cache_aaaa;
+			hiwater = config.getCacheHiWaterA();
+		} else if (qtype == ResolverDNS.QTYPE_SOA) {
+			cache = cache_soa;
+			hiwater = config.getCacheHiWaterSOA();
+		} else if (qtype == ResolverDNS.QTYPE_TXT) {
+			cache = cache_txt;
+			hiwater = config.getCacheHiWaterSOA();
+		} else if (qtype == ResolverDNS.QTYPE_NS) {
+			listcache = cache_ns;
+			hiwater = config.getCacheHiWaterNS();
+		} else if (qtype == ResolverDNS.QTYPE_MX) {
+			listcache = cache_mx;
+			hiwater = config.getCacheHiWaterMX();
+		} else if (qtype == ResolverDNS.QTYPE_SRV) {
+			listcache = cache_srv;
+			hiwater = config.getCacheHiWaterSOA();
+		} else {
+			throw new IllegalArgumentException("DNS cache snapshot has unsupported qtype="+qtype);
+		}
+
+		if (cache != null) {
+			if (cache.containsKey(qname) || (hiwater != 0 && cache.size() >= hiwater)) return false;
+			cache.put(qname, rrlst.get(0));
+		} else {
+			if (listcache.containsKey(qname) || (hiwater != 0 && listcache.size() >= hiwater)) return false;
+			java.util.ArrayList<ResourceData> lst = new java.util.ArrayList<>(rrlst);
+			listcache.put(qname, lst);
+			if (listcache == cache_ns) tree_ns.put(qname, lst);
+		}
+		return true;
+	}
+
 	public void prune(StringBuilder sbrsp)
 	{
 		systime_prune = dsptch.getSystemTime();
@@ -360,8 +611,8 @@ class CacheManager
 
 	private int prune(String desc, HashedMap<ByteChars, ResourceData> cache, int lowater, int hiwater)
 	{
-		// delete all expired entries
-		long min_age = dsptch.getSystemTime() - config.getLookupMinTTL();
+		// delete all expired entries, apart from any being retained to serve stale answers
+		long min_age = dsptch.getSystemTime() - config.getLookupMinTTL() - config.getStaleWindow();
 		int oldsize = cache.size();
 		java.util.Iterator<ByteChars> itbc = cache.keysIterator();
 		while (itbc.hasNext()) {
@@ -390,7 +641,7 @@ class CacheManager
 
 	private int prune(String desc, HashedMapIntKey<ResourceData> cache, int lowater, int hiwater)
 	{
-		long min_age = dsptch.getSystemTime() - config.getLookupMinTTL();
+		long min_age = dsptch.getSystemTime() - config.getLookupMinTTL() - config.getStaleWindow();
 		int oldsize = cache.size();
 		java.util.Iterator<ResourceData> itrr = cache.valuesIterator();
 		while (itrr.hasNext()) {
@@ -417,7 +668,7 @@ class CacheManager
 	private int pruneLists(String desc, HashedMap<ByteChars, java.util.ArrayList<ResourceData>> cache,
 			int lowater, int hiwater)
 	{
-		long min_age = dsptch.getSystemTime() - config.getLookupMinTTL();
+		long min_age = dsptch.getSystemTime() - config.getLookupMinTTL() - getStaleWindow(cache);
 		int delcnt = 0;
 		java.util.Iterator<ByteChars> it = cache.keysIterator();
 		while (it.hasNext()) {
@@ -473,11 +724,43 @@ class CacheManager
 			} else {
 				it.remove();
 			}
+			if (cache == cache_ns) tree_ns.remove(domnam);
 			lst = null;
 		}
 		return lst;
 	}
 
+	/*
+	 * Tracks the deepest suffix on the walk down tree_ns which is not negatively cached, and does not ascend above the
+	 * minlabels level. Entries which have expired are treated as absent, since a lookup would discard them.
+	 */
+	private static final class DelegationWalker
+		implements DomainTrie.SuffixVisitor<java.util.ArrayList<ResourceData>>
+	{
+		private int minlabels;
+		private long min_age;
+		private int zone_off;
+
+		public int getZoneOffset() {return zone_off;}
+
+		public void reset(int minlabels, long min_age) {
+			this.minlabels = minlabels;
+			this.min_age = min_age;
+			zone_off = 0;
+		}
+
+		@Override
+		public boolean visitSuffix(ByteChars dom, int off, int labelcnt, java.util.ArrayList<ResourceData> rrlst) {
+			if (labelcnt < minlabels) return true;
+			if (labelcnt == minlabels) {
+				zone_off = off; //the closest we can ascend to, even if it's negative
+			} else if (rrlst == null || !rrlst.get(0).isNegative() || rrlst.get(0).isExpired(min_age)) {
+				zone_off = off;
+			}
+			return true;
+		}
+	}
+
 	private static int countRRs(HashedMap<ByteChars, java.util.ArrayList<ResourceData>> cache)
 	{
 		int cnt = 0;
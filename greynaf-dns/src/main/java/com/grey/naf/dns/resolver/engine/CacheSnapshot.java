@@ -0,0 +1,313 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.naf.dns.resolver.engine;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import com.grey.base.utils.ByteChars;
+import com.grey.base.utils.FileOps;
+import com.grey.naf.dns.resolver.ResolverDNS;
+
+/**
+ * Saves the contents of the CacheManager to a compact binary file, and restores them from it, so that the resolver
+ * can start up with a warm cache.
+ * <br>
+ * The file consists of a header followed by one record per cache entry, each holding the qtype, the cache key and the
+ * RRs. RR expiry times are stored as absolute times, so records which expired while we were down can be discarded
+ * on loading.
+ * <p>
+ * Saving a snapshot is done in two stages. The cache is first captured into a memory buffer, which has to be done in the
+ * Dispatcher thread but is quick, and the resulting Image is then written to disk, which can be done in a background
+ * thread. The file is written under a temporary name and then renamed, so an existing snapshot is never left half-written.
+ * The snapshot is loaded via a memory-mapped file.
+ */
+class CacheSnapshot
+{
+	private static final int MAGIC = 0x4E414644; //"NAFD"
+	private static final int VERSION = 1;
+	private static final int HDRSIZ = 16; //magic, version and creation time
+	private static final byte FLAG_NEGATIVE = 1;
+
+	private final java.io.File fh;
+	private final java.io.File fh_tmp;
+	private long seq_captured; //only accessed by Dispatcher thread
+	private long seq_written; //guarded by this
+	private volatile Throwable write_error;
+
+	public java.io.File getFile() {return fh;}
+
+	public CacheSnapshot(java.io.File fh)
+	{
+		this.fh = fh;
+		fh_tmp = new java.io.File(fh.getPath()+".tmp");
+	}
+
+	/**
+	 * Captures the current cache contents. Must be called in the Dispatcher thread, but the returned Image can be written
+	 * to disk by any thread.
+	 */
+	public Image capture(CacheManager cmgr, long systime) throws java.io.IOException
+	{
+		java.io.ByteArrayOutputStream bstrm = new java.io.ByteArrayOutputStream(64 * 1024);
+		java.io.DataOutputStream ostrm = new java.io.DataOutputStream(bstrm);
+		ostrm.writeInt(MAGIC);
+		ostrm.writeInt(VERSION);
+		ostrm.writeLong(systime);
+		int cnt = cmgr.saveSnapshot(ostrm, systime);
+		ostrm.writeByte(0); //end-of-records marker
+		ostrm.flush();
+		return new Image(bstrm.toByteArray(), cnt, ++seq_captured);
+	}
+
+	/**
+	 * Returns the error (if any) which occurred on the most recent write, and clears it.
+	 * This lets the Dispatcher report on background writes, without them having to log from another thread.
+	 */
+	public Throwable takeWriteError()
+	{
+		Throwable ex = write_error;
+		write_error = null;
+		return ex;
+	}
+
+	/**
+	 * Restores the snapshot into the given cache, and returns the number of cache entries loaded, or -1 if there is no
+	 * snapshot file.
+	 */
+	public int load(CacheManager cmgr, long systime) throws java.io.IOException
+	{
+		if (!fh.exists()) return -1;
+		try (FileChannel chan = FileChannel.open(fh.toPath(), StandardOpenOption.READ)) {
+			if (chan.size() < HDRSIZ) throw new java.io.IOException("DNS cache snapshot is truncated - size="+chan.size());
+			java.nio.MappedByteBuffer buf = chan.map(FileChannel.MapMode.READ_ONLY, 0, chan.size());
+			int magic = buf.getInt();
+			int ver = buf.getInt();
+			if (magic != MAGIC || ver != VERSION) {
+				throw new java.io.IOException("DNS cache snapshot has unsupported format - magic=0x"+Integer.toHexString(magic)+", version="+ver);
+			}
+			buf.getLong(); //creation time isn't needed, as the RRs have absolute expiry times
+			try {
+				return cmgr.loadSnapshot(buf, systime);
+			} catch (java.nio.BufferUnderflowException | IllegalArgumentException ex) {
+				throw new java.io.IOException("DNS cache snapshot is corrupt at offset="+buf.position(), ex);
+			}
+		}
+	}
+
+	private synchronized void write(Image img) throws java.io.IOException
+	{
+		if (img.seq < seq_written) return; //a more recent snapshot has already overtaken this one
+		FileOps.ensureDirExists(fh.getParentFile());
+		try (java.io.FileOutputStream fstrm = new java.io.FileOutputStream(fh_tmp, false)) {
+			fstrm.write(img.data);
+			fstrm.getFD().sync();
+		}
+		java.nio.file.Files.move(fh_tmp.toPath(), fh.toPath(), FileOps.COPYOPTS_ATOMIC);
+		seq_written = img.seq;
+	}
+
+	static void writeRR(java.io.DataOutputStream ostrm, ResourceData rr) throws java.io.IOException
+	{
+		ostrm.writeByte(rr.isNegative() ? FLAG_NEGATIVE : 0);
+		ostrm.writeLong(rr.getExpiry());
+		if (rr.isNegative()) return;
+		ostrm.writeInt(rr.getIP());
+		writeName(ostrm, rr.getName());
+
+		switch (rr.rrType())
+		{
+		case ResolverDNS.QTYPE_A:
+		case ResolverDNS.QTYPE_PTR:
+			break;
+		case ResolverDNS.QTYPE_AAAA:
+			ostrm.write(((ResourceData.RR_AAAA)rr).getIP6());
+			break;
+		case ResolverDNS.QTYPE_NS:
+			writeName(ostrm, ((ResourceData.RR_NS)rr).hostname);
+			break;
+		case ResolverDNS.QTYPE_MX: {
+			ResourceData.RR_MX rrdef = (ResourceData.RR_MX)rr;
+			writeName(ostrm, rrdef.relay);
+			ostrm.writeInt(rrdef.pref);
+			break;
+		}
+		case ResolverDNS.QTYPE_SRV: {
+			ResourceData.RR_SRV rrdef = (ResourceData.RR_SRV)rr;
+			writeName(ostrm, rrdef.target);
+			ostrm.writeInt(rrdef.priority);
+			ostrm.writeInt(rrdef.weight);
+			ostrm.writeInt(rrdef.port);
+			break;
+		}
+		case ResolverDNS.QTYPE_SOA: {
+			ResourceData.RR_SOA rrdef = (ResourceData.RR_SOA)rr;
+			writeName(ostrm, rrdef.mname);
+			writeName(ostrm, rrdef.rname);
+			ostrm.writeInt(rrdef.serial);
+			ostrm.writeInt(rrdef.refresh);
+			ostrm.writeInt(rrdef.retry);
+			ostrm.writeInt(rrdef.expire);
+			ostrm.writeInt(rrdef.minttl);
+			break;
+		}
+		case ResolverDNS.QTYPE_TXT: {
+			ResourceData.RR_TXT rrdef = (ResourceData.RR_TXT)rr;
+			ostrm.writeShort(rrdef.count());
+			for (int idx = 0; idx != rrdef.count(); idx++) {
+				byte[] txt = rrdef.getData(idx).getBytes(java.nio.charset.StandardCharsets.UTF_8);
+				ostrm.writeShort(txt.length);
+				ostrm.write(txt);
+			}
+			break;
+		}
+		default:
+			throw new UnsupportedOperationException("DNS cache snapshot cannot encode RR type="+rr.rrType());
+		}
+	}
+
+	// The qname is the cache key, whose storage can be shared by the RR if it has the same name
+	static ResourceData readRR(java.nio.ByteBuffer buf, byte qtype, ByteChars qname)
+	{
+		byte flags = buf.get();
+		long expiry = buf.getLong();
+		if ((flags & FLAG_NEGATIVE) != 0) return ResourceData.createNegativeRR(qtype, expiry);
+		int ip = buf.getInt();
+		ByteChars rrname = readName(buf, qname);
+		ResourceData rr;
+
+		switch (qtype)
+		{
+		case ResolverDNS.QTYPE_A:
+			rr = new ResourceData.RR_A(rrname, ip, expiry);
+			break;
+		case ResolverDNS.QTYPE_PTR:
+			rr = new ResourceData.RR_PTR(rrname, ip, expiry);
+			break;
+		case ResolverDNS.QTYPE_AAAA: {
+			byte[] addr = new byte[com.grey.base.utils.IP.IPV6ADDR_OCTETS];
+			buf.get(addr);
+			rr = new ResourceData.RR_AAAA(rrname, addr, expiry);
+			break;
+		}
+		case ResolverDNS.QTYPE_NS:
+			rr = new ResourceData.RR_NS(rrname, readName(buf, null), ip, expiry);
+			break;
+		case ResolverDNS.QTYPE_MX: {
+			ByteChars relay = readName(buf, null);
+			rr = new ResourceData.RR_MX(rrname, relay, buf.getInt(), expiry);
+			break;
+		}
+		case ResolverDNS.QTYPE_SRV: {
+			ByteChars target = readName(buf, null);
+			int pri = buf.getInt();
+			int weight = buf.getInt();
+			rr = new ResourceData.RR_SRV(rrname, expiry, target, pri, weight, buf.getInt());
+			break;
+		}
+		case ResolverDNS.QTYPE_SOA: {
+			ByteChars mname = readName(buf, null);
+			ByteChars rname = readName(buf, null);
+			int serial = buf.getInt();
+			int refresh = buf.getInt();
+			int retry = buf.getInt();
+			int expire = buf.getInt();
+			rr = new ResourceData.RR_SOA(rrname, expiry, mname, rname, serial, refresh, retry, expire, buf.getInt());
+			break;
+		}
+		case ResolverDNS.QTYPE_TXT: {
+			int cnt = buf.getShort() & 0xFFFF;
+			java.util.ArrayList<String> lst = new java.util.ArrayList<>(cnt);
+			for (int idx = 0; idx != cnt; idx++) {
+				byte[] txt = new byte[buf.getShort() & 0xFFFF];
+				buf.get(txt);
+				lst.add(new String(txt, java.nio.charset.StandardCharsets.UTF_8));
+			}
+			rr = new ResourceData.RR_TXT(rrname, expiry, lst);
+			break;
+		}
+		default:
+			throw new IllegalArgumentException("DNS cache snapshot has unsupported RR type="+qtype);
+		}
+		rr.setIP(ip);
+		return rr;
+	}
+
+	// a length of -1 represents a null name
+	static void writeName(java.io.DataOutputStream ostrm, ByteChars name) throws java.io.IOException
+	{
+		if (name == null) {
+			ostrm.writeShort(-1);
+			return;
+		}
+		ostrm.writeShort(name.size());
+		ostrm.write(name.buffer(), name.offset(), name.size());
+	}
+
+	static ByteChars readName(java.nio.ByteBuffer buf, ByteChars dflt)
+	{
+		int len = buf.getShort();
+		if (len == -1) return null;
+		if (dflt != null && dflt.size() == len) {
+			// reuse the default object if it matches
+			boolean match = true;
+			int pos = buf.position();
+			for (int idx = 0; idx != len; idx++) {
+				if ((buf.get(pos + idx) & 0xFF) != dflt.byteAt(idx)) {
+					match = false;
+					break;
+				}
+			}
+			if (match) {
+				buf.position(pos + len);
+				return dflt;
+			}
+		}
+		ByteChars name = new ByteChars(len);
+		buf.get(name.buffer(), name.offset(), len);
+		name.incrementSize(len);
+		return name;
+	}
+
+	@Override
+	public String toString()
+	{
+		return super.toString()+" with file="+fh.getAbsolutePath()+" - captured="+seq_captured;
+	}
+
+
+	public final class Image implements Runnable
+	{
+		private final byte[] data;
+		private final int entries;
+		private final long seq;
+
+		public int size() {return data.length;}
+		public int getEntryCount() {return entries;}
+
+		Image(byte[] data, int entries, long seq)
+		{
+			this.data = data;
+			this.entries = entries;
+			this.seq = seq;
+		}
+
+		public void write() throws java.io.IOException
+		{
+			CacheSnapshot.this.write(this);
+		}
+
+		// for background writes - errors are reported via takeWriteError()
+		@Override
+		public void run()
+		{
+			try {
+				write();
+			} catch (Throwable ex) {
+				write_error = ex;
+			}
+		}
+	}
+}
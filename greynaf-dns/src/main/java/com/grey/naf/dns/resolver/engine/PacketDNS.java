@@ -26,6 +26,7 @@ public class PacketDNS
 
 	public static final int INETPORT = 53;
 	public static final int UDPMAXMSG = 512;
+	public static final int EDNS_UDPSIZE = 1232; //default EDNS(0) payload size, which avoids IP fragmentation on typical paths
 	public static final int PKTHDRSIZ = 12;
 	public static final int TCPMSGLENSIZ = 2; //TCP DNS message is prefixed with a 2-byte length field
 
@@ -103,6 +104,7 @@ public class PacketDNS
 
 	private final TimerNAF.TimeProvider timeProvider;
 	private final long minttl_rr;
+	private int stale_ttl; //TTL to encode for RRs which have already expired, if this is a stale answer (else zero)
 	private byte[] pktbuf;
 	private int hdrflags;
 	private int msgbase; //offset of Packet header within pktbuf (excludes TCP length field)
@@ -114,6 +116,11 @@ public class PacketDNS
 	int hdr_authcnt;
 	int hdr_infocnt;
 
+	// EDNS(0) settings from the OPT pseudo-RR (RFC-6891) of the decoded message - edns_udpsize is zero if it had none
+	private int edns_udpsize;
+	private int edns_version;
+	private int edns_xrcode; //upper 8 bits of the 12-bit extended RCODE
+
 	private static final int MASK_RCODE = 0xF;
 	private static final int MASK_OPCODE = 0xF << 11;
 	public int rcode() {return hdrflags & 0xF;}
@@ -138,6 +145,12 @@ public class PacketDNS
 	public int getAuthorityCount() {return hdr_authcnt;}
 	public int getInfoCount() {return hdr_infocnt;}
 
+	public boolean hasEDNS() {return (edns_udpsize != 0);}
+	public int getEdnsUdpSize() {return edns_udpsize;}
+	public int getEdnsVersion() {return edns_version;}
+	public int extendedRcode() {return (edns_xrcode << 4) | rcode();}
+	public void setStaleTTL(int secs) {stale_ttl = secs;}
+
 	private static final int COMPRESSION_PTRPREFIX = 0xC0;
 	private static final int FLDSIZ_PTRCOMPRESS = 2;
 	private boolean isCompressedLabel(int off) {return ((pktbuf[off] & COMPRESSION_PTRPREFIX) != 0);}
@@ -275,8 +288,13 @@ public class PacketDNS
 			if (skip) return skipSection(off, sectiontype, rrcnt - idx);
 			rr_name.clear();
 			off = decodeName(off, rr_name);
-			byte rrtype = (byte)decodeInt(off, FLDSIZ_RRTYPE);
+			int rrtype16 = decodeInt(off, FLDSIZ_RRTYPE);
+			byte rrtype = (byte)rrtype16;
 			off += FLDSIZ_RRTYPE;
+			if (rrtype16 == ResolverDNS.QTYPE_EDNSOPT && sectiontype != SECT_QUESTIONS) {
+				off = decodeOPT(off);
+				continue;
+			}
 			byte rrclass = (byte)decodeInt(off, FLDSIZ_RRCLASS);
 			off += FLDSIZ_RRCLASS;
 
@@ -296,6 +314,39 @@ public class PacketDNS
 		return off;
 	}
 
+	//Scans the Additional-Info section for an OPT pseudo-RR to record its EDNS settings, while skipping all other RRs.
+	//This is for users who don't otherwise need to parse the section.
+	public int decodeEDNS(int off, int rrcnt)
+	{
+		for (int idx = 0; idx != rrcnt; idx++) {
+			if (off > msglmt) return -1;
+			off = decodeName(off, null);
+			int rrtype = decodeInt(off, FLDSIZ_RRTYPE);
+			off += FLDSIZ_RRTYPE;
+			if (rrtype == ResolverDNS.QTYPE_EDNSOPT) {
+				off = decodeOPT(off);
+			} else {
+				off += FLDSIZ_RRCLASS + FLDSIZ_RRTTL;
+				off += FLDSIZ_RRLEN + decodeInt(off, FLDSIZ_RRLEN);
+			}
+		}
+		if (off > msglmt) return -1;
+		return off;
+	}
+
+	//Decodes the remainder of an OPT pseudo-RR, starting at its Class field, which holds the sender's UDP payload size
+	private int decodeOPT(int off)
+	{
+		int udpsize = decodeInt(off, FLDSIZ_RRCLASS);
+		off += FLDSIZ_RRCLASS;
+		edns_xrcode = pktbuf[off] & 0xFF; //the TTL field holds the extended RCODE, version and flags
+		edns_version = pktbuf[off+1] & 0xFF;
+		off += FLDSIZ_RRTTL;
+		int rrlen = decodeInt(off, FLDSIZ_RRLEN);
+		edns_udpsize = Math.max(udpsize, UDPMAXMSG); //RFC-6891 says smaller values are to be treated as 512
+		return off + FLDSIZ_RRLEN + rrlen; //we don't support any EDNS options, so skip the RDATA
+	}
+
 	private ResourceData parseRDATA(int off, byte qtype, int datalen, byte rrtype, byte clss, int raw_ttl, MessageCallback handler)
 	{
 		ResourceData rrbuf = null;
@@ -412,10 +463,21 @@ public class PacketDNS
 		return off;
 	}
 
+	//Appends an OPT pseudo-RR advertising the given UDP payload size, and the caller must include it in the Additional-Info count.
+	//The upper bits of an extended RCODE (ie. above 15) are encoded here, while the header holds the lower 4 bits as usual.
+	public int encodeOPT(int off, int udpsize, int rcode)
+	{
+		pktbuf[off++] = 0; //root domain
+		off = encodeInt(off, ResolverDNS.QTYPE_EDNSOPT, FLDSIZ_RRTYPE);
+		off = encodeInt(off, udpsize, FLDSIZ_RRCLASS);
+		off = encodeInt(off, (rcode >> 4) << 24, FLDSIZ_RRTTL); //version is zero and we set no flags
+		return encodeInt(off, 0, FLDSIZ_RRLEN); //no options
+	}
+
 	private int encodeRR(int off, ResourceData rr)
 	{
 		long systime = timeProvider.getRealTime();
-		int ttl = rr.getTTL(systime);
+		int ttl = (rr.isExpired(systime) ? stale_ttl : rr.getTTL(systime));
 		if (ttl < 0) ttl = 0;
 		if (rr.rrType() == ResolverDNS.QTYPE_PTR) {
 			off = encodeArpaDomain(off, rr.getIP());
@@ -589,6 +651,9 @@ public class PacketDNS
 	private void reset()
 	{
 		hdrflags = 0;
+		edns_udpsize = 0;
+		edns_version = 0;
+		edns_xrcode = 0;
 		cmprseqs.clear();
 		setHeader(0, 0, 0, 0, 0);
 	}
@@ -24,9 +24,13 @@ class QueryHandle
 	private static final int F_NOTNXDOM = 1 << 3;
 	private static final int F_PARTIALNOTIFIED = 1 << 4;
 	private static final int F_AUTHREDIRECT = 1 << 5; //the Auth-Redirect hack is in effect
+	private static final int F_EDNS = 1 << 6; //the current query packet carries an EDNS OPT RR
+	private static final int F_NOEDNS = 1 << 7; //server rejected our EDNS query, so don't use EDNS for the rest of this request
+	private static final int F_PREFETCH = 1 << 8; //refresh-ahead query for a cached entry, so must not be answered from the cache
 
 	private static final int TMR_TIMEOUT = 1;
 	private static final int TMR_DEADLOCK = 2;
+	private static final int TMR_STALE = 3; //deadline for giving external callers a stale answer
 
 	private static final ByteChars ARPADOM0 = new ByteChars(IP.displayArpaDomain(0));
 
@@ -44,14 +48,18 @@ class QueryHandle
 	private int ip_request;
 	private int unresolved_cnt; //number of answer RRs on rrdata list whose IP needs to be resolved
 	private int subqry_open; //number of currently outstanding sub-queries
-	private byte flags;
+	private int flags;
 
 	// these fields support the retry functionality
 	private TimerNAF tmr;
 	private int retrycnt;
+	private TimerNAF tmr_stale;
 
 	public boolean isTCP() {return isFlagSet(F_TCP);}
 	public boolean haveResponse() {return isFlagSet(F_HAVERSP);}
+	public boolean sentEDNS() {return isFlagSet(F_EDNS);}
+	public boolean isPrefetch() {return isFlagSet(F_PREFETCH);}
+	void setPrefetch() {setFlag(F_PREFETCH);}
 	public int getSubQueryCount() {return subqry_open;}
 	private int getResolvedCount() {return rrdata.size() - unresolved_cnt;}
 
@@ -101,6 +109,8 @@ class QueryHandle
 	{
 		if (tcpconn != null) disconnectTCP();
 		stopTimer();
+		if (tmr_stale != null) tmr_stale.cancel();
+		tmr_stale = null;
 
 		if (qname != null) {
 			if (qip != 0) rslvr.freeByteChars(qname);
@@ -114,28 +124,43 @@ class QueryHandle
 
 	public ResolverAnswer.STATUS issueQuery(java.net.InetSocketAddress srvaddr, boolean sticky_ip, PacketDNS pkt)
 	{
+		int server_ip = IP.convertIP(srvaddr.getAddress());
+		// EDNS only benefits UDP, as TCP responses aren't size-limited anyway
+		boolean edns = (!isTCP() && ResolverConfig.EDNS_UDPSIZE != 0 && !isFlagSet(F_NOEDNS) && rslvr.supportsEDNS(server_ip));
 		pkt.resetEncoder(isTCP(), false); //we only ever encode 1 question, so avoid compression overhead
 		pkt.hdr_qid = qid;
 		pkt.hdr_qcnt = 1;
+		if (edns) pkt.hdr_infocnt = 1;
 		if (rslvr.getConfig().isRecursive()) pkt.setRecursionDesired();
 		int off = pkt.encodeHeader();
 		off = pkt.encodeQuestion(off, qtype, qname);
+		if (edns) off = pkt.encodeOPT(off, ResolverConfig.EDNS_UDPSIZE, 0);
 		java.nio.ByteBuffer niobuf = pkt.completeEncoding(off);
 		int pktlen = niobuf.limit();
 		if (rslvr.logger.isActive(ResolverConfig.DEBUGLVL)) {
 			rslvr.logger.log(ResolverConfig.DEBUGLVL, "DNS-Resolver sending "+(isTCP()?"TCP":"UDP")
 					+" query="+qid+"/"+ResolverDNS.getQTYPE(qtype)+"/"+qname+" to "+srvaddr
-					+" - size="+pktlen);
+					+" - size="+pktlen+(edns?", EDNS="+ResolverConfig.EDNS_UDPSIZE:""));
 		}
+		setFlag(F_EDNS, edns);
 		ResolverAnswer.STATUS result = send(niobuf, srvaddr);
 		if (result == ResolverAnswer.STATUS.OK) {
-			ip_request = IP.convertIP(srvaddr.getAddress());
+			ip_request = server_ip;
 			setFlag(F_IPSTICKY, sticky_ip);
 			startTimer(TMR_TIMEOUT);
 		}
 		return result;
 	}
 
+	// The server has rejected our EDNS query, so repeat it without the OPT RR
+	public void retryWithoutEDNS(java.net.InetSocketAddress srvaddr, PacketDNS pkt)
+	{
+		stopTimer();
+		setFlag(F_NOEDNS);
+		ResolverAnswer.STATUS result = issueQuery(srvaddr, isFlagSet(F_IPSTICKY), pkt);
+		if (result != ResolverAnswer.STATUS.OK) endRequest(result);
+	}
+
 	public ResolverAnswer.STATUS endRequest(ResolverAnswer.STATUS result)
 	{
 		if (result == ResolverAnswer.STATUS.OK && rrdata.size() == 0 && isFlagSet(F_NOTNXDOM)) result = ResolverAnswer.STATUS.ERROR;
@@ -146,6 +171,10 @@ class QueryHandle
 				answer.rrdata.add(rrdata.get(idx).rr);
 			}
 			result = rslvr.getCacheManager().storeResult(answer);
+		} else if (callers.size() != 0) {
+			// if we're able to, give our callers a stale answer instead of the failure - but our return value is unaffected
+			// There may be no callers left if they already got a stale answer at the deadline, or if this is a prefetch.
+			rslvr.serveStale(answer);
 		}
 		answer.ip_responder = ip_request;
 		notifyCallers(answer); //must be the last thing we do before requestCompleted(), in case of re-entrancy
@@ -787,6 +816,15 @@ class QueryHandle
 	public int cancelExternalCallers(ResolverAnswer.STATUS result)
 	{
 		ResolverAnswer answer = setAnswer(result, null);
+		int cnt = notifyExternalCallers(answer);
+		rslvr.freeAnswerBuf(answer);
+		return cnt;
+	}
+
+	// Gives the answer to the callers which are not other QueryHandles, and removes them from our callers list.
+	// Returns the number of remaining callers.
+	int notifyExternalCallers(ResolverAnswer answer)
+	{
 		for (int idx = callers.size() - 1; idx != -1; idx--) {
 			if (callers.get(idx) instanceof QueryHandle) continue;
 			ResolverDNS.Client caller = callers.remove(idx);
@@ -794,14 +832,20 @@ class QueryHandle
 			try {
 				caller.dnsResolved(rslvr.getDispatcher(), answer, param);
 			} catch (Throwable ex) {
-				rslvr.logger.log(Logger.LEVEL.INFO, ex, true, "DNS-Resolver: Client-cancel error - "+answer);
+				rslvr.logger.log(Logger.LEVEL.INFO, ex, true, "DNS-Resolver: Client error on early Answer - "+answer);
 				rslvr.caller_errors++;
 			}
 		}
-		rslvr.freeAnswerBuf(answer);
 		return callers.size();
 	}
 
+	// Starts the deadline after which external callers get a stale answer, if the query hasn't completed by then
+	void startStaleTimer()
+	{
+		if (tmr_stale != null) return;
+		tmr_stale = rslvr.getDispatcher().setTimer(rslvr.getConfig().getStaleDeadline(), TMR_STALE, this);
+	}
+
 	public void addCaller(ResolverDNS.Client cllr, Object callerparam)
 	{
 		callers.add(cllr);
@@ -880,6 +924,12 @@ class QueryHandle
 	@Override
 	public void timerIndication(TimerNAF t, Dispatcher d)
 	{
+		if (t.getType() == TMR_STALE) {
+			// the query carries on, to refresh the cache
+			tmr_stale = null;
+			rslvr.staleDeadlineExpired(this);
+			return;
+		}
 		if (rslvr.logger.isActive(ResolverConfig.DEBUGLVL)) {
 			rslvr.logger.log(ResolverConfig.DEBUGLVL, "DNS-Resolver timeout="+t.getType()+"/"+(retrycnt+1)+"/"+(rslvr.getConfig().getRetryMax()+1)
 					+" on "+ResolverDNS.getQTYPE(qtype)+"/"+qname);
@@ -20,7 +20,9 @@ public class ResolverAnswer
 	public STATUS result;
 	public final java.util.ArrayList<ResourceData> rrdata = new java.util.ArrayList<ResourceData>();
 	int ip_responder;
+	boolean stale; //answer came from expired cache entries, as resolution failed or was too slow (RFC-8767 serve-stale)
 
+	public boolean isStale() {return stale;}
 	public int size() {return rrdata.size();}
 	public ResourceData get(int index) {return rrdata.get(index);} //generic getter
 	public ResourceData.RR_A getA() {return (ResourceData.RR_A)rrdata.get(0);}
@@ -58,6 +60,7 @@ public class ResolverAnswer
 		for (int idx = 0; idx != ans2.rrdata.size(); idx++) {
 			rrdata.add(ans2.rrdata.get(idx));
 		}
+		stale = ans2.stale;
 		return this;
 	}
 
@@ -65,6 +68,7 @@ public class ResolverAnswer
 	{
 		result = res;
 		qtype = qt;
+		stale = false;
 		rrdata.clear();
 		return this;
 	}
@@ -76,6 +80,7 @@ public class ResolverAnswer
 		qname = null;
 		result = null;
 		ip_responder = 0;
+		stale = false;
 		rrdata.clear();
 		return this;
 	}
@@ -96,6 +101,7 @@ public class ResolverAnswer
 			sb.append(qname);
 		}
 		if (result == STATUS.OK) sb.append("/RRs=").append(rrdata.size());
+		if (stale) sb.append("/stale");
 		String dlm = " {";
 		for (int idx = 0; idx != rrdata.size(); idx++) {
 			sb.append(dlm);
@@ -4,7 +4,6 @@
  */
 package com.grey.naf.dns.resolver.engine;
 
-import com.grey.base.utils.StringOps;
 import com.grey.base.utils.TimeOps;
 import com.grey.base.utils.FileOps;
 import com.grey.base.utils.IP;
@@ -24,6 +23,7 @@ import com.grey.naf.dns.resolver.ResolverConfig;
 import com.grey.naf.dns.resolver.ResolverDNS;
 import com.grey.naf.reactor.Dispatcher;
 import com.grey.naf.reactor.TimerNAF;
+import com.grey.logging.LogLimiter;
 import com.grey.logging.Logger.LEVEL;
 
 /**
@@ -33,6 +33,9 @@ public class ResolverService
 	implements TimerNAF.Handler
 {
 	private static final String LOGLBL = "DNS-Resolver: ";
+	private static final int TMR_WRAPBLOCKED = 0;
+	private static final int TMR_SNAPSHOT = 1;
+	private static final LogLimiter WRAP_LIMITER = LogLimiter.register("dns.resolver.qidwrap", 1, 10);
 
 	final com.grey.logging.Logger logger;
 	private final Dispatcher dsptch;
@@ -40,6 +43,7 @@ public class ResolverService
 	private final CacheManager cachemgr;
 	private final CommsManager xmtmgr;
 	private final java.io.File fh_dump;
+	private final CacheSnapshot snapshot; //null if cache snapshots are disabled
 	private final java.util.Random rndgen = new java.util.Random(System.nanoTime());
 
 	// short-lived caches tracking currently ongoing requests
@@ -59,15 +63,23 @@ public class ResolverService
 	// protects against QID wrap-around - only applies to UDP
 	private final HashedSet<QueryHandle> wrapblocked = new HashedSet<>();
 	private TimerNAF tmr_wrapblocked;
+	private TimerNAF tmr_snapshot;
 
 	private int next_qryid = rndgen.nextInt();
 
+	// Nameservers which have rejected our EDNS queries, so we send them plain DNS queries instead.
+	// Maps the server IP to the time at which we will try EDNS with it again, as the rejection might have been a temporary glitch.
+	private final HashedMapIntKey<Long> noedns_servers = new HashedMapIntKey<>();
+
 	//stats
 	private final int[] stats_reqcnt = new int[256]; //number of user requests by qtype (we don't use qtype>255)
 	private final int[] stats_cachemiss = new int[256]; //cache misses by qtype
 	private int stats_ureqs;
 	private int stats_umiss;
 	int stats_trunc; //truncated UDP responses necessitating a TCP follow-up
+	int stats_noedns; //EDNS queries rejected by the server, necessitating a plain DNS follow-up
+	private int stats_prefetch; //refresh-ahead queries issued for popular cache entries
+	private int stats_stale; //stale answers given to callers, due to failed or slow queries
 	int stats_udpxmt; //UDP packets sent
 	int stats_udprcv; //UDP packets received
 	int stats_tcpconns; //TCP connections attempted
@@ -133,7 +145,14 @@ public class ResolverService
 		logger.trace(LOGLBL+"NS-cache: lowater="+config.getCacheLoWaterNS()+", hiwater="+config.getCacheHiWaterNS()+", maxrr="+config.getNsMaxRR());
 		logger.trace(LOGLBL+"MX-cache: lowater="+config.getCacheLoWaterMX()+", hiwater="+config.getCacheHiWaterMX()+", maxrr="+config.getMxMaxRR());
 		logger.trace(LOGLBL+"Partial cache prune="+config.isPartialPrune()+", dump-on-exit="+config.isDumpOnExit());
-		logger.trace(LOGLBL+"directbufs="+ResolverConfig.DIRECTNIOBUFS+"; udpmax="+ResolverConfig.PKTSIZ_UDP+"; tcpmax="+ResolverConfig.PKTSIZ_TCP);
+		logger.trace(LOGLBL+"refresh-ahead: hits="+config.getPrefetchHits()+(config.getPrefetchHits() == 0 ? " (disabled)" : "")
+				+", threshold="+config.getPrefetchThreshold()+"%");
+		logger.trace(LOGLBL+"serve-stale: window="+TimeOps.expandMilliTime(config.getStaleWindow())
+				+(config.getStaleWindow() == 0 ? " (disabled)" : ", deadline="+TimeOps.expandMilliTime(config.getStaleDeadline())));
+		logger.trace(LOGLBL+"cache-snapshot="+config.getSnapshotPath()
+				+(config.getSnapshotPath() == null ? "" : " - interval="+TimeOps.expandMilliTime(config.getSnapshotInterval())));
+		logger.trace(LOGLBL+"directbufs="+ResolverConfig.DIRECTNIOBUFS+"; udpmax="+ResolverConfig.PKTSIZ_UDP+"; tcpmax="+ResolverConfig.PKTSIZ_TCP
+				+"; EDNS="+ResolverConfig.EDNS_UDPSIZE+"/noedns-TTL="+TimeOps.expandMilliTime(ResolverConfig.NOEDNS_TTL));
 
 		String[] localNameServers;
 		if (config.getLocalNameServers() == null || config.getLocalNameServers().length == 0) {
@@ -153,6 +172,15 @@ public class ResolverService
 		pkt_tmp = new PacketDNS(Math.max(ResolverConfig.PKTSIZ_TCP, ResolverConfig.PKTSIZ_UDP), ResolverConfig.DIRECTNIOBUFS, config.getInitialMinTTL(), dsptch);
 		fh_dump = new java.io.File(dsptch.getApplicationContext().getConfig().getPathVar()+"/DNSdump-"+dsptch.getName()+".txt");
 
+		if (config.getSnapshotPath() == null) {
+			snapshot = null;
+		} else {
+			java.io.File fh = new java.io.File(config.getSnapshotPath());
+			if (!fh.isAbsolute()) fh = new java.io.File(dsptch.getApplicationContext().getConfig().getPathVar(), config.getSnapshotPath());
+			snapshot = new CacheSnapshot(fh);
+			loadSnapshot();
+		}
+
 		bcstore = new ObjectPool<>(() -> new ByteChars());
 		anstore = new ObjectPool<>(() -> new ResolverAnswer());
 		rrwstore = new ObjectPool<>(() -> new QueryHandle.WrapperRR());
@@ -162,6 +190,9 @@ public class ResolverService
 	public void start() throws java.io.IOException
 	{
 		xmtmgr.start();
+		if (snapshot != null && config.getSnapshotInterval() != 0) {
+			tmr_snapshot = dsptch.setTimer(config.getSnapshotInterval(), TMR_SNAPSHOT, this);
+		}
 	}
 
 	// We abandon all outstanding requests without notifying the callers.
@@ -181,6 +212,9 @@ public class ResolverService
 			}
 			dumpState(fh_dump, "Dumping cache on exit");
 		}
+		if (tmr_snapshot != null) tmr_snapshot.cancel();
+		tmr_snapshot = null;
+		if (snapshot != null) saveSnapshot(true);
 		xmtmgr.stop();
 		if (tmr_wrapblocked != null) tmr_wrapblocked.cancel();
 		tmr_wrapblocked = null;
@@ -249,25 +283,7 @@ public class ResolverService
 		// If a DNS request for this domain is already underway, then rather than duplicate that, we simply add this caller
 		// to the list of those waiting on the request.
 		QueryHandle qryh = null;
-		if (server_ip == 0) {
-			if (qtype == ResolverDNS.QTYPE_A) {
-				qryh = pendingdoms_a.get(qname);
-			} else if (qtype == ResolverDNS.QTYPE_NS) {
-				qryh = pendingdoms_ns.get(qname);
-			} else if (qtype == ResolverDNS.QTYPE_MX) {
-				qryh = pendingdoms_mx.get(qname);
-			} else if (qtype == ResolverDNS.QTYPE_SOA) {
-				qryh = pendingdoms_soa.get(qname);
-			} else if (qtype == ResolverDNS.QTYPE_SRV) {
-				qryh = pendingdoms_srv.get(qname);
-			} else if (qtype == ResolverDNS.QTYPE_TXT) {
-				qryh = pendingdoms_txt.get(qname);
-			} else if (qtype == ResolverDNS.QTYPE_AAAA) {
-				qryh = pendingdoms_aaaa.get(qname);
-			} else {
-				throw new UnsupportedOperationException("qtype="+qtype+" - "+qname);
-			}
-		}
+		if (server_ip == 0) qryh = getPendingMap(qtype, qname).get(qname);
 		boolean newqry = (qryh == null);
 
 		if (qryh == null) {
@@ -277,24 +293,10 @@ public class ResolverService
 			answer = issueQuery(qryh, server_ip, answerbuf);
 			if (answer != null) {
 				requestCompleted(qryh);
+				serveStale(answer);
 				return answer;
 			}
-
-			if (qtype == ResolverDNS.QTYPE_NS) {
-				pendingdoms_ns.put(qryh.qname, qryh);
-			} else if (qtype == ResolverDNS.QTYPE_MX) {
-				pendingdoms_mx.put(qryh.qname, qryh);
-			} else if (qtype == ResolverDNS.QTYPE_SOA) {
-				pendingdoms_soa.put(qryh.qname, qryh);
-			} else if (qtype == ResolverDNS.QTYPE_SRV) {
-				pendingdoms_srv.put(qryh.qname, qryh);
-			} else if (qtype == ResolverDNS.QTYPE_TXT) {
-				pendingdoms_txt.put(qryh.qname, qryh);
-			} else if (qtype == ResolverDNS.QTYPE_AAAA) {
-				pendingdoms_aaaa.put(qryh.qname, qryh);
-			} else {
-				pendingdoms_a.put(qryh.qname, qryh);
-			}
+			getPendingMap(qtype, qname).put(qryh.qname, qryh);
 		}
 
 		if (caller != null) {
@@ -316,6 +318,7 @@ public class ResolverService
 			// NB: There must be no steps in the synchronous resolve() call chain which can fail after this, as that
 			// means the caller would receive a failure callback as well as the synchronous error return code.
 			qryh.addCaller(caller, callerParam);
+			if (caller.getClass() != QueryHandle.class) startStaleTimer(qryh);
 		}
 		// the result is not yet available, so the caller will be notified later via callback.
 		return null;
@@ -343,11 +346,15 @@ public class ResolverService
 			answer = issueQuery(qryh, 0, answerbuf);
 			if (answer != null) {
 				requestCompleted(qryh);
+				serveStale(answer);
 				return answer;
 			}
 			pendingdoms_ptr.put(qip, qryh);
 		}
-		if (caller != null) qryh.addCaller(caller, callerparam);
+		if (caller != null) {
+			qryh.addCaller(caller, callerparam);
+			if (caller.getClass() != QueryHandle.class) startStaleTimer(qryh);
+		}
 		return null;
 	}
 
@@ -401,7 +408,7 @@ public class ResolverService
 				if (pendingreqs.containsKey(qryh.qid)) {
 					//we have issued so many requests so quickly that the QID has wrapped around before they're answered
 					wrapblocked.add(qryh);
-					if (tmr_wrapblocked == null) tmr_wrapblocked = dsptch.setTimer(config.getWrapRetryFreq(), 0, this);
+					if (tmr_wrapblocked == null) tmr_wrapblocked = dsptch.setTimer(config.getWrapRetryFreq(), TMR_WRAPBLOCKED, this);
 					return null; //will resume later, when QID is no longer contended
 				}
 				pendingreqs.put(qryh.qid, qryh);
@@ -416,11 +423,13 @@ public class ResolverService
 	{
 		ResolverAnswer answerbuf = allocAnswerBuf();
 		try {
-			ResolverAnswer answer;
-			if (qryh.qip != 0) {
-				answer = lookupCache(qryh.qtype, qryh.qip, answerbuf);
+			ResolverAnswer answer = null;
+			if (qryh.isPrefetch()) {
+				// the whole point is to replace the cached answer, so don't check the cache
+			} else if (qryh.qip != 0) {
+				answer = lookupCache(qryh.qtype, qryh.qip, answerbuf, false, false);
 			} else {
-				answer = lookupCache(qryh.qtype, qryh.qname, answerbuf);
+				answer = lookupCache(qryh.qtype, qryh.qname, answerbuf, false, false);
 			}
 			if (answer == null) answer = issueQuery(qryh, server_ip, answerbuf);
 			if (answer != null) answer = qryh.endRequest(answer);
@@ -462,6 +471,17 @@ public class ResolverService
 			}
 			if (validresponse) {
 				mapped_qryh = true; //if this lined up, we've identified the UDP request handle
+				if (qryh.sentEDNS() && !qryh.haveResponse() && rejectedEDNS(pkt, off)) {
+					int server_ip = IP.convertIP(srvaddr.getAddress());
+					if (logger.isActive(ResolverConfig.DEBUGLVL)) {
+						logger.log(ResolverConfig.DEBUGLVL, LOGLBL+"EDNS rejected with rcode="+pkt.extendedRcode()+" for response="+pkt.hdr_qid
+								+"/"+ResolverDNS.getQTYPE(qryh.qtype)+"/"+qryh.qname+" from "+srvaddr+" - retrying without EDNS");
+					}
+					markNoEDNS(server_ip);
+					stats_noedns++;
+					qryh.retryWithoutEDNS(srvaddr, pkt);
+					return;
+				}
 				validresponse = (pkt.rcode() == 0);
 			}
 		}
@@ -488,25 +508,27 @@ public class ResolverService
 		qryh.handleResponse(pkt, off, srvaddr, rcvdata.size());
 	}
 
+	// Servers which don't understand EDNS are supposed to reject it with FORMERR or NOTIMPL (though some reject it with
+	// a plain FORMERR that omits the question, so we never get this far and such queries will fail).
+	// BADVERS is an extended RCODE, so it is only visible in the response's OPT RR, and we only look for that when the
+	// response has no answers, as that's the only form it can take.
+	private static boolean rejectedEDNS(PacketDNS pkt, int off)
+	{
+		int rcode = pkt.rcode();
+		if (rcode == PacketDNS.RCODE_BADFMT || rcode == PacketDNS.RCODE_NOTIMPL) return true;
+		if (rcode != 0 || pkt.hdr_anscnt != 0 || pkt.hdr_infocnt == 0) return false;
+		off = pkt.skipSection(off, PacketDNS.SECT_AUTH, pkt.hdr_authcnt);
+		if (off != -1) off = pkt.decodeEDNS(off, pkt.hdr_infocnt);
+		return (off != -1 && pkt.extendedRcode() == PacketDNS.RCODE_BADVERS);
+	}
+
 	void requestCompleted(QueryHandle qryh)
 	{
 		activereqs.remove(qryh);
 		if (qryh.qtype == ResolverDNS.QTYPE_PTR) {
 			pendingdoms_ptr.remove(qryh.qip);
-		} else if (qryh.qtype == ResolverDNS.QTYPE_NS) {
-			pendingdoms_ns.remove(qryh.qname);
-		} else if (qryh.qtype == ResolverDNS.QTYPE_MX) {
-			pendingdoms_mx.remove(qryh.qname);
-		} else if (qryh.qtype == ResolverDNS.QTYPE_SOA) {
-			pendingdoms_soa.remove(qryh.qname);
-		} else if (qryh.qtype == ResolverDNS.QTYPE_SRV) {
-			pendingdoms_srv.remove(qryh.qname);
-		} else if (qryh.qtype == ResolverDNS.QTYPE_TXT) {
-			pendingdoms_txt.remove(qryh.qname);
-		} else if (qryh.qtype == ResolverDNS.QTYPE_AAAA) {
-			pendingdoms_aaaa.remove(qryh.qname);
 		} else {
-			pendingdoms_a.remove(qryh.qname);
+			getPendingMap(qryh.qtype, qryh.qname).remove(qryh.qname);
 		}
 		if (pendingreqs.get(qryh.qid) == qryh) pendingreqs.remove(qryh.qid);
 		if (qryh.getSubQueryCount() != 0) cancel(qryh);
@@ -514,20 +536,35 @@ public class ResolverService
 	}
 
 	private ResolverAnswer lookupCache(byte qtype, ByteChars qname, ResolverAnswer answerbuf)
+	{
+		return lookupCache(qtype, qname, answerbuf, false, true);
+	}
+
+	private ResolverAnswer lookupCache(byte qtype, int qip, ResolverAnswer answerbuf)
+	{
+		return lookupCache(qtype, qip, answerbuf, false, true);
+	}
+
+	// If stale is true, this also returns expired cache entries which are still within the serve-stale window.
+	// If refresh is true, a cache hit on a popular entry which is nearing expiry triggers a refresh-ahead query. That is only
+	// done for new requests, as the cache checks of requests which are already underway happen before they have been added
+	// to the pending map, so a refresh would duplicate them.
+	private ResolverAnswer lookupCache(byte qtype, ByteChars qname, ResolverAnswer answerbuf, boolean stale, boolean refresh)
 	{
 		java.util.ArrayList<ResourceData> rrlist = null;
 		ResourceData rr = null;
 
 		if (qtype == ResolverDNS.QTYPE_NS || qtype == ResolverDNS.QTYPE_MX || qtype == ResolverDNS.QTYPE_SRV) {
-			rrlist = cachemgr.lookupList(qtype, qname);
+			rrlist = (stale ? cachemgr.lookupStaleList(qtype, qname) : cachemgr.lookupList(qtype, qname));
 			if (rrlist != null) rr = rrlist.get(0);
 		} else {
-			rr = cachemgr.lookup(qtype, qname);
+			rr = (stale ? cachemgr.lookupStale(qtype, qname) : cachemgr.lookup(qtype, qname));
 		}
 		if (rr == null) return null;
 		ResolverAnswer.STATUS sts = (rr.isNegative() ? ResolverAnswer.STATUS.NODOMAIN : ResolverAnswer.STATUS.OK);
 		if (qname == tmplightbc) qname = new ByteChars(qname, true); //make it permanent
 		answerbuf.set(sts, qtype, qname);
+		answerbuf.stale = stale;
 		if (sts == ResolverAnswer.STATUS.OK) {
 			if (rrlist != null) {
 				for (int idx = 0; idx != rrlist.size(); idx++) {
@@ -537,19 +574,147 @@ public class ResolverService
 				answerbuf.rrdata.add(rr);
 			}
 		}
+		if (refresh && cachemgr.isRefreshDue(rr)) prefetch(qtype, answerbuf.qname, 0);
 		return answerbuf;
 	}
 
-	private ResolverAnswer lookupCache(byte qtype, int qip, ResolverAnswer answerbuf)
+	private ResolverAnswer lookupCache(byte qtype, int qip, ResolverAnswer answerbuf, boolean stale, boolean refresh)
 	{
-		ResourceData rr = cachemgr.lookup(qtype, qip);
+		ResourceData rr = (stale ? cachemgr.lookupStale(qtype, qip) : cachemgr.lookup(qtype, qip));
 		if (rr == null) return null;
 		ResolverAnswer.STATUS sts = (rr.isNegative() ? ResolverAnswer.STATUS.NODOMAIN : ResolverAnswer.STATUS.OK);
 		answerbuf.set(sts, qtype, qip);
+		answerbuf.stale = stale;
 		if (sts == ResolverAnswer.STATUS.OK) answerbuf.rrdata.add(rr);
+		if (refresh && cachemgr.isRefreshDue(rr)) prefetch(qtype, null, qip);
 		return answerbuf;
 	}
 
+	boolean supportsEDNS(int server_ip)
+	{
+		Long expiry = noedns_servers.get(server_ip);
+		if (expiry == null) return true;
+		if (expiry > dsptch.getSystemTime()) return false;
+		noedns_servers.remove(server_ip);
+		return true;
+	}
+
+	// Also purges any expired entries for servers we haven't queried again, since additions are rare
+	private void markNoEDNS(int server_ip)
+	{
+		long systime = dsptch.getSystemTime();
+		java.util.Iterator<Long> it = noedns_servers.valuesIterator();
+		while (it.hasNext()) {
+			if (it.next() <= systime) it.remove();
+		}
+		noedns_servers.put(server_ip, systime + ResolverConfig.NOEDNS_TTL);
+	}
+
+	// RFC-8767 serve-stale: If a request has failed, we answer it from the expired cache entry instead, if we still have one.
+	// The given answer is overwritten with the stale answer if so, else it is left as it is and null is returned.
+	ResolverAnswer serveStale(ResolverAnswer answer)
+	{
+		if (config.getStaleWindow() == 0) return null;
+		ResolverAnswer.STATUS failure = answer.result;
+		if (failure != ResolverAnswer.STATUS.TIMEOUT && failure != ResolverAnswer.STATUS.ERROR
+				&& failure != ResolverAnswer.STATUS.BADRESPONSE) {
+			return null;
+		}
+		ResolverAnswer stale;
+		if (answer.qtype == ResolverDNS.QTYPE_PTR) {
+			stale = lookupCache(answer.qtype, answer.qip, answer, true, false);
+		} else {
+			stale = lookupCache(answer.qtype, answer.qname, answer, true, false);
+		}
+		if (stale == null) return null;
+		stats_stale++;
+		if (logger.isActive(LEVEL.TRC)) logger.trace(LOGLBL+"Serving stale answer after "+failure+" - "+stale);
+		return stale;
+	}
+
+	// Sets a deadline for answering this request's external callers, if we have a stale answer to give them
+	private void startStaleTimer(QueryHandle qryh)
+	{
+		if (config.getStaleWindow() == 0 || config.getStaleDeadline() == 0) return;
+		boolean have_stale;
+		if (qryh.qtype == ResolverDNS.QTYPE_PTR) {
+			have_stale = (cachemgr.lookupStale(qryh.qtype, qryh.qip) != null);
+		} else if (qryh.qtype == ResolverDNS.QTYPE_NS || qryh.qtype == ResolverDNS.QTYPE_MX || qryh.qtype == ResolverDNS.QTYPE_SRV) {
+			have_stale = (cachemgr.lookupStaleList(qryh.qtype, qryh.qname) != null);
+		} else {
+			have_stale = (cachemgr.lookupStale(qryh.qtype, qryh.qname) != null);
+		}
+		if (have_stale) qryh.startStaleTimer();
+	}
+
+	// The request has not completed within the serve-stale deadline, so give its external callers the stale answer, while
+	// the query carries on in the background and refreshes the cache when it completes.
+	void staleDeadlineExpired(QueryHandle qryh)
+	{
+		ResolverAnswer answerbuf = allocAnswerBuf();
+		try {
+			ResolverAnswer answer;
+			if (qryh.qtype == ResolverDNS.QTYPE_PTR) {
+				answer = lookupCache(qryh.qtype, qryh.qip, answerbuf, true, false);
+			} else {
+				answer = lookupCache(qryh.qtype, qryh.qname, answerbuf, true, false);
+			}
+			if (answer == null) return;
+			stats_stale++;
+			if (logger.isActive(LEVEL.TRC)) logger.trace(LOGLBL+"Serving stale answer after deadline - "+answer);
+			qryh.notifyExternalCallers(answer);
+		} finally {
+			freeAnswerBuf(answerbuf);
+		}
+	}
+
+	// Issues a refresh-ahead query for a popular cache entry, while the existing entry continues to be served.
+	// The query has no callers, and its answer simply replaces the cache entry when it arrives, but any callers who
+	// request this name after the old entry has expired will be added to it as usual, rather than issuing a new query.
+	private void prefetch(byte qtype, ByteChars qname, int qip)
+	{
+		QueryHandle qryh;
+		if (qtype == ResolverDNS.QTYPE_PTR) {
+			if (pendingdoms_ptr.containsKey(qip)) return;
+			qryh = qrystore.extract().init(qtype, qip);
+		} else {
+			if (getPendingMap(qtype, qname).containsKey(qname)) return;
+			qryh = qrystore.extract().init(qtype, qname);
+		}
+		qryh.setPrefetch();
+		activereqs.add(qryh);
+		stats_prefetch++;
+		if (logger.isActive(LEVEL.TRC2)) logger.log(LEVEL.TRC2, LOGLBL+"Refresh-ahead for "+ResolverDNS.getQTYPE(qtype)+"/"+qryh.qname);
+
+		ResolverAnswer answerbuf = allocAnswerBuf();
+		try {
+			if (issueQuery(qryh, 0, answerbuf) != null) {
+				// failed immediately, so leave the existing cache entry to expire as normal
+				requestCompleted(qryh);
+				return;
+			}
+		} finally {
+			freeAnswerBuf(answerbuf);
+		}
+		if (qtype == ResolverDNS.QTYPE_PTR) {
+			pendingdoms_ptr.put(qip, qryh);
+		} else {
+			getPendingMap(qtype, qryh.qname).put(qryh.qname, qryh);
+		}
+	}
+
+	private HashedMap<ByteChars, QueryHandle> getPendingMap(byte qtype, ByteChars qname)
+	{
+		if (qtype == ResolverDNS.QTYPE_A) return pendingdoms_a;
+		if (qtype == ResolverDNS.QTYPE_NS) return pendingdoms_ns;
+		if (qtype == ResolverDNS.QTYPE_MX) return pendingdoms_mx;
+		if (qtype == ResolverDNS.QTYPE_SOA) return pendingdoms_soa;
+		if (qtype == ResolverDNS.QTYPE_SRV) return pendingdoms_srv;
+		if (qtype == ResolverDNS.QTYPE_TXT) return pendingdoms_txt;
+		if (qtype == ResolverDNS.QTYPE_AAAA) return pendingdoms_aaaa;
+		throw new UnsupportedOperationException("qtype="+qtype+" - "+qname);
+	}
+
 	// Throwing here results in a hanging request, but since rewinding past the root domain must be a bug, that's
 	// probably a better outcome than returning Answer=ERROR/NODOM
 	java.net.InetSocketAddress getNameserver(byte qtype, ByteChars qname)
@@ -557,17 +722,7 @@ public class ResolverService
 		java.net.InetSocketAddress nsaddr = null;
 		ByteChars dom = getParentDomain(qtype, qname);
 		if (dom.length() == 0) throw new IllegalStateException("DNS-Resolver: Root servers are missing!!");
-		do {
-			nsaddr = cachemgr.lookupNameServer(dom);
-			if (nsaddr == null || nsaddr.getPort() != 0) break;
-			int dotcnt = StringOps.count(dom, ResolverDNS.DOMDLM);
-			if (dotcnt == 0) break;
-			if (dotcnt == 1) {
-				// certain TLDs are guaranteed to only delegate one level down
-				if (dom.endsWith(".com") || dom.endsWith(".org") || dom.endsWith(".net")) break;
-			}
-			dom = getParentDomain((byte)0, dom);
-		} while (nsaddr.getPort() == 0);
+		nsaddr = cachemgr.lookupEnclosingNameServer(dom);
 
 		if (nsaddr == null) {
 			dom = getParentDomain(qtype, qname);
@@ -595,6 +750,12 @@ public class ResolverService
 	@Override
 	public void timerIndication(TimerNAF t, Dispatcher d)
 	{
+		if (t.getType() == TMR_SNAPSHOT) {
+			tmr_snapshot = null;
+			saveSnapshot(false);
+			tmr_snapshot = dsptch.setTimer(config.getSnapshotInterval(), TMR_SNAPSHOT, this);
+			return;
+		}
 		tmr_wrapblocked = null;
 		int cnt1 = wrapblocked.size();
 		QueryHandle[] arr = wrapblocked.toArray(new QueryHandle[wrapblocked.size()]); //in case of concurrent mods
@@ -608,12 +769,48 @@ public class ResolverService
 			}
 		}
 		LEVEL lvl = LEVEL.TRC;
-		if (logger.isActive(lvl)) {
+		if (WRAP_LIMITER.isAllowed(logger, lvl)) {
 			String txt = LOGLBL+cnt1+" requests blocked by QID-wraparound";
 			if (cnt1 != wrapblocked.size()) txt += " - reduced to "+wrapblocked.size();
 			logger.log(lvl, txt);
 		}
-		if (wrapblocked.size() != 0) tmr_wrapblocked = dsptch.setTimer(config.getWrapRetryFreq(), 0, this);
+		if (wrapblocked.size() != 0) tmr_wrapblocked = dsptch.setTimer(config.getWrapRetryFreq(), TMR_WRAPBLOCKED, this);
+	}
+
+	private void loadSnapshot()
+	{
+		long time1 = System.currentTimeMillis();
+		try {
+			int cnt = snapshot.load(cachemgr, dsptch.getSystemTime());
+			if (cnt == -1) {
+				logger.info(LOGLBL+"No cache snapshot found at "+snapshot.getFile().getAbsolutePath());
+			} else {
+				logger.info(LOGLBL+"Loaded cache entries="+cnt+" from snapshot="+snapshot.getFile().getAbsolutePath()
+						+" - time="+(System.currentTimeMillis() - time1)+"ms");
+			}
+		} catch (Exception ex) {
+			logger.log(LEVEL.WARN, ex, false, LOGLBL+"Failed to load cache snapshot="+snapshot.getFile().getAbsolutePath());
+		}
+	}
+
+	// The snapshot is captured here in the Dispatcher thread, but unless sync is set, it's written to disk in the background
+	private void saveSnapshot(boolean sync)
+	{
+		Throwable ex = snapshot.takeWriteError();
+		if (ex != null) logger.log(LEVEL.WARN, ex, false, LOGLBL+"Failed to write cache snapshot="+snapshot.getFile().getAbsolutePath());
+		try {
+			CacheSnapshot.Image img = snapshot.capture(cachemgr, dsptch.getSystemTime());
+			if (sync) {
+				img.write();
+				logger.info(LOGLBL+"Saved cache entries="+img.getEntryCount()+" to snapshot="+snapshot.getFile().getAbsolutePath()
+						+" - size="+img.size());
+			} else {
+				dsptch.getApplicationContext().getThreadpool().execute(img);
+				if (logger.isActive(LEVEL.TRC)) logger.trace(LOGLBL+"Saving cache entries="+img.getEntryCount()+" to snapshot - size="+img.size());
+			}
+		} catch (Exception ex2) {
+			logger.log(LEVEL.WARN, ex2, false, LOGLBL+"Failed to save cache snapshot="+snapshot.getFile().getAbsolutePath());
+		}
 	}
 
 	ByteChars buildArpaDomain(int ip)
@@ -677,8 +874,10 @@ public class ResolverService
 		sb.append(", MX=").append(stats_cachemiss[ResolverDNS.QTYPE_MX]);
 		sb.append(", SRV=").append(stats_cachemiss[ResolverDNS.QTYPE_SRV]);
 		sb.append(", TXT=").append(stats_cachemiss[ResolverDNS.QTYPE_TXT]);
+		sb.append(eol).append("Refresh-ahead queries=").append(stats_prefetch).append("; Stale answers=").append(stats_stale);
 		sb.append(eol).append("UDP send/receive=").append(stats_udpxmt).append('/').append(stats_udprcv);
 		sb.append(" - truncated=").append(stats_trunc).append(", timeouts=").append(stats_tmt);
+		sb.append(", EDNS-rejected=").append(stats_noedns).append(" (servers=").append(noedns_servers.size()).append(')');
 		sb.append(eol).append("TCP connections=").append(stats_tcpconns-stats_tcpfail).append('/').append(stats_tcpconns);
 		if (wrapblocked.size() != 0) sb.append(eol).append(wrapblocked.size()).append(" queries blocked by QID wraparound");
 		sb.append(eol);
@@ -19,6 +19,10 @@ abstract public class ResourceData
 	// it represents the absolute system time (in milliseconds) at which the RR expires.
 	private long ttl;
 
+	// cache bookkeeping, which supports the refresh-ahead of popular cache entries
+	private long cachetime; //system time at which this RR was cached
+	private int hits; //number of cache hits since cachetime, or since the last refresh-ahead
+
 	public abstract int rrType(); //Resolver.QTYPE_x values
 	public int rrClass() {return rrclass;} //Packet.QCLASS_x values
 
@@ -34,6 +38,11 @@ abstract public class ResourceData
 	void setExpiry(long expiry) {ttl = expiry;}
 	void setExpiry(int rawttl, long systime) {ttl = (rawttl * 1000L) + systime;}
 
+	long getCacheTime() {return cachetime;}
+	void setCacheTime(long systime) {cachetime = systime; hits = 0;}
+	int recordHit() {return ++hits;}
+	void resetHits() {hits = 0;}
+
 	boolean isNegative() {return (rrname == null);}
 	boolean isExpired(long cutoff) {return (ttl < cutoff);}
 
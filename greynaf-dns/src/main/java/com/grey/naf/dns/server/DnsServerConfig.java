@@ -13,10 +13,12 @@ public class DnsServerConfig
 {
 	private final ConcurrentListenerConfig listenerConfig;
 	private final boolean recursionOffered;
+	private final int staleTTL; //TTL in seconds, for RRs in stale answers (RFC-8767)
 
 	public DnsServerConfig(Builder bldr) {
 		listenerConfig = bldr.getListenerConfig().build();
 		recursionOffered = bldr.recursionOffered;
+		staleTTL = bldr.staleTTL;
 	}
 
 	public ConcurrentListenerConfig getListenerConfig() {
@@ -27,10 +29,15 @@ public class DnsServerConfig
 		return recursionOffered;
 	}
 
+	public int getStaleTTL() {
+		return staleTTL;
+	}
+
 
 	public static class Builder {
 		private ConcurrentListenerConfig.Builder<?> listenerConfig = defaultListener();
 		private boolean recursionOffered;
+		private int staleTTL = 30;
 
 		public ConcurrentListenerConfig.Builder<?> getListenerConfig() {
 			return listenerConfig;
@@ -39,6 +46,7 @@ public class DnsServerConfig
 		public Builder withXmlConfig(XmlConfig cfg, NAFConfig nafConfig) {
 			XmlConfig lxmlcfg = cfg.getSection("listener");
 			getListenerConfig().withXmlConfig(lxmlcfg, nafConfig);
+			staleTTL = (int)(cfg.getTime("@stale_ttl", staleTTL * 1000L) / 1000);
 			return this;
 		}
 
@@ -47,6 +55,11 @@ public class DnsServerConfig
 			return this;
 		}
 
+		public Builder withStaleTTL(int v) {
+			staleTTL = v;
+			return this;
+		}
+
 		public DnsServerConfig build() {
 			return new DnsServerConfig(this);
 		}
@@ -9,6 +9,7 @@ import com.grey.base.utils.ByteArrayRef;
 import com.grey.base.utils.ByteChars;
 import com.grey.naf.reactor.Dispatcher;
 import com.grey.naf.reactor.DispatcherRunnable;
+import com.grey.naf.dns.resolver.ResolverConfig;
 import com.grey.naf.dns.resolver.ResolverDNS;
 import com.grey.naf.dns.resolver.engine.PacketDNS;
 import com.grey.naf.dns.resolver.engine.ResourceData;
@@ -25,12 +26,19 @@ public class ServerDNS implements DispatcherRunnable
 	public interface DNSQuestionResolver
 	{
 		public void dnsResolveQuestion(int qid, byte qtype, ByteChars qname, boolean recursion_desired, java.net.InetSocketAddress remote_addr, Object questionCallbackParam) throws java.io.IOException;
+
+		// Responders which support EDNS should override this, and pass ednsUdpSize back to sendResponse().
+		// It is the UDP payload size advertised by the client, and is zero if the query did not contain an EDNS OPT RR.
+		default public void dnsResolveQuestion(int qid, byte qtype, ByteChars qname, boolean recursion_desired, int ednsUdpSize, java.net.InetSocketAddress remote_addr, Object questionCallbackParam) throws java.io.IOException {
+			dnsResolveQuestion(qid, qtype, qname, recursion_desired, remote_addr, questionCallbackParam);
+		}
 	}
 
 	// use same NIO/socket property names as the Resolver API
 	static final int PKTSIZ_UDP = SysProps.get("greynaf.dns.maxudp", PacketDNS.UDPMAXMSG);
 	static final int PKTSIZ_TCP = SysProps.get("greynaf.dns.maxtcp", 5*PKTSIZ_UDP);
 	static final int UDPSOCKBUFSIZ = SysProps.get("greynaf.dns.sockbuf", PacketDNS.UDPMAXMSG * 128);
+	static final int EDNS_UDPSIZE = ResolverConfig.ednsUdpSize(SysProps.get("greynaf.dns.ednsudp", PacketDNS.EDNS_UDPSIZE)); //max EDNS response size, zero disables
 	static final boolean DIRECTNIOBUFS = com.grey.naf.BufferGenerator.directniobufs;
 	static final Logger.LEVEL DEBUGLVL = Logger.LEVEL.TRC2;
 
@@ -43,6 +51,7 @@ public class ServerDNS implements DispatcherRunnable
 	private final ConcurrentListener listenerTCP;
 	private final TransportUDP transportUDP;
 	private final boolean recursionOffered;
+	private final int staleTTL;
 
 	// this is just a temporary work area, pre-allocated for efficiency
 	private final PacketDNS dnspkt;
@@ -59,11 +68,12 @@ public class ServerDNS implements DispatcherRunnable
 		responder = r;
 		queryParser = new QueryParser(d.getLogger());
 		recursionOffered = cfg.getRecursionOffered();
-		dnspkt = new PacketDNS(Math.max(PKTSIZ_TCP, PKTSIZ_UDP), DIRECTNIOBUFS, 0, dsptch);
+		dnspkt = new PacketDNS(Math.max(PKTSIZ_TCP, Math.max(PKTSIZ_UDP, EDNS_UDPSIZE)), DIRECTNIOBUFS, 0, dsptch);
+		staleTTL = cfg.getStaleTTL();
 
 		listenerTCP = ConcurrentListener.create(dsptch, this, null, cfg.getListenerConfig());
 		transportUDP = new TransportUDP(d, this, listenerTCP.getIP(),listenerTCP.getPort());
-		dsptch.getLogger().info("DNS-Server: Port="+cfg.getListenerConfig().getPort()+", directbufs="+DIRECTNIOBUFS+"; udpmax="+PKTSIZ_UDP+"; tcpmax="+PKTSIZ_TCP);
+		dsptch.getLogger().info("DNS-Server: Port="+cfg.getListenerConfig().getPort()+", directbufs="+DIRECTNIOBUFS+"; udpmax="+PKTSIZ_UDP+"; tcpmax="+PKTSIZ_TCP+"; EDNS="+EDNS_UDPSIZE+"; stale-TTL="+cfg.getStaleTTL());
 
 		if (IGNORE_QTRAIL) dsptch.getLogger().info("DNS-Server: Will ignore trailing bytes in incoming queries");
 	}
@@ -114,7 +124,7 @@ public class ServerDNS implements DispatcherRunnable
 			return;
 		}
 
-		//ignore AdditionalInfo RRs (a common occurrence is qtype=41, for EDNS OPT)
+		//ignore AdditionalInfo RRs, apart from noting any EDNS OPT RR (qtype=41)
 		if (dnspkt.getAnswerCount() + dnspkt.getAuthorityCount() != 0
 				|| dnspkt.getQuestionCount() != 1
 				|| dnspkt.rcode() != 0
@@ -128,7 +138,8 @@ public class ServerDNS implements DispatcherRunnable
 					null, null, null, remote_addr, tcp);
 			return;
 		}
-		if (dnspkt.getInfoCount() != 0) off = dnspkt.skipSection(off, PacketDNS.SECT_INFO, dnspkt.getInfoCount());
+		if (dnspkt.getInfoCount() != 0) off = dnspkt.decodeEDNS(off, dnspkt.getInfoCount());
+		int edns_udpsize = (EDNS_UDPSIZE == 0 ? 0 : dnspkt.getEdnsUdpSize());
 
 		if (!IGNORE_QTRAIL) {
 			int excess = rcvdata.limit() - off;
@@ -141,9 +152,15 @@ public class ServerDNS implements DispatcherRunnable
 			}
 		}
 
+		if (edns_udpsize != 0 && dnspkt.getEdnsVersion() != 0) {
+			sendResponse(dnspkt.getQID(), qtype, qname, PacketDNS.RCODE_BADVERS, is_auth, dnspkt.recursionDesired(),
+					null, null, null, edns_udpsize, remote_addr, tcp);
+			return;
+		}
+
 		//the question appears valid, so answer it
 		try {
-			responder.dnsResolveQuestion(dnspkt.getQID(), qtype, qname, dnspkt.recursionDesired(), remote_addr, tcp);
+			responder.dnsResolveQuestion(dnspkt.getQID(), qtype, qname, dnspkt.recursionDesired(), edns_udpsize, remote_addr, tcp);
 		} catch (Throwable ex) {
 			dsptch.getLogger().log(Logger.LEVEL.ERR, ex, true, "DNS-Server failed to handle DNS query="+dnspkt.getQID()
 				+"/"+qtype+"/"+qname+" from "+remote_addr);
@@ -158,9 +175,37 @@ public class ServerDNS implements DispatcherRunnable
 			boolean isAuth, boolean recursionDesired,
 			ResourceData[] ans, ResourceData[] auth, ResourceData[] info,
 			java.net.InetSocketAddress remoteAddr, Object questionCallbackParam) throws java.io.IOException
+	{
+		return sendResponse(qid, qtype, qname, rcode, isAuth, recursionDesired, ans, auth, info, 0, remoteAddr, questionCallbackParam);
+	}
+
+	/**
+	 * If ednsUdpSize is non-zero, the response echoes an EDNS OPT RR and UDP responses are only truncated if they exceed the
+	 * client's advertised payload size (capped by our own).
+	 */
+	public boolean sendResponse(int qid, byte qtype, ByteChars qname, int rcode,
+			boolean isAuth, boolean recursionDesired,
+			ResourceData[] ans, ResourceData[] auth, ResourceData[] info, int ednsUdpSize,
+			java.net.InetSocketAddress remoteAddr, Object questionCallbackParam) throws java.io.IOException
+	{
+		return sendResponse(qid, qtype, qname, rcode, isAuth, recursionDesired, ans, auth, info, ednsUdpSize, false, remoteAddr, questionCallbackParam);
+	}
+
+	/**
+	 * If isStale is true, this is a serve-stale answer (RFC-8767) and any expired RRs are sent with the configured stale TTL.
+	 * Otherwise expired RRs are sent with a TTL of zero, as they are only being returned within the resolver's grace period.
+	 */
+	public boolean sendResponse(int qid, byte qtype, ByteChars qname, int rcode,
+			boolean isAuth, boolean recursionDesired,
+			ResourceData[] ans, ResourceData[] auth, ResourceData[] info, int ednsUdpSize, boolean isStale,
+			java.net.InetSocketAddress remoteAddr, Object questionCallbackParam) throws java.io.IOException
 	{
 		boolean is_tcp = (questionCallbackParam != null);
+		boolean edns = (ednsUdpSize != 0 && EDNS_UDPSIZE != 0);
+		int udpmax = (edns ? Math.min(Math.max(ednsUdpSize, PacketDNS.UDPMAXMSG), EDNS_UDPSIZE) : PKTSIZ_UDP);
+		int optcnt = (edns ? 1 : 0);
 		dnspkt.resetEncoder(is_tcp, COMPRESS_NAMES);
+		dnspkt.setStaleTTL(isStale ? staleTTL : 0);
 		dnspkt.setResponse();
 		dnspkt.opcode(PacketDNS.OPCODE_QRY);
 		dnspkt.rcode(rcode);
@@ -170,23 +215,26 @@ public class ServerDNS implements DispatcherRunnable
 		int anscnt = (ans==null?0:ans.length);
 		int authcnt = (auth==null?0:auth.length);
 		int infocnt = (info==null?0:info.length);
-		dnspkt.setHeader(qid, 1, anscnt, authcnt, infocnt);
+		dnspkt.setHeader(qid, 1, anscnt, authcnt, infocnt + optcnt);
 		int off = dnspkt.encodeHeader();
 		off = dnspkt.encodeQuestion(off, qtype, qname);
 		int off_ans = off;
 		if (ans != null) off = dnspkt.encodeSection(off, PacketDNS.SECT_ANSWERS, ans);
 		if (auth != null) off = dnspkt.encodeSection(off, PacketDNS.SECT_AUTH, auth);
 		if (info != null) off = dnspkt.encodeSection(off, PacketDNS.SECT_INFO, info);
+		if (edns) off = dnspkt.encodeOPT(off, EDNS_UDPSIZE, rcode);
 		java.nio.ByteBuffer niobuf = dnspkt.completeEncoding(off);
 		int rsplen = niobuf.limit();
 
-		// check if a UDP response needs to be truncated, and if so strip all the result data for simplicity
-		if (!is_tcp && rsplen > PKTSIZ_UDP) {
+		// check if a UDP response needs to be truncated, and if so strip all the result data (except OPT) for simplicity
+		if (!is_tcp && rsplen > udpmax) {
 			dnspkt.setTruncated();
 			anscnt = authcnt = infocnt = 0;
-			dnspkt.setHeader(qid, 1, anscnt, authcnt, infocnt);
+			dnspkt.setHeader(qid, 1, anscnt, authcnt, optcnt);
 			dnspkt.encodeHeader(); //re-encode the header
-			niobuf = dnspkt.completeEncoding(off_ans); //discard everything after the question
+			off = off_ans; //discard everything after the question
+			if (edns) off = dnspkt.encodeOPT(off, EDNS_UDPSIZE, rcode);
+			niobuf = dnspkt.completeEncoding(off);
 			rsplen = niobuf.limit();
 		}
 
@@ -194,7 +242,7 @@ public class ServerDNS implements DispatcherRunnable
 			dsptch.getLogger().log(ServerDNS.DEBUGLVL, "DNS-Server sending "+(is_tcp?"TCP":"UDP")+" response="
 					+dnspkt.getQID()+"/"+ResolverDNS.getQTYPE(qtype)+"/"+qname
 					+" with answer="+anscnt+"/"+authcnt+"/"+infocnt+"/rcode="+rcode+" to "+remoteAddr
-					+" - size="+niobuf.limit()+", auth="+isAuth+(dnspkt.isTruncated()?"/truncated":""));
+					+" - size="+niobuf.limit()+", auth="+isAuth+(dnspkt.isTruncated()?"/truncated":"")+(edns?", EDNS="+ednsUdpSize:""));
 		}
 		if (is_tcp) {
 			((TransportTCP)questionCallbackParam).sendResponse(niobuf);
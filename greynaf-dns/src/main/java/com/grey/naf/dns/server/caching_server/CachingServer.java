@@ -56,8 +56,13 @@ public class CachingServer implements DNSQuestionResolver, ResolverDNS.Client, D
 
 	@Override
 	public void dnsResolveQuestion(int qid, byte qtype, ByteChars qname, boolean recursion_desired, InetSocketAddress remote_addr, Object questionCallbackParam) {
+		dnsResolveQuestion(qid, qtype, qname, recursion_desired, 0, remote_addr, questionCallbackParam);
+	}
+
+	@Override
+	public void dnsResolveQuestion(int qid, byte qtype, ByteChars qname, boolean recursion_desired, int ednsUdpSize, InetSocketAddress remote_addr, Object questionCallbackParam) {
 		QueryParams params = qryParamsPool.extract();
-		params.reset(qid, qtype, qname, recursion_desired, remote_addr, questionCallbackParam);
+		params.reset(qid, qtype, qname, recursion_desired, ednsUdpSize, remote_addr, questionCallbackParam);
 		ResolverAnswer answer = resolver.resolve(qtype, qname, this, params, 0);
 		if (answer != null) {
 			issueResponse(answer, params);
@@ -74,7 +79,7 @@ public class CachingServer implements DNSQuestionResolver, ResolverDNS.Client, D
 		ResourceData[] rr = answer.rrdata.toArray(new ResourceData[answer.rrdata.size()]);
 		try {
 			boolean trunc = server.sendResponse(params.qid, params.qtype, params.qname, rcode, false, params.recursionDesired, rr, null, null,
-													params.remoteAddr, params.questionCallbackParam);
+													params.ednsUdpSize, answer.isStale(), params.remoteAddr, params.questionCallbackParam);
 			if (trunc) resolver.getDispatcher().getLogger().warn("DNS-Server truncated response for "+params+" => "+answer);
 		} catch (Exception ex) {
 			throw new NAFException("DNS-Server failed to issue response: "+params+" => "+answer, ex);
@@ -89,14 +94,16 @@ public class CachingServer implements DNSQuestionResolver, ResolverDNS.Client, D
 		private byte qtype;
 		private ByteChars qname;
 		private boolean recursionDesired;
+		private int ednsUdpSize;
 		private InetSocketAddress remoteAddr;
 		private Object questionCallbackParam;
 
-		public QueryParams reset(int id, byte type, ByteChars name, boolean recursion, InetSocketAddress remote, Object param) {
+		public QueryParams reset(int id, byte type, ByteChars name, boolean recursion, int edns, InetSocketAddress remote, Object param) {
 			this.qid = id;
 			this.qtype = type;
 			this.qname = name;
 			this.recursionDesired = recursion;
+			this.ednsUdpSize = edns;
 			this.remoteAddr = remote;
 			this.questionCallbackParam = param;
 			return this;
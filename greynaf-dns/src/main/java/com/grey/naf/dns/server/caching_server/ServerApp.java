@@ -39,6 +39,7 @@ public class ServerApp
 		ResolverConfig cfgResolver = new ResolverConfig.Builder()
 				.withLocalNameServers(options.getNameServers())
 				.withAlwaysTCP(options.isAlwaysTCP())
+				.withStaleWindow(options.getStaleWindow())
 				.build();
 
 		DispatcherConfig dcfg = new DispatcherConfig.Builder()
@@ -5,14 +5,16 @@
 package com.grey.naf.dns.server.caching_server;
 
 import com.grey.base.utils.CommandParser;
+import com.grey.base.utils.TimeOps;
 import com.grey.naf.dns.resolver.engine.PacketDNS;
 
 public class ServerOptions extends CommandParser.OptionsHandler {
-	private static final String[] opts = new String[]{"port:", "nameservers:", "tcp"};
+	private static final String[] opts = new String[]{"port:", "nameservers:", "tcp", "stale:"};
 
 	private int port = PacketDNS.INETPORT;
 	private String[] nameServers;
 	private boolean alwaysTCP;
+	private long staleWindow;
 
 	public ServerOptions() {
 		super(opts, 0, 0);
@@ -33,6 +35,8 @@ public class ServerOptions extends CommandParser.OptionsHandler {
 			port = Integer.parseInt(val);
 		} else if (opt.equals("nameservers")) {
 			nameServers = (val.equals("-") ? null : val.split("|"));
+		} else if (opt.equals("stale")) {
+			staleWindow = TimeOps.parseMilliTime(val);
 		} else {
 			super.setOption(opt, val);
 		}
@@ -40,8 +44,9 @@ public class ServerOptions extends CommandParser.OptionsHandler {
 
 	@Override
 	public String displayUsage() {
-		String txt = "\t-port num -nameservers pipe-separated-hostport-list -tcp";
+		String txt = "\t-port num -nameservers pipe-separated-hostport-list -tcp -stale time-period";
 		txt += "\nAll the params are optional";
+		txt += "\nThe -stale option enables serve-stale answers, using expired cache entries up to the given age (eg. 1d)";
 		return txt;
 	}
 
@@ -56,4 +61,8 @@ public class ServerOptions extends CommandParser.OptionsHandler {
 	public boolean isAlwaysTCP() {
 		return alwaysTCP;
 	}
+
+	public long getStaleWindow() {
+		return staleWindow;
+	}
 }
\ No newline at end of file
@@ -20,6 +20,7 @@ import com.grey.naf.NAFConfig;
 import com.grey.naf.dns.resolver.ResolverConfig;
 import com.grey.naf.dns.resolver.ResolverDNS;
 import com.grey.naf.dns.resolver.engine.ResolverAnswer;
+import com.grey.naf.dns.resolver.engine.ResourceData;
 import com.grey.naf.reactor.Dispatcher;
 import com.grey.naf.reactor.TimerNAF;
 import com.grey.naf.reactor.config.DispatcherConfig;
@@ -49,6 +50,7 @@ public class ResolverTest
 	private final AtomicInteger cnt_dnsrequests = new AtomicInteger();
 	private final AtomicInteger cnt_dnscallbacks = new AtomicInteger();
 	private boolean callback_error;
+	private String extra_cfg; //additional dnsresolver config
 	protected String dispatcher_name;
 
 	@org.junit.Rule
@@ -193,6 +195,132 @@ public class ResolverTest
 		validateFinalState(resolver1);
 	}
 
+	// Upstream server only answers the first query for this host, so when we age the cached answer and query it again, the
+	// query times out and we should get the stale answer instead.
+	@org.junit.Test
+	public void testServeStale() throws java.io.IOException
+	{
+		execServeStale("failure."+TestServerDNS.STALEDOMAIN, 0);
+	}
+
+	// As above, but the stale answer should be returned at the deadline, rather than waiting for the query to time out
+	@org.junit.Test
+	public void testServeStaleDeadline() throws java.io.IOException
+	{
+		execServeStale("deadline."+TestServerDNS.STALEDOMAIN, 300);
+	}
+
+	// A popular cache entry which is nearing expiry should be refreshed by a single background query while we carry on
+	// serving it, and callers who arrive after it has expired should join that query.
+	@org.junit.Test
+	public void testRefreshAhead() throws java.io.IOException
+	{
+		org.junit.Assume.assumeTrue(mockserver != null);
+		extra_cfg = "<prefetch hits=\"3\" threshold=\"50\"/>";
+		Dispatcher dsptch = createResolver(0);
+		ResolverDNS resolver = dsptch.getNamedItem(ResolverDNS.class.getName(), null);
+		String hostname = "www."+TestServerDNS.PREFETCHDOMAIN;
+		ByteChars bc = new ByteChars(hostname);
+
+		ResolverDNS.Client client = new TestClient() {
+			@Override
+			void handleAnswer(Dispatcher d, ResolverAnswer answer, int cbnum) throws IOException {
+				assertAnswer(ResolverAnswer.STATUS.OK, ResolverDNS.QTYPE_A, 0, answer);
+				org.junit.Assert.assertFalse(answer.isStale());
+				if (cbnum != 1) {
+					// the prefetch has answered the caller who joined it
+					org.junit.Assert.assertEquals(2, cbnum);
+					stopWhenIdle(d, resolver);
+					return;
+				}
+				d.setTimer(0, 0, (tmr, d2) -> {
+					// Age the cached answer to 2/3 of its lifetime, past the threshold. This also resets its hit count.
+					ResolverAnswer ans = resolver.resolveHostname(bc, this, null, ResolverDNS.FLAG_NOQRY);
+					org.junit.Assert.assertEquals(ResolverAnswer.STATUS.OK, ans.result);
+					ResourceData rr = ans.get(0);
+					long systime = d2.getSystemTime();
+					setCacheTime(rr, systime - (rr.getExpiry() - systime) * 2);
+
+					// the cached answer is returned synchronously, and the third hit issues the prefetch
+					for (int loop = 1; loop <= 4; loop++) {
+						ans = resolver.resolveHostname(bc, this, null, 0);
+						assertAnswer(ResolverAnswer.STATUS.OK, ResolverDNS.QTYPE_A, rr.getIP(), ans);
+						org.junit.Assert.assertFalse(ans.isStale());
+						org.junit.Assert.assertEquals(loop < 3 ? 0 : 1, getResolverStat(resolver, "stats_prefetch"));
+					}
+
+					// once the entry has expired, new callers join the prefetch rather than issuing another query
+					setExpiry(rr, systime - TimeOps.MSECS_PER_MINUTE * 2);
+					ans = resolver.resolveHostname(bc, this, null, 0);
+					org.junit.Assert.assertNull(ans);
+				});
+			}
+		};
+		dsptch.setTimer(0, 0, (tmr, d) -> org.junit.Assert.assertNull(resolver.resolveHostname(bc, client, null, 0)));
+
+		dsptch.start();
+		Dispatcher.STOPSTATUS stopsts = dsptch.waitStopped(TimeOps.MSECS_PER_MINUTE, true);
+		org.junit.Assert.assertEquals(Dispatcher.STOPSTATUS.STOPPED, stopsts);
+		org.junit.Assert.assertTrue(dsptch.completedOK());
+		org.junit.Assert.assertFalse(callback_error);
+		org.junit.Assert.assertEquals(2, cnt_dnscallbacks.get());
+		org.junit.Assert.assertEquals(1, getResolverStat(resolver, "stats_prefetch"));
+		org.junit.Assert.assertEquals(2, mockserver.getQueryCount(ResolverDNS.QTYPE_A, hostname)); //initial query and prefetch
+		validateFinalState(resolver);
+	}
+
+	private void execServeStale(String hostname, long deadline) throws java.io.IOException
+	{
+		org.junit.Assume.assumeTrue(mockserver != null);
+		extra_cfg = "<servestale window=\"1h\" deadline=\""+deadline+"\"/>";
+		Dispatcher dsptch = createResolver(0);
+		ResolverDNS resolver = dsptch.getNamedItem(ResolverDNS.class.getName(), null);
+		ByteChars bc = new ByteChars(hostname);
+		java.util.concurrent.atomic.AtomicLong reqtime = new java.util.concurrent.atomic.AtomicLong();
+		java.util.concurrent.atomic.AtomicInteger stale_ip = new java.util.concurrent.atomic.AtomicInteger();
+
+		ResolverDNS.Client client = new TestClient() {
+			@Override
+			void handleAnswer(Dispatcher d, ResolverAnswer answer, int cbnum) throws IOException {
+				if (cbnum == 1) {
+					assertAnswer(ResolverAnswer.STATUS.OK, ResolverDNS.QTYPE_A, 0, answer);
+					org.junit.Assert.assertFalse(answer.isStale());
+					d.setTimer(0, 0, (tmr, d2) -> {
+						// expire the cached answer (allowing for lookupMinTTL) and then repeat the query
+						ResolverAnswer ans = resolver.resolveHostname(bc, this, null, ResolverDNS.FLAG_NOQRY);
+						org.junit.Assert.assertEquals(ResolverAnswer.STATUS.OK, ans.result);
+						stale_ip.set(ans.get(0).getIP());
+						setExpiry(ans.get(0), d2.getSystemTime() - TimeOps.MSECS_PER_MINUTE * 2);
+						reqtime.set(System.currentTimeMillis());
+						ans = resolver.resolveHostname(bc, this, null, 0);
+						org.junit.Assert.assertNull(ans);
+					});
+					return;
+				}
+				long elapsed = System.currentTimeMillis() - reqtime.get();
+				assertAnswer(ResolverAnswer.STATUS.OK, ResolverDNS.QTYPE_A, stale_ip.get(), answer);
+				org.junit.Assert.assertTrue(answer.isStale());
+				if (deadline == 0) {
+					org.junit.Assert.assertTrue("elapsed="+elapsed, elapsed >= 1900); //waited for the query to time out
+				} else {
+					org.junit.Assert.assertTrue("elapsed="+elapsed, elapsed < 1900);
+				}
+				stopWhenIdle(d, resolver); //the query carries on after the deadline, but can't call us back again
+			}
+		};
+		dsptch.setTimer(0, 0, (tmr, d) -> org.junit.Assert.assertNull(resolver.resolveHostname(bc, client, null, 0)));
+
+		dsptch.start();
+		Dispatcher.STOPSTATUS stopsts = dsptch.waitStopped(TimeOps.MSECS_PER_MINUTE, true);
+		org.junit.Assert.assertEquals(Dispatcher.STOPSTATUS.STOPPED, stopsts);
+		org.junit.Assert.assertTrue(dsptch.completedOK());
+		org.junit.Assert.assertFalse(callback_error);
+		org.junit.Assert.assertEquals(2, cnt_dnscallbacks.get());
+		org.junit.Assert.assertEquals(1, getResolverStat(resolver, "stats_stale"));
+		org.junit.Assert.assertEquals(0, rspcnt_tmt);
+		validateFinalState(resolver);
+	}
+
 	private void execTimeout(boolean tcp) throws java.io.IOException
 	{
 		int cfgflags = CFG_BADSERVER;
@@ -495,11 +623,28 @@ public class ResolverTest
 		} else {
 			sb.append("<retry timeout=\"3s\" timeout_tcp=\"10s\" max=\"2\" backoff=\"200\"/>");
 		}
+		if (extra_cfg != null) sb.append(extra_cfg);
 		sb.append("</dnsresolver></naf>");
 		XmlConfig xmlcfg = XmlConfig.makeSection(sb.toString(), "/naf");
 		return new NAFConfig.Builder().withXmlConfig(xmlcfg).build();
 	}
 
+	// polls until all the resolver's requests have completed, and then stops the Dispatcher
+	private static void stopWhenIdle(Dispatcher dsptch, ResolverDNS resolver)
+	{
+		TimerNAF.Handler poller = new TimerNAF.Handler() {
+			@Override
+			public void timerIndication(TimerNAF tmr, Dispatcher d) {
+				if (isResolverIdle(resolver)) {
+					d.stop();
+				} else {
+					d.setTimer(100, 0, this);
+				}
+			}
+		};
+		dsptch.setTimer(0, 0, poller);
+	}
+
 	private static String addFlag(String cbflags, String newflag)
 	{
 		if (cbflags == null) return newflag;
@@ -507,6 +652,22 @@ public class ResolverTest
 	}
 
 
+	// Counts the callbacks and halts the test if the handler fails
+	private abstract class TestClient implements ResolverDNS.Client {
+		abstract void handleAnswer(Dispatcher d, ResolverAnswer answer, int cbnum) throws IOException;
+
+		@Override
+		public void dnsResolved(Dispatcher d, ResolverAnswer answer, Object cbdata) {
+			try {
+				handleAnswer(d, answer, cnt_dnscallbacks.incrementAndGet());
+			} catch (Throwable ex) {
+				logger.log(LEVEL.ERR, ex, true, "Failed to handle DNS response - "+answer);
+				callback_error = true;
+				d.stop();
+			}
+		}
+	}
+
 	private static class ResolverQueryIssuer implements TimerNAF.Handler {
 		private final ResolverDNS.Client resolverClient;
 		private final boolean remoteResolver;
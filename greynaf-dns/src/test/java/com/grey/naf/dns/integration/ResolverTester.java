@@ -350,6 +350,40 @@ public class ResolverTester
 		}
 	}
 
+	protected static int getResolverStat(ResolverDNS r, String fldnam)
+	{
+		return ((Integer)DynLoader.getField(getResolverService(r), fldnam)).intValue();
+	}
+
+	protected static boolean isResolverIdle(ResolverDNS r)
+	{
+		Object rs = getResolverService(r);
+		return (((com.grey.base.collections.HashedSet<?>)DynLoader.getField(rs, "activereqs")).size() == 0);
+	}
+
+	// Lets tests age cache entries. These setters are package-private, and we can't use DynLoader.setField() on the
+	// underlying fields because it doesn't work on newer JDKs.
+	protected static void setExpiry(ResourceData rr, long expiry)
+	{
+		invokeSetter(rr, "setExpiry", expiry);
+	}
+
+	protected static void setCacheTime(ResourceData rr, long systime)
+	{
+		invokeSetter(rr, "setCacheTime", systime);
+	}
+
+	private static void invokeSetter(ResourceData rr, String mthdnam, long val)
+	{
+		try {
+			java.lang.reflect.Method mthd = ResourceData.class.getDeclaredMethod(mthdnam, long.class);
+			mthd.setAccessible(true);
+			mthd.invoke(rr, val);
+		} catch (Exception ex) {
+			throw new RuntimeException("Failed to call ResourceData."+mthdnam+"() on "+rr, ex);
+		}
+	}
+
 	protected static Object getResolverService(ResolverDNS r)
 	{
 		if (r.getClass() == com.grey.naf.dns.resolver.embedded.EmbeddedResolver.class) {
@@ -25,17 +25,26 @@ class TestServerDNS
 {
 	private static final String TMTDOMAIN = "simulate-timeout.net";
 	private static final String TRUNCDOMAIN = "forced-truncation.net";
+	static final String STALEDOMAIN = "serve-stale.net"; //hosts in this domain are answered once, and then never again
+	static final String PREFETCHDOMAIN = "refresh-ahead.net";
 
 	private final Dispatcher dsptch;
 	private final com.grey.naf.dns.server.ServerDNS srvr;
 	private final HashedMapIntKey<HashedMap<String,ResourceData[][]>> answers= new HashedMapIntKey<>();
 	private final HashSet<String> unused_answers = new HashSet<String>();
+	private final java.util.concurrent.ConcurrentHashMap<String, Integer> qrycounts = new java.util.concurrent.ConcurrentHashMap<>();
 	private final int total_answers;
 	private final java.net.DatagramSocket rawsock; //used for sending custom responses that bypass our DNS API
 	private int tmtdomain_qrycnt;
 
 	public int getPort() {return srvr.getLocalPort();}
 
+	// can be called from other threads
+	public int getQueryCount(byte qtype, String qname) {
+		Integer cnt = qrycounts.get(ResolverDNS.getQTYPE(qtype)+"="+qname);
+		return (cnt == null ? 0 : cnt);
+	}
+
 	public TestServerDNS(ApplicationContextNAF appctx) throws java.io.IOException {
 		populateAnswers();
 		total_answers = unused_answers.size();
@@ -76,7 +85,13 @@ class TestServerDNS
 	public void dnsResolveQuestion(int qid, byte qtype, ByteChars qn, boolean recursion_desired,
 		java.net.InetSocketAddress remote_addr, Object cbparam) throws java.io.IOException
 	{
-		unused_answers.remove(ResolverDNS.getQTYPE(qtype)+"="+qn);
+		String qkey = ResolverDNS.getQTYPE(qtype)+"="+qn;
+		unused_answers.remove(qkey);
+		int qrycnt = qrycounts.merge(qkey, 1, Integer::sum);
+		if (qrycnt > 1 && qn.toString().endsWith("."+STALEDOMAIN)) {
+			//simulate an upstream outage after the first answer, so that the resolver can only serve it stale
+			return;
+		}
 		if (qtype == ResolverDNS.QTYPE_A && StringOps.sameSeq(TMTDOMAIN, qn)) {
 			if (tmtdomain_qrycnt++ % 2 == 0) {
 				//discard every second query, starting with the first - but do so by exercising discard of invalid responses
@@ -271,6 +286,15 @@ class TestServerDNS
 		storeA(TMTDOMAIN, new ResourceData[][]{
 			{rrCreateA(TMTDOMAIN, "192.168.201.1", 60)},
 			null, null});
+		storeA("failure."+STALEDOMAIN, new ResourceData[][]{
+			{rrCreateA("failure."+STALEDOMAIN, "192.168.202.1", 60)},
+			null, null});
+		storeA("deadline."+STALEDOMAIN, new ResourceData[][]{
+			{rrCreateA("deadline."+STALEDOMAIN, "192.168.202.2", 60)},
+			null, null});
+		storeA("www."+PREFETCHDOMAIN, new ResourceData[][]{
+			{rrCreateA("www."+PREFETCHDOMAIN, "192.168.203.1", 60)},
+			null, null});
 
 		// create a response intended to be too large enough to force UDP truncation, and a TCP retry
 		String domnam = TRUNCDOMAIN;
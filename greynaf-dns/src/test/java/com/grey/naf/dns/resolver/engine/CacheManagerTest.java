@@ -451,6 +451,178 @@ public class CacheManagerTest
 		org.junit.Assert.assertEquals(6, cache.size());
 	}
 
+	@org.junit.Test
+	public void testSnapshot() throws Exception
+	{
+		java.io.File fh = new java.io.File(rootdir+"/snapshot/dnscache.dat");
+		String cfgtxt = "<dnsresolver><snapshot>"+fh.getAbsolutePath()+"</snapshot></dnsresolver>";
+		XmlConfig dnscfg = XmlConfig.makeSection(cfgtxt, "dnsresolver");
+		createManager(dnscfg);
+		long ttl = 60 * 60 * 1000L;
+		ByteChars host1 = new ByteChars("host1.dom.org");
+		ByteChars host2 = new ByteChars("host2.dom.org");
+		ByteChars host3 = new ByteChars("host3.dom.org");
+		ByteChars mxdom = new ByteChars("dom.org");
+		int ip1 = IP.convertDottedIP("192.168.99.1");
+		int ip2 = IP.convertDottedIP("192.168.99.2");
+		storeHost(host1, ip1, ttl);
+		storeHost(host2, 0, -ttl);
+		cmgr.storeHostAddress(host3, new ResourceData.RR_A(host3, ip2, dsptch.getSystemTime() - 1));
+		storeIP(ip2, host2, ttl);
+		ResolverAnswer ans = new ResolverAnswer().set(ResolverAnswer.STATUS.OK, ResolverDNS.QTYPE_MX, mxdom);
+		ans.rrdata.add(new ResourceData.RR_MX(mxdom, host1, 10, dsptch.getSystemTime() + ttl));
+		ans.rrdata.add(new ResourceData.RR_MX(mxdom, host2, 20, dsptch.getSystemTime() + ttl));
+		cmgr.storeResult(ans);
+		ans = new ResolverAnswer().set(ResolverAnswer.STATUS.OK, ResolverDNS.QTYPE_TXT, mxdom);
+		ans.rrdata.add(new ResourceData.RR_TXT(mxdom, dsptch.getSystemTime() + ttl, java.util.Arrays.asList("txt1", "txt2")));
+		cmgr.storeResult(ans);
+		java.util.ArrayList<ResourceData.RR_NS> nslst = new java.util.ArrayList<>();
+		nslst.add(new ResourceData.RR_NS(mxdom, host1, ip1, dsptch.getSystemTime() + ttl));
+		storeNameServers(mxdom, nslst);
+
+		CacheSnapshot snapshot = new CacheSnapshot(fh);
+		CacheSnapshot.Image img = snapshot.capture(cmgr, dsptch.getSystemTime());
+		org.junit.Assert.assertEquals(6, img.getEntryCount()); //excludes the expired host3
+		img.write();
+		org.junit.Assert.assertTrue(fh.exists());
+		dsptch.stop();
+
+		// the new resolver should load the snapshot on startup
+		createManager(dnscfg);
+		ResourceData rr = cmgr.lookup(ResolverDNS.QTYPE_A, host1);
+		org.junit.Assert.assertEquals(ResolverDNS.QTYPE_A, rr.rrType());
+		org.junit.Assert.assertEquals(host1, rr.getName());
+		org.junit.Assert.assertEquals(ip1, rr.getIP());
+		rr = cmgr.lookup(ResolverDNS.QTYPE_A, host2);
+		org.junit.Assert.assertTrue(rr.toString(), rr.isNegative());
+		org.junit.Assert.assertNull(cmgr.lookup(ResolverDNS.QTYPE_A, host3));
+		rr = cmgr.lookup(ResolverDNS.QTYPE_PTR, ip2);
+		org.junit.Assert.assertEquals(host2, rr.getName());
+		java.util.ArrayList<ResourceData> lst = cmgr.lookupList(ResolverDNS.QTYPE_MX, mxdom);
+		org.junit.Assert.assertEquals(2, lst.size());
+		org.junit.Assert.assertEquals(host1, ((ResourceData.RR_MX)lst.get(0)).relay);
+		org.junit.Assert.assertEquals(20, ((ResourceData.RR_MX)lst.get(1)).pref);
+		lst = cmgr.lookupList(ResolverDNS.QTYPE_NS, mxdom);
+		org.junit.Assert.assertEquals(1, lst.size());
+		org.junit.Assert.assertEquals(host1, ((ResourceData.RR_NS)lst.get(0)).hostname);
+		org.junit.Assert.assertEquals(ip1, lst.get(0).getIP());
+		rr = cmgr.lookup(ResolverDNS.QTYPE_TXT, mxdom);
+		org.junit.Assert.assertEquals(2, ((ResourceData.RR_TXT)rr).count());
+		org.junit.Assert.assertEquals("txt2", ((ResourceData.RR_TXT)rr).getData(1));
+
+		// a truncated snapshot is rejected
+		byte[] buf = java.nio.file.Files.readAllBytes(fh.toPath());
+		java.nio.file.Files.write(fh.toPath(), java.util.Arrays.copyOf(buf, buf.length - 8));
+		try {
+			snapshot.load(cmgr, dsptch.getSystemTime());
+			org.junit.Assert.fail("Did not trap truncated snapshot");
+		} catch (java.io.IOException ex) {}
+	}
+
+	@org.junit.Test
+	public void testRefreshAhead() throws Exception
+	{
+		String cfgtxt = "<dnsresolver><prefetch hits=\"3\" threshold=\"90\"/></dnsresolver>";
+		createManager(XmlConfig.makeSection(cfgtxt, "dnsresolver"));
+		ByteChars host1 = new ByteChars("host1.dom.org");
+		ByteChars host2 = new ByteChars("host2.dom.org");
+		storeHost(host1, IP.convertDottedIP("192.168.99.1"), 10000);
+		storeHost(host2, IP.convertDottedIP("192.168.99.2"), 10000);
+		ResourceData rr1 = cmgr.lookup(ResolverDNS.QTYPE_A, host1);
+		ResourceData rr2 = cmgr.lookup(ResolverDNS.QTYPE_A, host2);
+		org.junit.Assert.assertEquals(dsptch.getSystemTime(), rr1.getCacheTime());
+
+		// make host1 look as if 90% of its TTL has elapsed, while host2 is still young
+		rr1.setCacheTime(dsptch.getSystemTime() - 90000);
+		rr1.setExpiry(dsptch.getSystemTime() + 10000);
+		org.junit.Assert.assertFalse(cmgr.isRefreshDue(rr1));
+		org.junit.Assert.assertFalse(cmgr.isRefreshDue(rr1));
+		org.junit.Assert.assertTrue(cmgr.isRefreshDue(rr1));
+		org.junit.Assert.assertFalse(cmgr.isRefreshDue(rr1)); //hit count restarts after refresh is due
+		for (int idx = 0; idx != 10; idx++) {
+			org.junit.Assert.assertFalse(cmgr.isRefreshDue(rr2));
+		}
+
+		// storing a fresh answer resets the cache time
+		ResourceData rr3 = new ResourceData.RR_A(host1, IP.convertDottedIP("192.168.99.3"), dsptch.getSystemTime() + 10000);
+		cmgr.storeHostAddress(host1, rr3);
+		org.junit.Assert.assertEquals(dsptch.getSystemTime(), rr3.getCacheTime());
+		for (int idx = 0; idx != 10; idx++) {
+			org.junit.Assert.assertFalse(cmgr.isRefreshDue(rr3));
+		}
+
+		// refresh-ahead is disabled by default
+		dsptch.stop();
+		createManager(null);
+		rr1 = new ResourceData.RR_A(host1, IP.convertDottedIP("192.168.99.1"), dsptch.getSystemTime() + 10);
+		cmgr.storeHostAddress(host1, rr1);
+		rr1.setCacheTime(dsptch.getSystemTime() - 90000);
+		for (int idx = 0; idx != 10; idx++) {
+			org.junit.Assert.assertFalse(cmgr.isRefreshDue(rr1));
+		}
+	}
+
+	@org.junit.Test
+	public void testServeStale() throws Exception
+	{
+		String cfgtxt = "<dnsresolver><servestale window=\"1h\"/></dnsresolver>";
+		createManager(XmlConfig.makeSection(cfgtxt, "dnsresolver"));
+		long systime = dsptch.getSystemTime();
+		ByteChars host1 = new ByteChars("host1.dom.org");
+		ByteChars host2 = new ByteChars("host2.dom.org");
+		ByteChars maildom = new ByteChars("maildom.org");
+		ByteChars nsdom = new ByteChars("nsdom.org");
+		int ip1 = IP.convertDottedIP("192.168.99.1");
+		storeHost(host1, ip1, 10000);
+		storeHost(host2, IP.convertDottedIP("192.168.99.2"), 10000);
+		storeIP(ip1, host1, 10000);
+		ResolverAnswer ans = new ResolverAnswer().set(ResolverAnswer.STATUS.OK, ResolverDNS.QTYPE_MX, maildom);
+		ans.rrdata.add(new ResourceData.RR_MX(maildom, new ByteChars("mx1.maildom.org"), 10, systime + 10000));
+		ans.rrdata.add(new ResourceData.RR_MX(maildom, new ByteChars("mx2.maildom.org"), 20, systime + 10000));
+		cmgr.storeResult(ans);
+		java.util.ArrayList<ResourceData.RR_NS> nslst = new java.util.ArrayList<>();
+		nslst.add(new ResourceData.RR_NS(nsdom, new ByteChars("ns1.nsdom.org"), 0, systime + 10000));
+		storeNameServers(nsdom, nslst);
+
+		// host1 expired recently so is retained to serve stale, but host2 is beyond the stale window
+		ResourceData rr1 = cmgr.lookupStale(ResolverDNS.QTYPE_A, host1);
+		ResourceData rr2 = cmgr.lookupStale(ResolverDNS.QTYPE_A, host2);
+		ResourceData rrptr = cmgr.lookupStale(ResolverDNS.QTYPE_PTR, ip1);
+		rr1.setExpiry(systime - 1000);
+		rr2.setExpiry(systime - com.grey.base.utils.TimeOps.MSECS_PER_HOUR - 1000);
+		rrptr.setExpiry(systime - 1000);
+		org.junit.Assert.assertNull(cmgr.lookup(ResolverDNS.QTYPE_A, host1));
+		org.junit.Assert.assertSame(rr1, cmgr.lookupStale(ResolverDNS.QTYPE_A, host1));
+		org.junit.Assert.assertNull(cmgr.lookup(ResolverDNS.QTYPE_A, host1));
+		org.junit.Assert.assertNull(cmgr.lookupStale(ResolverDNS.QTYPE_A, host2));
+		org.junit.Assert.assertNull(cmgr.lookup(ResolverDNS.QTYPE_A, host2));
+		org.junit.Assert.assertNull(cmgr.lookup(ResolverDNS.QTYPE_PTR, ip1));
+		org.junit.Assert.assertSame(rrptr, cmgr.lookupStale(ResolverDNS.QTYPE_PTR, ip1));
+
+		// a list with any expired RRs is a miss, but its stale version can still be served
+		java.util.ArrayList<ResourceData> mxlst = cmgr.lookupList(ResolverDNS.QTYPE_MX, maildom);
+		org.junit.Assert.assertEquals(2, mxlst.size());
+		mxlst.get(1).setExpiry(systime - 1000);
+		org.junit.Assert.assertNull(cmgr.lookupList(ResolverDNS.QTYPE_MX, maildom));
+		mxlst = cmgr.lookupStaleList(ResolverDNS.QTYPE_MX, maildom);
+		org.junit.Assert.assertEquals(2, mxlst.size());
+
+		// nameservers are never served stale
+		java.util.ArrayList<ResourceData> lst = cmgr.lookupList(ResolverDNS.QTYPE_NS, nsdom);
+		lst.get(0).setExpiry(systime - 1000);
+		org.junit.Assert.assertNull(cmgr.lookupStaleList(ResolverDNS.QTYPE_NS, nsdom));
+		org.junit.Assert.assertNull(cmgr.lookupList(ResolverDNS.QTYPE_NS, nsdom));
+
+		// serve-stale is disabled by default
+		dsptch.stop();
+		createManager(null);
+		storeHost(host1, ip1, 10000);
+		rr1 = cmgr.lookup(ResolverDNS.QTYPE_A, host1);
+		rr1.setExpiry(dsptch.getSystemTime() - 1000);
+		org.junit.Assert.assertNull(cmgr.lookupStale(ResolverDNS.QTYPE_A, host1));
+		org.junit.Assert.assertNull(cmgr.lookup(ResolverDNS.QTYPE_A, host1));
+	}
+
 	private ResolverConfig createManager(XmlConfig dnscfg)
 		throws java.io.IOException, javax.naming.NamingException
 	{
@@ -55,6 +55,116 @@ public class PacketTest
 		verifyCompressedNames(true, true);
 	}
 
+	@org.junit.Test
+	public void testEDNS() {
+		PacketDNS pkt = new PacketDNS(200, false, 0, TimeProvider);
+		ByteChars qname = new ByteChars("anyoldname.nowhere.nosuchdomain");
+		pkt.resetEncoder(false, false);
+		pkt.setResponse();
+		pkt.rcode(PacketDNS.RCODE_BADVERS);
+		pkt.setHeader(99, 1, 0, 0, 1);
+		int off = pkt.encodeHeader();
+		off = pkt.encodeQuestion(off, ResolverDNS.QTYPE_MX, qname);
+		int off_opt = off;
+		off = pkt.encodeOPT(off, PacketDNS.EDNS_UDPSIZE, PacketDNS.RCODE_BADVERS);
+		org.junit.Assert.assertEquals(11, off - off_opt);
+		java.nio.ByteBuffer niobuf = pkt.completeEncoding(off);
+		byte[] barr = new byte[niobuf.limit()];
+		niobuf.get(barr, 0, barr.length);
+
+		// decode the OPT RR via the dedicated method
+		ParseQuestionHandler cb = new ParseQuestionHandler();
+		PacketDNS pkt2 = new PacketDNS(TimeProvider);
+		pkt2.resetDecoder(barr, 0, barr.length);
+		off = pkt2.decodeHeader();
+		org.junit.Assert.assertFalse(pkt2.hasEDNS());
+		org.junit.Assert.assertEquals(0, pkt2.rcode()); //the header only holds the lower 4 bits
+		org.junit.Assert.assertEquals(1, pkt2.getInfoCount());
+		off = pkt2.parseQuestion(off, pkt2.getQuestionCount(), null, cb);
+		off = pkt2.decodeEDNS(off, pkt2.getInfoCount());
+		org.junit.Assert.assertEquals(barr.length, off);
+		org.junit.Assert.assertTrue(pkt2.hasEDNS());
+		org.junit.Assert.assertEquals(PacketDNS.EDNS_UDPSIZE, pkt2.getEdnsUdpSize());
+		org.junit.Assert.assertEquals(0, pkt2.getEdnsVersion());
+		org.junit.Assert.assertEquals(PacketDNS.RCODE_BADVERS, pkt2.extendedRcode());
+
+		// decode it as part of the Additional-Info section, which mustn't pass it to the callback
+		pkt2.resetDecoder(barr, 0, barr.length);
+		off = pkt2.decodeHeader();
+		off = pkt2.parseQuestion(off, pkt2.getQuestionCount(), null, cb);
+		off = pkt2.parseSection(off, ResolverDNS.QTYPE_MX, PacketDNS.SECT_INFO, pkt2.getInfoCount(), null, cb);
+		org.junit.Assert.assertEquals(barr.length, off);
+		org.junit.Assert.assertEquals(0, cb.rrcallcnt);
+		org.junit.Assert.assertEquals(PacketDNS.EDNS_UDPSIZE, pkt2.getEdnsUdpSize());
+		org.junit.Assert.assertEquals(PacketDNS.RCODE_BADVERS, pkt2.extendedRcode());
+
+		// payload sizes below the classic limit are treated as equal to it
+		pkt.resetEncoder(false, false);
+		pkt.setHeader(100, 0, 0, 0, 1);
+		off = pkt.encodeHeader();
+		off = pkt.encodeOPT(off, 100, 0);
+		niobuf = pkt.completeEncoding(off);
+		barr = new byte[niobuf.limit()];
+		niobuf.get(barr, 0, barr.length);
+		pkt2.resetDecoder(barr, 0, barr.length);
+		off = pkt2.decodeHeader();
+		off = pkt2.decodeEDNS(off, pkt2.getInfoCount());
+		org.junit.Assert.assertEquals(barr.length, off);
+		org.junit.Assert.assertEquals(PacketDNS.UDPMAXMSG, pkt2.getEdnsUdpSize());
+		org.junit.Assert.assertEquals(0, pkt2.extendedRcode());
+	}
+
+	// Expired RRs are only encoded with the stale TTL in serve-stale answers (which ServerDNS signals by setting a non-zero
+	// stale TTL), and otherwise go out with a TTL of zero, as they are merely within the resolver's lookupMinTTL grace period.
+	@org.junit.Test
+	public void testStaleTTL() {
+		long systime = TimeProvider.getRealTime();
+		TimerNAF.TimeProvider tp = new TimerNAF.TimeProvider() { //a frozen clock, so that the decoded TTLs are exact
+			@Override
+			public long getRealTime() {return systime;}
+			@Override
+			public long getSystemTime() {return systime;}
+		};
+		ByteChars qname = new ByteChars("stale.nowhere.nosuchdomain");
+		ResourceData[] ans = new ResourceData[] {
+				new ResourceData.RR_A(qname, 0x0a000001, systime - 5000), //expired
+				new ResourceData.RR_A(qname, 0x0a000002, systime + 100_000)};
+		PacketDNS pkt = new PacketDNS(200, false, 0, tp);
+		PacketDNS pkt2 = new PacketDNS(tp);
+
+		pkt.setStaleTTL(30); //a stale answer
+		ParseQuestionHandler cb = encodeAnswer(pkt, pkt2, qname, ans);
+		org.junit.Assert.assertEquals(2, cb.rrcallcnt);
+		org.junit.Assert.assertEquals(systime + 30_000, cb.cb_expiry.get(0).longValue());
+		org.junit.Assert.assertEquals(systime + 100_000, cb.cb_expiry.get(1).longValue());
+
+		pkt.setStaleTTL(0); //not a stale answer
+		cb = encodeAnswer(pkt, pkt2, qname, ans);
+		org.junit.Assert.assertEquals(2, cb.rrcallcnt);
+		org.junit.Assert.assertEquals(systime, cb.cb_expiry.get(0).longValue());
+		org.junit.Assert.assertEquals(systime + 100_000, cb.cb_expiry.get(1).longValue());
+	}
+
+	private static ParseQuestionHandler encodeAnswer(PacketDNS pkt, PacketDNS pkt2, ByteChars qname, ResourceData[] ans) {
+		pkt.resetEncoder(false, false);
+		pkt.setResponse();
+		pkt.setHeader(99, 1, ans.length, 0, 0);
+		int off = pkt.encodeHeader();
+		off = pkt.encodeQuestion(off, ResolverDNS.QTYPE_A, qname);
+		off = pkt.encodeSection(off, PacketDNS.SECT_ANSWERS, ans);
+		java.nio.ByteBuffer niobuf = pkt.completeEncoding(off);
+		byte[] barr = new byte[niobuf.limit()];
+		niobuf.get(barr, 0, barr.length);
+
+		ParseQuestionHandler cb = new ParseQuestionHandler();
+		pkt2.resetDecoder(barr, 0, barr.length);
+		off = pkt2.decodeHeader();
+		off = pkt2.parseQuestion(off, pkt2.getQuestionCount(), null, cb);
+		off = pkt2.parseSection(off, ResolverDNS.QTYPE_A, PacketDNS.SECT_ANSWERS, pkt2.getAnswerCount(), null, cb);
+		org.junit.Assert.assertEquals(barr.length, off);
+		return cb;
+	}
+
 	private void verifyQuestion(boolean is_tcp, PacketDNS pkt, PacketDNS pkt2) {
 		verifyQuestion(false, is_tcp, pkt, pkt2);
 		verifyQuestion(true, is_tcp, pkt, pkt2);
@@ -391,6 +501,7 @@ public class PacketTest
 		public byte cb_qclass;
 		public ByteChars cb_qname;
 		public Object cb_addr;
+		public final java.util.ArrayList<Long> cb_expiry = new java.util.ArrayList<>();
 
 		public ParseQuestionHandler() {}
 
@@ -410,6 +521,7 @@ public class PacketTest
 		@Override
 		public boolean handleMessageRR(int qid, int sectiontype, int rrnum, int rrcnt, ByteChars rrname,ResourceData rr, InetSocketAddress addr) {
 			rrcallcnt++;
+			cb_expiry.add(rr.getExpiry());
 			return false;
 		}
 	}
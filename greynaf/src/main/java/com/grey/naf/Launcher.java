@@ -168,7 +168,10 @@ public class Launcher
 				System.out.println("NAF Config file not found: "+baseOptions.cfgpath);
 				return null;
 			}
+			long systime1 = clock.millis();
 			bldrNafConfig = bldrNafConfig.withConfigFile(fhConfig.getAbsolutePath());
+			long systime2 = clock.millis();
+			bootlog.info("Loaded NAF config file in time="+(systime2-systime1)+"ms - "+XmlConfig.getStats());
 		}
 		return bldrNafConfig.build();
 	}
@@ -200,6 +203,7 @@ public class Launcher
 
 		long systime2 = clock.millis();
 		bootlog.info("NAF BOOTED in time="+(systime2-systime_boot)+"ms - Dispatchers="+dispatchers.size());
+		bootlog.info("NAF config costs: "+XmlConfig.getStats());
 		FileOps.flush(bootlog);
 
 		// wait for Dispatchers to exit - if they ever do
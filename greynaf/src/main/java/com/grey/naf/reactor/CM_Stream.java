@@ -5,10 +5,14 @@
 package com.grey.naf.reactor;
 
 import com.grey.base.utils.ByteArrayRef;
+import com.grey.logging.LogLimiter;
 import com.grey.logging.Logger.LEVEL;
 
 public abstract class CM_Stream extends ChannelMonitor
 {
+	// a peer that floods us with failing connections could otherwise flood the logs with broken-pipe reports
+	private static final LogLimiter BRKPIPE_LIMITER = LogLimiter.register("naf.brokenpipe", 20, 50);
+
 	private final IOExecReaderStream chanreader;
 	private final IOExecWriter chanwriter;
 	private SSLConnection sslconn;
@@ -163,7 +167,7 @@ public abstract class CM_Stream extends ChannelMonitor
 
 	void brokenPipe(LEVEL lvl, CharSequence discmsg, CharSequence errmsg, Throwable ex) throws BrokenPipeException
 	{
-		if (getLogger().isActive(lvl)) {
+		if (BRKPIPE_LIMITER.isAllowed(getLogger(), lvl)) {
 			getLogger().log(lvl, ex, false, getClass().getName()+"/E"+getCMID()+" "+errmsg
 					+" - cmstate="+dumpMonitorState(false, null)+"/SSL="+usingSSL()
 					+"; blocked="+(chanwriter != null && chanwriter.isBlocked()));
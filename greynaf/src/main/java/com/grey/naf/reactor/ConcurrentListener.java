@@ -5,16 +5,23 @@
 package com.grey.naf.reactor;
 
 import com.grey.base.collections.HashedSet;
+import com.grey.base.collections.IPPrefixTable;
 import com.grey.base.collections.ObjectPool;
 import com.grey.naf.EntityReaper;
 import com.grey.naf.reactor.config.ConcurrentListenerConfig;
+import com.grey.logging.LogLimiter;
 import com.grey.logging.Logger.LEVEL;
 
 public class ConcurrentListener
 	extends CM_Listener
 {
+	private static final LogLimiter NOSPARE_LIMITER = LogLimiter.register("naf.listener.nospare", 5, 20);
+
 	private final HashedSet<CM_Server> activeservers = new HashedSet<>();
 	private final ObjectPool<CM_Server> spareservers;
+	private final IPPrefixTable<Boolean> clientFilter;
+	private final boolean acceptUnmatchedClients;
+	private int rejectedClients;
 
 	private boolean in_sync_stop;
 
@@ -32,7 +39,14 @@ public class ConcurrentListener
 		int srvmax = config.getMaxServers();
 		int srvincr = config.getServersIncrement();
 		spareservers = new ObjectPool<>(() -> getServerFactory().createServer(), srvmin, srvmax, srvincr);
-		getLogger().info("Listener="+getName()+" created with init/max/incr="+srvmin+"/"+srvmax+"/"+srvincr);
+		clientFilter = config.getClientFilter();
+		acceptUnmatchedClients = config.acceptUnmatchedClients();
+		String txt = (clientFilter == null ? "" : " - client-filter="+clientFilter.size()+"/unmatched="+(acceptUnmatchedClients ? "accept" : "reject"));
+		getLogger().info("Listener="+getName()+" created with init/max/incr="+srvmin+"/"+srvmax+"/"+srvincr+txt);
+	}
+
+	public int getRejectedClients() {
+		return rejectedClients;
 	}
 
 	@Override
@@ -79,10 +93,18 @@ public class ConcurrentListener
 	}
 
 	private void handleConnection(java.nio.channels.SocketChannel connsock) throws java.io.IOException {
+		if (clientFilter != null && !isClientAccepted(connsock)) {
+			rejectedClients++;
+			if (getLogger().isActive(LEVEL.TRC)) getLogger().trace("Listener="+getName()+" rejecting filtered client - "+connsock);
+			connsock.close();
+			return;
+		}
 		CM_Server srvr = spareservers.extract();
 		if (srvr == null) {
 			// we're at max capacity - can't allocate any more server objects
-			getLogger().info("Listener="+getName()+" dropping connection because no spare servers - "+connsock);
+			if (NOSPARE_LIMITER.isAllowed(getLogger(), LEVEL.INFO)) {
+				getLogger().info("Listener="+getName()+" dropping connection because no spare servers - "+connsock);
+			}
 			connsock.close();
 			return;
 		}
@@ -102,6 +124,13 @@ public class ConcurrentListener
 		}
 	}
 
+	private boolean isClientAccepted(java.nio.channels.SocketChannel connsock) {
+		java.net.InetAddress addr = connsock.socket().getInetAddress();
+		if (addr == null) return false; //already disconnected
+		Boolean accept = clientFilter.get(addr);
+		return (accept == null ? acceptUnmatchedClients : accept.booleanValue());
+	}
+
 	private boolean deallocateServer(CM_Server srvr) {
 		//guard against duplicate entityStopped() notifications
 		if (!activeservers.remove(srvr)) {
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.naf.reactor;
+
+import com.grey.logging.Logger.LEVEL;
+
+/**
+ * An Executor which runs the submitted tasks in the thread of the given Dispatcher.
+ * <br>
+ * This is intended for completing work that was handed off to other threads (eg. blocking lookups performed on a worker
+ * pool, such as {@link com.grey.base.sasl.AsyncAuthenticator}), so that the results are delivered to the Dispatcher's
+ * entities without any need for synchronisation.
+ * <br>
+ * Tasks submitted from within the Dispatcher thread itself are run synchronously, while those submitted from other threads
+ * are queued and run in submission order. A task which throws is logged and does not affect subsequent tasks.
+ * <p>
+ * The execute() method can be called from any thread. Use {@link #get(Dispatcher)} to obtain the Dispatcher's shared instance.
+ */
+public final class DispatcherExecutor
+	implements java.util.concurrent.Executor, Producer.Consumer<Runnable>
+{
+	private final Producer<Runnable> tasks;
+
+	public Dispatcher getDispatcher() {return tasks.getDispatcher();}
+
+	/**
+	 * Returns the given Dispatcher's shared executor, creating it on first use.
+	 */
+	public static DispatcherExecutor get(Dispatcher dsptch)
+	{
+		return dsptch.getNamedItem(DispatcherExecutor.class.getName(), () -> {
+			try {
+				return new DispatcherExecutor(dsptch);
+			} catch (java.io.IOException ex) {
+				throw new IllegalStateException("Dispatcher="+dsptch.getName()+" failed to create Executor", ex);
+			}
+		});
+	}
+
+	public DispatcherExecutor(Dispatcher dsptch) throws java.io.IOException
+	{
+		tasks = new Producer<>("DispatcherExecutor", Runnable.class, dsptch, this);
+		dsptch.loadRunnable(tasks);
+	}
+
+	// Can be called from any thread and is safe to call multiple times.
+	public void shutdown() throws java.io.IOException
+	{
+		getDispatcher().unloadRunnable(tasks);
+	}
+
+	@Override
+	public void execute(Runnable task)
+	{
+		try {
+			tasks.produce(task);
+		} catch (java.io.IOException ex) {
+			throw new java.util.concurrent.RejectedExecutionException("Dispatcher="+getDispatcher().getName()+" failed to accept task", ex);
+		}
+	}
+
+	@Override
+	public void producerIndication(Producer<Runnable> p)
+	{
+		Runnable task;
+		while ((task = p.consume()) != null) {
+			try {
+				task.run();
+			} catch (Throwable ex) {
+				getDispatcher().getLogger().log(LEVEL.ERR, ex, true, "Dispatcher="+getDispatcher().getName()+" failed to run task="+task);
+			}
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return super.toString()+" with Dispatcher="+getDispatcher().getName();
+	}
+}
@@ -4,6 +4,7 @@
  */
 package com.grey.naf.reactor;
 
+import com.grey.base.utils.ByteOps;
 import com.grey.logging.Logger.LEVEL;
 import com.grey.naf.errors.NAFException;
 
@@ -137,11 +138,12 @@ public class IOExecReaderStream
 
 		if (isFlagSet(F_HASDLM)) {
 			// NB: If we do find the delimiter byte, we set userbytes to include it
-			while (scanmark != buflimit) {
-				if (getUserBuffer().buffer()[rcvbuf0 + scanmark++] == rcvdlm) {
-					userbytes = scanmark - readmark;
-					break;
-				}
+			int pos = ByteOps.indexOf(getUserBuffer().buffer(), rcvbuf0 + scanmark, buflimit - scanmark, rcvdlm);
+			if (pos == -1) {
+				scanmark = buflimit;
+			} else {
+				scanmark = pos - rcvbuf0 + 1;
+				userbytes = scanmark - readmark;
 			}
 		} else {
 			if (rcvmax == 0) {
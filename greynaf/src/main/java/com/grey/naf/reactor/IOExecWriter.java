@@ -10,6 +10,7 @@ import com.grey.base.config.SysProps;
 import com.grey.base.utils.ByteArrayRef;
 import com.grey.base.utils.ByteChars;
 import com.grey.base.utils.FileOps;
+import com.grey.logging.LogFormat;
 import com.grey.logging.Logger.LEVEL;
 import com.grey.naf.errors.NAFException;
 
@@ -18,6 +19,8 @@ public class IOExecWriter
 	static final int MAXBUFSIZ = SysProps.get("greynaf.io.xmtqbufsiz", 64*1024);
 	static final int FILEBUFSIZ = SysProps.get("greynaf.io.filebufsiz", 8*1024*1024);
 	private static final LEVEL WRBLOCKTRC = LEVEL.valueOf(SysProps.get("greynaf.io.blocktrc", LEVEL.OFF.toString()));
+	private static final LogFormat FMT_BUFBLOCKED = LogFormat.register("IOExec: Buffer-send blocked with {}/{} - {}/E{}/{}");
+	private static final LogFormat FMT_FILEBLOCKED = LogFormat.register("IOExec: File-send={} blocked with {}/{} - {}/E{}/{}");
 
 	private final com.grey.naf.BufferGenerator bufspec; //NB: xmtbufsiz is ignored as a starting point
 	private final com.grey.base.collections.ObjectQueue<Object> xmtq;
@@ -120,10 +123,8 @@ public class IOExecWriter
 		if (remainbytes == 0) return;
 
 		// the partially written (or completely unwritten) buffer becomes the head of the queue
-		if (chanmon.getLogger().isActive(WRBLOCKTRC)) {
-			chanmon.getLogger().log(WRBLOCKTRC, "IOExec: Buffer-send blocked with "+nbytes+"/"+remainbytes
-					+" - "+chanmon.getClass().getName()+"/E"+chanmon.getCMID()+"/"+chanmon.getChannel());
-		}
+		chanmon.getLogger().record(WRBLOCKTRC, FMT_BUFBLOCKED).arg(nbytes).arg(remainbytes)
+				.arg(chanmon.getClass().getName()).arg(chanmon.getCMID()).arg(chanmon.getChannel()).commit();
 		writemark = enqueue(xmtbuf, remainbytes, is_poolbuf);
 		chanmon.enableWrite();
 	}
@@ -304,10 +305,8 @@ public class IOExecWriter
 					//Not at end-of-file (or even end-of-send, if we were only sending partial file), so we're blocked
 					if (fw == null) {
 						// enqueue the file
-						if (chanmon.getLogger().isActive(WRBLOCKTRC)) {
-							chanmon.getLogger().log(WRBLOCKTRC, "IOExec: File-send="+sendbytes+" blocked with "+nbytes+"/"+sendbytes
-									+" - "+chanmon.getClass().getName()+"/E"+chanmon.getCMID()+"/"+chanmon.getChannel());
-						}
+						chanmon.getLogger().record(WRBLOCKTRC, FMT_FILEBLOCKED).arg(sendbytes).arg(nbytes).arg(sendbytes)
+								.arg(chanmon.getClass().getName()).arg(chanmon.getCMID()).arg(chanmon.getChannel()).commit();
 						enqueue(fchan, pos, lmt);
 					} else {
 						// file was already enqueued, so update its progress
@@ -6,8 +6,10 @@ package com.grey.naf.reactor.config;
 
 import java.util.function.Function;
 
+import com.grey.base.collections.IPPrefixTable;
 import com.grey.base.config.XmlConfig;
 import com.grey.naf.NAFConfig;
+import com.grey.naf.errors.NAFConfigException;
 import com.grey.naf.reactor.CM_Listener;
 
 public class ConcurrentListenerConfig extends ListenerConfig
@@ -16,12 +18,16 @@ public class ConcurrentListenerConfig extends ListenerConfig
 	private final int serversMin;
 	private final int serversMax;
 	private final int serversIncrement;
+	private final IPPrefixTable<Boolean> clientFilter; //maps client subnets to accept/reject - null means accept all clients
+	private final boolean acceptUnmatchedClients;
 
 	private ConcurrentListenerConfig(Builder<?> bldr) {
 		super(bldr);
 		serversMin = bldr.serversMin;
 		serversMax = bldr.serversMax;
 		serversIncrement = (bldr.serversIncrement == 0 ? 1 : bldr.serversIncrement);
+		clientFilter = bldr.clientFilter;
+		acceptUnmatchedClients = bldr.acceptUnmatchedClients;
 	}
 
 	public int getMinServers() {
@@ -36,6 +42,15 @@ public class ConcurrentListenerConfig extends ListenerConfig
 		return serversIncrement;
 	}
 
+	// The filter table is not modified after the config is built, so it is safe to share it across Dispatchers
+	public IPPrefixTable<Boolean> getClientFilter() {
+		return clientFilter;
+	}
+
+	public boolean acceptUnmatchedClients() {
+		return acceptUnmatchedClients;
+	}
+
 
 	public static ConcurrentListenerConfig[] buildMultiConfig(String grpname, NAFConfig nafConfig, String xpath, XmlConfig xmlcfg, int port, int sslport,
 															  Class<? extends CM_Listener.ServerFactory> serverFactory, Object factoryParam) {
@@ -74,6 +89,8 @@ public class ConcurrentListenerConfig extends ListenerConfig
 		private int serversMin;
 		private int serversMax;
 		private int serversIncrement;
+		private IPPrefixTable<Boolean> clientFilter;
+		private boolean acceptUnmatchedClients = true;
 
 		@Override
 		public T withXmlConfig(XmlConfig cfg, NAFConfig nafConfig) {
@@ -82,6 +99,22 @@ public class ConcurrentListenerConfig extends ListenerConfig
 			serversMin = cfg.getInt("@initservers", false, serversMin);
 			serversMax = cfg.getInt("@maxservers", false, serversMax);
 			serversIncrement = cfg.getInt("@incrservers", false, serversIncrement);
+
+			// Clients are matched against the longest matching prefix in these lists. If there is no match, they are
+			// rejected if an allow list was specified, else accepted.
+			String[] allow = cfg.getTuple("clients_allow", "|", false, null);
+			String[] deny = cfg.getTuple("clients_deny", "|", false, null);
+			if (allow != null || deny != null) {
+				IPPrefixTable<Boolean> filter = new IPPrefixTable<>();
+				try {
+					if (deny != null) filter.putAll(java.util.Arrays.asList(deny), Boolean.FALSE);
+					if (allow != null) filter.putAll(java.util.Arrays.asList(allow), Boolean.TRUE);
+				} catch (Exception ex) {
+					throw new NAFConfigException("Invalid client-filter prefixes - allow="+java.util.Arrays.toString(allow)
+						+", deny="+java.util.Arrays.toString(deny), ex);
+				}
+				withClientFilter(filter, allow == null);
+			}
 			return self();
 		}
 
@@ -100,6 +133,12 @@ public class ConcurrentListenerConfig extends ListenerConfig
 			return self();
 		}
 
+		public T withClientFilter(IPPrefixTable<Boolean> filter, boolean acceptUnmatched) {
+			clientFilter = filter;
+			acceptUnmatchedClients = acceptUnmatched;
+			return self();
+		}
+
 		@Override
 		public ConcurrentListenerConfig build()  {
 			return new ConcurrentListenerConfig(this);
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.naf.reactor;
+
+import com.grey.base.utils.FileOps;
+import com.grey.base.utils.TimeOps;
+import com.grey.naf.ApplicationContextNAF;
+import com.grey.naf.TestUtils;
+
+public class DispatcherExecutorTest
+{
+	private static final String rootdir = TestUtils.initPaths(DispatcherExecutorTest.class);
+	private static final ApplicationContextNAF appctx = TestUtils.createApplicationContext("DispatcherExecutorTest", true);
+	private static final com.grey.logging.Logger logger = com.grey.logging.Factory.getLoggerNoEx("");
+
+	@org.junit.Test
+	public void testExecute() throws java.io.IOException, InterruptedException
+	{
+		FileOps.deleteDirectory(rootdir);
+		com.grey.naf.reactor.config.DispatcherConfig def = new com.grey.naf.reactor.config.DispatcherConfig.Builder()
+				.withName("executortest")
+				.withSurviveHandlers(false)
+				.build();
+		Dispatcher dsptch = Dispatcher.create(appctx, def, logger);
+		DispatcherExecutor executor = DispatcherExecutor.get(dsptch);
+		org.junit.Assert.assertSame(executor, DispatcherExecutor.get(dsptch));
+		dsptch.start();
+
+		java.util.List<Integer> results = java.util.Collections.synchronizedList(new java.util.ArrayList<>());
+		java.util.concurrent.CountDownLatch latch = new java.util.concurrent.CountDownLatch(1);
+		java.util.concurrent.atomic.AtomicBoolean inThread = new java.util.concurrent.atomic.AtomicBoolean(true);
+		int taskcnt = 100;
+		for (int idx = 0; idx != taskcnt; idx++) {
+			int val = idx;
+			executor.execute(() -> {
+				if (!dsptch.isDispatcherThread()) inThread.set(false);
+				results.add(val);
+			});
+		}
+		executor.execute(() -> {throw new IllegalStateException("Simulated task failure");});
+		executor.execute(() -> {
+			// tasks submitted from within the Dispatcher thread run synchronously
+			executor.execute(() -> results.add(-1));
+			results.add(-2);
+			latch.countDown();
+		});
+		org.junit.Assert.assertTrue(latch.await(10, java.util.concurrent.TimeUnit.SECONDS));
+		dsptch.stop();
+		Dispatcher.STOPSTATUS stopsts = dsptch.waitStopped(TimeOps.MSECS_PER_SECOND * 10, true);
+		org.junit.Assert.assertEquals(Dispatcher.STOPSTATUS.STOPPED, stopsts);
+		org.junit.Assert.assertTrue(inThread.get());
+		org.junit.Assert.assertEquals(taskcnt + 2, results.size());
+		for (int idx = 0; idx != taskcnt; idx++) {
+			org.junit.Assert.assertEquals(idx, results.get(idx).intValue());
+		}
+		org.junit.Assert.assertEquals(-1, results.get(taskcnt).intValue());
+		org.junit.Assert.assertEquals(-2, results.get(taskcnt+1).intValue());
+	}
+}
@@ -51,9 +51,17 @@ public class ClientSession
 				String address = servicecfg[idx].getValue("@address", true, null);
 				services.add(TSAP.build(address, 0, true));
 			}
-			Object obj = NAFConfig.createEntity(balancercfg, RoundRobin.class, Balancer.class, false,
-					new Class<?>[]{List.class, Logger.class},
-					new Object[]{services, lstnr.getLogger()});
+			// fall back to the original constructor signature for balancers which don't take a config block
+			Class<?> clss = NAFConfig.getEntityClass(balancercfg, RoundRobin.class, Balancer.class);
+			Class<?>[] ctorsig = new Class<?>[]{List.class, com.grey.base.config.XmlConfig.class, Logger.class};
+			Object[] ctorargs = new Object[]{services, balancercfg, lstnr.getLogger()};
+			try {
+				clss.getConstructor(ctorsig);
+			} catch (NoSuchMethodException ex) {
+				ctorsig = new Class<?>[]{List.class, Logger.class};
+				ctorargs = new Object[]{services, lstnr.getLogger()};
+			}
+			Object obj = NAFConfig.createEntity(clss, ctorsig, ctorargs);
 			loadbalancer = Balancer.class.cast(obj);
 
 			l.getLogger().info("Server for "+lstnr.getName()+" has LoadBalancer="+loadbalancer+", Timeout="+TimeOps.expandMilliTime(tmt_idle));
@@ -7,7 +7,10 @@ package com.grey.portfwd.balance;
 /*
  * In addition to satisfying the explicit methods of this interface, implementing classes must also
  * provide a constructor with this signature:
- * classname(com.grey.base.utils.TSAP[] services)
+ * classname(java.util.List<com.grey.base.utils.TSAP> services, com.grey.base.config.XmlConfig cfg, com.grey.logging.Logger logger)
+ * The cfg parameter is the loadbalancer config block, which may not exist (see XmlConfig.exists()).
+ * Classes which don't need the config can instead provide the original constructor signature:
+ * classname(java.util.List<com.grey.base.utils.TSAP> services, com.grey.logging.Logger logger)
  */
 public interface Balancer
 {
@@ -6,6 +6,7 @@ package com.grey.portfwd.balance;
 
 import java.util.List;
 
+import com.grey.base.config.XmlConfig;
 import com.grey.base.utils.TSAP;
 import com.grey.logging.Logger;
 import com.grey.portfwd.ClientSession;
@@ -16,6 +17,11 @@ public class RoundRobin
 	private final List<TSAP> services;
 	private int next_service;
 
+	public RoundRobin(List<TSAP> services, XmlConfig cfg, Logger logger)
+	{
+		this(services, logger);
+	}
+
 	public RoundRobin(List<TSAP> services, Logger logger)
 	{
 		this.services = services;
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2021 Yusef Badri - All rights reserved.
+ * NAF is distributed under the terms of the GNU Affero General Public License, Version 3 (AGPLv3).
+ */
+package com.grey.portfwd.balance;
+
+import java.util.List;
+
+import com.grey.base.collections.IPPrefixTable;
+import com.grey.base.config.XmlConfig;
+import com.grey.base.utils.TSAP;
+import com.grey.logging.Logger;
+import com.grey.portfwd.ClientSession;
+
+/*
+ * Routes each client to a backend service based on the longest prefix match on its IP address, and falls back
+ * to round-robin selection across all the services for clients that don't match any of the configured routes.
+ * The routes are configured as follows, where the service attribute is the index (starting at 1) of the target
+ * service in the listener's list of services:
+ * <loadbalancer class="com.grey.portfwd.balance.SubnetRouted">
+ *     <route clients="10.0.0.0/8 | 192.168.0.0/16" service="2"/>
+ * </loadbalancer>
+ */
+public class SubnetRouted
+	implements Balancer
+{
+	private final IPPrefixTable<TSAP> routes = new IPPrefixTable<>();
+	private final RoundRobin dflt_balancer;
+
+	public SubnetRouted(List<TSAP> services, XmlConfig cfg, Logger logger) throws java.net.UnknownHostException
+	{
+		XmlConfig[] routecfg = cfg.getSections("route");
+		int cnt = (routecfg == null ? 0 : routecfg.length);
+		for (int idx = 0; idx != cnt; idx++) {
+			String[] clients = routecfg[idx].getTuple("@clients", "|", true, null);
+			int svc = routecfg[idx].getInt("@service", true, 0);
+			if (svc < 1 || svc > services.size()) {
+				throw new XmlConfig.XmlConfigException("Invalid service="+svc+" for route="+idx+" - services="+services.size());
+			}
+			routes.putAll(java.util.Arrays.asList(clients), services.get(svc - 1));
+		}
+		dflt_balancer = new RoundRobin(services, cfg, logger);
+		logger.info("Created load-balancer="+this+" with routes="+routes.size());
+	}
+
+	@Override
+	public TSAP selectService(ClientSession client)
+	{
+		java.net.InetAddress addr = client.getRemoteIP();
+		TSAP tsap = (addr == null ? null : routes.get(addr));
+		if (tsap == null) tsap = dflt_balancer.selectService(client);
+		return tsap;
+	}
+}